@@ -0,0 +1,51 @@
+package edu.pucmm.eict.clientes.grpc;
+
+import edu.pucmm.eict.modelos.AccessDetail;
+import edu.pucmm.eict.modelos.Url;
+import edu.pucmm.eict.modelos.Usuario;
+import edu.pucmm.eict.services.UrlService;
+import edu.pucmm.eict.services.UserService;
+import edu.pucmm.eict.util.Database;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Armado del UrlEntry de gRPC (primera página de accesos incluida) para un enlace con clics.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UrlEntryBenchmark {
+
+    private UrlShortenerServiceImpl service;
+    private Url url;
+
+    @Setup
+    public void setup() {
+        System.setProperty("APP_DB_MODE", "mem");
+        Database.init();
+        UrlService urlService = new UrlService();
+        UserService userService = new UserService();
+        service = new UrlShortenerServiceImpl(urlService, userService);
+        userService.register("bench-grpc", "pwd");
+        Usuario user = userService.getUserByUsername("bench-grpc");
+        url = urlService.saveUrl("https://example.com/grpc", user);
+        for (int i = 0; i < UrlService.DEFAULT_ACCESS_PAGE_SIZE; i++) {
+            urlService.recordAccess(url, new AccessDetail(new Date(), "Chrome", "10.0.1." + (i % 250), "localhost", "Linux"));
+        }
+        urlService.flushAccesses();
+    }
+
+    @Benchmark
+    public UrlEntry toUrlEntry() {
+        return service.toUrlEntry(url, "");
+    }
+}
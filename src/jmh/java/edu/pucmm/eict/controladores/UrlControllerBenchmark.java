@@ -0,0 +1,40 @@
+package edu.pucmm.eict.controladores;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trabajo por petición que no toca la base: clasificar el User-Agent y generar el QR.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UrlControllerBenchmark {
+
+    @Param({
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0 Safari/537.36",
+            "Mozilla/5.0 (X11; Linux x86_64; rv:121.0) Gecko/20100101 Firefox/121.0",
+            "curl/8.4.0"
+    })
+    public String userAgent;
+
+    @Benchmark
+    public void parseUserAgent(Blackhole bh) {
+        bh.consume(UrlController.parseBrowser(userAgent));
+        bh.consume(UrlController.parsePlatform(userAgent));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String generateQRCodeImage() throws Exception {
+        return UrlController.generateQRCodeImage("http://localhost:7000/go/aB3dE9", 200, 200);
+    }
+}
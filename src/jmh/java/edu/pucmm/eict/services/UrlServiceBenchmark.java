@@ -0,0 +1,80 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.modelos.AccessDetail;
+import edu.pucmm.eict.modelos.Url;
+import edu.pucmm.eict.modelos.Usuario;
+import edu.pucmm.eict.util.Database;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caminos calientes de UrlService contra H2 en memoria: crear, leer y registrar un acceso.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UrlServiceBenchmark {
+
+    private static final int LINKS = 1000;
+
+    private UrlService urlService;
+    private Usuario user;
+    private Url[] links;
+
+    @Setup
+    public void setup() {
+        System.setProperty("APP_DB_MODE", "mem");
+        Database.init();
+        urlService = new UrlService();
+        UserService userService = new UserService();
+        userService.register("bench", "pwd");
+        user = userService.getUserByUsername("bench");
+        links = new Url[LINKS];
+        for (int i = 0; i < LINKS; i++) links[i] = urlService.saveUrl("https://example.com/bench/" + i, user);
+    }
+
+    @TearDown
+    public void tearDown() {
+        urlService.flushAccesses();
+    }
+
+    private Url randomLink() {
+        return links[ThreadLocalRandom.current().nextInt(LINKS)];
+    }
+
+    @Benchmark
+    public Url saveUrl() {
+        return urlService.saveUrl("https://example.com/new/" + ThreadLocalRandom.current().nextLong(), user);
+    }
+
+    @Benchmark
+    public Url getUrl() {
+        return urlService.getUrl(randomLink().getShortUrl());
+    }
+
+    @Benchmark
+    public Url resolveForRedirect() {
+        return urlService.resolveForRedirect(randomLink().getShortUrl());
+    }
+
+    @Benchmark
+    public void recordAccess() {
+        urlService.recordAccess(randomLink(), new AccessDetail(new Date(), "Chrome", "10.0.0.1", "localhost", "Linux"));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String generateShortUrl() {
+        return UrlService.generateShortUrl();
+    }
+}
@@ -0,0 +1,90 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.modelos.Url;
+import edu.pucmm.eict.modelos.Usuario;
+import edu.pucmm.eict.util.Database;
+import edu.pucmm.eict.util.VirtualThreads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendimiento con mucha concurrencia: una ráfaga de peticiones que leen un enlace de H2 y luego
+ * esperan ioMillis (como una consulta remota o la vista previa de microlink), atendidas por un
+ * pool de plataforma del tamaño del de Jetty o por un hilo virtual por petición. El tiempo por
+ * ráfaga da el throughput: ráfaga / tiempo. Para medirlo contra el servidor completo, arrancar
+ * con y sin APP_VIRTUAL_THREADS y usar ./gradlew loadTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VirtualThreadBenchmark {
+
+    private static final int LINKS = 1000;
+    // Máximo por defecto del QueuedThreadPool que crea Javalin
+    private static final int PLATFORM_THREADS = 250;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"1000", "10000"})
+    public int requests;
+
+    @Param({"5"})
+    public int ioMillis;
+
+    private ExecutorService executor;
+    private UrlService urlService;
+    private Url[] links;
+
+    @Setup
+    public void setup() {
+        System.setProperty("APP_DB_MODE", "mem");
+        Database.init();
+        urlService = new UrlService();
+        UserService userService = new UserService();
+        userService.register("bench-vt", "pwd");
+        Usuario user = userService.getUserByUsername("bench-vt");
+        links = new Url[LINKS];
+        for (int i = 0; i < LINKS; i++) links[i] = urlService.saveUrl("https://example.com/vt/" + i, user);
+        executor = "virtual".equals(threads)
+                ? VirtualThreads.newExecutor("bench")
+                : Executors.newFixedThreadPool(PLATFORM_THREADS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int burst() throws Exception {
+        Future<?>[] pending = new Future<?>[requests];
+        for (int i = 0; i < requests; i++) {
+            pending[i] = executor.submit(this::handle);
+        }
+        int found = 0;
+        for (Future<?> f : pending) {
+            if (f.get() != null) found++;
+        }
+        return found;
+    }
+
+    private Url handle() throws InterruptedException {
+        Url url = urlService.getUrlInfo(links[ThreadLocalRandom.current().nextInt(LINKS)].getShortUrl());
+        Thread.sleep(ioMillis);
+        return url;
+    }
+}
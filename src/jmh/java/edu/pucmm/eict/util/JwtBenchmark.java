@@ -0,0 +1,33 @@
+package edu.pucmm.eict.util;
+
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validación del JWT que hace el filtro de /api/* en cada petición.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtBenchmark {
+
+    private String token;
+
+    @Setup
+    public void setup() {
+        token = JwtUtil.generateToken("bench", "user");
+    }
+
+    @Benchmark
+    public Claims validateToken() {
+        return JwtUtil.validateToken(token);
+    }
+}
@@ -0,0 +1,54 @@
+package edu.pucmm.eict;
+
+import edu.pucmm.eict.services.BulkImportService;
+import edu.pucmm.eict.util.Database;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+/**
+ * Importación masiva de enlaces desde la línea de comandos, sin levantar el servidor:
+ * <pre>
+ *   ImportMain &lt;archivo&gt; [--format csv|ndjson] [--offset N] [--owner usuario]
+ * </pre>
+ * Usa la misma base que Main (APP_DB_MODE, etc.). Si se interrumpe, volver a ejecutar con
+ * el último offset impreso retoma desde el primer bloque no confirmado.
+ */
+public class ImportMain {
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Uso: ImportMain <archivo> [--format csv|ndjson] [--offset N] [--owner usuario]");
+            System.exit(2);
+        }
+        String file = args[0];
+        BulkImportService.Format format = BulkImportService.Format.fromFileName(file);
+        long offset = 0;
+        String owner = null;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--format" -> format = BulkImportService.Format.valueOf(args[i + 1].toUpperCase());
+                case "--offset" -> offset = Long.parseLong(args[i + 1]);
+                case "--owner" -> owner = args[i + 1];
+                default -> {
+                    System.err.println("Opción desconocida: " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+
+        Database.init();
+        long start = System.currentTimeMillis();
+        BulkImportService.Report report;
+        try (InputStream in = new FileInputStream(file)) {
+            report = new BulkImportService().importFrom(in, format, offset, owner,
+                    r -> System.out.println("[IMPORT] " + r));
+        }
+        System.out.println("[IMPORT] Terminado en " + (System.currentTimeMillis() - start) + " ms: " + report);
+        for (String error : report.getErrors()) {
+            System.out.println("[IMPORT]   " + error);
+        }
+        if (report.getFailed() > report.getErrors().size()) {
+            System.out.println("[IMPORT]   ... y " + (report.getFailed() - report.getErrors().size()) + " errores más");
+        }
+    }
+}
@@ -1,15 +1,22 @@
 package edu.pucmm.eict;
 
 import edu.pucmm.eict.controladores.api.rest.ApiAuthController;
+import edu.pucmm.eict.controladores.AdmissionController;
 import edu.pucmm.eict.controladores.AuthController;
+import edu.pucmm.eict.controladores.MetricsController;
+import edu.pucmm.eict.controladores.RateLimitController;
 import edu.pucmm.eict.controladores.UrlController;
 import edu.pucmm.eict.controladores.UserController;
 import edu.pucmm.eict.controladores.api.rest.ApiUrlController;
 import edu.pucmm.eict.modelos.Url;
 import edu.pucmm.eict.modelos.Usuario;
+import edu.pucmm.eict.services.ClickMaintenanceService;
 import edu.pucmm.eict.services.UrlService;
 import edu.pucmm.eict.services.UserService;
+import edu.pucmm.eict.services.WarmStartService;
 import edu.pucmm.eict.util.JwtUtil;
+import edu.pucmm.eict.util.Tracing;
+import edu.pucmm.eict.util.VirtualThreads;
 import io.javalin.Javalin;
 import io.javalin.http.staticfiles.Location;
 import io.javalin.rendering.template.JavalinThymeleaf;
@@ -18,8 +25,8 @@ import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import edu.pucmm.eict.util.Database; // added
 import edu.pucmm.eict.util.CsrfUtil;
@@ -43,24 +50,45 @@ public class Main {
         UrlService urlService = new UrlService();
         // Crear admin por defecto si no existe
         userService.createDefaultAdmin();
+        // Retención y compactación de particiones de accesos (si están configuradas)
+        new ClickMaintenanceService().start();
+        // Trazas a archivo (APP_TRACE_SAMPLE > 0)
+        Tracing.start("acortador");
+        // Hilos virtuales para las peticiones (APP_VIRTUAL_THREADS) y aviso de fijaciones
+        VirtualThreads.startPinnedMonitor();
+        // Enlaces populares del último snapshot (APP_WARM_SNAPSHOT_DIR)
+        WarmStartService warmStart = new WarmStartService();
+        List<String> hotCodes = warmStart.restore();
         // Instancia de ApiAuthController con el servicio de usuarios inyectado:
         ApiAuthController apiAuthController = new ApiAuthController(userService);
 
 
         // Controladores
         AuthController authController = new AuthController(userService);
-        UserController userController = new UserController(userService);
+        UserController userController = new UserController(userService, urlService);
         UrlController urlController = new UrlController(urlService);
 
         // Obtener el puerto de la variable de entorno PORT, o usar 7000 como default
         String portStr = System.getenv("PORT");
         int port = (portStr != null && !portStr.isEmpty()) ? Integer.parseInt(portStr) : 7000;
 
-        // Inicialización de Javalin con el puerto configurado dinámicamente
+        // Inicialización de Javalin; el puerto se abre al final, tras el calentamiento
         Javalin app = Javalin.create(config -> {
             config.staticFiles.add("/public", Location.CLASSPATH);
             config.fileRenderer(new JavalinThymeleaf(templateEngine));
-        }).start(port);
+            config.useVirtualThreads = VirtualThreads.ENABLED;
+        });
+
+        // Métricas: el primer before y el primer after para cubrir toda la petición
+        MetricsController metricsController = new MetricsController();
+        app.before(metricsController.startTimer);
+        app.after(metricsController.recordRoute);
+        app.get("/metrics", metricsController.metrics);
+
+        // Control de admisión por carriles (APP_ADMISSION): antes que autenticación y sesiones
+        AdmissionController admissionController = new AdmissionController();
+        app.before(admissionController.admit);
+        app.after(admissionController.release);
 
         // SEGURIDAD: Headers HTTP de seguridad (Mitigación Clickjacking y MIME Sniffing)
         app.after(ctx -> {
@@ -101,6 +129,9 @@ public class Main {
         ApiUrlController apiUrlController = new ApiUrlController(urlService, userService);
         app.get("/api/urls", apiUrlController.listUrlsApi);
         app.post("/api/urls", apiUrlController.createUrlApi);
+        app.get("/api/urls/{shortUrl}/access", apiUrlController.listAccessApi);
+        app.get("/api/urls/{shortUrl}/export", apiUrlController.exportLinkApi);
+        app.get("/api/export", apiUrlController.exportAccountApi);
 
 
         // Middleware para inyectar el usuario desde la sesión en rutas no-API
@@ -115,6 +146,10 @@ public class Main {
             }
         });
 
+        // Límite por cliente para crear enlaces y para la API (tras el filtro JWT y la sesión)
+        RateLimitController rateLimitController = new RateLimitController();
+        app.before(rateLimitController.limit);
+
         // Rutas de autenticación (sin protección CSRF - no requieren token)
         app.get("/register", authController.showRegisterPage);
         app.get("/login", authController.showLoginPage);
@@ -186,12 +221,9 @@ public class Main {
         // Rutas de URLs: se filtran según el usuario en sesión
         app.get("/dashboard/urls", ctx -> {
             Usuario currentUser = ctx.sessionAttribute("user");
-            Collection<Url> urls = urlService.getAllUrls();
-            if (currentUser != null && !"admin".equals(currentUser.getRole())) {
-                urls = urls.stream()
-                        .filter(url -> url.getUser() != null && url.getUser().getUsername().equals(currentUser.getUsername()))
-                        .collect(Collectors.toList());
-            }
+            Collection<Url> urls = currentUser == null || "admin".equals(currentUser.getRole())
+                    ? urlService.getAllUrls()
+                    : urlService.getUrlsOfUser(currentUser.getUsername());
             ctx.render("urls.html", Map.of("urls", urls, "usuario", currentUser));
         });
         // Registra la ruta POST para acortar URL
@@ -305,6 +337,13 @@ public class Main {
         });
         app.post("/dashboard/users/update", userController.updateUser);
 
+        // Enlaces más visitados en tiempo real (panel de admin)
+        app.get("/dashboard/admin/hot-links", urlController.hotLinks);
+        app.get("/dashboard/admin/loaders", urlController.loaderStats);
+        app.get("/dashboard/admin/queries", urlController.queryStats);
+        app.get("/dashboard/export", urlController.exportAccount);
+        app.post("/dashboard/admin/import", urlController.importUrls);
+
 
 
         // Nueva ruta para la vista de estadísticas (la ruta no depende del dashboard, sino que se invoca directamente desde index)
@@ -331,9 +370,17 @@ public class Main {
         app.get("/go/{shortUrl}", urlController.redirectToOriginalUrl);
         app.get("/urls", urlController.listUrls);
         app.get("/stats/{shortUrl}", urlController.getAccessStats);
+        app.get("/stats/{shortUrl}/series", urlController.getStatsSeries);
+        app.get("/stats/{shortUrl}/access", urlController.getAccessPage);
+        app.get("/stats/{shortUrl}/export", urlController.exportLink);
         app.get("/preview", urlController.previewUrl);
         app.get("/", ctx -> ctx.redirect("/index"));
 
+        // Calentar la ruta de redirección antes de recibir tráfico y empezar a guardar snapshots
+        warmStart.warmUp(hotCodes, urlController::warmUpRedirect);
+        warmStart.start();
+        app.start(port);
+
         System.out.println("Aplicación corriendo en http://localhost:" + port);
     }
 
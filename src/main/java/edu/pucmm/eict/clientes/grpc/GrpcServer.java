@@ -2,11 +2,20 @@ package edu.pucmm.eict.clientes.grpc;
 
 import edu.pucmm.eict.services.UrlService;
 import edu.pucmm.eict.services.UserService;
+import edu.pucmm.eict.util.AppConfig;
+import edu.pucmm.eict.util.Metrics;
+import edu.pucmm.eict.util.Tracing;
+import edu.pucmm.eict.util.VirtualThreads;
+import com.sun.net.httpserver.HttpServer;
 import io.grpc.BindableService;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptors;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 
 public class GrpcServer {
     public static void main(String[] args) {
@@ -15,12 +24,19 @@ public class GrpcServer {
         UserService userService = new UserService(); // Se asume que se implementa al menos el método getUserByUsername
 
         // Configura el servidor para aceptar mensajes de hasta 10 MB
-        Server server = ServerBuilder.forPort(port)
+        ServerBuilder<?> builder = ServerBuilder.forPort(port)
                 .maxInboundMessageSize(10 * 1024 * 1024)
-                .addService((BindableService) new UrlShortenerServiceImpl(urlService, userService))
-                .build();
+                .addService(ServerInterceptors.intercept((BindableService) new UrlShortenerServiceImpl(urlService, userService),
+                        new MetricsInterceptor(), new TracingServerInterceptor()));
+        // Con APP_VIRTUAL_THREADS cada llamada corre en su propio hilo virtual en lugar del
+        // pool en caché por defecto (las llamadas esperan a H2 y a microlink)
+        if (VirtualThreads.ENABLED) builder.executor(VirtualThreads.newExecutor("grpc"));
+        Server server = builder.build();
 
         try {
+            startMetricsEndpoint(AppConfig.getInt("APP_GRPC_METRICS_PORT", 0));
+            Tracing.start("acortador-grpc");
+            VirtualThreads.startPinnedMonitor();
             server.start();
             System.out.println("gRPC Server started, listening on port " + port);
             server.awaitTermination();
@@ -28,4 +44,29 @@ public class GrpcServer {
             e.printStackTrace();
         }
     }
+
+    // Este proceso no tiene Javalin: /metrics se sirve con el servidor HTTP del JDK (0 = desactivado).
+    // Escucha en APP_GRPC_METRICS_HOST (loopback por defecto) con la misma regla que el servidor web
+    private static void startMetricsEndpoint(int port) throws IOException {
+        if (port <= 0) return;
+        String token = AppConfig.get("APP_METRICS_TOKEN", null);
+        String host = AppConfig.get("APP_GRPC_METRICS_HOST", "127.0.0.1");
+        HttpServer http = HttpServer.create(new InetSocketAddress(host, port), 0);
+        http.createContext("/metrics", exchange -> {
+            String remote = exchange.getRemoteAddress().getAddress().getHostAddress();
+            if (!Metrics.scrapeAllowed(token, exchange.getRequestHeaders().getFirst("Authorization"), remote)) {
+                exchange.sendResponseHeaders(token != null ? 401 : 403, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = Metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        http.start();
+        System.out.println("Métricas gRPC en http://" + host + ":" + port + "/metrics");
+    }
 }
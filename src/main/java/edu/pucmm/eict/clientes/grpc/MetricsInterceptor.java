@@ -0,0 +1,33 @@
+package edu.pucmm.eict.clientes.grpc;
+
+import edu.pucmm.eict.util.Metrics;
+import io.grpc.ForwardingServerCall;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+/**
+ * Mide la duración de cada llamada gRPC por método y código de estado, desde que llega
+ * hasta que el servidor la cierra (incluye serializar la respuesta).
+ */
+public class MetricsInterceptor implements ServerInterceptor {
+
+    private static final Metrics.Timer GRPC_CALLS = Metrics.timer("grpc_server_handling_seconds",
+            "Duración de las llamadas gRPC", "method", "code");
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        long start = System.nanoTime();
+        String method = call.getMethodDescriptor().getFullMethodName();
+        return next.startCall(new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                GRPC_CALLS.recordSince(start, method, status.getCode().name());
+                super.close(status, trailers);
+            }
+        }, headers);
+    }
+}
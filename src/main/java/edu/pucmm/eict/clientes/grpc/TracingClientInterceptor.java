@@ -0,0 +1,46 @@
+package edu.pucmm.eict.clientes.grpc;
+
+import edu.pucmm.eict.util.Tracing;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * Lado cliente de las trazas: si hay una traza en curso abre un span CLIENT por llamada y
+ * envía su traceparent en la metadata, para que TracingServerInterceptor continúe la traza.
+ */
+public class TracingClientInterceptor implements ClientInterceptor {
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                               CallOptions callOptions, Channel next) {
+        if (Tracing.current() == null) return next.newCall(method, callOptions);
+        return new ForwardingClientCall.SimpleForwardingClientCall<>(next.newCall(method, callOptions)) {
+            private Tracing.Span span;
+
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                // El span no se activa: la respuesta puede llegar en otro hilo
+                span = Tracing.childSpan(method.getFullMethodName(), Tracing.Kind.CLIENT)
+                        .attribute("rpc.system", "grpc")
+                        .attribute("rpc.method", method.getFullMethodName());
+                if (span.isSampled()) headers.put(TracingServerInterceptor.TRACEPARENT, span.traceparent());
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        span.attribute("rpc.grpc.status_code", status.getCode().value());
+                        if (!status.isOk()) span.error(status.getCode().name());
+                        span.close();
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            }
+        };
+    }
+}
@@ -0,0 +1,83 @@
+package edu.pucmm.eict.clientes.grpc;
+
+import edu.pucmm.eict.util.Tracing;
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+/**
+ * Abre un span por llamada gRPC, continuando la traza que llega en la metadata traceparent.
+ * gRPC invoca los callbacks de una llamada en distintos hilos, así que el span se activa en
+ * cada uno (el método unario corre en onHalfClose) y se cierra junto con la llamada.
+ */
+public class TracingServerInterceptor implements ServerInterceptor {
+
+    static final Metadata.Key<String> TRACEPARENT = Metadata.Key.of(Tracing.TRACEPARENT, Metadata.ASCII_STRING_MARSHALLER);
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        if (!Tracing.ENABLED) return next.startCall(call, headers);
+        String method = call.getMethodDescriptor().getFullMethodName();
+        Tracing.Span span = Tracing.serverSpan(method, headers.get(TRACEPARENT));
+        if (!span.isSampled()) return next.startCall(call, headers);
+        span.attribute("rpc.system", "grpc").attribute("rpc.method", method);
+
+        ServerCall<ReqT, RespT> traced = new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                span.attribute("rpc.grpc.status_code", status.getCode().value());
+                if (!status.isOk()) span.error(status.getCode() + (status.getDescription() != null ? ": " + status.getDescription() : ""));
+                span.close();
+                super.close(status, trailers);
+            }
+        };
+        ServerCall.Listener<ReqT> listener;
+        try (Tracing.Scope ignored = span.activate()) {
+            listener = next.startCall(traced, headers);
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onMessage(ReqT message) {
+                try (Tracing.Scope ignored = span.activate()) {
+                    super.onMessage(message);
+                }
+            }
+
+            @Override
+            public void onHalfClose() {
+                try (Tracing.Scope ignored = span.activate()) {
+                    super.onHalfClose();
+                }
+            }
+
+            @Override
+            public void onCancel() {
+                try (Tracing.Scope ignored = span.activate()) {
+                    super.onCancel();
+                } finally {
+                    // Una llamada cancelada no pasa por close()
+                    span.error("CANCELLED").close();
+                }
+            }
+
+            @Override
+            public void onComplete() {
+                try (Tracing.Scope ignored = span.activate()) {
+                    super.onComplete();
+                }
+            }
+
+            @Override
+            public void onReady() {
+                try (Tracing.Scope ignored = span.activate()) {
+                    super.onReady();
+                }
+            }
+        };
+    }
+}
@@ -6,6 +6,8 @@ import edu.pucmm.eict.clientes.grpc.AccessDetail;
 import edu.pucmm.eict.clientes.grpc.CreateUrlRequest;
 import edu.pucmm.eict.clientes.grpc.CreateUrlResponse;
 import edu.pucmm.eict.clientes.grpc.ListUrlsRequest;
+import edu.pucmm.eict.clientes.grpc.ListAccessDetailsRequest;
+import edu.pucmm.eict.clientes.grpc.ListAccessDetailsResponse;
 import edu.pucmm.eict.clientes.grpc.ListUrlsResponse;
 import edu.pucmm.eict.clientes.grpc.UrlEntry;
 import edu.pucmm.eict.clientes.grpc.UrlStatistics;
@@ -13,6 +15,10 @@ import edu.pucmm.eict.modelos.Url;
 import edu.pucmm.eict.modelos.Usuario;
 import edu.pucmm.eict.services.UrlService;
 import edu.pucmm.eict.services.UserService;
+import edu.pucmm.eict.util.PreviewFetch;
+import edu.pucmm.eict.util.RateLimiter;
+import io.grpc.Metadata;
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -28,12 +34,14 @@ import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 public class UrlShortenerServiceImpl extends UrlShortenerServiceGrpc.UrlShortenerServiceImplBase {
 
     private final UrlService urlService;
     private final UserService userService;
+    private final RateLimiter rateLimiter = RateLimiter.getInstance();
     // Se obtiene la baseUrl vía variable de ambiente o se usa por defecto "http://localhost:7000"
     private final String baseUrl;
 
@@ -60,39 +68,28 @@ public class UrlShortenerServiceImpl extends UrlShortenerServiceGrpc.UrlShortene
             responseObserver.onError(new IllegalArgumentException("Usuario no encontrado o no autorizado"));
             return;
         }
+        // Mismo límite de creación que /acortar y POST /api/urls, por usuario
+        String role = "admin".equals(user.getRole()) ? "admin" : "user";
+        RateLimiter.Limit limit = rateLimiter.limitFor("create", role);
+        if (limit != null) {
+            RateLimiter.Decision decision = rateLimiter.tryAcquire("create", role, "user:" + user.getUsername(), limit);
+            if (!decision.allowed()) {
+                Metadata trailers = new Metadata();
+                trailers.put(Metadata.Key.of("ratelimit-remaining", Metadata.ASCII_STRING_MARSHALLER), "0");
+                trailers.put(Metadata.Key.of("retry-after", Metadata.ASCII_STRING_MARSHALLER),
+                        Long.toString(Math.max(1, decision.retryAfterSeconds())));
+                responseObserver.onError(Status.RESOURCE_EXHAUSTED
+                        .withDescription("Demasiadas solicitudes, intenta de nuevo más tarde.").asRuntimeException(trailers));
+                return;
+            }
+        }
 
         // Crear la URL usando la lógica existente en UrlService.
-        Url url = urlService.saveUrl(originalUrl, user);
-        String shortUrl = url.getShortUrl();
+        boolean reuse = request.hasReuseExisting() ? request.getReuseExisting() : UrlService.REUSE_LINKS_DEFAULT;
+        Url url = urlService.saveUrl(originalUrl, user, reuse);
         String previewImage = getPreviewImage(originalUrl);
 
-        Date createdDate = (url.getCreatedAt() != null) ? url.getCreatedAt() : new Date();
-        String createdAt = createdDate.toInstant().toString();
-
-        // Construir las estadísticas
-        UrlStatistics statistics = UrlStatistics.newBuilder()
-                .setAccessCount(url.getAccessCount())
-                .addAllAccessTimes(url.getAccessTimes().stream()
-                        .map(date -> date.toInstant().toString())
-                        .collect(Collectors.toList()))
-                .addAllAccessDetails(url.getAccessDetails().stream().map(detail -> {
-                    return AccessDetail.newBuilder()
-                            .setTimestamp(detail.getTimestamp().toInstant().toString())
-                            .setBrowser(detail.getBrowser())
-                            .setIp(detail.getIp())
-                            .setClientDomain(detail.getClientDomain())
-                            .setPlatform(detail.getPlatform())
-                            .build();
-                }).collect(Collectors.toList()))
-                .build();
-
-        UrlEntry entry = UrlEntry.newBuilder()
-                .setOriginalUrl(url.getOriginalUrl())
-                .setShortUrl(shortUrl)
-                .setCreatedAt(createdAt)
-                .setStatistics(statistics)
-                .setPreviewImageBase64(previewImage)
-                .build();
+        UrlEntry entry = toUrlEntry(url, previewImage);
 
         CreateUrlResponse response = CreateUrlResponse.newBuilder().setUrl(entry).build();
         responseObserver.onNext(response);
@@ -106,46 +103,81 @@ public class UrlShortenerServiceImpl extends UrlShortenerServiceGrpc.UrlShortene
             responseObserver.onError(new IllegalArgumentException("Debe proporcionar el nombre de usuario"));
             return;
         }
-        List<Url> urls = urlService.getAllUrls().stream()
-                .filter(u -> u.getUser() != null && username.equals(u.getUser().getUsername()))
+        List<UrlEntry> entries = urlService.getUrlsOfUser(username).stream()
+                .map(url -> toUrlEntry(url, getPreviewImage(url.getOriginalUrl())))
                 .collect(Collectors.toList());
 
-        List<UrlEntry> entries = urls.stream().map(url -> {
-            String shortUrl = url.getShortUrl();
-            Date createdDate = (url.getCreatedAt() != null) ? url.getCreatedAt() : new Date();
-            String createdAt = createdDate.toInstant().toString();
-
-            UrlStatistics.Builder statsBuilder = UrlStatistics.newBuilder()
-                    .setAccessCount(url.getAccessCount())
-                    .addAllAccessTimes(url.getAccessTimes().stream()
-                            .map(date -> date.toInstant().toString())
-                            .collect(Collectors.toList()));
-            url.getAccessDetails().forEach(detail -> {
-                AccessDetail ad = AccessDetail.newBuilder()
-                        .setTimestamp(detail.getTimestamp().toInstant().toString())
-                        .setBrowser(detail.getBrowser())
-                        .setIp(detail.getIp())
-                        .setClientDomain(detail.getClientDomain())
-                        .setPlatform(detail.getPlatform())
-                        .build();
-                statsBuilder.addAccessDetails(ad);
-            });
-            String previewImage = getPreviewImage(url.getOriginalUrl());
-            return UrlEntry.newBuilder()
-                    .setOriginalUrl(url.getOriginalUrl())
-                    .setShortUrl(shortUrl)
-                    .setCreatedAt(createdAt)
-                    .setStatistics(statsBuilder.build())
-                    .setPreviewImageBase64(previewImage)
-                    .build();
-        }).collect(Collectors.toList());
-
         ListUrlsResponse response = ListUrlsResponse.newBuilder().addAllUrls(entries).build();
         responseObserver.onNext(response);
         responseObserver.onCompleted();
     }
 
+    @Override
+    public void listAccessDetails(ListAccessDetailsRequest request, StreamObserver<ListAccessDetailsResponse> responseObserver) {
+        String username = request.getUsername();
+        Url url = urlService.getUrlInfo(request.getShortUrl());
+        // Igual que las estadísticas REST: el propietario o un admin
+        Usuario user = userService.getUserByUsername(username);
+        boolean isOwner = url != null && url.getUser() != null && url.getUser().getUsername().equals(username);
+        boolean isAdmin = user != null && "admin".equals(user.getRole());
+        if (url == null || url.getId() == null || !(isOwner || isAdmin)) {
+            responseObserver.onError(Status.NOT_FOUND.withDescription("Enlace no encontrado").asRuntimeException());
+            return;
+        }
+        UrlService.AccessPage page;
+        try {
+            int limit = request.getLimit() > 0 ? request.getLimit() : UrlService.DEFAULT_ACCESS_PAGE_SIZE;
+            page = urlService.getAccessPage(url, request.getCursor(), limit);
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("Cursor inválido").asRuntimeException());
+            return;
+        }
+        ListAccessDetailsResponse.Builder response = ListAccessDetailsResponse.newBuilder()
+                .setNextCursor(page.nextCursor() != null ? page.nextCursor() : "");
+        page.items().forEach(detail -> response.addAccessDetails(toAccessDetail(detail)));
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    // Estadísticas con la primera página de accesos; el resto se pide con ListAccessDetails.
+    // Paquete: también lo miden los benchmarks de src/jmh
+    UrlEntry toUrlEntry(Url url, String previewImage) {
+        Date createdDate = (url.getCreatedAt() != null) ? url.getCreatedAt() : new Date();
+        UrlService.AccessPage page = urlService.getAccessPage(url, null, UrlService.DEFAULT_ACCESS_PAGE_SIZE);
+        UrlStatistics.Builder statsBuilder = UrlStatistics.newBuilder()
+                .setAccessCount(url.getAccessCount())
+                .setUniqueVisitors(url.getUniqueVisitors())
+                .setNextCursor(page.nextCursor() != null ? page.nextCursor() : "");
+        page.items().forEach(detail -> {
+            statsBuilder.addAccessTimes(detail.getTimestamp().toInstant().toString());
+            statsBuilder.addAccessDetails(toAccessDetail(detail));
+        });
+        return UrlEntry.newBuilder()
+                .setOriginalUrl(url.getOriginalUrl())
+                .setShortUrl(url.getShortUrl())
+                .setCreatedAt(createdDate.toInstant().toString())
+                .setStatistics(statsBuilder.build())
+                .setPreviewImageBase64(previewImage)
+                .build();
+    }
+
+    // Los campos proto no admiten null
+    private AccessDetail toAccessDetail(edu.pucmm.eict.modelos.AccessDetail detail) {
+        return AccessDetail.newBuilder()
+                .setTimestamp(detail.getTimestamp().toInstant().toString())
+                .setBrowser(Objects.requireNonNullElse(detail.getBrowser(), ""))
+                .setIp(Objects.requireNonNullElse(detail.getIp(), ""))
+                .setClientDomain(Objects.requireNonNullElse(detail.getClientDomain(), ""))
+                .setPlatform(Objects.requireNonNullElse(detail.getPlatform(), ""))
+                .build();
+    }
+
+    // ListUrls pide la captura de cada enlace: las llamadas simultáneas comparten la descarga
     private String getPreviewImage(String originalUrl) {
+        return PreviewFetch.image("screenshot", originalUrl, this::fetchScreenshot);
+    }
+
+    private String fetchScreenshot(String originalUrl) {
         try {
             String encodedUrl = URLEncoder.encode(originalUrl, StandardCharsets.UTF_8.toString());
             String apiUrl = "https://api.microlink.io?url=" + encodedUrl + "&screenshot=true";
@@ -0,0 +1,343 @@
+package edu.pucmm.eict.clientes.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.pucmm.eict.clientes.grpc.CreateUrlRequest;
+import edu.pucmm.eict.clientes.grpc.ListUrlsRequest;
+import edu.pucmm.eict.clientes.grpc.UrlShortenerServiceGrpc;
+import edu.pucmm.eict.util.LatencyHistogram;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Generador de carga contra una instancia local (Main y, para las operaciones gRPC, GrpcServer):
+ * <pre>
+ *   LoadGeneratorMain [--base http://localhost:7000] [--grpc localhost:50051]
+ *                     [--mode open|closed] [--rate 1000] [--concurrency 32]
+ *                     [--duration 60] [--warmup 10] [--keys 1000] [--zipf 1.1]
+ *                     [--mix go=90,acortar=6,api-create=1,api-list=1,grpc-create=1,grpc-list=1]
+ *                     [--payload 32:70,256:25,1800:5] [--user admin] [--password admin]
+ * </pre>
+ * Antes de medir crea --keys enlaces por /acortar; /go/{code} los elige con popularidad Zipf
+ * (exponente --zipf). --payload reparte el largo de las URLs que se acortan (largo:peso).
+ * /acortar se usa con la sesión web de --user: como anónimo el límite de creación por IP
+ * (APP_RATE_LIMIT_CREATE_ANONYMOUS) rechazaría casi todo. El admin no tiene límite; con otro
+ * usuario conviene APP_RATE_LIMIT_CREATE_USER=0 en el servidor.
+ * En modo open las peticiones salen a --rate por segundo pase lo que pase y la latencia se mide
+ * desde el momento en que debían salir, así que los atascos del servidor no se esconden
+ * (coordinated omission). En modo closed cada hilo espera su respuesta; si además se da --rate,
+ * las muestras se corrigen con el intervalo esperado.
+ */
+public class LoadGeneratorMain {
+
+    enum Op {
+        GO("go"), ACORTAR("acortar"), API_CREATE("api-create"), API_LIST("api-list"),
+        GRPC_CREATE("grpc-create"), GRPC_LIST("grpc-list");
+
+        final String label;
+
+        Op(String label) {
+            this.label = label;
+        }
+
+        static Op fromLabel(String label) {
+            for (Op op : values()) if (op.label.equals(label)) return op;
+            throw new IllegalArgumentException("Operación desconocida: " + label);
+        }
+    }
+
+    private static final class OpStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        // Peticiones reales: con la corrección el histograma puede tener más muestras
+        final LongAdder requests = new LongAdder();
+        final LongAdder errors = new LongAdder();
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, String> options;
+    private final HttpClient http;
+    private final String base;
+    private final Map<Op, OpStats> stats = new EnumMap<>(Op.class);
+    private final Op[] mix;
+    private final int[] payloadSizes;
+    private String[] codes;
+    private double[] zipfCdf;
+    private String token;
+    private String sessionCookie;
+    private ManagedChannel channel;
+    private UrlShortenerServiceGrpc.UrlShortenerServiceBlockingStub grpc;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                System.err.println("Opción inválida: " + args[i]);
+                System.exit(2);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        new LoadGeneratorMain(options).run();
+    }
+
+    LoadGeneratorMain(Map<String, String> options) {
+        this.options = options;
+        this.base = option("base", "http://localhost:7000");
+        this.http = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newFixedThreadPool(4))
+                .build();
+        for (Op op : Op.values()) stats.put(op, new OpStats());
+        this.mix = weighted(option("mix", "go=90,acortar=6,api-create=1,api-list=1,grpc-create=1,grpc-list=1"), '=',
+                Op::fromLabel, Op[]::new);
+        Integer[] sizes = weighted(option("payload", "32:70,256:25,1800:5"), ':', Integer::valueOf, Integer[]::new);
+        this.payloadSizes = Arrays.stream(sizes).mapToInt(Integer::intValue).toArray();
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    // "a=3,b=1" -> [a, a, a, b]: elegir al azar en el arreglo respeta los pesos
+    private static <T> T[] weighted(String spec, char separator, Function<String, T> parse, IntFunction<T[]> array) {
+        List<T> expanded = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            int at = part.indexOf(separator);
+            T value = parse.apply(part.substring(0, at).trim());
+            int weight = Integer.parseInt(part.substring(at + 1).trim());
+            for (int i = 0; i < weight; i++) expanded.add(value);
+        }
+        if (expanded.isEmpty()) throw new IllegalArgumentException("Mezcla vacía: " + spec);
+        return expanded.toArray(array.apply(0));
+    }
+
+    void run() throws Exception {
+        boolean open = "open".equals(option("mode", "open"));
+        int concurrency = Integer.parseInt(option("concurrency", "32"));
+        double rate = Double.parseDouble(option("rate", open ? "1000" : "0"));
+        long duration = Long.parseLong(option("duration", "60"));
+        long warmup = Long.parseLong(option("warmup", "10"));
+        if (open && rate <= 0) throw new IllegalArgumentException("El modo open necesita --rate");
+
+        setup(concurrency);
+        System.out.println("[LOAD] " + (open ? "Open" : "Closed") + " loop, " + concurrency + " hilos"
+                + (rate > 0 ? ", " + rate + " req/s" : "") + ", " + warmup + " s de calentamiento y " + duration + " s de medición");
+
+        // Cada hilo atiende las peticiones i = w, w + C, w + 2C...; en open loop la i-ésima sale en start + i/rate
+        long intervalNanos = rate > 0 ? (long) (1_000_000_000L / rate) : 0;
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(duration);
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        CountDownLatch done = new CountDownLatch(concurrency);
+        for (int w = 0; w < concurrency; w++) {
+            final int worker = w;
+            workers.execute(() -> {
+                try {
+                    for (long i = worker; ; i += concurrency) {
+                        long intended = open ? start + i * intervalNanos : System.nanoTime();
+                        if (intended >= end) break;
+                        long wait = intended - System.nanoTime();
+                        if (wait > 0) LockSupport.parkNanos(wait);
+                        if (!open && System.nanoTime() >= end) break;
+                        execute(intended, open ? 0 : intervalNanos * concurrency / 1000, measureFrom);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        reportProgress(start, measureFrom, end, done);
+        workers.shutdown();
+        report(duration);
+        if (channel != null) channel.shutdownNow();
+        System.exit(0);
+    }
+
+    private void execute(long intended, long expectedIntervalMicros, long measureFrom) {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        Op op = mix[rand.nextInt(mix.length)];
+        boolean ok;
+        try {
+            ok = switch (op) {
+                case GO -> get("/go/" + pickCode(rand), null) == 302;
+                case ACORTAR -> postForm("/acortar", "url=" + URLEncoder.encode(payloadUrl(rand), StandardCharsets.UTF_8), sessionCookie).statusCode() == 200;
+                case API_CREATE -> postJson("/api/urls", MAPPER.writeValueAsString(Map.of("originalUrl", payloadUrl(rand)))) == 200;
+                case API_LIST -> get("/api/urls", token) == 200;
+                case GRPC_CREATE -> grpc().createUrl(CreateUrlRequest.newBuilder()
+                        .setOriginalUrl(payloadUrl(rand)).setUsername(option("user", "admin")).build()).hasUrl();
+                case GRPC_LIST -> {
+                    grpc().listUrls(ListUrlsRequest.newBuilder().setUsername(option("user", "admin")).build());
+                    yield true;
+                }
+            };
+        } catch (Exception e) {
+            ok = false;
+        }
+        long now = System.nanoTime();
+        if (intended < measureFrom) return;
+        OpStats s = stats.get(op);
+        s.requests.increment();
+        if (!ok) s.errors.increment();
+        s.latency.recordCorrected((now - intended) / 1000, expectedIntervalMicros);
+    }
+
+    private void setup(int concurrency) throws Exception {
+        int keys = Integer.parseInt(option("keys", "1000"));
+        String credentials = "username=" + URLEncoder.encode(option("user", "admin"), StandardCharsets.UTF_8)
+                + "&password=" + URLEncoder.encode(option("password", "admin"), StandardCharsets.UTF_8);
+        boolean needsToken = Arrays.stream(mix).anyMatch(op -> op == Op.API_CREATE || op == Op.API_LIST);
+        if (needsToken) {
+            HttpResponse<String> login = postForm("/api/login", credentials, null);
+            if (login.statusCode() != 200) throw new IllegalStateException("Login falló: " + login.statusCode());
+            token = (String) MAPPER.readValue(login.body(), Map.class).get("token");
+        }
+        // Sesión web para /acortar: el login correcto redirige a /index con la cookie de sesión
+        HttpResponse<String> webLogin = postForm("/login", credentials, null);
+        String cookie = webLogin.headers().firstValue("Set-Cookie").orElse(null);
+        if (webLogin.statusCode() != 302 || !webLogin.headers().firstValue("Location").orElse("").endsWith("/index") || cookie == null) {
+            throw new IllegalStateException("Login web falló: " + webLogin.statusCode());
+        }
+        sessionCookie = cookie.split(";", 2)[0];
+
+        // Enlaces para /go, creados en paralelo por /acortar
+        codes = new String[keys];
+        ExecutorService seeders = Executors.newFixedThreadPool(Math.min(concurrency, 16));
+        AtomicInteger failed = new AtomicInteger();
+        for (int i = 0; i < keys; i++) {
+            final int k = i;
+            seeders.execute(() -> {
+                try {
+                    HttpResponse<String> r = postForm("/acortar", "url=" + URLEncoder.encode("https://example.com/load/" + k, StandardCharsets.UTF_8), sessionCookie);
+                    String shortUrl = (String) MAPPER.readValue(r.body(), Map.class).get("shortUrl");
+                    codes[k] = shortUrl.substring(shortUrl.lastIndexOf('/') + 1);
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    codes[k] = "missing";
+                }
+            });
+        }
+        seeders.shutdown();
+        seeders.awaitTermination(10, TimeUnit.MINUTES);
+        if (failed.get() > 0) System.err.println("[LOAD] " + failed.get() + " enlaces no se pudieron crear (se piden igual y cuentan como error)");
+
+        // Probabilidad del k-ésimo enlace proporcional a 1 / k^s
+        double s = Double.parseDouble(option("zipf", "1.1"));
+        zipfCdf = new double[keys];
+        double total = 0;
+        for (int k = 0; k < keys; k++) {
+            total += 1.0 / Math.pow(k + 1, s);
+            zipfCdf[k] = total;
+        }
+        for (int k = 0; k < keys; k++) zipfCdf[k] /= total;
+    }
+
+    private String pickCode(ThreadLocalRandom rand) {
+        int k = Arrays.binarySearch(zipfCdf, rand.nextDouble());
+        return codes[Math.min(k < 0 ? -k - 1 : k, codes.length - 1)];
+    }
+
+    private String payloadUrl(ThreadLocalRandom rand) {
+        int length = payloadSizes[rand.nextInt(payloadSizes.length)];
+        StringBuilder sb = new StringBuilder("https://example.com/");
+        while (sb.length() < length) sb.append((char) ('a' + rand.nextInt(26)));
+        return sb.toString();
+    }
+
+    private synchronized UrlShortenerServiceGrpc.UrlShortenerServiceBlockingStub grpc() {
+        if (grpc == null) {
+            channel = ManagedChannelBuilder.forTarget(option("grpc", "localhost:50051")).usePlaintext().build();
+            grpc = UrlShortenerServiceGrpc.newBlockingStub(channel).withMaxInboundMessageSize(10 * 1024 * 1024);
+        }
+        return grpc.withDeadlineAfter(30, TimeUnit.SECONDS);
+    }
+
+    private int get(String path, String bearer) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path)).timeout(Duration.ofSeconds(30)).GET();
+        if (bearer != null) request.header("Authorization", "Bearer " + bearer);
+        return http.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private HttpResponse<String> postForm(String path, String form, String cookie) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form));
+        if (cookie != null) request.header("Cookie", cookie);
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private int postJson(String path, String json) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + token)
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    // Una línea cada 10 s con lo completado en el intervalo
+    private void reportProgress(long start, long measureFrom, long end, CountDownLatch done) throws InterruptedException {
+        long last = 0;
+        while (!done.await(10, TimeUnit.SECONDS)) {
+            long total = 0;
+            for (OpStats s : stats.values()) total += s.requests.sum();
+            long now = System.nanoTime();
+            String phase = now < measureFrom ? "calentando" : "midiendo";
+            System.out.printf("[LOAD] %3d s %s: %.0f req/s%n", TimeUnit.NANOSECONDS.toSeconds(now - start), phase, (total - last) / 10.0);
+            last = total;
+            if (now > end + TimeUnit.SECONDS.toNanos(60)) {
+                System.err.println("[LOAD] Peticiones colgadas tras el fin de la prueba, se corta");
+                return;
+            }
+        }
+    }
+
+    private void report(long durationSeconds) {
+        LatencyHistogram all = new LatencyHistogram();
+        long requests = 0;
+        long errors = 0;
+        System.out.println();
+        System.out.printf("%-12s %9s %7s %9s %9s %9s %9s %9s %9s%n", "operación", "req", "errores", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map.Entry<Op, OpStats> e : stats.entrySet()) {
+            LatencyHistogram h = e.getValue().latency;
+            if (h.count() == 0) continue;
+            all.add(h);
+            requests += e.getValue().requests.sum();
+            errors += e.getValue().errors.sum();
+            printRow(e.getKey().label, h, e.getValue().requests.sum(), e.getValue().errors.sum(), durationSeconds);
+        }
+        printRow("total", all, requests, errors, durationSeconds);
+    }
+
+    private static void printRow(String label, LatencyHistogram h, long requests, long errors, long durationSeconds) {
+        System.out.printf("%-12s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", label, requests, errors,
+                (double) requests / durationSeconds, h.percentile(50) / 1000.0, h.percentile(90) / 1000.0,
+                h.percentile(99) / 1000.0, h.percentile(99.9) / 1000.0, h.max() / 1000.0);
+    }
+}
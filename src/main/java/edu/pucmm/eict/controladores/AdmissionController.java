@@ -0,0 +1,122 @@
+package edu.pucmm.eict.controladores;
+
+import edu.pucmm.eict.util.AdaptiveLimiter;
+import edu.pucmm.eict.util.AppConfig;
+import edu.pucmm.eict.util.Metrics;
+import io.javalin.http.Handler;
+import io.javalin.http.HttpResponseException;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Control de admisión por carriles (APP_ADMISSION=true). Cada clase de ruta tiene su propio
+ * límite de concurrencia adaptativo (ver AdaptiveLimiter), así que los renders del dashboard o
+ * las vistas previas no pueden ocupar los hilos que necesitan las redirecciones. Si un carril
+ * supera su latencia objetivo, primero se reducen los límites de los de menor prioridad y solo
+ * cuando todos están en su mínimo se reduce el suyo.
+ * Lo que no cabe se rechaza al instante: 429 en la API (los clientes reintentan con Retry-After)
+ * y 503 en el resto. Por carril: APP_ADMISSION_{REDIRECT,API,DASHBOARD,PREVIEW}_{LIMIT,MIN,MAX,TARGET_MS}.
+ */
+public class AdmissionController {
+
+    /** Clases de ruta, de mayor a menor prioridad. */
+    public enum Lane {
+        REDIRECT(200, 20, 2000, 50),
+        API(50, 5, 500, 500),
+        DASHBOARD(20, 2, 200, 1000),
+        PREVIEW(10, 1, 100, 3000);
+
+        final int limit;
+        final int min;
+        final int max;
+        final long targetMs;
+
+        Lane(int limit, int min, int max, long targetMs) {
+            this.limit = limit;
+            this.min = min;
+            this.max = max;
+            this.targetMs = targetMs;
+        }
+
+        public String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final Metrics.Counter REJECTED = Metrics.counter("admission_rejected_total",
+            "Peticiones rechazadas por el control de admisión", "lane");
+    private static final String START_ATTRIBUTE = "admission.start";
+    private static final String LANE_ATTRIBUTE = "admission.lane";
+
+    private final boolean enabled = AppConfig.getBoolean("APP_ADMISSION", false);
+    private final Map<Lane, AdaptiveLimiter> limiters = new EnumMap<>(Lane.class);
+
+    public AdmissionController() {
+        long windowMs = AppConfig.getLong("APP_ADMISSION_WINDOW_MS", 250);
+        for (Lane lane : Lane.values()) {
+            String prefix = "APP_ADMISSION_" + lane.name() + "_";
+            AdaptiveLimiter limiter = new AdaptiveLimiter(lane.label(),
+                    AppConfig.getInt(prefix + "LIMIT", lane.limit),
+                    AppConfig.getInt(prefix + "MIN", lane.min),
+                    AppConfig.getInt(prefix + "MAX", lane.max),
+                    AppConfig.getLong(prefix + "TARGET_MS", lane.targetMs) * 1000,
+                    windowMs);
+            limiters.put(lane, limiter);
+            if (enabled) {
+                Metrics.gauge("admission_limit", "Límite de concurrencia actual del carril",
+                        limiter::getLimit, "lane", lane.label());
+                Metrics.gauge("admission_in_flight", "Peticiones en curso en el carril",
+                        limiter::getInFlight, "lane", lane.label());
+            }
+        }
+        // Un carril por encima de su objetivo hace retroceder a todos los de menor prioridad; si
+        // ninguno podía bajar más, retrocede él (ver AdaptiveLimiter.onBreach)
+        for (Lane lane : Lane.values()) {
+            limiters.get(lane).onBreach(() -> {
+                boolean relieved = false;
+                for (Lane lower : Lane.values()) {
+                    if (lower.ordinal() > lane.ordinal()) relieved |= limiters.get(lower).backOff();
+                }
+                return relieved;
+            });
+        }
+    }
+
+    // Debe registrarse justo después de MetricsController.startTimer: los rechazos se miden igual
+    public Handler admit = ctx -> {
+        if (!enabled) return;
+        Lane lane = laneOf(ctx.path());
+        if (lane == null) return;
+        if (!limiters.get(lane).acquire()) {
+            REJECTED.inc(lane.label());
+            ctx.header("Retry-After", "1");
+            throw new HttpResponseException(lane == Lane.API ? 429 : 503, "Servicio ocupado, intenta de nuevo.");
+        }
+        ctx.attribute(LANE_ATTRIBUTE, lane);
+        ctx.attribute(START_ATTRIBUTE, System.nanoTime());
+    };
+
+    // Los after se ejecutan aunque el endpoint lance una excepción: el permiso siempre se devuelve
+    public Handler release = ctx -> {
+        Lane lane = ctx.attribute(LANE_ATTRIBUTE);
+        Long start = ctx.attribute(START_ATTRIBUTE);
+        if (lane == null || start == null) return;
+        ctx.attribute(LANE_ATTRIBUTE, null);
+        limiters.get(lane).release((System.nanoTime() - start) / 1000);
+    };
+
+    /** Carril de la ruta; null para las que nunca se limitan (/metrics). */
+    static Lane laneOf(String path) {
+        if (path.startsWith("/go/")) return Lane.REDIRECT;
+        if (path.startsWith("/api/")) return Lane.API;
+        if (path.equals("/preview")) return Lane.PREVIEW;
+        if (path.equals("/metrics")) return null;
+        return Lane.DASHBOARD;
+    }
+
+    public AdaptiveLimiter limiter(Lane lane) {
+        return limiters.get(lane);
+    }
+}
@@ -0,0 +1,76 @@
+package edu.pucmm.eict.controladores;
+
+import edu.pucmm.eict.modelos.Url;
+import edu.pucmm.eict.services.ExportService;
+import edu.pucmm.eict.services.UrlService;
+import edu.pucmm.eict.util.AccessCursor;
+import io.javalin.http.Context;
+
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Descarga de los clics crudos de uno o varios enlaces. Lo usan tanto las rutas de sesión
+ * como las de la API REST, cada una con su propia autorización.
+ * Parámetros: format=ndjson|csv, from/to (ISO-8601 o epoch ms), cursor (el de la última fila
+ * recibida, para retomar una descarga cortada) y gzip=true para recibir el archivo comprimido
+ * (.gz). Con Accept-Encoding basta la compresión de transporte que ya aplica Javalin.
+ */
+public class ExportController {
+
+    private final UrlService urlService;
+    private final ExportService exportService;
+
+    public ExportController(UrlService urlService) {
+        this.urlService = urlService;
+        this.exportService = new ExportService();
+    }
+
+    public void stream(Context ctx, String name, Collection<Url> urls) throws Exception {
+        ExportService.Format format;
+        long from;
+        long to;
+        AccessCursor after;
+        try {
+            format = ExportService.Format.valueOf(Objects.requireNonNullElse(ctx.queryParam("format"), "ndjson").toUpperCase());
+            from = ctx.queryParam("from") != null ? UrlController.parseInstant(ctx.queryParam("from")) : 0;
+            to = ctx.queryParam("to") != null ? UrlController.parseInstant(ctx.queryParam("to")) : System.currentTimeMillis() + 1;
+            after = ctx.queryParam("cursor") != null ? AccessCursor.decode(ctx.queryParam("cursor")) : null;
+        } catch (IllegalArgumentException | java.time.format.DateTimeParseException e) {
+            ctx.status(400).result("Parámetros inválidos: format=ndjson|csv, from/to (ISO-8601 o epoch ms), cursor.");
+            return;
+        }
+        if (from >= to) {
+            ctx.status(400).result("El parámetro from debe ser anterior a to.");
+            return;
+        }
+
+        Map<Long, String> ids = new LinkedHashMap<>();
+        for (Url url : urls) {
+            if (url.getId() != null) ids.put(url.getId(), url.getShortUrl()); // los temporales no guardan clics
+        }
+        // Que la descarga incluya los clics que aún esperan en la cola de escritura
+        urlService.flushAccesses();
+
+        boolean gzip = "true".equalsIgnoreCase(ctx.queryParam("gzip"));
+        String extension = format == ExportService.Format.CSV ? "csv" : "ndjson";
+        if (gzip) {
+            // application/gzip está excluido de la compresión de Javalin: no se comprime dos veces
+            ctx.contentType("application/gzip");
+        } else {
+            ctx.contentType(format == ExportService.Format.CSV ? "text/csv; charset=utf-8" : "application/x-ndjson");
+        }
+        ctx.header("Content-Disposition", "attachment; filename=\"" + name + "." + extension + (gzip ? ".gz" : "") + "\"");
+
+        // Sin Content-Length: la respuesta sale en bloques a medida que se leen las filas
+        OutputStream out = gzip ? new GZIPOutputStream(ctx.outputStream(), 64 * 1024) : ctx.outputStream();
+        try (out) {
+            long rows = exportService.export(ids, from, to, after, format, out);
+            System.out.println("[EXPORT] " + name + ": " + rows + " filas (" + extension + (gzip ? ", gzip" : "") + ")");
+        }
+    }
+}
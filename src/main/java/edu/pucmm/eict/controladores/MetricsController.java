@@ -0,0 +1,76 @@
+package edu.pucmm.eict.controladores;
+
+import edu.pucmm.eict.util.AppConfig;
+import edu.pucmm.eict.util.Metrics;
+import edu.pucmm.eict.util.QueryStats;
+import edu.pucmm.eict.util.Tracing;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+
+/**
+ * Latencia por ruta y span de traza de cada petición (before/after de Javalin), y exportación
+ * de Metrics en /metrics. Si APP_METRICS_TOKEN está configurado, /metrics exige "Authorization: Bearer &lt;token&gt;";
+ * si no, solo responde a clientes locales (ver Metrics.scrapeAllowed).
+ */
+public class MetricsController {
+
+    private static final Metrics.Timer HTTP_REQUESTS = Metrics.timer("http_request_duration_seconds",
+            "Duración de las peticiones HTTP", "method", "route", "status");
+    private static final String START_ATTRIBUTE = "metrics.start";
+    private static final String SPAN_ATTRIBUTE = "trace.span";
+
+    private final String token = AppConfig.get("APP_METRICS_TOKEN", null);
+    private final boolean countStatements = AppConfig.getBoolean("APP_SQL_STATS", false);
+    // Peticiones con más sentencias que esto se reportan como posible N+1
+    private final int statementsWarning = AppConfig.getInt("APP_SQL_REQUEST_WARN", 50);
+
+    // Debe registrarse antes que los demás before para medir también filtros y autenticación
+    public Handler startTimer = ctx -> {
+        ctx.attribute(START_ATTRIBUTE, System.nanoTime());
+        if (countStatements) QueryStats.beginRequest();
+        if (Tracing.ENABLED) {
+            ctx.attribute(SPAN_ATTRIBUTE, Tracing.startServerSpan(ctx.method().name() + " " + ctx.path(), ctx.header(Tracing.TRACEPARENT)));
+        }
+    };
+
+    public Handler recordRoute = ctx -> {
+        Long start = ctx.attribute(START_ATTRIBUTE);
+        if (start == null) return;
+        String route = route(ctx);
+        HTTP_REQUESTS.recordSince(start, ctx.method().name(), route, Integer.toString(ctx.statusCode()));
+        Tracing.Span span = ctx.attribute(SPAN_ATTRIBUTE);
+        if (span != null && span.isSampled()) {
+            span.name(ctx.method().name() + " " + route)
+                    .attribute("http.method", ctx.method().name())
+                    .attribute("http.route", route)
+                    .attribute("http.status_code", ctx.statusCode());
+            if (ctx.statusCode() >= 500) span.error("HTTP " + ctx.statusCode());
+            span.close();
+        }
+        QueryStats.RequestTally tally = countStatements ? QueryStats.endRequest() : null;
+        if (tally != null && tally.statements() > statementsWarning) {
+            System.out.println("[SQL N+1] " + ctx.method().name() + " " + route + " ejecutó " + tally.statements()
+                    + " sentencias; " + tally.topCount() + " veces: " + tally.topSql());
+        }
+    };
+
+    public Handler metrics = ctx -> {
+        if (!Metrics.scrapeAllowed(token, ctx.header("Authorization"), ctx.req().getRemoteAddr())) {
+            ctx.status(token != null ? 401 : 403).result("No autorizado");
+            return;
+        }
+        ctx.contentType("text/plain; version=0.0.4; charset=utf-8");
+        ctx.result(Metrics.scrape());
+    };
+
+    // La plantilla de la ruta (/go/{shortUrl}), no la ruta concreta, para no crear una serie por código.
+    // Un 404 de un endpoint (código inexistente) conserva su plantilla; sin endpoint queda "unmatched"
+    private static String route(Context ctx) {
+        try {
+            String path = ctx.endpointHandlerPath();
+            return path == null || path.isEmpty() ? "unmatched" : path;
+        } catch (RuntimeException e) {
+            return "unmatched";
+        }
+    }
+}
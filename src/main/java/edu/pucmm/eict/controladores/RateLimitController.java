@@ -0,0 +1,63 @@
+package edu.pucmm.eict.controladores;
+
+import edu.pucmm.eict.modelos.Usuario;
+import edu.pucmm.eict.util.RateLimiter;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
+import io.javalin.http.HttpResponseException;
+
+/**
+ * Límite por cliente (ver RateLimiter) para crear enlaces (POST /acortar, /dashboard/urls/acortar y /api/urls) y
+ * para el resto de /api/*. El cliente es el sujeto del JWT en la API, el usuario en sesión en
+ * la web o, sin autenticación, la IP. Toda respuesta limitada lleva las cabeceras RateLimit-*;
+ * al agotar el cubo se responde 429 con Retry-After.
+ */
+public class RateLimitController {
+
+    private final RateLimiter limiter = RateLimiter.getInstance();
+
+    // Debe registrarse después del filtro JWT de /api/* (que deja currentUser y currentRole)
+    public Handler limit = ctx -> {
+        String route = routeOf(ctx);
+        if (route == null) return;
+        String client;
+        String role;
+        if (ctx.path().startsWith("/api/")) {
+            String subject = ctx.attribute("currentUser");
+            Object claimRole = ctx.attribute("currentRole");
+            client = subject != null ? "user:" + subject : "ip:" + ctx.ip();
+            role = subject == null ? "anonymous" : roleOf(claimRole != null ? claimRole.toString() : null);
+        } else {
+            Usuario user = ctx.sessionAttribute("user");
+            client = user != null ? "user:" + user.getUsername() : "ip:" + ctx.ip();
+            role = user == null ? "anonymous" : roleOf(user.getRole());
+        }
+        RateLimiter.Limit limit = limiter.limitFor(route, role);
+        if (limit == null) return;
+        RateLimiter.Decision decision = limiter.tryAcquire(route, role, client, limit);
+        ctx.header("RateLimit-Limit", Integer.toString(limit.capacity()));
+        ctx.header("RateLimit-Remaining", Integer.toString(decision.remaining()));
+        ctx.header("RateLimit-Reset", Long.toString(decision.resetSeconds()));
+        ctx.header("RateLimit-Policy", limit.capacity() + ";w=" + limit.periodSeconds());
+        if (!decision.allowed()) {
+            ctx.header("Retry-After", Long.toString(Math.max(1, decision.retryAfterSeconds())));
+            throw new HttpResponseException(429, "Demasiadas solicitudes, intenta de nuevo más tarde.");
+        }
+    };
+
+    /** create para crear enlaces, api para el resto de /api/*; null si la ruta no se limita. */
+    static String routeOf(Context ctx) {
+        String path = ctx.path();
+        boolean post = ctx.method() == HandlerType.POST;
+        if (post && (path.equals("/acortar") || path.equals("/dashboard/urls/acortar") || path.equals("/api/urls"))) {
+            return "create";
+        }
+        if (path.startsWith("/api/")) return "api";
+        return null;
+    }
+
+    static String roleOf(String role) {
+        return "admin".equals(role) ? "admin" : "user";
+    }
+}
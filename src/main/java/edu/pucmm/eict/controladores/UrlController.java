@@ -3,12 +3,27 @@ package edu.pucmm.eict.controladores;
 import edu.pucmm.eict.modelos.AccessDetail;
 import edu.pucmm.eict.modelos.Url;
 import edu.pucmm.eict.modelos.Usuario;
+import edu.pucmm.eict.services.BulkImportService;
+import edu.pucmm.eict.services.EphemeralLinkStore;
+import edu.pucmm.eict.services.HotLinkService;
+import edu.pucmm.eict.services.StatsService;
 import edu.pucmm.eict.services.UrlService;
+import edu.pucmm.eict.util.AppConfig;
+import edu.pucmm.eict.util.AppEvents;
+import edu.pucmm.eict.util.ClickColumns;
+import edu.pucmm.eict.util.HeavyHitters;
+import edu.pucmm.eict.util.PreviewFetch;
+import edu.pucmm.eict.util.QueryStats;
+import edu.pucmm.eict.util.SingleFlight;
+import edu.pucmm.eict.util.Tracing;
 import io.javalin.http.Handler;
+import io.javalin.http.UploadedFile;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.WriterException;
 import com.google.zxing.qrcode.QRCodeWriter;
 import com.google.zxing.common.BitMatrix;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -19,15 +34,30 @@ import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class UrlController {
 
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final int MAX_ACCESS_TIMES = 10000;
+    private static final long LOAD_TIMEOUT_MS = AppConfig.getLong("APP_SINGLEFLIGHT_TIMEOUT_MS", 5000);
+    // Cargas compartidas entre peticiones simultáneas (ver SingleFlight)
+    private static final SingleFlight<String, Map<String, Object>> statsLoads = new SingleFlight<>("stats", LOAD_TIMEOUT_MS);
+    private static final SingleFlight<String, Preview> previewLoads = new SingleFlight<>("preview", 2 * LOAD_TIMEOUT_MS);
+
+    private record Preview(int status, String body) {
+    }
+
     private UrlService urlService;
+    private StatsService statsService;
+    private ExportController exportController;
 
     public UrlController(UrlService urlService) {
         this.urlService = urlService;
+        this.statsService = new StatsService();
+        this.exportController = new ExportController(urlService);
     }
 
     private String resolveBaseUrl(io.javalin.http.Context ctx) {
@@ -59,7 +89,10 @@ public class UrlController {
                 currentUser.setUsername("anon-" + sessionId);
                 currentUser.setRole("anonymous");
             }
-            Url url = urlService.saveUrl(originalUrl, currentUser);
+            // reuse=true|false: devolver el enlace existente del usuario para el mismo destino
+            String reuse = ctx.formParam("reuse");
+            Url url = urlService.saveUrl(originalUrl, currentUser,
+                    reuse != null ? Boolean.parseBoolean(reuse) : UrlService.REUSE_LINKS_DEFAULT);
 
             // Construir base URL dinámicamente (soporta local y proxy)
             String baseUrl = resolveBaseUrl(ctx);
@@ -110,22 +143,45 @@ public class UrlController {
     };
 
     public Handler redirectToOriginalUrl = ctx -> {
-        String shortUrl = ctx.pathParam("shortUrl");
-        Url url = urlService.getUrl(shortUrl);
-        if (url != null) {
-            String userAgent = ctx.header("User-Agent");
-            String ip = ctx.ip();
-            String clientDomain = ctx.header("Host");
-            String browser = parseBrowser(userAgent);
-            String platform = parsePlatform(userAgent);
-            AccessDetail detail = new AccessDetail(new Date(), browser, ip, clientDomain, platform);
-            urlService.recordAccess(url, detail);
-            ctx.redirect(url.getOriginalUrl());
+        String target;
+        try {
+            target = resolveRedirect(ctx.pathParam("shortUrl"), ctx.header("User-Agent"), ctx.ip(), ctx.header("Host"), true);
+        } catch (SingleFlight.LoadTimeoutException e) {
+            ctx.status(503).result("Servicio ocupado, intenta de nuevo.");
+            return;
+        }
+        if (target != null) {
+            ctx.redirect(target);
         } else {
             ctx.status(404).result("Enlace no encontrado.");
         }
     };
 
+    /**
+     * Lo mismo que redirectToOriginalUrl sin petición HTTP ni registro del acceso; lo usa
+     * WarmStartService antes de abrir el puerto.
+     */
+    public void warmUpRedirect(String shortUrl, String userAgent) {
+        try {
+            resolveRedirect(shortUrl, userAgent, "127.0.0.1", "localhost", false);
+        } catch (SingleFlight.LoadTimeoutException e) {
+            // Solo se calienta la ruta: un código lento no detiene el arranque
+        }
+    }
+
+    // Destino del código, o null si no existe o venció; con recordClick registra el acceso
+    private String resolveRedirect(String shortUrl, String userAgent, String ip, String clientDomain, boolean recordClick) {
+        Url url = urlService.resolveForRedirect(shortUrl);
+        if (url == null || (url.getExpiresAt() != null && url.getExpiresAt().getTime() <= System.currentTimeMillis())) {
+            return null; // vencido: la limpieza la hace getOriginalUrl/expiración
+        }
+        if (recordClick) {
+            AccessDetail detail = new AccessDetail(new Date(), parseBrowser(userAgent), ip, clientDomain, parsePlatform(userAgent));
+            urlService.recordAccess(url, detail);
+        }
+        return url.getOriginalUrl();
+    }
+
     public Handler listUrls = ctx -> {
         Usuario currentUser = ctx.sessionAttribute("user");
         if (currentUser == null) {
@@ -138,15 +194,15 @@ public class UrlController {
             currentUser.setUsername("anon-" + sessionId);
             currentUser.setRole("anonymous");
         }
-        // Filtrar en el servidor
-        Collection<Url> allUrls = urlService.getAllUrls();
-        if (!"admin".equals(currentUser.getRole())) {
-            Usuario finalCurrentUser = currentUser;
-            allUrls = allUrls.stream()
-                    .filter(url -> url.getUser() != null && url.getUser().getUsername().equals(finalCurrentUser.getUsername()))
-                    .collect(Collectors.toList());
+        if ("anonymous".equals(currentUser.getRole()) && EphemeralLinkStore.ENABLED) {
+            // Los enlaces anónimos viven en memoria: no hace falta leer toda la tabla
+            ctx.json(urlService.getAnonymousUrls(currentUser.getUsername()));
+            return;
         }
-        ctx.json(allUrls);
+        // El admin ve todas; el resto, solo las suyas (consulta por usuario, sin leer toda la tabla)
+        ctx.json("admin".equals(currentUser.getRole())
+                ? urlService.getAllUrls()
+                : urlService.getUrlsOfUser(currentUser.getUsername()));
     };
 
     public Handler updateUrlRandom = ctx -> {
@@ -169,21 +225,29 @@ public class UrlController {
         }
     };
 
-    public Handler getAccessStats = ctx -> {
+    /**
+     * Obtiene el enlace de {shortUrl} si el usuario en sesión es su dueño o admin.
+     * En caso contrario responde 401/403/404 y devuelve null.
+     */
+    private Url findStatsUrl(io.javalin.http.Context ctx) {
         // 1. AUTENTICACIÓN: Verificar que el usuario esté logueado
         Usuario currentUser = ctx.sessionAttribute("user");
         if (currentUser == null) {
             ctx.status(401).result("No autorizado. Debes iniciar sesión para ver estadísticas.");
-            return;
+            return null;
         }
 
         // 2. Obtener el recurso solicitado
         String shortUrl = ctx.pathParam("shortUrl");
-        Url url = urlService.getUrl(shortUrl);
+        Url url = urlService.getUrlInfo(shortUrl);
         
         if (url == null) {
             ctx.status(404).result("Enlace no encontrado.");
-            return;
+            return null;
+        }
+        if (url.getId() == null) {
+            ctx.status(404).result("Los enlaces temporales no tienen estadísticas.");
+            return null;
         }
 
         // 3. AUTORIZACIÓN: Verificar que el usuario sea el propietario O admin
@@ -194,21 +258,83 @@ public class UrlController {
         if (!isOwner && !isAdmin) {
             // No revelar si el enlace existe - respuesta consistente
             ctx.status(403).result("No tienes permiso para acceder a estas estadísticas.");
-            return;
+            return null;
         }
+        return url;
+    }
+
+    public Handler getAccessStats = ctx -> {
+        Url url = findStatsUrl(ctx);
+        if (url == null) return;
 
         // 4. Si pasa las validaciones, devolver las estadísticas
-        Map<String, Integer> browserStats = new HashMap<>();
-        url.getAccessDetails().forEach(detail -> {
-            String browser = detail.getBrowser();
-            browserStats.put(browser, browserStats.getOrDefault(browser, 0) + 1);
-        });
-        
-        List<String> accessTimesStr = url.getAccessDetails().stream()
-                .map(detail -> detail.getTimestamp().toInstant().toString())
+        // Los agregados no dependen de quién pregunta: peticiones simultáneas comparten el cálculo
+        Map<String, Object> aggregates = statsLoads.load(url.getShortUrl(), () -> statsAggregates(url));
+
+        // Detalle paginado: ?cursor=<nextCursor anterior>&limit=N
+        UrlService.AccessPage page;
+        try {
+            page = urlService.getAccessPage(url, ctx.queryParam("cursor"), parseLimit(ctx.queryParam("limit")));
+        } catch (IllegalArgumentException e) {
+            ctx.status(400).result("Cursor o límite inválido.");
+            return;
+        }
+        List<Map<String, Object>> accessDetailsList = toDetailMaps(page.items());
+
+        Map<String, Object> response = new HashMap<>(aggregates);
+        response.put("accessCount", url.getAccessCount());
+        response.put("uniqueVisitors", url.getUniqueVisitors());
+        response.put("originalUrl", url.getOriginalUrl());
+        response.put("accessDetails", accessDetailsList);
+        response.put("nextCursor", page.nextCursor());
+        ctx.json(response);
+    };
+
+    private Map<String, Object> statsAggregates(Url url) {
+        // Conteos y tiempos salen del almacén columnar; no se materializa un objeto por clic
+        Map<String, Long> browserStats = urlService.groupClicks(url, ClickColumns.Column.BROWSER, Long.MIN_VALUE, Long.MAX_VALUE);
+        Map<String, Long> platformStats = urlService.groupClicks(url, ClickColumns.Column.PLATFORM, Long.MIN_VALUE, Long.MAX_VALUE);
+
+        // accessTimes: solo los más recientes y de particiones sin compactar (los días compactados no
+        // tienen hora; para series completas usar /stats/{shortUrl}/series)
+        long[] times = urlService.getClickColumns(url).latest(MAX_ACCESS_TIMES);
+        List<String> accessTimesStr = Arrays.stream(times)
+                .mapToObj(ts -> Instant.ofEpochMilli(ts).toString())
                 .toList();
-        
-        List<Map<String, Object>> accessDetailsList = url.getAccessDetails().stream()
+
+        // Visitantes únicos (HyperLogLog) por día en los últimos 30 días
+        LocalDate today = LocalDate.now();
+        Map<String, Long> uniqueVisitorsByDay = new LinkedHashMap<>();
+        urlService.getUniqueVisitorsByDay(url, today.minusDays(29), today)
+                .forEach((day, visitors) -> uniqueVisitorsByDay.put(day.toString(), visitors));
+
+        return Map.of(
+                "accessTimes", accessTimesStr,
+                "uniqueVisitorsByDay", uniqueVisitorsByDay,
+                "browserStats", browserStats,
+                "platformStats", platformStats
+        );
+    }
+
+    // Siguiente página del registro de accesos: ?cursor=&limit=
+    public Handler getAccessPage = ctx -> {
+        Url url = findStatsUrl(ctx);
+        if (url == null) return;
+        UrlService.AccessPage page;
+        try {
+            page = urlService.getAccessPage(url, ctx.queryParam("cursor"), parseLimit(ctx.queryParam("limit")));
+        } catch (IllegalArgumentException e) {
+            ctx.status(400).result("Cursor o límite inválido.");
+            return;
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("accessDetails", toDetailMaps(page.items()));
+        response.put("nextCursor", page.nextCursor());
+        ctx.json(response);
+    };
+
+    private static List<Map<String, Object>> toDetailMaps(List<AccessDetail> details) {
+        return details.stream()
                 .map(detail -> {
                     Map<String, Object> map = new HashMap<>();
                     map.put("timestamp", detail.getTimestamp().toInstant().toString());
@@ -218,17 +344,168 @@ public class UrlController {
                     return map;
                 })
                 .toList();
-        
-        ctx.json(Map.of(
-                "accessTimes", accessTimesStr,
-                "browserStats", browserStats,
-                "originalUrl", url.getOriginalUrl(),
-                "accessDetails", accessDetailsList
-        ));
+    }
+
+    // limit ausente = tamaño por defecto; no numérico = IllegalArgumentException (400)
+    static int parseLimit(String limit) {
+        return limit == null || limit.isEmpty() ? UrlService.DEFAULT_ACCESS_PAGE_SIZE : Integer.parseInt(limit);
+    }
+
+    /**
+     * Serie de accesos agregada en la base: ?from=&to= (ISO-8601 o epoch ms),
+     * bucket=minute|hour|day y groupBy=browser|platform|domain (opcional).
+     * La respuesta se escribe punto a punto: {"bucket":..., "points":[{"t":..., "n":..., "by":{...}}]}
+     */
+    public Handler getStatsSeries = ctx -> {
+        Url url = findStatsUrl(ctx);
+        if (url == null) return;
+
+        long to;
+        long from;
+        StatsService.Bucket bucket;
+        StatsService.Dimension groupBy = null;
+        try {
+            to = ctx.queryParam("to") != null ? parseInstant(ctx.queryParam("to")) : System.currentTimeMillis();
+            long created = url.getCreatedAt() != null ? url.getCreatedAt().getTime() : to - 30L * 24 * 3600 * 1000;
+            from = ctx.queryParam("from") != null ? parseInstant(ctx.queryParam("from")) : created;
+            bucket = StatsService.Bucket.valueOf(Objects.requireNonNullElse(ctx.queryParam("bucket"), "day").toUpperCase());
+            if (ctx.queryParam("groupBy") != null) {
+                groupBy = StatsService.Dimension.valueOf(ctx.queryParam("groupBy").toUpperCase());
+            }
+        } catch (IllegalArgumentException | java.time.format.DateTimeParseException e) {
+            ctx.status(400).result("Parámetros inválidos: from/to (ISO-8601 o epoch ms), bucket=minute|hour|day, groupBy=browser|platform|domain.");
+            return;
+        }
+        if (from >= to) {
+            ctx.status(400).result("El parámetro from debe ser anterior a to.");
+            return;
+        }
+
+        ctx.contentType("application/json");
+        try (JsonGenerator json = JSON.createGenerator(ctx.outputStream())) {
+            json.writeStartObject();
+            json.writeStringField("shortUrl", url.getShortUrl());
+            json.writeNumberField("from", from);
+            json.writeNumberField("to", to);
+            json.writeStringField("bucket", bucket.name().toLowerCase());
+            if (groupBy != null) json.writeStringField("groupBy", groupBy.name().toLowerCase());
+            json.writeArrayFieldStart("points");
+            statsService.series(url.getId(), from, to, bucket, groupBy, (t, n, groups) -> {
+                json.writeStartObject();
+                json.writeNumberField("t", t);
+                json.writeNumberField("n", n);
+                if (groups != null) {
+                    json.writeObjectFieldStart("by");
+                    for (Map.Entry<String, Long> g : groups.entrySet()) {
+                        json.writeNumberField(g.getKey(), g.getValue());
+                    }
+                    json.writeEndObject();
+                }
+                json.writeEndObject();
+            });
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    };
+
+    // Descarga de los clics crudos de un enlace (ver ExportController para los parámetros)
+    public Handler exportLink = ctx -> {
+        Url url = findStatsUrl(ctx);
+        if (url == null) return;
+        exportController.stream(ctx, url.getShortUrl(), List.of(url));
+    };
+
+    // Descarga de los clics de todos los enlaces del usuario en sesión
+    public Handler exportAccount = ctx -> {
+        Usuario currentUser = ctx.sessionAttribute("user");
+        if (currentUser == null) {
+            ctx.status(401).result("No autorizado. Debes iniciar sesión para exportar.");
+            return;
+        }
+        exportController.stream(ctx, currentUser.getUsername(), urlService.getUrlsOfUser(currentUser.getUsername()));
     };
 
+    // ISO-8601 o epoch ms; también lo usa ExportController
+    static long parseInstant(String value) {
+        if (value.chars().allMatch(Character::isDigit)) return Long.parseLong(value);
+        return Instant.parse(value).toEpochMilli();
+    }
+
+    /**
+     * Importación masiva (solo admin): archivo CSV o NDJSON en el campo "file" de un multipart.
+     * Opcionales: format=csv|ndjson (por defecto según la extensión), offset para retomar una
+     * importación cortada y owner para los registros sin dueño (por defecto el admin).
+     */
+    public Handler importUrls = ctx -> {
+        Usuario currentUser = ctx.sessionAttribute("user");
+        if (currentUser == null || !"admin".equals(currentUser.getRole())) {
+            ctx.status(403).result("Solo los administradores pueden importar enlaces.");
+            return;
+        }
+        UploadedFile file = ctx.uploadedFile("file");
+        if (file == null) {
+            ctx.status(400).result("Falta el archivo (campo file).");
+            return;
+        }
+        BulkImportService.Format format;
+        long offset;
+        try {
+            String f = ctx.formParam("format") != null ? ctx.formParam("format") : ctx.queryParam("format");
+            format = f != null ? BulkImportService.Format.valueOf(f.toUpperCase()) : BulkImportService.Format.fromFileName(file.filename());
+            String o = ctx.formParam("offset") != null ? ctx.formParam("offset") : ctx.queryParam("offset");
+            offset = o != null ? Long.parseLong(o) : 0;
+        } catch (IllegalArgumentException e) {
+            ctx.status(400).result("Parámetros inválidos: format=csv|ndjson, offset numérico.");
+            return;
+        }
+        String owner = ctx.formParam("owner") != null ? ctx.formParam("owner") : currentUser.getUsername();
+        BulkImportService.Report report;
+        try (var in = file.content()) {
+            report = new BulkImportService().importFrom(in, format, offset, owner,
+                    r -> System.out.println("[IMPORT] " + file.filename() + ": " + r));
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("offset", report.getOffset());
+        response.put("imported", report.getImported());
+        response.put("failed", report.getFailed());
+        response.put("errors", report.getErrors());
+        ctx.json(response);
+    };
 
+    // Enlaces más visitados en la ventana indicada (solo admin): ?window=1m|1h|24h&k=10
+    public Handler hotLinks = ctx -> {
+        Usuario currentUser = ctx.sessionAttribute("user");
+        if (currentUser == null || !"admin".equals(currentUser.getRole())) {
+            ctx.status(403).result("Solo los administradores pueden ver los enlaces más visitados.");
+            return;
+        }
+        String window = ctx.queryParam("window") != null ? ctx.queryParam("window") : "1h";
+        HotLinkService hot = HotLinkService.getInstance();
+        if (!hot.hasWindow(window)) {
+            ctx.status(400).result("Ventana no válida. Use 1m, 1h o 24h.");
+            return;
+        }
+        int k;
+        try {
+            k = ctx.queryParam("k") != null ? Integer.parseInt(ctx.queryParam("k")) : 10;
+        } catch (NumberFormatException e) {
+            ctx.status(400).result("Parámetro k inválido.");
+            return;
+        }
+        k = Math.max(1, Math.min(k, 100));
 
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (HeavyHitters.Hit hit : hot.top(window, k)) {
+            Url url = urlService.getUrlInfo(hit.key());
+            if (url == null) continue; // eliminado o renombrado dentro de la ventana
+            Map<String, Object> item = new HashMap<>();
+            item.put("shortUrl", hit.key());
+            item.put("originalUrl", url.getOriginalUrl());
+            item.put("hits", hit.count());
+            result.add(item);
+        }
+        ctx.json(Map.of("window", window, "links", result));
+    };
 
     public Handler previewUrl = ctx -> {
         String originalUrl = ctx.queryParam("url");
@@ -236,6 +513,42 @@ public class UrlController {
             ctx.status(400).result("No se proporcionó la URL para vista previa.");
             return;
         }
+        try {
+            // Al compartir un enlace muchos clientes piden la misma vista previa a la vez
+            Preview preview = previewLoads.load(originalUrl, () -> fetchPreview(originalUrl));
+            if (preview.status() == 200) {
+                ctx.contentType("application/json");
+                ctx.result(preview.body());
+            } else {
+                ctx.status(preview.status()).result("Error al obtener vista previa.");
+            }
+        } catch (Exception e) {
+            ctx.status(500).result("Error: " + e.getMessage());
+        }
+    };
+
+    private static Preview fetchPreview(String originalUrl) {
+        AppEvents.PreviewFetched event = new AppEvents.PreviewFetched();
+        event.begin();
+        Tracing.Span span = Tracing.startSpan("GET microlink", Tracing.Kind.CLIENT)
+                .attribute("preview.source", "page").attribute("preview.host", AppEvents.host(originalUrl));
+        long start = System.nanoTime();
+        Preview preview = null;
+        try {
+            preview = downloadPreview(originalUrl);
+            return preview;
+        } catch (RuntimeException e) {
+            span.error(e);
+            throw e;
+        } finally {
+            PreviewFetch.TIMER.recordSince(start, "page");
+            span.attribute("http.status_code", preview != null ? preview.status() : null).close();
+            event.commit("page", originalUrl, preview != null ? preview.status() : -1,
+                    preview != null && preview.body() != null ? preview.body().length() : 0);
+        }
+    }
+
+    private static Preview downloadPreview(String originalUrl) {
         try {
             String encodedUrl = URLEncoder.encode(originalUrl, "UTF-8");
             String apiUrl = "https://api.microlink.io?url=" + encodedUrl;
@@ -243,26 +556,51 @@ public class UrlController {
             HttpURLConnection conn = (HttpURLConnection) url.openConnection();
             conn.setRequestMethod("GET");
             int responseCode = conn.getResponseCode();
-            if (responseCode == 200) {
-                BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
+            if (responseCode != 200) return new Preview(responseCode, null);
+            StringBuilder content = new StringBuilder();
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
                 String inputLine;
-                StringBuilder content = new StringBuilder();
                 while ((inputLine = in.readLine()) != null) {
                     content.append(inputLine);
                 }
-                in.close();
-                ctx.contentType("application/json");
-                ctx.result(content.toString());
-            } else {
-                ctx.status(responseCode).result("Error al obtener vista previa.");
             }
-        } catch (Exception e) {
-            ctx.status(500).result("Error: " + e.getMessage());
+            return new Preview(200, content.toString());
+        } catch (IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    // Cargas agrupadas por SingleFlight: cuántas se hicieron y cuántas se ahorraron (solo admin)
+    public Handler loaderStats = ctx -> {
+        Usuario currentUser = ctx.sessionAttribute("user");
+        if (currentUser == null || !"admin".equals(currentUser.getRole())) {
+            ctx.status(403).result("Solo los administradores pueden ver estas métricas.");
+            return;
         }
+        ctx.json(SingleFlight.allStats());
     };
 
-    // Metodo para generar el código QR en base64
-    private static String generateQRCodeImage(String text, int width, int height) throws WriterException, IOException {
+    // Sentencias SQL por tiempo total (requiere APP_SQL_STATS=true)
+    public Handler queryStats = ctx -> {
+        Usuario currentUser = ctx.sessionAttribute("user");
+        if (currentUser == null || !"admin".equals(currentUser.getRole())) {
+            ctx.status(403).result("Solo los administradores pueden ver estas métricas.");
+            return;
+        }
+        int limit;
+        try {
+            limit = ctx.queryParam("limit") != null ? Integer.parseInt(ctx.queryParam("limit")) : 50;
+        } catch (NumberFormatException e) {
+            ctx.status(400).result("Parámetro limit inválido.");
+            return;
+        }
+        ctx.json(QueryStats.report(Math.max(1, limit)));
+    };
+
+    // Metodo para generar el código QR en base64 (de paquete: también lo miden los benchmarks de src/jmh)
+    static String generateQRCodeImage(String text, int width, int height) throws WriterException, IOException {
+        AppEvents.QrRendered event = new AppEvents.QrRendered();
+        event.begin();
         QRCodeWriter qrCodeWriter = new QRCodeWriter();
         BitMatrix bitMatrix = qrCodeWriter.encode(text, BarcodeFormat.QR_CODE, width, height);
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
@@ -273,10 +611,17 @@ public class UrlController {
         }
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         ImageIO.write(image, "png", baos);
+        event.end();
+        if (event.shouldCommit()) {
+            event.width = width;
+            event.height = height;
+            event.bytes = baos.size();
+            event.commit();
+        }
         return Base64.getEncoder().encodeToString(baos.toByteArray());
     }
 
-    private String parseBrowser(String userAgent) {
+    static String parseBrowser(String userAgent) {
         if (userAgent == null) return "Desconocido";
         if (userAgent.contains("Chrome")) return "Chrome";
         if (userAgent.contains("Firefox")) return "Firefox";
@@ -285,7 +630,7 @@ public class UrlController {
         return "Otro";
     }
 
-    private String parsePlatform(String userAgent) {
+    static String parsePlatform(String userAgent) {
         if (userAgent == null) return "Desconocido";
         if (userAgent.contains("Windows")) return "Windows";
         if (userAgent.contains("Mac")) return "MacOS";
@@ -1,19 +1,23 @@
 package edu.pucmm.eict.controladores;
 
 import edu.pucmm.eict.modelos.Usuario;
+import edu.pucmm.eict.services.UrlService;
 import edu.pucmm.eict.services.UserService;
 import io.javalin.http.Handler;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 public class UserController {
 
     private UserService userService;
+    private UrlService urlService;
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService, UrlService urlService) {
         this.userService = userService;
+        this.urlService = urlService;
     }
 
     public Handler listUsers = ctx -> {
@@ -56,7 +60,15 @@ public class UserController {
 
     public Handler deleteUser = ctx -> {
         String username = ctx.formParam("username");
+        // Los ids de sus enlaces se leen antes de borrarlo (después user_id queda en NULL), pero
+        // solo se marcan si el borrado tuvo éxito; sus accesos se purgan en segundo plano
+        Usuario user = userService.getUserByUsername(username);
+        List<Long> linkIds = user != null && !"admin".equals(user.getRole())
+                ? urlService.urlIdsOfUser(user.getId())
+                : List.of();
         if (userService.deleteUser(username)) {
+            int links = linkIds.isEmpty() ? 0 : urlService.deleteUrlsOfUser(user.getId(), linkIds);
+            if (links > 0) System.out.println("[USERS] " + links + " enlaces de " + username + " marcados para borrar");
             ctx.redirect("/dashboard/users?success=User deleted successfully");
         } else {
             ctx.redirect("/dashboard/users?error=Cannot delete admin user");
@@ -9,7 +9,6 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -29,6 +28,7 @@ public class GrpcClientController {
         // convertiremos manualmente cada objeto a un Map con los atributos deseados.
         this.channel = ManagedChannelBuilder.forAddress(host, port)
                 .usePlaintext()
+                .intercept(new TracingClientInterceptor())
                 .build();
         // Aumenta el tamaño máximo del mensaje a, por ejemplo, 10 MB.
         this.stub = UrlShortenerServiceGrpc.newBlockingStub(channel)
@@ -66,7 +66,8 @@ public class GrpcClientController {
         // Convertir la lista de UrlEntry en una lista de maps (sin los campos internos)
         List<Map<String, Object>> urls = response.getUrlsList().stream()
                 .map(entry -> {
-                    // Convertir cada AccessDetail a un Map (para evitar serializar unknownFields)
+                    // Convertir cada AccessDetail a un Map (para evitar serializar unknownFields);
+                    // el servidor los entrega del más reciente al más antiguo
                     List<Map<String, String>> accessDetails = entry.getStatistics().getAccessDetailsList()
                             .stream()
                             .map(ad -> Map.of(
@@ -77,7 +78,6 @@ public class GrpcClientController {
                                     "platform", ad.getPlatform()
                             ))
                             .collect(Collectors.toCollection(ArrayList::new));
-                    Collections.reverse(accessDetails);
 
                     return Map.of(
                             "originalUrl", entry.getOriginalUrl(),
@@ -85,6 +85,7 @@ public class GrpcClientController {
                             "createdAt", entry.getCreatedAt(),
                             "statistics", Map.of(
                                     "accessCount", entry.getStatistics().getAccessCount(),
+                                    "uniqueVisitors", entry.getStatistics().getUniqueVisitors(),
                                     "accessTimes", entry.getStatistics().getAccessTimesList(),
                                     "accessDetails", accessDetails
                             ),
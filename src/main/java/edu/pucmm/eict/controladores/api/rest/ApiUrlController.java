@@ -1,12 +1,14 @@
 package edu.pucmm.eict.controladores.api.rest;
 
+import edu.pucmm.eict.controladores.ExportController;
+import edu.pucmm.eict.modelos.AccessDetail;
 import edu.pucmm.eict.modelos.Url;
 import edu.pucmm.eict.modelos.Usuario;
 import edu.pucmm.eict.services.UrlService;
 import edu.pucmm.eict.services.UserService;
+import edu.pucmm.eict.util.ClickColumns;
 import io.javalin.http.Handler;
 
-import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -17,11 +19,13 @@ public class ApiUrlController extends BaseUrlController {
 
     private UrlService urlService;
     private UserService userService;
+    private ExportController exportController;
 
     // Se inyectan ambas dependencias.
     public ApiUrlController(UrlService urlService, UserService userService) {
         this.urlService = urlService;
         this.userService = userService;
+        this.exportController = new ExportController(urlService);
     }
 
     /**
@@ -34,42 +38,13 @@ public class ApiUrlController extends BaseUrlController {
             ctx.status(401).result("No autorizado");
             return;
         }
-        // Obtiene todas las URLs y filtra las que pertenecen al usuario autenticado.
-        Collection<Url> allUrls = urlService.getAllUrls();
-        List<Map<String, Object>> userUrls = allUrls.stream()
-                .filter(url -> url.getUser() != null && username.equals(url.getUser().getUsername()))
+        // Solo las URLs del usuario autenticado (consulta por usuario, sin leer toda la tabla)
+        List<Map<String, Object>> userUrls = urlService.getUrlsOfUser(username).stream()
                 .map(url -> {
                     Date createdAt = (url.getCreatedAt() != null) ? url.getCreatedAt() : new Date();
 
-                    // Calculamos browserStats a partir de cada detalle de acceso.
-                    Map<String, Integer> browserStats = new HashMap<>();
-                    url.getAccessDetails().forEach(detail -> {
-                        String browser = detail.getBrowser();
-                        browserStats.put(browser, browserStats.getOrDefault(browser, 0) + 1);
-                    });
-
-                    // Extraer los accessTimes y mapear cada detalle a un objeto sencillo.
-                    List<String> accessTimes = url.getAccessDetails().stream()
-                            .map(detail -> detail.getTimestamp().toInstant().toString())
-                            .collect(java.util.stream.Collectors.toList());
-                    List<Map<String, Object>> accessDetails = url.getAccessDetails().stream()
-                            .map(detail -> {
-                                Map<String, Object> map = new HashMap<>();
-                                map.put("timestamp", detail.getTimestamp().toInstant().toString());
-                                map.put("ip", detail.getIp());
-                                map.put("browser", detail.getBrowser());
-                                map.put("platform", detail.getPlatform());
-                                return map;
-                            })
-                            .collect(java.util.stream.Collectors.toList());
-
-                    // Construir el objeto de estadísticas.
-                    Map<String, Object> stats = Map.of(
-                            "accessCount", url.getAccessCount(),
-                            "accessTimes", accessTimes,
-                            "accessDetails", accessDetails,
-                            "browserStats", browserStats
-                    );
+                    Map<String, Object> stats = buildStatistics(url);
+
                     // Calcular la vista previa usando la URL original.
                     String previewImage = getPreviewImage(url.getOriginalUrl());
                     return Map.of(
@@ -106,37 +81,15 @@ public class ApiUrlController extends BaseUrlController {
             ctx.status(401).result("Usuario no encontrado");
             return;
         }
-        // Guarda la URL en la base de datos.
-        Url url = urlService.saveUrl(originalUrl, user);
+        // Guarda la URL en la base de datos (o reutiliza la existente si se pide con reuseExisting).
+        boolean reuse = body.get("reuseExisting") != null
+                ? Boolean.parseBoolean(body.get("reuseExisting").toString())
+                : UrlService.REUSE_LINKS_DEFAULT;
+        Url url = urlService.saveUrl(originalUrl, user, reuse);
         Date createdAt = (url.getCreatedAt() != null) ? url.getCreatedAt() : new Date();
         String previewImage = getPreviewImage(originalUrl);
 
-        Map<String, Integer> browserStats = new HashMap<>();
-        url.getAccessDetails().forEach(detail -> {
-            String browser = detail.getBrowser();
-            browserStats.put(browser, browserStats.getOrDefault(browser, 0) + 1);
-        });
-
-        List<String> accessTimes = url.getAccessDetails().stream()
-                .map(detail -> detail.getTimestamp().toInstant().toString())
-                .collect(java.util.stream.Collectors.toList());
-        List<Map<String, Object>> accessDetails = url.getAccessDetails().stream()
-                .map(detail -> {
-                    Map<String, Object> map = new HashMap<>();
-                    map.put("timestamp", detail.getTimestamp().toInstant().toString());
-                    map.put("ip", detail.getIp());
-                    map.put("browser", detail.getBrowser());
-                    map.put("platform", detail.getPlatform());
-                    return map;
-                })
-                .collect(java.util.stream.Collectors.toList());
-
-        Map<String, Object> stats = Map.of(
-                "accessCount", url.getAccessCount(),
-                "accessTimes", accessTimes,
-                "accessDetails", accessDetails,
-                "browserStats", browserStats
-        );
+        Map<String, Object> stats = buildStatistics(url);
 
         Map<String, Object> response = Map.of(
                 "originalUrl", url.getOriginalUrl(),
@@ -147,4 +100,95 @@ public class ApiUrlController extends BaseUrlController {
         );
         ctx.json(response);
     };
+
+    /**
+     * Página de accesos de una URL del usuario autenticado, del más reciente al más antiguo:
+     * GET /api/urls/{shortUrl}/access?cursor=&limit=
+     */
+    public Handler listAccessApi = ctx -> {
+        String username = ctx.attribute("currentUser");
+        if (username == null) {
+            ctx.status(401).result("No autorizado");
+            return;
+        }
+        Url url = urlService.getUrlInfo(ctx.pathParam("shortUrl"));
+        boolean isAdmin = "admin".equals(ctx.attribute("currentRole"));
+        if (url == null || (!isAdmin && (url.getUser() == null || !username.equals(url.getUser().getUsername())))) {
+            ctx.status(404).result("Enlace no encontrado");
+            return;
+        }
+        UrlService.AccessPage page;
+        try {
+            String limit = ctx.queryParam("limit");
+            page = urlService.getAccessPage(url, ctx.queryParam("cursor"),
+                    limit == null ? UrlService.DEFAULT_ACCESS_PAGE_SIZE : Integer.parseInt(limit));
+        } catch (IllegalArgumentException e) {
+            ctx.status(400).result("Cursor o límite inválido");
+            return;
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("accessDetails", toDetailMaps(page.items()));
+        response.put("nextCursor", page.nextCursor());
+        ctx.json(response);
+    };
+
+    // Clics crudos de una URL en NDJSON o CSV (ver ExportController para los parámetros)
+    public Handler exportLinkApi = ctx -> {
+        String username = ctx.attribute("currentUser");
+        if (username == null) {
+            ctx.status(401).result("No autorizado");
+            return;
+        }
+        Url url = urlService.getUrlInfo(ctx.pathParam("shortUrl"));
+        boolean isAdmin = "admin".equals(ctx.attribute("currentRole"));
+        if (url == null || (!isAdmin && (url.getUser() == null || !username.equals(url.getUser().getUsername())))) {
+            ctx.status(404).result("Enlace no encontrado");
+            return;
+        }
+        exportController.stream(ctx, url.getShortUrl(), List.of(url));
+    };
+
+    // Clics crudos de todas las URLs del usuario autenticado
+    public Handler exportAccountApi = ctx -> {
+        String username = ctx.attribute("currentUser");
+        if (username == null) {
+            ctx.status(401).result("No autorizado");
+            return;
+        }
+        exportController.stream(ctx, username, urlService.getUrlsOfUser(username));
+    };
+
+    /**
+     * Estadísticas de una URL: conteos completos y solo la primera página de accesos;
+     * el resto se pide con nextCursor a /api/urls/{shortUrl}/access.
+     */
+    private Map<String, Object> buildStatistics(Url url) {
+        Map<String, Long> browserStats = urlService.groupClicks(url, ClickColumns.Column.BROWSER, Long.MIN_VALUE, Long.MAX_VALUE);
+        UrlService.AccessPage page = urlService.getAccessPage(url, null, UrlService.DEFAULT_ACCESS_PAGE_SIZE);
+        List<String> accessTimes = page.items().stream()
+                .map(detail -> detail.getTimestamp().toInstant().toString())
+                .collect(Collectors.toList());
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("accessCount", url.getAccessCount());
+        stats.put("uniqueVisitors", url.getUniqueVisitors());
+        stats.put("accessTimes", accessTimes);
+        stats.put("accessDetails", toDetailMaps(page.items()));
+        stats.put("browserStats", browserStats);
+        stats.put("nextCursor", page.nextCursor());
+        return stats;
+    }
+
+    private List<Map<String, Object>> toDetailMaps(List<AccessDetail> details) {
+        return details.stream()
+                .map(detail -> {
+                    Map<String, Object> map = new HashMap<>();
+                    map.put("timestamp", detail.getTimestamp().toInstant().toString());
+                    map.put("ip", detail.getIp());
+                    map.put("browser", detail.getBrowser());
+                    map.put("platform", detail.getPlatform());
+                    return map;
+                })
+                .collect(Collectors.toList());
+    }
 }
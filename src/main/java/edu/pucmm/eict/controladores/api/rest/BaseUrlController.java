@@ -2,6 +2,7 @@ package edu.pucmm.eict.controladores.api.rest;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.pucmm.eict.util.PreviewFetch;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
@@ -17,6 +18,11 @@ public abstract class BaseUrlController {
      * @return Imagen en Base64 o cadena vacía si ocurre algún error.
      */
     protected String getPreviewImage(String originalUrl) {
+        // Varias peticiones simultáneas por la misma URL comparten una sola descarga
+        return PreviewFetch.image("image", originalUrl, this::fetchPreviewImage);
+    }
+
+    private String fetchPreviewImage(String originalUrl) {
         try {
             String encodedUrl = URLEncoder.encode(originalUrl, "UTF-8");
             String apiUrl = "https://api.microlink.io/?url=" + encodedUrl;
@@ -9,6 +9,7 @@ public class Url {
     private String originalUrl;
     private String shortUrl;
     private int accessCount;
+    private long uniqueVisitors;  // estimación (HyperLogLog) de IPs distintas
     private List<Date> accessTimes;
     private List<AccessDetail> accessDetails;
     private Usuario user;         // dueño; puede ser null para anónimos
@@ -55,6 +56,13 @@ public class Url {
         this.accessCount = accessCount;
     }
 
+    public long getUniqueVisitors() {
+        return uniqueVisitors;
+    }
+    public void setUniqueVisitors(long uniqueVisitors) {
+        this.uniqueVisitors = uniqueVisitors;
+    }
+
     public List<Date> getAccessTimes() {
         return accessTimes;
     }
@@ -0,0 +1,288 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.modelos.AccessDetail;
+import edu.pucmm.eict.util.AppConfig;
+import edu.pucmm.eict.util.ClickColumns;
+import edu.pucmm.eict.util.ClickPartitions;
+import edu.pucmm.eict.util.Database;
+import edu.pucmm.eict.util.DimensionDictionary;
+import edu.pucmm.eict.util.Metrics;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Almacén de analítica en memoria: los clics de cada URL en forma columnar (ClickColumns).
+ * Se carga bajo demanda desde las particiones y se mantiene al día con los clics que
+ * confirma ClickWriter. Los días ya compactados (access_rollups) se guardan aparte como
+ * conteos por día, navegador y plataforma, y se suman en groupBy igual que en StatsService.
+ * ClickMaintenanceService llama a invalidateAll() al eliminar o compactar particiones.
+ * Las URLs menos consultadas se descartan al superar los límites
+ * APP_CLICK_STORE_MAX_URLS / APP_CLICK_STORE_MAX_MB.
+ */
+public class AnalyticsStore implements ClickWriter.Listener {
+
+    // Códigos de un byte para navegador/plataforma: 0 = sin valor, 255 = desbordamiento
+    private static final int NO_VALUE = 0;
+    private static final int OVERFLOW_CODE = 255;
+    private static final String UNKNOWN = "Desconocido";
+
+    private static AnalyticsStore instance;
+
+    private static final Metrics.Counter CACHE = Metrics.counter("cache_requests_total",
+            "Consultas a cachés en memoria por resultado (hit/miss)", "cache", "result");
+
+    private final DataSource analyticsDs;
+    private final ClickPartitions partitions;
+    private final DimensionDictionary dimensions;
+    private final ClickWriter clickWriter;
+    private final ConcurrentHashMap<Long, Entry> stores = new ConcurrentHashMap<>();
+    private final ByteCodes browserCodes = new ByteCodes();
+    private final ByteCodes platformCodes = new ByteCodes();
+    private final int maxUrls;
+    private final long maxBytes;
+    private final int offHeapAfterChunks;
+    // Cambia con cada invalidateAll(): una carga que empezó antes no se instala
+    private final AtomicLong generation = new AtomicLong();
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private static final class Entry {
+        final ClickColumns columns;
+        final List<Rollup> rollups;
+        volatile long lastAccess = System.nanoTime();
+
+        Entry(ClickColumns columns, List<Rollup> rollups) {
+            this.columns = columns;
+            this.rollups = rollups;
+        }
+
+        long memoryBytes() {
+            return columns.memoryBytes() + rollups.size() * 48L;
+        }
+    }
+
+    // Una fila de access_rollups: el día como [dayStart, dayEnd) en milisegundos
+    private record Rollup(long dayStart, long dayEnd, int browserCode, int platformCode, long hits) {
+    }
+
+    public static synchronized AnalyticsStore getInstance() {
+        if (instance == null) {
+            instance = new AnalyticsStore(Database.getAnalyticsDataSource(), Database.getClickPartitions(),
+                    Database.getDimensions(), ClickWriter.getInstance());
+            instance.clickWriter.addListener(instance);
+            AnalyticsStore store = instance;
+            Metrics.gauge("click_columns_cached_urls", "Enlaces con sus clics en memoria", store.stores::size);
+        }
+        return instance;
+    }
+
+    AnalyticsStore(DataSource analyticsDs, ClickPartitions partitions, DimensionDictionary dimensions, ClickWriter clickWriter) {
+        this.analyticsDs = analyticsDs;
+        this.partitions = partitions;
+        this.dimensions = dimensions;
+        this.clickWriter = clickWriter;
+        this.maxUrls = AppConfig.getInt("APP_CLICK_STORE_MAX_URLS", 10000);
+        this.maxBytes = AppConfig.getLong("APP_CLICK_STORE_MAX_MB", 256) * 1024 * 1024;
+        this.offHeapAfterChunks = AppConfig.getInt("APP_CLICK_STORE_OFFHEAP_AFTER_CHUNKS", 4);
+    }
+
+    /**
+     * Columnas de clics de la URL, cargándolas desde la base si no están en memoria. Solo
+     * tienen los clics de las particiones vivas: los días compactados se cuentan en groupBy.
+     */
+    public ClickColumns columnsFor(long urlId) {
+        return entryFor(urlId).columns;
+    }
+
+    private Entry entryFor(long urlId) {
+        Entry entry = stores.get(urlId);
+        CACHE.inc("click_columns", entry != null ? "hit" : "miss");
+        if (entry == null) {
+            entry = loadEntry(urlId);
+            evictIfNeeded();
+        }
+        entry.lastAccess = System.nanoTime();
+        return entry;
+    }
+
+    @Override
+    public void onPersisted(long urlId, AccessDetail detail) {
+        Entry entry = stores.get(urlId);
+        if (entry == null) return; // se cargará completa desde la base cuando se consulte
+        entry.columns.append(detail.getTimestamp().getTime(),
+                browserCodes.codeFor(dimensions.idOf(DimensionDictionary.Kind.BROWSER, detail.getBrowser())),
+                platformCodes.codeFor(dimensions.idOf(DimensionDictionary.Kind.PLATFORM, detail.getPlatform())));
+    }
+
+    public void evict(long urlId) {
+        stores.remove(urlId);
+    }
+
+    /** Descarta todo lo cargado (las particiones o los resúmenes cambiaron). */
+    public void invalidateAll() {
+        clickWriter.withWriteLock(() -> {
+            generation.incrementAndGet();
+            stores.clear();
+            return null;
+        });
+    }
+
+    /**
+     * Conteo de clics por navegador o plataforma en [from, to), incluidos los días compactados
+     * que se solapan con el rango (como en StatsService, solo tienen resolución diaria).
+     */
+    public Map<String, Long> groupBy(long urlId, ClickColumns.Column column, long from, long to) {
+        Entry entry = entryFor(urlId);
+        long[] counts = entry.columns.groupBy(column, from, to);
+        boolean browser = column == ClickColumns.Column.BROWSER;
+        for (Rollup r : entry.rollups) {
+            if (r.dayEnd() > from && r.dayStart() < to) counts[browser ? r.browserCode() : r.platformCode()] += r.hits();
+        }
+        ByteCodes codes = browser ? browserCodes : platformCodes;
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] == 0) continue;
+            String value = code == OVERFLOW_CODE ? "Otro" : dimensions.valueOf(codes.idFor(code));
+            result.merge(value != null ? value : UNKNOWN, counts[code], Long::sum);
+        }
+        return result;
+    }
+
+    /**
+     * La carga completa no retiene el lock del escritor (bloquearía la persistencia de todos los
+     * clics mientras dure): se fija una marca de agua (el mayor id confirmado), se leen sin lock
+     * los clics hasta ella y solo al final, bajo el lock, los confirmados desde entonces. Así cada
+     * clic se ve una vez: en la carga o en una notificación posterior a instalar la entrada.
+     * Si el mantenimiento compacta o elimina particiones durante la carga, se repite.
+     */
+    private Entry loadEntry(long urlId) {
+        while (true) {
+            long loadGeneration = generation.get();
+            long watermark = clickWriter.withWriteLock(this::maxClickId);
+            ClickColumns columns = new ClickColumns(offHeapAfterChunks);
+            load(columns, urlId, Long.MIN_VALUE, watermark);
+            List<Rollup> rollups = loadRollups(urlId);
+            Entry installed = clickWriter.withWriteLock(() -> {
+                Entry existing = stores.get(urlId);
+                if (existing != null) return existing;
+                if (generation.get() != loadGeneration) return null;
+                load(columns, urlId, watermark, Long.MAX_VALUE);
+                Entry entry = new Entry(columns, rollups);
+                stores.put(urlId, entry);
+                return entry;
+            });
+            if (installed != null) return installed;
+        }
+    }
+
+    private List<Rollup> loadRollups(long urlId) {
+        List<Rollup> rollups = new ArrayList<>();
+        String q = "SELECT day, browser_id, platform_id, SUM(hits) FROM access_rollups WHERE url_id = ? " +
+                "GROUP BY day, browser_id, platform_id";
+        try (Connection c = analyticsDs.getConnection(); PreparedStatement ps = c.prepareStatement(q)) {
+            ps.setLong(1, urlId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    LocalDate day = rs.getDate(1).toLocalDate();
+                    rollups.add(new Rollup(day.atStartOfDay(zone).toInstant().toEpochMilli(),
+                            day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli(),
+                            browserCodes.codeFor(rs.getInt(2)), platformCodes.codeFor(rs.getInt(3)), rs.getLong(4)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return List.copyOf(rollups);
+    }
+
+    private long maxClickId() {
+        long max = 0;
+        try (Connection c = analyticsDs.getConnection(); Statement st = c.createStatement()) {
+            for (ClickPartitions.Partition p : partitions.list()) {
+                try (ResultSet rs = st.executeQuery("SELECT MAX(id) FROM " + p.table())) {
+                    if (rs.next()) max = Math.max(max, rs.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return max;
+    }
+
+    // Clics de la URL con id en (afterId, upToId]
+    private void load(ClickColumns columns, long urlId, long afterId, long upToId) {
+        try (Connection c = analyticsDs.getConnection()) {
+            for (ClickPartitions.Partition p : partitions.list()) {
+                String q = "SELECT timestamp, browser_id, platform_id FROM " + p.table()
+                        + " WHERE url_id = ? AND id > ? AND id <= ? ORDER BY timestamp";
+                try (PreparedStatement ps = c.prepareStatement(q)) {
+                    ps.setLong(1, urlId);
+                    ps.setLong(2, afterId);
+                    ps.setLong(3, upToId);
+                    ps.setFetchSize(1000);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            columns.append(rs.getTimestamp(1).getTime(),
+                                    browserCodes.codeFor(rs.getInt(2)),
+                                    platformCodes.codeFor(rs.getInt(3)));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Descarta las URLs consultadas hace más tiempo hasta volver a los límites
+    private void evictIfNeeded() {
+        while (stores.size() > 1) {
+            long total = 0;
+            Map.Entry<Long, Entry> oldest = null;
+            for (Map.Entry<Long, Entry> e : stores.entrySet()) {
+                total += e.getValue().memoryBytes();
+                if (oldest == null || e.getValue().lastAccess < oldest.getValue().lastAccess) oldest = e;
+            }
+            if (stores.size() <= maxUrls && total <= maxBytes) return;
+            stores.remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    /** Asignación de ids del diccionario a códigos de un byte (hay pocos navegadores/plataformas). */
+    private static final class ByteCodes {
+        private final ConcurrentHashMap<Integer, Integer> codeById = new ConcurrentHashMap<>();
+        private final int[] idByCode = new int[256];
+        private int next = 1;
+
+        int codeFor(int dictionaryId) {
+            if (dictionaryId == 0) return NO_VALUE;
+            Integer code = codeById.get(dictionaryId);
+            return code != null ? code : assign(dictionaryId);
+        }
+
+        synchronized int assign(int dictionaryId) {
+            Integer code = codeById.get(dictionaryId);
+            if (code != null) return code;
+            if (next >= OVERFLOW_CODE) return OVERFLOW_CODE;
+            idByCode[next] = dictionaryId;
+            codeById.put(dictionaryId, next);
+            return next++;
+        }
+
+        synchronized int idFor(int code) {
+            return idByCode[code];
+        }
+    }
+}
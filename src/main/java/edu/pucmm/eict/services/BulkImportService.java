@@ -0,0 +1,433 @@
+package edu.pucmm.eict.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.pucmm.eict.util.AppConfig;
+import edu.pucmm.eict.util.Database;
+import edu.pucmm.eict.util.UrlNormalizer;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Importación masiva de enlaces desde CSV o NDJSON. El archivo se lee registro a registro y
+ * se procesa por bloques: las URLs de un bloque se validan en paralelo, los códigos cortos
+ * se reservan con una sola consulta por bloque y las filas se insertan con un batch dentro
+ * de una transacción. Tras cada bloque confirmado se informa el offset (registros ya
+ * procesados) con el que se puede retomar la importación si se interrumpe.
+ * <p>
+ * Campos: url (u originalUrl), alias (o shortUrl, opcional) y owner (o username, opcional).
+ * En CSV la primera línea puede ser un encabezado con esos nombres; sin encabezado el orden
+ * es url,alias,owner.
+ */
+public class BulkImportService {
+
+    public enum Format {
+        CSV, NDJSON;
+
+        public static Format fromFileName(String name) {
+            String lower = name == null ? "" : name.toLowerCase();
+            return lower.endsWith(".ndjson") || lower.endsWith(".jsonl") || lower.endsWith(".json") ? NDJSON : CSV;
+        }
+    }
+
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onChunk(Report report);
+    }
+
+    /** Resultado acumulado de una importación. */
+    public static final class Report {
+        private static final int MAX_ERRORS = 100;
+
+        private long offset;
+        private long imported;
+        private long failed;
+        private final List<String> errors = new ArrayList<>();
+
+        /** Registros procesados desde el inicio del archivo (para retomar con --offset). */
+        public long getOffset() { return offset; }
+        public long getImported() { return imported; }
+        public long getFailed() { return failed; }
+        /** Los primeros errores, con el número de registro (base 0). */
+        public List<String> getErrors() { return errors; }
+
+        private void fail(long record, String message) {
+            failed++;
+            if (errors.size() < MAX_ERRORS) errors.add("registro " + record + ": " + message);
+        }
+
+        @Override
+        public String toString() {
+            return "offset=" + offset + " importados=" + imported + " fallidos=" + failed;
+        }
+    }
+
+    private static final int CHUNK_SIZE = AppConfig.getInt("APP_IMPORT_CHUNK", 1000);
+    private static final int MAX_URL_LENGTH = 2048;
+    private static final Pattern ALIAS = Pattern.compile("[A-Za-z0-9_-]{3,32}");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final DataSource ds;
+    // username -> id, compartido entre bloques
+    private final Map<String, Long> owners = new HashMap<>();
+
+    public BulkImportService() {
+        this.ds = Database.getDataSource();
+    }
+
+    // Registro leído del archivo; error y code se completan al procesar el bloque
+    private static final class Row {
+        final long record;
+        final String url;
+        final String alias;
+        final String owner;
+        String error;
+        String code;
+        Long ownerId;
+
+        Row(long record, String url, String alias, String owner) {
+            this.record = record;
+            this.url = url;
+            this.alias = alias;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Importa los registros a partir de offset (los anteriores se leen y se descartan).
+     * defaultOwner se asigna a los registros sin owner; puede ser null (enlaces sin dueño).
+     */
+    public Report importFrom(InputStream in, Format format, long offset, String defaultOwner, ProgressListener progress) throws IOException {
+        Report report = new Report();
+        report.offset = offset;
+        Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+        RecordReader records = format == Format.NDJSON ? new NdjsonReader(reader) : new CsvReader(reader);
+        List<Row> chunk = new ArrayList<>(CHUNK_SIZE);
+        long record = 0;
+        Row row;
+        while ((row = records.next(record)) != null) {
+            if (record++ < offset) continue;
+            chunk.add(row);
+            if (chunk.size() == CHUNK_SIZE) {
+                processChunk(chunk, defaultOwner, report);
+                if (progress != null) progress.onChunk(report);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            processChunk(chunk, defaultOwner, report);
+            if (progress != null) progress.onChunk(report);
+        }
+        return report;
+    }
+
+    private void processChunk(List<Row> chunk, String defaultOwner, Report report) {
+        // La validación no toca la base: se reparte entre los núcleos disponibles
+        chunk.parallelStream().forEach(r -> r.error = validate(r));
+        try (Connection c = ds.getConnection()) {
+            resolveOwners(c, chunk, defaultOwner);
+            allocateCodes(c, chunk);
+            insert(c, chunk);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        for (Row r : chunk) {
+            if (r.error != null) report.fail(r.record, r.error);
+            else report.imported++;
+        }
+        report.offset = chunk.get(chunk.size() - 1).record + 1;
+    }
+
+    private static String validate(Row r) {
+        if (r.error != null) return r.error;
+        if (r.url == null || r.url.isBlank()) return "URL vacía";
+        if (r.url.length() > MAX_URL_LENGTH) return "URL de más de " + MAX_URL_LENGTH + " caracteres";
+        try {
+            URI uri = new URI(r.url.trim());
+            String scheme = uri.getScheme();
+            if (scheme == null || !(scheme.equalsIgnoreCase("http") || scheme.equalsIgnoreCase("https"))) {
+                return "solo se aceptan URLs http o https";
+            }
+            if (uri.getHost() == null || uri.getHost().isEmpty()) return "URL sin host";
+        } catch (URISyntaxException e) {
+            return "URL inválida: " + e.getReason();
+        }
+        if (r.alias != null && !ALIAS.matcher(r.alias).matches()) {
+            return "alias inválido (3 a 32 letras, dígitos, '-' o '_')";
+        }
+        return null;
+    }
+
+    private void resolveOwners(Connection c, List<Row> chunk, String defaultOwner) throws SQLException {
+        Set<String> missing = new HashSet<>();
+        for (Row r : chunk) {
+            String name = r.owner != null ? r.owner : defaultOwner;
+            if (r.error == null && name != null && !owners.containsKey(name)) missing.add(name);
+        }
+        if (!missing.isEmpty()) {
+            try (PreparedStatement ps = c.prepareStatement("SELECT username, id FROM usuarios WHERE username = ANY(?)")) {
+                ps.setObject(1, missing.toArray(new String[0]));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) owners.put(rs.getString(1), rs.getLong(2));
+                }
+            }
+        }
+        for (Row r : chunk) {
+            String name = r.owner != null ? r.owner : defaultOwner;
+            if (r.error != null || name == null) continue;
+            r.ownerId = owners.get(name);
+            if (r.ownerId == null) r.error = "usuario inexistente: " + name;
+        }
+    }
+
+    // Alias pedidos y códigos generados se comprueban contra la base en una sola consulta por ronda
+    private void allocateCodes(Connection c, List<Row> chunk) throws SQLException {
+        Set<String> aliases = new HashSet<>();
+        List<Row> needCode = new ArrayList<>();
+        for (Row r : chunk) {
+            if (r.error != null) continue;
+            if (r.alias == null) {
+                needCode.add(r);
+            } else if (!aliases.add(r.alias)) {
+                r.error = "alias repetido en el archivo: " + r.alias;
+            }
+        }
+        Set<String> taken = taken(c, aliases);
+        for (Row r : chunk) {
+            if (r.error != null || r.alias == null) continue;
+            if (taken.contains(r.alias)) r.error = "alias en uso: " + r.alias;
+            else r.code = r.alias;
+        }
+
+        int next = 0;
+        for (int round = 0; next < needCode.size(); round++) {
+            if (round == 10) throw new SQLException("No se pudieron generar códigos únicos para el bloque");
+            Set<String> candidates = new LinkedHashSet<>();
+            while (candidates.size() < needCode.size() - next) {
+                String code = UrlService.generateShortUrl();
+                if (!aliases.contains(code)) candidates.add(code);
+            }
+            candidates.removeAll(taken(c, candidates));
+            for (String code : candidates) {
+                needCode.get(next++).code = code;
+            }
+        }
+    }
+
+    // Códigos ya usados en la base o por un enlace anónimo en memoria (EphemeralLinkStore)
+    private static Set<String> taken(Connection c, Set<String> codes) throws SQLException {
+        Set<String> taken = existing(c, codes);
+        if (EphemeralLinkStore.ENABLED) {
+            for (String code : codes) {
+                if (EphemeralLinkStore.getInstance().contains(code)) taken.add(code);
+            }
+        }
+        return taken;
+    }
+
+    private static Set<String> existing(Connection c, Set<String> codes) throws SQLException {
+        Set<String> found = new HashSet<>();
+        if (codes.isEmpty()) return found;
+        try (PreparedStatement ps = c.prepareStatement("SELECT short_url FROM urls WHERE short_url = ANY(?)")) {
+            ps.setObject(1, codes.toArray(new String[0]));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) found.add(rs.getString(1));
+            }
+        }
+        return found;
+    }
+
+    private static final String INSERT = "INSERT INTO urls(original_url, short_url, access_count, user_id, created_at, url_hash) VALUES(?,?,0,?,?,?)";
+
+    private void insert(Connection c, List<Row> chunk) throws SQLException {
+        List<Row> valid = chunk.stream().filter(r -> r.error == null).toList();
+        if (valid.isEmpty()) return;
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        boolean batched = false;
+        c.setAutoCommit(false);
+        try (PreparedStatement ps = c.prepareStatement(INSERT)) {
+            for (Row r : valid) {
+                bind(ps, r, now);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            c.commit();
+            batched = true;
+        } catch (SQLException e) {
+            // Un código tomado entre la reserva y el insert invalida el batch entero:
+            // se reintenta fila a fila para aislar las que fallan
+            c.rollback();
+        } finally {
+            c.setAutoCommit(true);
+        }
+        // Fuera del try: un fallo al indexar no debe tomarse como un batch fallido
+        if (batched) {
+            UrlService.indexCodes(c, valid.stream().map(r -> r.code).toList());
+            return;
+        }
+        try (PreparedStatement ps = c.prepareStatement(INSERT)) {
+            for (Row r : valid) {
+                bind(ps, r, now);
+                try {
+                    ps.executeUpdate();
+                } catch (SQLException e) {
+                    r.error = "no se pudo insertar: " + e.getMessage();
+                }
+            }
+        }
+        UrlService.indexCodes(c, valid.stream().filter(r -> r.error == null).map(r -> r.code).toList());
+    }
+
+    private static void bind(PreparedStatement ps, Row r, Timestamp now) throws SQLException {
+        ps.setString(1, r.url.trim());
+        ps.setString(2, r.code);
+        if (r.ownerId == null) ps.setNull(3, Types.BIGINT); else ps.setLong(3, r.ownerId);
+        ps.setTimestamp(4, now);
+        ps.setLong(5, UrlNormalizer.hash(r.url));
+    }
+
+    private interface RecordReader {
+        /** Siguiente registro o null al final del archivo. */
+        Row next(long record) throws IOException;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    // Un objeto JSON por línea; las líneas vacías se ignoran
+    private static final class NdjsonReader implements RecordReader {
+        private final BufferedReader reader;
+
+        NdjsonReader(Reader reader) {
+            this.reader = (BufferedReader) reader;
+        }
+
+        @Override
+        public Row next(long record) throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                if (line == null) return null;
+            } while (line.isBlank());
+            try {
+                JsonNode node = MAPPER.readTree(line);
+                return new Row(record, text(node, "url", "originalUrl"), emptyToNull(text(node, "alias", "shortUrl")),
+                        emptyToNull(text(node, "owner", "username")));
+            } catch (IOException e) {
+                Row bad = new Row(record, null, null, null);
+                bad.error = "JSON inválido";
+                return bad;
+            }
+        }
+
+        private static String text(JsonNode node, String name, String alternative) {
+            JsonNode value = node.has(name) ? node.get(name) : node.get(alternative);
+            return value == null || value.isNull() ? null : value.asText();
+        }
+    }
+
+    // CSV (RFC 4180): campos entre comillas pueden contener comas, comillas dobladas y saltos de línea
+    private static final class CsvReader implements RecordReader {
+        private final Reader reader;
+        private int[] columns = {0, 1, 2}; // posiciones de url, alias y owner
+        private boolean headerChecked;
+
+        CsvReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Row next(long record) throws IOException {
+            List<String> fields = readRecord();
+            if (fields == null) return null;
+            if (!headerChecked) {
+                headerChecked = true;
+                if (isHeader(fields)) {
+                    fields = readRecord();
+                    if (fields == null) return null;
+                }
+            }
+            return new Row(record, field(fields, columns[0]), emptyToNull(field(fields, columns[1])), emptyToNull(field(fields, columns[2])));
+        }
+
+        private boolean isHeader(List<String> fields) {
+            int[] found = {-1, -1, -1};
+            for (int i = 0; i < fields.size(); i++) {
+                switch (fields.get(i).trim().toLowerCase()) {
+                    case "url", "originalurl" -> found[0] = i;
+                    case "alias", "shorturl" -> found[1] = i;
+                    case "owner", "username" -> found[2] = i;
+                    default -> { }
+                }
+            }
+            if (found[0] < 0) return false;
+            columns = found;
+            return true;
+        }
+
+        private static String field(List<String> fields, int index) {
+            return index >= 0 && index < fields.size() ? fields.get(index) : null;
+        }
+
+        private List<String> readRecord() throws IOException {
+            List<String> fields = new ArrayList<>();
+            StringBuilder sb = new StringBuilder();
+            boolean quoted = false;
+            boolean any = false;
+            int ch;
+            while ((ch = reader.read()) != -1) {
+                any = true;
+                if (quoted) {
+                    if (ch == '"') {
+                        reader.mark(1);
+                        int after = reader.read();
+                        if (after == '"') {
+                            sb.append('"');
+                        } else {
+                            quoted = false;
+                            if (after != -1) reader.reset();
+                        }
+                    } else {
+                        sb.append((char) ch);
+                    }
+                } else if (ch == '"') {
+                    quoted = true;
+                } else if (ch == ',') {
+                    fields.add(sb.toString());
+                    sb.setLength(0);
+                } else if (ch == '\n') {
+                    if (fields.isEmpty() && sb.isEmpty()) continue; // línea vacía
+                    break;
+                } else if (ch != '\r') {
+                    sb.append((char) ch);
+                }
+            }
+            if (!any || (ch == -1 && fields.isEmpty() && sb.isEmpty())) return null;
+            fields.add(sb.toString());
+            return fields;
+        }
+    }
+}
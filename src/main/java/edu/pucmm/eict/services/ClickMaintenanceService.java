@@ -0,0 +1,155 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.util.AppConfig;
+import edu.pucmm.eict.util.ClickPartitions;
+import edu.pucmm.eict.util.Database;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mantenimiento periódico de las particiones de accesos:
+ * - Retención: elimina particiones completas más antiguas que APP_CLICK_RETENTION_DAYS.
+ * - Compactación: las particiones más antiguas que APP_CLICK_COMPACT_AFTER_DAYS se resumen
+ *   en access_rollups (conteos por URL, día, navegador, plataforma y dominio) y se eliminan.
+ * Un valor de 0 desactiva la política correspondiente. Tras cualquier cambio se invalida
+ * AnalyticsStore, que de otro modo seguiría sirviendo lo que cargó antes.
+ */
+public class ClickMaintenanceService {
+
+    private final DataSource analyticsDs;
+    private final ClickPartitions partitions;
+    private final AnalyticsStore store;
+    private final int retentionDays;
+    private final int compactAfterDays;
+
+    public ClickMaintenanceService() {
+        this(Database.getAnalyticsDataSource(), Database.getClickPartitions(), AnalyticsStore.getInstance(),
+                AppConfig.getInt("APP_CLICK_RETENTION_DAYS", 0), AppConfig.getInt("APP_CLICK_COMPACT_AFTER_DAYS", 0));
+    }
+
+    ClickMaintenanceService(DataSource analyticsDs, ClickPartitions partitions, AnalyticsStore store,
+                            int retentionDays, int compactAfterDays) {
+        this.analyticsDs = analyticsDs;
+        this.partitions = partitions;
+        this.store = store;
+        this.retentionDays = retentionDays;
+        this.compactAfterDays = compactAfterDays;
+    }
+
+    public void start() {
+        if (retentionDays <= 0 && compactAfterDays <= 0) return;
+        long everyMinutes = AppConfig.getLong("APP_CLICK_MAINTENANCE_MINUTES", 60);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "click-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                runOnce(LocalDate.now());
+            } catch (RuntimeException e) {
+                System.err.println("[CLICKS] Error en mantenimiento de particiones: " + e.getMessage());
+            }
+        }, 1, everyMinutes, TimeUnit.MINUTES);
+    }
+
+    public void runOnce(LocalDate today) {
+        int dropped = applyRetention(today);
+        int compacted = compact(today);
+        if (dropped > 0 || compacted > 0) {
+            System.out.println("[CLICKS] Particiones eliminadas: " + dropped + ", compactadas: " + compacted);
+        }
+    }
+
+    // Elimina particiones cuyo rango termina antes del límite de retención
+    public int applyRetention(LocalDate today) {
+        if (retentionDays <= 0) return 0;
+        LocalDate limit = today.minusDays(retentionDays);
+        int dropped = 0;
+        for (ClickPartitions.Partition p : partitions.list()) {
+            if (!p.end().isAfter(limit)) {
+                partitions.drop(p);
+                dropped++;
+            }
+        }
+        int deletedRollups;
+        try (Connection c = analyticsDs.getConnection()) {
+            try (PreparedStatement ps = c.prepareStatement("DELETE FROM access_rollups WHERE day < ?")) {
+                ps.setDate(1, Date.valueOf(limit));
+                deletedRollups = ps.executeUpdate();
+            }
+            // Los sketches diarios de visitantes siguen la misma retención
+            try (PreparedStatement ps = c.prepareStatement("DELETE FROM visitor_sketches WHERE day < ?")) {
+                ps.setDate(1, Date.valueOf(limit));
+                ps.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        if (dropped > 0 || deletedRollups > 0) store.invalidateAll();
+        return dropped;
+    }
+
+    // Resume en access_rollups las particiones antiguas y luego las elimina
+    public int compact(LocalDate today) {
+        if (compactAfterDays <= 0) return 0;
+        LocalDate limit = today.minusDays(compactAfterDays);
+        int compacted = 0;
+        for (ClickPartitions.Partition p : partitions.list()) {
+            if (p.end().isAfter(limit)) break; // lista ordenada: el resto es más reciente
+            try {
+                rollup(p);
+            } catch (SQLException e) {
+                throw new RuntimeException("Error compacting partition " + p.table(), e);
+            }
+            partitions.drop(p);
+            unmark(p);
+            compacted++;
+        }
+        if (compacted > 0) store.invalidateAll();
+        return compacted;
+    }
+
+    private void unmark(ClickPartitions.Partition p) {
+        try (Connection c = analyticsDs.getConnection();
+             PreparedStatement ps = c.prepareStatement("DELETE FROM compacted_partitions WHERE table_name = ?")) {
+            ps.setString(1, p.table());
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void rollup(ClickPartitions.Partition p) throws SQLException {
+        try (Connection c = analyticsDs.getConnection()) {
+            c.setAutoCommit(false);
+            // compacted_partitions evita duplicar resúmenes si se cae entre el INSERT y el DROP
+            try (PreparedStatement chk = c.prepareStatement("SELECT 1 FROM compacted_partitions WHERE table_name = ?")) {
+                chk.setString(1, p.table());
+                try (ResultSet rs = chk.executeQuery()) {
+                    if (rs.next()) return;
+                }
+            }
+            try (Statement st = c.createStatement()) {
+                st.executeUpdate("INSERT INTO access_rollups(url_id, day, browser_id, platform_id, domain_id, hits) " +
+                        "SELECT url_id, CAST(timestamp AS DATE), browser_id, platform_id, domain_id, COUNT(*) FROM " + p.table() +
+                        " GROUP BY url_id, CAST(timestamp AS DATE), browser_id, platform_id, domain_id");
+            }
+            try (PreparedStatement mark = c.prepareStatement("INSERT INTO compacted_partitions(table_name) VALUES(?)")) {
+                mark.setString(1, p.table());
+                mark.executeUpdate();
+            }
+            c.commit();
+        }
+    }
+}
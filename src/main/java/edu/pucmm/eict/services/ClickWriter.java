@@ -0,0 +1,363 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.modelos.AccessDetail;
+import edu.pucmm.eict.util.AppConfig;
+import edu.pucmm.eict.util.ClickPartitions;
+import edu.pucmm.eict.util.Database;
+import edu.pucmm.eict.util.DimensionDictionary;
+import edu.pucmm.eict.util.AppEvents;
+import edu.pucmm.eict.util.IpCodec;
+import edu.pucmm.eict.util.Metrics;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Persistencia diferida de clics hacia la base de analítica.
+ * Los accesos se encolan desde la ruta de redirección y un hilo en segundo plano
+ * los escribe por lotes: un UPDATE de access_count por URL y un INSERT por lotes
+ * en la partición de access_details que corresponda. Como los accesos viven en otra
+ * base, la relación con urls se valida aquí: los clics de URLs que ya no existen
+ * se descartan.
+ */
+public class ClickWriter {
+
+    private static ClickWriter instance;
+
+    private final DataSource ds;
+    private final DataSource analyticsDs;
+    private final ClickPartitions partitions;
+    private final DimensionDictionary dimensions;
+    private final BlockingQueue<PendingClick> queue;
+    private final int batchSize;
+    private final long flushMillis;
+    // Serializa las escrituras entre el hilo de fondo y flush()
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Clics encolados que aún no terminaron de escribirse (incluye el lote que el hilo de fondo
+    // ya sacó de la cola): flush() espera a que llegue a 0
+    private final AtomicInteger unwritten = new AtomicInteger();
+    private final Condition batchDone = writeLock.newCondition();
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long FLUSH_WAIT_MILLIS = 10_000;
+
+    record PendingClick(long urlId, AccessDetail detail) {
+    }
+
+    /** Recibe cada clic ya confirmado en la base; se invoca dentro del lock de escritura. */
+    public interface Listener {
+        void onPersisted(long urlId, AccessDetail detail);
+
+        /** Al terminar de notificar un lote (para guardar de una vez lo acumulado). */
+        default void afterBatch() {
+        }
+    }
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private static final Metrics.Timer DB_QUERIES = Metrics.timer("db_query_seconds",
+            "Duración de consultas a la base en caminos calientes", "query");
+    private static final Metrics.Counter PERSISTED = Metrics.counter("clicks_persisted_total", "Clics escritos en la base");
+    private static final Metrics.Counter EXPIRED = Metrics.counter("clicks_expired_total",
+            "Clics tardíos cuyo detalle no se guardó por estar fuera de la retención");
+
+    public static synchronized ClickWriter getInstance() {
+        if (instance == null) {
+            instance = new ClickWriter(Database.getDataSource(), Database.getAnalyticsDataSource(),
+                    Database.getClickPartitions(), Database.getDimensions());
+            instance.start();
+            ClickWriter writer = instance;
+            Metrics.gauge("click_queue_depth", "Clics en cola esperando escritura", writer::pending);
+        }
+        return instance;
+    }
+
+    ClickWriter(DataSource ds, DataSource analyticsDs, ClickPartitions partitions, DimensionDictionary dimensions) {
+        this.ds = ds;
+        this.analyticsDs = analyticsDs;
+        this.partitions = partitions;
+        this.dimensions = dimensions;
+        this.queue = new ArrayBlockingQueue<>(AppConfig.getInt("APP_CLICK_QUEUE_CAPACITY", 10000));
+        this.batchSize = AppConfig.getInt("APP_CLICK_BATCH_SIZE", 500);
+        this.flushMillis = AppConfig.getLong("APP_CLICK_FLUSH_MS", 200);
+    }
+
+    private void start() {
+        Thread worker = new Thread(this::run, "click-writer");
+        worker.setDaemon(true);
+        worker.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "click-writer-flush"));
+    }
+
+    /**
+     * Encola un clic. Si la cola está llena se escribe en el hilo actual
+     * (contrapresión) en lugar de descartar el acceso.
+     */
+    public void enqueue(long urlId, AccessDetail detail) {
+        PendingClick click = new PendingClick(urlId, detail);
+        unwritten.incrementAndGet();
+        if (!queue.offer(click)) {
+            unwritten.decrementAndGet();
+            writeLock.lock();
+            try {
+                write(List.of(click));
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Escribe de inmediato todo lo pendiente (usado al apagar y en pruebas). Si el hilo de fondo
+     * ya sacó un lote de la cola, espera a que lo termine de escribir.
+     */
+    public void flush() {
+        writeLock.lock();
+        try {
+            List<PendingClick> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                try {
+                    write(batch);
+                } finally {
+                    unwritten.addAndGet(-batch.size());
+                    batch.clear();
+                }
+            }
+            long remaining = TimeUnit.MILLISECONDS.toNanos(FLUSH_WAIT_MILLIS);
+            while (unwritten.get() > 0 && remaining > 0) {
+                remaining = batchDone.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Ejecuta la acción sin lotes en curso: quien carga accesos desde la base bajo este lock
+     * ve cada clic exactamente una vez (en la base o por notificación posterior).
+     */
+    public <T> T withWriteLock(Supplier<T> action) {
+        writeLock.lock();
+        try {
+            return action.get();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int pending() {
+        return queue.size();
+    }
+
+    private void run() {
+        List<PendingClick> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                PendingClick first = queue.poll(flushMillis, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                persist(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (!batch.isEmpty()) {
+                    writeLock.lock();
+                    try {
+                        unwritten.addAndGet(-batch.size());
+                        batchDone.signalAll();
+                    } finally {
+                        writeLock.unlock();
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    // Un lote fallido no dejó nada aplicado (ver write): se reintenta y, si sigue fallando, se descarta entero
+    private void persist(List<PendingClick> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            writeLock.lock();
+            try {
+                write(batch);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    System.err.println("[CLICKS] Se descarta un lote de " + batch.size() + " clics tras "
+                            + attempt + " intentos: " + e.getMessage());
+                    return;
+                }
+                System.err.println("[CLICKS] Error al persistir lote de " + batch.size() + " clics (intento "
+                        + attempt + "), se reintenta: " + e.getMessage());
+            } finally {
+                writeLock.unlock();
+            }
+            Thread.sleep(100L << (2 * attempt));
+        }
+    }
+
+    private void write(List<PendingClick> batch) {
+        if (batch.isEmpty()) return;
+        // Agrupar por URL: un solo UPDATE por enlace en el lote
+        Map<Long, Integer> countsByUrl = new LinkedHashMap<>();
+        for (PendingClick click : batch) {
+            countsByUrl.merge(click.urlId(), 1, Integer::sum);
+        }
+        AppEvents.ClicksPersisted event = new AppEvents.ClicksPersisted();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            Set<Long> existing = incrementAccessCounts(countsByUrl);
+            try {
+                insertDetails(batch, existing);
+            } catch (SQLException | RuntimeException e) {
+                // Los contadores ya se confirmaron en la otra base: se revierten para que el lote
+                // quede sin aplicar y pueda reintentarse sin contar dos veces
+                revertAccessCounts(countsByUrl, existing);
+                throw e;
+            }
+            DB_QUERIES.recordSince(start, "click_batch");
+            PERSISTED.add(batch.size());
+            event.end();
+            if (event.shouldCommit()) {
+                event.batchSize = batch.size();
+                event.urls = countsByUrl.size();
+                event.commit();
+            }
+            notifyListeners(batch, existing);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void notifyListeners(List<PendingClick> batch, Set<Long> existing) {
+        for (Listener listener : listeners) {
+            for (PendingClick click : batch) {
+                if (!existing.contains(click.urlId())) continue;
+                try {
+                    listener.onPersisted(click.urlId(), click.detail());
+                } catch (RuntimeException e) {
+                    System.err.println("[CLICKS] Error notificando clic persistido: " + e.getMessage());
+                }
+            }
+            try {
+                listener.afterBatch();
+            } catch (RuntimeException e) {
+                System.err.println("[CLICKS] Error cerrando lote en listener: " + e.getMessage());
+            }
+        }
+    }
+
+    // Devuelve los ids que realmente existen en urls y no están marcados como borrados
+    // (integridad referencial a nivel de aplicación). Todo el lote va en una transacción: si
+    // falla no queda ningún contador a medias
+    private Set<Long> incrementAccessCounts(Map<Long, Integer> countsByUrl) throws SQLException {
+        Set<Long> existing = new HashSet<>();
+        try (Connection c = ds.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement up = c.prepareStatement("UPDATE urls SET access_count = access_count + ? WHERE id = ? AND deleted_at IS NULL")) {
+                List<Long> ids = new ArrayList<>(countsByUrl.keySet());
+                for (Long id : ids) {
+                    up.setInt(1, countsByUrl.get(id));
+                    up.setLong(2, id);
+                    up.addBatch();
+                }
+                int[] updated = up.executeBatch();
+                for (int i = 0; i < updated.length; i++) {
+                    if (updated[i] != 0) existing.add(ids.get(i));
+                }
+                c.commit();
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+        return existing;
+    }
+
+    private void revertAccessCounts(Map<Long, Integer> countsByUrl, Set<Long> existing) {
+        if (existing.isEmpty()) return;
+        try (Connection c = ds.getConnection();
+             PreparedStatement down = c.prepareStatement("UPDATE urls SET access_count = access_count - ? WHERE id = ?")) {
+            c.setAutoCommit(false);
+            for (Long id : existing) {
+                down.setInt(1, countsByUrl.get(id));
+                down.setLong(2, id);
+                down.addBatch();
+            }
+            down.executeBatch();
+            c.commit();
+        } catch (SQLException e) {
+            System.err.println("[CLICKS] No se pudieron revertir los contadores de " + existing.size()
+                    + " enlaces; access_count queda por encima de los accesos guardados: " + e.getMessage());
+        }
+    }
+
+    private void insertDetails(List<PendingClick> batch, Set<Long> existing) throws SQLException {
+        if (existing.isEmpty()) return;
+        // Agrupar por partición de tiempo: un INSERT por lotes por tabla
+        Map<String, List<PendingClick>> byPartition = new LinkedHashMap<>();
+        for (PendingClick click : batch) {
+            if (!existing.contains(click.urlId())) continue;
+            String table = partitions.tableFor(click.detail().getTimestamp().getTime());
+            if (table == null) {
+                // Clic tardío de un periodo ya eliminado por retención: cuenta, pero sin detalle
+                EXPIRED.inc();
+                continue;
+            }
+            byPartition.computeIfAbsent(table, t -> new ArrayList<>()).add(click);
+        }
+        try (Connection c = analyticsDs.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                insertDetails(c, byPartition);
+                c.commit();
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void insertDetails(Connection c, Map<String, List<PendingClick>> byPartition) throws SQLException {
+        for (Map.Entry<String, List<PendingClick>> entry : byPartition.entrySet()) {
+            String ins = "INSERT INTO " + entry.getKey() + "(" + ClickPartitions.COLUMNS + ") VALUES(?,?,?,?,?,?)";
+            try (PreparedStatement ps = c.prepareStatement(ins)) {
+                for (PendingClick click : entry.getValue()) {
+                    AccessDetail detail = click.detail();
+                    ps.setLong(1, click.urlId());
+                    ps.setTimestamp(2, new Timestamp(detail.getTimestamp().getTime()));
+                    ps.setInt(3, dimensions.idOf(DimensionDictionary.Kind.BROWSER, detail.getBrowser()));
+                    ps.setInt(4, dimensions.idOf(DimensionDictionary.Kind.PLATFORM, detail.getPlatform()));
+                    ps.setInt(5, dimensions.idOf(DimensionDictionary.Kind.DOMAIN, detail.getClientDomain()));
+                    ps.setBytes(6, IpCodec.encode(detail.getIp()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+}
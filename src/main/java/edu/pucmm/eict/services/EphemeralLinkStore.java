@@ -0,0 +1,264 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.modelos.Url;
+import edu.pucmm.eict.modelos.Usuario;
+import edu.pucmm.eict.util.AppConfig;
+import edu.pucmm.eict.util.Metrics;
+import edu.pucmm.eict.util.TimingWheel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Enlaces de usuarios anónimos en memoria (APP_EPHEMERAL_LINKS=true). Viven una hora y
+ * se crean y resuelven sin tocar H2; el vencimiento lo lleva una rueda de tiempo
+ * jerárquica que avanza cada segundo. Sus clics solo se cuentan aquí (no tienen fila
+ * en urls ni estadísticas detalladas).
+ * Con APP_EPHEMERAL_SNAPSHOT=ruta el contenido se guarda periódicamente y al apagar,
+ * y se recarga al iniciar descartando lo ya vencido.
+ */
+public class EphemeralLinkStore {
+
+    public static final boolean ENABLED = AppConfig.getBoolean("APP_EPHEMERAL_LINKS", false);
+
+    // Más largos que los códigos generados por H2 (6); aun así un alias importado o un código
+    // renombrado puede tener 8 caracteres, por eso create consulta también a quien los guarda
+    private static final int CODE_LENGTH = 8;
+    private static final String CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static EphemeralLinkStore instance;
+
+    private static final class Entry {
+        final String code;
+        final String originalUrl;
+        final String owner;
+        final long createdAt;
+        final long expiresAt;
+        final AtomicInteger hits;
+
+        Entry(String code, String originalUrl, String owner, long createdAt, long expiresAt, int hits) {
+            this.code = code;
+            this.originalUrl = originalUrl;
+            this.owner = owner;
+            this.createdAt = createdAt;
+            this.expiresAt = expiresAt;
+            this.hits = new AtomicInteger(hits);
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> links = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> byOwner = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+    private final TimingWheel<String> wheel;
+    private final Path snapshot;
+
+    EphemeralLinkStore(LongSupplier clock, Path snapshot) {
+        this.clock = clock;
+        this.wheel = new TimingWheel<>(1000, 3, clock.getAsLong());
+        this.snapshot = snapshot;
+        if (snapshot != null) load();
+    }
+
+    private void start() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ephemeral-expiry");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::advance, 1, 1, TimeUnit.SECONDS);
+        if (snapshot != null) {
+            long every = AppConfig.getLong("APP_EPHEMERAL_SNAPSHOT_SECONDS", 60);
+            scheduler.scheduleWithFixedDelay(this::save, every, every, TimeUnit.SECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::save, "ephemeral-snapshot"));
+        }
+    }
+
+    public static synchronized EphemeralLinkStore getInstance() {
+        if (instance == null) {
+            String path = AppConfig.get("APP_EPHEMERAL_SNAPSHOT", null);
+            instance = new EphemeralLinkStore(System::currentTimeMillis, path != null ? Paths.get(path) : null);
+            instance.start();
+            Metrics.gauge("ephemeral_links", "Enlaces efímeros vivos en memoria", instance::size);
+        }
+        return instance;
+    }
+
+    /**
+     * Crea el enlace con un código libre aquí y para takenElsewhere (los códigos de la base).
+     * El código se reserva antes de consultar: quien compruebe contains() mientras tanto ya lo ve.
+     */
+    public Url create(String originalUrl, String owner, long ttlMillis, Predicate<String> takenElsewhere) {
+        long now = clock.getAsLong();
+        while (true) {
+            Entry entry = new Entry(randomCode(), originalUrl, owner, now, now + ttlMillis, 0);
+            if (links.putIfAbsent(entry.code, entry) != null) continue;
+            if (takenElsewhere.test(entry.code)) {
+                links.remove(entry.code, entry);
+                continue;
+            }
+            index(entry);
+            return toUrl(entry);
+        }
+    }
+
+    /** El enlace vigente con ese código, o null. */
+    public Url get(String code) {
+        Entry entry = live(code);
+        return entry != null ? toUrl(entry) : null;
+    }
+
+    public boolean contains(String code) {
+        return live(code) != null;
+    }
+
+    public boolean recordAccess(String code) {
+        Entry entry = live(code);
+        if (entry == null) return false;
+        entry.hits.incrementAndGet();
+        return true;
+    }
+
+    public boolean remove(String code) {
+        Entry entry = links.remove(code);
+        if (entry == null) return false;
+        unindex(entry);
+        return true;
+    }
+
+    /** Enlaces vigentes del dueño, del más reciente al más antiguo. */
+    public List<Url> listByOwner(String owner) {
+        Set<String> codes = byOwner.get(owner);
+        List<Url> result = new ArrayList<>();
+        if (codes == null) return result;
+        List<Entry> entries = new ArrayList<>();
+        for (String code : codes) {
+            Entry entry = live(code);
+            if (entry != null) entries.add(entry);
+        }
+        entries.sort(Comparator.comparingLong((Entry e) -> e.createdAt).reversed());
+        for (Entry entry : entries) result.add(toUrl(entry));
+        return result;
+    }
+
+    public int size() {
+        return links.size();
+    }
+
+    /** Avanza la rueda hasta ahora y elimina los enlaces vencidos (cada segundo en su hilo). */
+    void advance() {
+        wheel.advance(clock.getAsLong(), this::expire);
+    }
+
+    // El tick de la rueda es de 1 s: también se comprueba el plazo al leer
+    private Entry live(String code) {
+        Entry entry = links.get(code);
+        return entry != null && entry.expiresAt > clock.getAsLong() ? entry : null;
+    }
+
+    private void expire(String code) {
+        Entry entry = links.get(code);
+        // La rueda no cancela: el código pudo borrarse o reutilizarse
+        if (entry != null && entry.expiresAt <= clock.getAsLong() && links.remove(code, entry)) {
+            unindex(entry);
+        }
+    }
+
+    private void index(Entry entry) {
+        byOwner.computeIfAbsent(entry.owner, o -> ConcurrentHashMap.newKeySet()).add(entry.code);
+        wheel.schedule(entry.code, entry.expiresAt);
+    }
+
+    private void unindex(Entry entry) {
+        byOwner.computeIfPresent(entry.owner, (o, codes) -> {
+            codes.remove(entry.code);
+            return codes.isEmpty() ? null : codes;
+        });
+    }
+
+    private static String randomCode() {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        StringBuilder sb = new StringBuilder(CODE_LENGTH);
+        for (int i = 0; i < CODE_LENGTH; i++) sb.append(CHARS.charAt(rand.nextInt(CHARS.length())));
+        return sb.toString();
+    }
+
+    private static Url toUrl(Entry entry) {
+        Url url = new Url(entry.originalUrl, entry.code);
+        Usuario user = new Usuario();
+        user.setUsername(entry.owner);
+        user.setRole("anonymous");
+        url.setUser(user);
+        url.setAccessCount(entry.hits.get());
+        url.setCreatedAt(new java.util.Date(entry.createdAt));
+        url.setExpiresAt(new java.util.Date(entry.expiresAt));
+        return url;
+    }
+
+    private synchronized void save() {
+        Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            List<Entry> entries = new ArrayList<>(links.values());
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(entries.size());
+            for (Entry e : entries) {
+                out.writeUTF(e.code);
+                out.writeUTF(e.originalUrl);
+                out.writeUTF(e.owner);
+                out.writeLong(e.createdAt);
+                out.writeLong(e.expiresAt);
+                out.writeInt(e.hits.get());
+            }
+        } catch (IOException e) {
+            System.err.println("[EPHEMERAL] No se pudo guardar el snapshot: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("[EPHEMERAL] No se pudo reemplazar el snapshot: " + e.getMessage());
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(snapshot)) return;
+        long now = clock.getAsLong();
+        int loaded = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                System.err.println("[EPHEMERAL] Versión de snapshot desconocida, se ignora");
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readUTF(), in.readUTF(), in.readLong(), in.readLong(), in.readInt());
+                if (entry.expiresAt <= now) continue;
+                links.put(entry.code, entry);
+                index(entry);
+                loaded++;
+            }
+        } catch (IOException e) {
+            System.err.println("[EPHEMERAL] Snapshot ilegible: " + e.getMessage());
+        }
+        System.out.println("[EPHEMERAL] " + loaded + " enlaces anónimos recuperados del snapshot");
+    }
+}
@@ -0,0 +1,175 @@
+package edu.pucmm.eict.services;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import edu.pucmm.eict.util.AccessCursor;
+import edu.pucmm.eict.util.ClickPartitions;
+import edu.pucmm.eict.util.Database;
+import edu.pucmm.eict.util.DimensionDictionary;
+import edu.pucmm.eict.util.IpCodec;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+
+/**
+ * Exportación de clics crudos en NDJSON o CSV. Las filas se leen con un ResultSet de solo
+ * avance (consulta perezosa de H2) y se escriben directamente en la salida, así que la memoria
+ * no depende de cuántos clics tenga el enlace o la cuenta. El orden es cronológico y cada fila
+ * lleva el cursor que permite retomar la exportación a partir de ella.
+ */
+public class ExportService {
+
+    public enum Format { NDJSON, CSV }
+
+    private static final String[] COLUMNS = {"shortUrl", "timestamp", "browser", "platform", "domain", "ip", "cursor"};
+
+    private final DataSource analyticsDs;
+    private final ClickPartitions partitions;
+    private final DimensionDictionary dimensions;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    public ExportService() {
+        this.analyticsDs = Database.getAnalyticsDataSource();
+        this.partitions = Database.getClickPartitions();
+        this.dimensions = Database.getDimensions();
+    }
+
+    /**
+     * Escribe los clics de las URLs indicadas (id -> código corto) con marca de tiempo en
+     * [from, to), posteriores al cursor si se indica. Devuelve la cantidad de filas escritas.
+     */
+    public long export(Map<Long, String> urls, long from, long to, AccessCursor after, Format format, OutputStream out) throws IOException {
+        if (urls.isEmpty()) return 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        RowWriter rows = format == Format.CSV ? new CsvWriter(writer) : new NdjsonWriter(writer);
+        long written = 0;
+        LocalDate fromDay = Instant.ofEpochMilli(from).atZone(zone).toLocalDate();
+        LocalDate toDay = Instant.ofEpochMilli(to - 1).atZone(zone).toLocalDate();
+        try (Connection c = analyticsDs.getConnection()) {
+            // Sin esto H2 materializa el resultado completo antes de devolver la primera fila
+            try (Statement st = c.createStatement()) {
+                st.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            }
+            for (ClickPartitions.Partition p : partitions.list()) {
+                if (!p.end().isAfter(fromDay) || p.start().isAfter(toDay)) continue;
+                String q = "SELECT id, url_id, timestamp, browser_id, platform_id, domain_id, ip FROM " + p.table() +
+                        " WHERE url_id = ANY(?) AND timestamp >= ? AND timestamp < ?" +
+                        (after != null ? " AND (timestamp > ? OR (timestamp = ? AND id > ?))" : "") +
+                        " ORDER BY timestamp, id";
+                try (PreparedStatement ps = c.prepareStatement(q, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    ps.setObject(1, urls.keySet().toArray(new Long[0]));
+                    ps.setTimestamp(2, new Timestamp(from));
+                    ps.setTimestamp(3, new Timestamp(to));
+                    if (after != null) {
+                        Timestamp ts = new Timestamp(after.timestamp());
+                        ps.setTimestamp(4, ts);
+                        ps.setTimestamp(5, ts);
+                        ps.setLong(6, after.id());
+                    }
+                    ps.setFetchSize(1000);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            long ts = rs.getTimestamp(3).getTime();
+                            rows.write(new String[]{
+                                    urls.get(rs.getLong(2)),
+                                    Instant.ofEpochMilli(ts).toString(),
+                                    dimensions.valueOf(rs.getInt(4)),
+                                    dimensions.valueOf(rs.getInt(5)),
+                                    dimensions.valueOf(rs.getInt(6)),
+                                    IpCodec.decode(rs.getBytes(7)),
+                                    new AccessCursor(ts, rs.getLong(1)).encode()
+                            });
+                            written++;
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        rows.finish();
+        return written;
+    }
+
+    private interface RowWriter {
+        void write(String[] values) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    // Un objeto JSON por línea
+    private static final class NdjsonWriter implements RowWriter {
+        private final JsonGenerator json;
+        private boolean empty = true;
+
+        NdjsonWriter(Writer writer) throws IOException {
+            this.json = new JsonFactory().createGenerator(writer);
+            this.json.setRootValueSeparator(new SerializedString("\n"));
+        }
+
+        @Override
+        public void write(String[] values) throws IOException {
+            json.writeStartObject();
+            for (int i = 0; i < COLUMNS.length; i++) {
+                json.writeStringField(COLUMNS[i], values[i]);
+            }
+            json.writeEndObject();
+            empty = false;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (!empty) json.writeRaw('\n');
+            json.flush();
+        }
+    }
+
+    // CSV con encabezado; comillas solo donde hacen falta (RFC 4180)
+    private static final class CsvWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write(String.join(",", COLUMNS));
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void write(String[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) writer.write(',');
+                writer.write(escape(values[i]));
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+
+        private static String escape(String value) {
+            if (value == null) return "";
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.util.HeavyHitters;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Enlaces más visitados "ahora mismo" en ventanas de 1 minuto, 1 hora y 24 horas.
+ * Se alimenta desde la ruta de redirección sin tocar la base de datos.
+ */
+public class HotLinkService {
+
+    private static HotLinkService instance;
+
+    private final Map<String, HeavyHitters> windows = new LinkedHashMap<>();
+
+    public static synchronized HotLinkService getInstance() {
+        if (instance == null) instance = new HotLinkService();
+        return instance;
+    }
+
+    HotLinkService() {
+        windows.put("1m", new HeavyHitters(12, 5_000L, 2048, 256));
+        windows.put("1h", new HeavyHitters(12, 300_000L, 2048, 256));
+        windows.put("24h", new HeavyHitters(24, 3_600_000L, 2048, 256));
+    }
+
+    public void record(String shortUrl) {
+        long now = System.currentTimeMillis();
+        for (HeavyHitters hh : windows.values()) {
+            hh.add(shortUrl, now);
+        }
+    }
+
+    /** Top k de la ventana indicada ("1m", "1h" o "24h"); null si la ventana no existe. */
+    public List<HeavyHitters.Hit> top(String window, int k) {
+        HeavyHitters hh = windows.get(window);
+        return hh == null ? null : hh.top(k, System.currentTimeMillis());
+    }
+
+    public boolean hasWindow(String window) {
+        return windows.containsKey(window);
+    }
+
+    /** Nombres de las ventanas, de la más corta a la más larga. */
+    public List<String> windowNames() {
+        return List.copyOf(windows.keySet());
+    }
+
+    /**
+     * Vuelve a cargar el top de una ventana guardado hace ageMillis (al reiniciar). Los conteos
+     * quedan en el intervalo actual; si el snapshot ya es más viejo que la ventana se ignora.
+     */
+    public void restore(String window, List<HeavyHitters.Hit> hits, long ageMillis) {
+        HeavyHitters hh = windows.get(window);
+        if (hh == null || ageMillis >= hh.spanMillis()) return;
+        long now = System.currentTimeMillis();
+        for (HeavyHitters.Hit hit : hits) hh.add(hit.key(), now, hit.count());
+    }
+}
@@ -0,0 +1,149 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.util.ClickPartitions;
+import edu.pucmm.eict.util.Database;
+import edu.pucmm.eict.util.DimensionDictionary;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Series de accesos de un enlace agrupadas por intervalo de tiempo (minuto, hora o día)
+ * y opcionalmente por navegador, plataforma o dominio. La agregación la hace la base
+ * (índice (url_id, timestamp) de cada partición) y los puntos se entregan uno a uno,
+ * en orden cronológico, para poder escribirlos en la respuesta sin acumularlos.
+ * Los periodos compactados (access_rollups) solo tienen resolución diaria: sus conteos
+ * se asignan al inicio del día aunque se pida minuto u hora.
+ */
+public class StatsService {
+
+    private static final String UNKNOWN = "Desconocido";
+
+    public enum Bucket {
+        MINUTE("MINUTE"), HOUR("HOUR"), DAY("DAY");
+
+        final String sqlUnit;
+
+        Bucket(String sqlUnit) {
+            this.sqlUnit = sqlUnit;
+        }
+    }
+
+    public enum Dimension {
+        BROWSER("browser_id"), PLATFORM("platform_id"), DOMAIN("domain_id");
+
+        final String column;
+
+        Dimension(String column) {
+            this.column = column;
+        }
+    }
+
+    @FunctionalInterface
+    public interface PointConsumer {
+        /** groups es null si no se pidió agrupación. */
+        void accept(long bucketStart, long total, Map<String, Long> groups) throws IOException;
+    }
+
+    private final DataSource analyticsDs;
+    private final ClickPartitions partitions;
+    private final DimensionDictionary dimensions;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    public StatsService() {
+        this(Database.getAnalyticsDataSource(), Database.getClickPartitions(), Database.getDimensions());
+    }
+
+    StatsService(DataSource analyticsDs, ClickPartitions partitions, DimensionDictionary dimensions) {
+        this.analyticsDs = analyticsDs;
+        this.partitions = partitions;
+        this.dimensions = dimensions;
+    }
+
+    /** Recorre los accesos de la URL con marca de tiempo en [from, to). */
+    public void series(long urlId, long from, long to, Bucket bucket, Dimension groupBy, PointConsumer out) throws IOException {
+        Accumulator acc = new Accumulator(groupBy != null, out);
+        String group = groupBy != null ? groupBy.column : "0";
+        LocalDate fromDay = Instant.ofEpochMilli(from).atZone(zone).toLocalDate();
+        // Último día que toca el rango (to es exclusivo)
+        LocalDate toDay = Instant.ofEpochMilli(to - 1).atZone(zone).toLocalDate();
+        try (Connection c = analyticsDs.getConnection()) {
+            // Los resúmenes corresponden a particiones ya eliminadas: son anteriores a las que quedan
+            String rollups = "SELECT CAST(day AS TIMESTAMP) AS b, " + group + " AS g, SUM(hits) FROM access_rollups " +
+                    "WHERE url_id = ? AND day >= ? AND day <= ? GROUP BY b, g ORDER BY b, g";
+            try (PreparedStatement ps = c.prepareStatement(rollups)) {
+                ps.setLong(1, urlId);
+                ps.setDate(2, java.sql.Date.valueOf(fromDay));
+                ps.setDate(3, java.sql.Date.valueOf(toDay));
+                read(ps, acc);
+            }
+            for (ClickPartitions.Partition p : partitions.list()) {
+                if (!p.end().isAfter(fromDay) || p.start().isAfter(toDay)) continue;
+                String q = "SELECT DATE_TRUNC('" + bucket.sqlUnit + "', timestamp) AS b, " + group + " AS g, COUNT(*) FROM " + p.table() +
+                        " WHERE url_id = ? AND timestamp >= ? AND timestamp < ? GROUP BY b, g ORDER BY b, g";
+                try (PreparedStatement ps = c.prepareStatement(q)) {
+                    ps.setLong(1, urlId);
+                    ps.setTimestamp(2, new Timestamp(from));
+                    ps.setTimestamp(3, new Timestamp(to));
+                    read(ps, acc);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        acc.finish();
+    }
+
+    private void read(PreparedStatement ps, Accumulator acc) throws SQLException, IOException {
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                acc.add(rs.getTimestamp(1).getTime(), rs.getInt(2), rs.getLong(3));
+            }
+        }
+    }
+
+    // Junta las filas (intervalo, grupo, conteo) en un punto por intervalo
+    private final class Accumulator {
+        private final boolean grouped;
+        private final PointConsumer out;
+        private long bucket = Long.MIN_VALUE;
+        private long total;
+        private Map<String, Long> groups;
+
+        Accumulator(boolean grouped, PointConsumer out) {
+            this.grouped = grouped;
+            this.out = out;
+        }
+
+        void add(long bucketStart, int groupId, long count) throws IOException {
+            if (bucketStart != bucket) {
+                finish();
+                bucket = bucketStart;
+                total = 0;
+                groups = grouped ? new LinkedHashMap<>() : null;
+            }
+            total += count;
+            if (grouped) {
+                String name = dimensions.valueOf(groupId);
+                groups.merge(name != null ? name : UNKNOWN, count, Long::sum);
+            }
+        }
+
+        void finish() throws IOException {
+            if (bucket != Long.MIN_VALUE) {
+                out.accept(bucket, total, groups);
+                bucket = Long.MIN_VALUE;
+            }
+        }
+    }
+}
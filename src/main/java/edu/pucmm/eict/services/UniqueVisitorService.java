@@ -0,0 +1,311 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.modelos.AccessDetail;
+import edu.pucmm.eict.util.AppConfig;
+import edu.pucmm.eict.util.ClickPartitions;
+import edu.pucmm.eict.util.Database;
+import edu.pucmm.eict.util.HyperLogLog;
+import edu.pucmm.eict.util.IpCodec;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Visitantes únicos aproximados por enlace (HyperLogLog sobre la IP del clic).
+ * Se mantiene un sketch total por URL (columna urls.visitors_hll) y uno por URL y día
+ * (tabla visitor_sketches de la base de analítica). Se actualizan con cada lote que
+ * confirma ClickWriter y los modificados se guardan al terminar el lote, así que la base
+ * siempre está al día y las consultas solo leen unos bytes por enlace.
+ * Agregar la misma IP dos veces no cambia el sketch: reconstruirlo desde las particiones
+ * cuando falta es seguro aunque incluya clics ya contados.
+ */
+public class UniqueVisitorService implements ClickWriter.Listener {
+
+    private static UniqueVisitorService instance;
+
+    private final DataSource ds;
+    private final DataSource analyticsDs;
+    private final ClickPartitions partitions;
+    private final ClickWriter clickWriter;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final int maxCached;
+
+    record DayKey(long urlId, LocalDate day) {
+    }
+
+    // Sketches en memoria (LRU); los modificados no se descartan hasta guardarse
+    private final Set<Long> dirtyTotals = new HashSet<>();
+    private final Set<DayKey> dirtyDaily = new HashSet<>();
+    private final Map<Long, HyperLogLog> totals;
+    private final Map<DayKey, HyperLogLog> daily;
+
+    public static synchronized UniqueVisitorService getInstance() {
+        if (instance == null) {
+            instance = new UniqueVisitorService(Database.getDataSource(), Database.getAnalyticsDataSource(),
+                    Database.getClickPartitions(), ClickWriter.getInstance());
+            instance.init();
+            instance.clickWriter.addListener(instance);
+            instance.startBackfill();
+        }
+        return instance;
+    }
+
+    UniqueVisitorService(DataSource ds, DataSource analyticsDs, ClickPartitions partitions, ClickWriter clickWriter) {
+        this.ds = ds;
+        this.analyticsDs = analyticsDs;
+        this.partitions = partitions;
+        this.clickWriter = clickWriter;
+        this.maxCached = AppConfig.getInt("APP_VISITOR_SKETCH_CACHE", 5000);
+        this.totals = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, HyperLogLog> eldest) {
+                return size() > maxCached && !dirtyTotals.contains(eldest.getKey());
+            }
+        };
+        this.daily = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<DayKey, HyperLogLog> eldest) {
+                return size() > maxCached && !dirtyDaily.contains(eldest.getKey());
+            }
+        };
+    }
+
+    private void init() {
+        try (Connection c = analyticsDs.getConnection(); Statement st = c.createStatement()) {
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS visitor_sketches (\n" +
+                    "  url_id BIGINT NOT NULL,\n" +
+                    "  day DATE NOT NULL,\n" +
+                    "  sketch VARBINARY(2049) NOT NULL,\n" +
+                    "  PRIMARY KEY (url_id, day)\n" +
+                    ")");
+        } catch (SQLException e) {
+            throw new RuntimeException("Error initializing visitor sketches", e);
+        }
+    }
+
+    /** Estimación de visitantes únicos a partir del valor guardado en urls.visitors_hll. */
+    public static long estimate(byte[] sketch) {
+        return sketch == null ? 0 : HyperLogLog.fromBytes(sketch).estimate();
+    }
+
+    /** Visitantes únicos por día en [from, to] (días sin clics no aparecen). */
+    public Map<LocalDate, Long> uniqueVisitorsByDay(long urlId, LocalDate from, LocalDate to) {
+        Map<LocalDate, Long> result = new TreeMap<>();
+        try (Connection c = analyticsDs.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "SELECT day, sketch FROM visitor_sketches WHERE url_id = ? AND day BETWEEN ? AND ?")) {
+            ps.setLong(1, urlId);
+            ps.setDate(2, Date.valueOf(from));
+            ps.setDate(3, Date.valueOf(to));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.put(rs.getDate(1).toLocalDate(), estimate(rs.getBytes(2)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return result;
+    }
+
+    // Se invoca en el hilo de ClickWriter, dentro de su lock de escritura
+    @Override
+    public synchronized void onPersisted(long urlId, AccessDetail detail) {
+        byte[] ip = IpCodec.encode(detail.getIp());
+        if (ip == null) return;
+        long hash = HyperLogLog.hash64(ip);
+        LocalDate day = detail.getTimestamp().toInstant().atZone(zone).toLocalDate();
+
+        HyperLogLog total = totals.get(urlId);
+        if (total == null) {
+            total = loadTotal(urlId);
+            totals.put(urlId, total);
+        }
+        if (total.addHash(hash)) dirtyTotals.add(urlId);
+
+        DayKey key = new DayKey(urlId, day);
+        HyperLogLog sketch = daily.get(key);
+        if (sketch == null) {
+            sketch = loadDaily(key);
+            daily.put(key, sketch);
+        }
+        if (sketch.addHash(hash)) dirtyDaily.add(key);
+    }
+
+    @Override
+    public synchronized void afterBatch() {
+        if (dirtyTotals.isEmpty() && dirtyDaily.isEmpty()) return;
+        try {
+            if (!dirtyTotals.isEmpty()) {
+                try (Connection c = ds.getConnection();
+                     PreparedStatement ps = c.prepareStatement("UPDATE urls SET visitors_hll = ? WHERE id = ?")) {
+                    for (Long urlId : dirtyTotals) {
+                        ps.setBytes(1, totals.get(urlId).toBytes());
+                        ps.setLong(2, urlId);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+            if (!dirtyDaily.isEmpty()) {
+                try (Connection c = analyticsDs.getConnection();
+                     PreparedStatement ps = c.prepareStatement(
+                             "MERGE INTO visitor_sketches(url_id, day, sketch) KEY(url_id, day) VALUES(?,?,?)")) {
+                    for (DayKey key : dirtyDaily) {
+                        ps.setLong(1, key.urlId());
+                        ps.setDate(2, Date.valueOf(key.day()));
+                        ps.setBytes(3, daily.get(key).toBytes());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+        } catch (SQLException e) {
+            // Se descartan de memoria: al volver a usarse se reconstruyen desde la base
+            totals.keySet().removeAll(dirtyTotals);
+            daily.keySet().removeAll(dirtyDaily);
+            throw new RuntimeException(e);
+        } finally {
+            dirtyTotals.clear();
+            dirtyDaily.clear();
+        }
+    }
+
+    /** Olvida los sketches de una URL eliminada (las filas se borran junto con sus accesos). */
+    public synchronized void evict(long urlId) {
+        totals.remove(urlId);
+        daily.keySet().removeIf(k -> k.urlId() == urlId);
+    }
+
+    private HyperLogLog loadTotal(long urlId) {
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT visitors_hll FROM urls WHERE id = ?")) {
+            ps.setLong(1, urlId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next() && rs.getBytes(1) != null) return HyperLogLog.fromBytes(rs.getBytes(1));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return rebuildTotal(urlId);
+    }
+
+    // Sin sketch guardado (enlace anterior a esta función): se unen los sketches diarios
+    // (sobreviven a la compactación) con las IPs que quedan en las particiones
+    private HyperLogLog rebuildTotal(long urlId) {
+        HyperLogLog total = new HyperLogLog();
+        try (Connection c = analyticsDs.getConnection()) {
+            try (PreparedStatement ps = c.prepareStatement("SELECT sketch FROM visitor_sketches WHERE url_id = ?")) {
+                ps.setLong(1, urlId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) total.merge(HyperLogLog.fromBytes(rs.getBytes(1)));
+                }
+            }
+            for (ClickPartitions.Partition p : partitions.list()) {
+                addIps(c, "SELECT ip FROM " + p.table() + " WHERE url_id = ?", urlId, null, total);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return total;
+    }
+
+    private HyperLogLog loadDaily(DayKey key) {
+        HyperLogLog sketch = new HyperLogLog();
+        try (Connection c = analyticsDs.getConnection()) {
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT sketch FROM visitor_sketches WHERE url_id = ? AND day = ?")) {
+                ps.setLong(1, key.urlId());
+                ps.setDate(2, Date.valueOf(key.day()));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) return HyperLogLog.fromBytes(rs.getBytes(1));
+                }
+            }
+            // Primer clic del día en memoria: incluir lo que ya esté en la partición de ese día
+            String table = partitions.tableFor(key.day().atStartOfDay(zone).toInstant().toEpochMilli());
+            if (table == null) return sketch;
+            addIps(c, "SELECT ip FROM " + table + " WHERE url_id = ? AND timestamp >= ? AND timestamp < ?",
+                    key.urlId(), key.day(), sketch);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return sketch;
+    }
+
+    private void addIps(Connection c, String sql, long urlId, LocalDate day, HyperLogLog target) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, urlId);
+            if (day != null) {
+                ps.setTimestamp(2, Timestamp.from(day.atStartOfDay(zone).toInstant()));
+                ps.setTimestamp(3, Timestamp.from(day.plusDays(1).atStartOfDay(zone).toInstant()));
+            }
+            ps.setFetchSize(1000);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    byte[] ip = rs.getBytes(1);
+                    if (ip != null) target.addHash(HyperLogLog.hash64(ip));
+                }
+            }
+        }
+    }
+
+    // Enlaces con clics pero sin sketch (datos previos a esta función): se calculan en segundo plano
+    private void startBackfill() {
+        Thread t = new Thread(() -> {
+            try {
+                int filled = backfill();
+                if (filled > 0) System.out.println("[VISITORS] Sketches calculados para " + filled + " enlaces");
+            } catch (RuntimeException e) {
+                System.err.println("[VISITORS] Error calculando visitantes únicos: " + e.getMessage());
+            }
+        }, "visitor-backfill");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    int backfill() {
+        List<Long> pending = new ArrayList<>();
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT id FROM urls WHERE visitors_hll IS NULL AND access_count > 0 AND deleted_at IS NULL");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) pending.add(rs.getLong(1));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        for (Long urlId : pending) {
+            // Bajo el lock del escritor: ningún lote puede guardar un sketch parcial a la vez
+            clickWriter.withWriteLock(() -> {
+                synchronized (this) {
+                    if (totals.containsKey(urlId)) return null; // ya lo cargó un clic nuevo
+                    HyperLogLog total = rebuildTotal(urlId);
+                    try (Connection c = ds.getConnection();
+                         PreparedStatement ps = c.prepareStatement(
+                                 "UPDATE urls SET visitors_hll = ? WHERE id = ? AND visitors_hll IS NULL")) {
+                        ps.setBytes(1, total.toBytes());
+                        ps.setLong(2, urlId);
+                        ps.executeUpdate();
+                    } catch (SQLException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return null;
+                }
+            });
+        }
+        return pending.size();
+    }
+}
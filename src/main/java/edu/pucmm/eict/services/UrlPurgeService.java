@@ -0,0 +1,165 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.util.AppConfig;
+import edu.pucmm.eict.util.ClickPartitions;
+import edu.pucmm.eict.util.Database;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Purga en segundo plano de los enlaces marcados como borrados (urls.deleted_at).
+ * Los accesos se eliminan por lotes de APP_PURGE_BATCH filas, cada uno en su propia
+ * transacción y con una pausa entre lotes, para que un enlace con millones de clics no
+ * retenga locks ni compita con los redirects. Al terminar con los datos de analítica se
+ * borra la fila de urls. Si el proceso se detiene a medias, la siguiente pasada retoma
+ * desde lo que quede (cada paso es idempotente).
+ * <p>
+ * Un lote de ClickWriter que contó el clic antes de la marca puede insertar sus accesos
+ * durante la purga; por eso el último barrido de las particiones y el borrado de la fila se
+ * hacen bajo el lock del escritor. Después, ningún lote encuentra la URL y no inserta nada.
+ */
+public class UrlPurgeService {
+
+    private static UrlPurgeService instance;
+
+    private final DataSource ds;
+    private final DataSource analyticsDs;
+    private final ClickPartitions partitions;
+    private final ClickWriter clickWriter;
+    private final int batchSize;
+    private final long pauseMillis;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean queued = new AtomicBoolean();
+
+    private UrlPurgeService() {
+        this.ds = Database.getDataSource();
+        this.analyticsDs = Database.getAnalyticsDataSource();
+        this.partitions = Database.getClickPartitions();
+        this.clickWriter = ClickWriter.getInstance();
+        this.batchSize = AppConfig.getInt("APP_PURGE_BATCH", 5000);
+        this.pauseMillis = AppConfig.getLong("APP_PURGE_PAUSE_MS", 20);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "url-purge");
+            t.setDaemon(true);
+            return t;
+        });
+        // Barrido periódico: marcas que quedaron pendientes tras un reinicio
+        executor.scheduleWithFixedDelay(this::wake, 5, 600, TimeUnit.SECONDS);
+    }
+
+    public static synchronized UrlPurgeService getInstance() {
+        if (instance == null) instance = new UrlPurgeService();
+        return instance;
+    }
+
+    /** Programa una pasada de purga; si ya hay una en cola no agrega otra. */
+    public void wake() {
+        if (queued.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                queued.set(false);
+                try {
+                    drain();
+                } catch (RuntimeException e) {
+                    System.err.println("[PURGE] Error purgando enlaces borrados: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /** Purga todos los enlaces marcados en el hilo actual. Devuelve cuántos se eliminaron. */
+    public int drain() {
+        int purged = 0;
+        List<Long> ids;
+        while (!(ids = tombstones()).isEmpty()) {
+            for (long id : ids) {
+                long rows = purge(id);
+                purged++;
+                if (rows > 0) System.out.println("[PURGE] Enlace " + id + " eliminado con " + rows + " accesos");
+            }
+        }
+        return purged;
+    }
+
+    private List<Long> tombstones() {
+        List<Long> ids = new ArrayList<>();
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT id FROM urls WHERE deleted_at IS NOT NULL ORDER BY deleted_at LIMIT 100");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) ids.add(rs.getLong(1));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return ids;
+    }
+
+    private long purge(long id) {
+        // El grueso de los accesos se borra sin el lock del escritor, con pausas entre lotes
+        long rows = deleteAccesses(id);
+        try (Connection ac = analyticsDs.getConnection()) {
+            deleteInBatches(ac, "DELETE FROM access_rollups WHERE url_id = ? FETCH FIRST ? ROWS ONLY", id);
+            deleteInBatches(ac, "DELETE FROM visitor_sketches WHERE url_id = ? FETCH FIRST ? ROWS ONLY", id);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return rows + clickWriter.withWriteLock(() -> {
+            // Lo que un lote en curso insertó durante el barrido anterior (normalmente nada)
+            long late = deleteAccesses(id);
+            // Por si algo volvió a cargarlos entre la marca y la purga
+            AnalyticsStore.getInstance().evict(id);
+            UniqueVisitorService.getInstance().evict(id);
+            try (Connection c = ds.getConnection();
+                 PreparedStatement ps = c.prepareStatement("DELETE FROM urls WHERE id = ? AND deleted_at IS NOT NULL")) {
+                ps.setLong(1, id);
+                ps.executeUpdate();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            return late;
+        });
+    }
+
+    private long deleteAccesses(long id) {
+        long rows = 0;
+        try (Connection ac = analyticsDs.getConnection()) {
+            for (ClickPartitions.Partition p : partitions.list()) {
+                rows += deleteInBatches(ac, "DELETE FROM " + p.table() + " WHERE url_id = ? FETCH FIRST ? ROWS ONLY", id);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return rows;
+    }
+
+    private long deleteInBatches(Connection c, String sql, long id) throws SQLException {
+        long total = 0;
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, id);
+            ps.setInt(2, batchSize);
+            int deleted;
+            do {
+                deleted = ps.executeUpdate();
+                total += deleted;
+                if (deleted == batchSize && pauseMillis > 0) pause();
+            } while (deleted == batchSize);
+        }
+        return total;
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(pauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -3,24 +3,210 @@ package edu.pucmm.eict.services;
 import edu.pucmm.eict.modelos.AccessDetail;
 import edu.pucmm.eict.modelos.Url;
 import edu.pucmm.eict.modelos.Usuario;
+import edu.pucmm.eict.util.AccessCursor;
+import edu.pucmm.eict.util.AppConfig;
+import edu.pucmm.eict.util.AppEvents;
+import edu.pucmm.eict.util.ClickColumns;
+import edu.pucmm.eict.util.ClickPartitions;
 import edu.pucmm.eict.util.Database;
+import edu.pucmm.eict.util.DimensionDictionary;
+import edu.pucmm.eict.util.IpCodec;
+import edu.pucmm.eict.util.Metrics;
+import edu.pucmm.eict.util.OffHeapCodeIndex;
+import edu.pucmm.eict.util.SingleFlight;
+import edu.pucmm.eict.util.UrlNormalizer;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 public class UrlService {
     private final DataSource ds;
+    // Clics y analítica viven en una base separada (ver Database)
+    private final DataSource analyticsDs;
+    private final ClickWriter clickWriter;
+    private final ClickPartitions partitions;
+    private final DimensionDictionary dimensions;
+    private final AnalyticsStore analyticsStore;
+    private final UniqueVisitorService visitors;
+    private final HotLinkService hotLinks;
+    private final UrlPurgeService purger;
+    // Enlaces anónimos en memoria; null si APP_EPHEMERAL_LINKS no está activo
+    private final EphemeralLinkStore ephemeral;
     private static final int ANONYMOUS_TTL_SECONDS = 3600; // 1 hora
+    // Tamaño por defecto y máximo de las páginas de accesos
+    public static final int DEFAULT_ACCESS_PAGE_SIZE = AppConfig.getInt("APP_ACCESS_PAGE_SIZE", 100);
+    public static final int MAX_ACCESS_PAGE_SIZE = 1000;
+    // Reutilizar el enlace existente cuando el mismo usuario acorta otra vez el mismo destino
+    public static final boolean REUSE_LINKS_DEFAULT = AppConfig.getBoolean("APP_REUSE_LINKS", false);
+    private static final int REUSE_CACHE_SIZE = AppConfig.getInt("APP_REUSE_CACHE_SIZE", 10000);
+
+    // (user_id:url_hash) -> enlace existente; compartida por todas las instancias del servicio
+    private record ReusableLink(long id, String originalUrl, String shortUrl, long createdAt) {
+    }
+
+    // Redirecciones concurrentes al mismo código comparten una sola consulta
+    private static final SingleFlight<String, Url> redirectLoads =
+            new SingleFlight<>("redirect", AppConfig.getLong("APP_SINGLEFLIGHT_TIMEOUT_MS", 5000));
+
+    // Código -> (id, destino) fuera del heap para los redirects; null si APP_OFFHEAP_INDEX no está activo.
+    // Solo guarda enlaces permanentes: los que vencen se siguen resolviendo desde la base.
+    private static volatile OffHeapCodeIndex codeIndex;
+    // false mientras el índice viene de un snapshot aún sin validar: sus aciertos se confirman en la base
+    private static volatile boolean codeIndexValidated;
+
+    private static final Metrics.Counter CACHE = Metrics.counter("cache_requests_total",
+            "Consultas a cachés en memoria por resultado (hit/miss)", "cache", "result");
+    private static final Metrics.Timer DB_QUERIES = Metrics.timer("db_query_seconds",
+            "Duración de consultas a la base en caminos calientes", "query");
+
+    static {
+        Metrics.gauge("code_index_entries", "Códigos en el índice fuera del heap", () -> {
+            OffHeapCodeIndex index = codeIndex;
+            return index != null ? index.size() : 0;
+        });
+        Metrics.gauge("code_index_offheap_bytes", "Memoria directa del índice de códigos", () -> {
+            OffHeapCodeIndex index = codeIndex;
+            return index != null ? index.offHeapBytes() : 0;
+        });
+    }
+
+    private static final Map<String, ReusableLink> reuseCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ReusableLink> eldest) {
+            return size() > REUSE_CACHE_SIZE;
+        }
+    };
 
     public UrlService() {
         this.ds = Database.getDataSource();
+        this.analyticsDs = Database.getAnalyticsDataSource();
+        this.clickWriter = ClickWriter.getInstance();
+        this.partitions = Database.getClickPartitions();
+        this.dimensions = Database.getDimensions();
+        this.analyticsStore = AnalyticsStore.getInstance();
+        this.visitors = UniqueVisitorService.getInstance();
+        this.hotLinks = HotLinkService.getInstance();
+        this.purger = UrlPurgeService.getInstance();
+        this.ephemeral = EphemeralLinkStore.ENABLED ? EphemeralLinkStore.getInstance() : null;
+        if (AppConfig.getBoolean("APP_OFFHEAP_INDEX", false)) loadCodeIndex(ds);
+    }
+
+    private interface LinkVisitor {
+        void accept(long id, String shortUrl, String originalUrl) throws SQLException;
+    }
+
+    // Se llena una sola vez al arrancar. Si hay snapshot (WarmStartService) se mapea y se valida
+    // contra urls en segundo plano; si no, se recorre urls sin materializarla en el heap.
+    private static synchronized void loadCodeIndex(DataSource ds) {
+        if (codeIndex != null) return;
+        long start = System.currentTimeMillis();
+        Path snapshot = WarmStartService.snapshotFile(WarmStartService.CODE_INDEX_FILE);
+        if (snapshot != null && Files.exists(snapshot)) {
+            try {
+                OffHeapCodeIndex index = OffHeapCodeIndex.load(snapshot);
+                codeIndexValidated = false;
+                codeIndex = index;
+                System.out.println("[INDEX] " + index.size() + " códigos recuperados del snapshot en " + (System.currentTimeMillis() - start) + " ms");
+                Thread validator = new Thread(() -> validateCodeIndex(ds, index), "index-validate");
+                validator.setDaemon(true);
+                validator.start();
+                return;
+            } catch (IOException e) {
+                System.err.println("[INDEX] Snapshot ilegible, se reconstruye desde urls: " + e.getMessage());
+            }
+        }
+        try (Connection c = ds.getConnection()) {
+            int expected;
+            try (PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM urls WHERE deleted_at IS NULL AND expires_at IS NULL");
+                 ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                expected = rs.getInt(1);
+            }
+            OffHeapCodeIndex index = new OffHeapCodeIndex(Math.max(expected, AppConfig.getInt("APP_OFFHEAP_INDEX_CAPACITY", 1 << 16)));
+            scanPermanentLinks(c, (id, code, original) -> index.put(code, id, original));
+            codeIndexValidated = true;
+            codeIndex = index;
+            System.out.println("[INDEX] " + index.size() + " códigos cargados fuera del heap (" + (index.offHeapBytes() >> 20) + " MB) en " + (System.currentTimeMillis() - start) + " ms");
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void scanPermanentLinks(Connection c, LinkVisitor visitor) throws SQLException {
+        try (Statement st = c.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            st.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            st.setFetchSize(1000);
+            try (ResultSet rs = st.executeQuery("SELECT id, short_url, original_url FROM urls WHERE deleted_at IS NULL AND expires_at IS NULL")) {
+                while (rs.next()) visitor.accept(rs.getLong(1), rs.getString(2), rs.getString(3));
+            }
+            st.execute("SET LAZY_QUERY_EXECUTION FALSE");
+        }
     }
 
-    private String generateShortUrl() {
+    // Mientras corre, el índice del snapshot ya está publicado pero resolveForRedirect no confía
+    // en él: una entrada puede ser de un enlace borrado o renombrado después del snapshot.
+    // Confirma cada entrada contra urls, agrega los enlaces creados después y descarta el resto.
+    private static void validateCodeIndex(DataSource ds, OffHeapCodeIndex index) {
+        long start = System.currentTimeMillis();
+        // Conexión aparte para las consultas puntuales: la del recorrido tiene un resultado perezoso abierto
+        try (Connection c = ds.getConnection(); Connection lookup = ds.getConnection()) {
+            List<String> missing = new ArrayList<>();
+            scanPermanentLinks(c, (id, code, original) -> {
+                if (!index.verify(code, id, original)) missing.add(code);
+                if (missing.size() == 1000) {
+                    indexCodes(lookup, missing);
+                    missing.clear();
+                }
+            });
+            int removed = index.removeUnverified();
+            indexCodes(lookup, missing);
+            if (codeIndex == index) codeIndexValidated = true;
+            System.out.println("[INDEX] Snapshot validado en " + (System.currentTimeMillis() - start) + " ms (" + removed + " entradas descartadas)");
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("[INDEX] No se pudo validar el snapshot: " + e.getMessage());
+        }
+    }
+
+    /** Desactiva el índice de códigos (pruebas que lo activan solo para sí mismas). */
+    static synchronized void resetCodeIndex() {
+        codeIndex = null;
+        codeIndexValidated = false;
+    }
+
+    /** Guarda el índice de códigos en file; no hace nada si el índice no está activo. */
+    static boolean saveCodeIndex(Path file) throws IOException {
+        OffHeapCodeIndex index = codeIndex;
+        if (index == null) return false;
+        index.save(file);
+        return true;
+    }
+
+    /** Agrega al índice de códigos los enlaces recién insertados por otro camino (importación). */
+    static void indexCodes(Connection c, List<String> codes) throws SQLException {
+        OffHeapCodeIndex index = codeIndex;
+        if (index == null || codes.isEmpty()) return;
+        try (PreparedStatement ps = c.prepareStatement("SELECT id, short_url, original_url FROM urls WHERE short_url = ANY(?) AND deleted_at IS NULL AND expires_at IS NULL")) {
+            ps.setObject(1, codes.toArray(new String[0]));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) index.put(rs.getString(2), rs.getLong(1), rs.getString(3));
+            }
+        }
+    }
+
+    // También lo usa BulkImportService para reservar códigos por bloques
+    static String generateShortUrl() {
         String chars = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
         Random rand = new Random();
         StringBuilder sb = new StringBuilder();
@@ -33,18 +219,43 @@ public class UrlService {
     private String generateUniqueShortCode(Connection c) throws SQLException {
         for (int attempts = 0; attempts < 10; attempts++) {
             String candidate = generateShortUrl();
-            try (PreparedStatement ps = c.prepareStatement("SELECT 1 FROM urls WHERE short_url = ?")) {
-                ps.setString(1, candidate);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (!rs.next()) return candidate;
-                }
-            }
+            if (!codeExists(c, candidate)) return candidate;
         }
         throw new SQLException("No se pudo generar short_url único tras varios intentos");
     }
 
+    // Incluye los borrados pendientes de purga: su fila sigue ocupando el código
+    private static boolean codeExists(Connection c, String code) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT 1 FROM urls WHERE short_url = ?")) {
+            ps.setString(1, code);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private boolean codeExists(String code) {
+        try (Connection c = ds.getConnection()) {
+            return codeExists(c, code);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     // Guarda y devuelve Url con datos básicos; si user es anónimo, setea expires_at
     public Url saveUrl(String originalUrl, Usuario user) {
+        return saveUrl(originalUrl, user, REUSE_LINKS_DEFAULT);
+    }
+
+    /**
+     * Igual que saveUrl, pero con reuseExisting devuelve el enlace que el usuario ya tenga
+     * para el mismo destino (según UrlNormalizer) en vez de crear otro. No aplica a anónimos.
+     */
+    public Url saveUrl(String originalUrl, Usuario user, boolean reuseExisting) {
+        if (ephemeral != null && user != null && "anonymous".equals(user.getRole())) {
+            return ephemeral.create(originalUrl, user.getUsername(), ANONYMOUS_TTL_SECONDS * 1000L, this::codeExists);
+        }
+        long urlHash = UrlNormalizer.hash(originalUrl);
         try (Connection c = ds.getConnection()) {
             Timestamp now = new Timestamp(System.currentTimeMillis());
             Timestamp expires = null;
@@ -65,7 +276,12 @@ public class UrlService {
                 }
             }
 
-            String sql = "INSERT INTO urls(original_url, short_url, access_count, user_id, created_at, expires_at) VALUES(?,?,?,?,?,?)";
+            if (reuseExisting && userId != null && expires == null) {
+                Url existing = findReusable(c, userId, urlHash, originalUrl, user);
+                if (existing != null) return existing;
+            }
+
+            String sql = "INSERT INTO urls(original_url, short_url, access_count, user_id, created_at, expires_at, url_hash) VALUES(?,?,?,?,?,?,?)";
 
             for (int attempt = 0; attempt < 5; attempt++) {
                 String shortCode = generateUniqueShortCode(c);
@@ -76,6 +292,7 @@ public class UrlService {
                     if (userId == null) ps.setNull(4, Types.BIGINT); else ps.setLong(4, userId);
                     ps.setTimestamp(5, now);
                     if (expires == null) ps.setNull(6, Types.TIMESTAMP); else ps.setTimestamp(6, expires);
+                    ps.setLong(7, urlHash);
                     ps.executeUpdate();
                     try (ResultSet keys = ps.getGeneratedKeys()) {
                         if (keys.next()) {
@@ -85,6 +302,13 @@ public class UrlService {
                             url.setUser(user);
                             url.setCreatedAt(new java.util.Date(now.getTime()));
                             url.setExpiresAt(expires != null ? new java.util.Date(expires.getTime()) : null);
+                            OffHeapCodeIndex index = codeIndex;
+                            if (index != null && expires == null) index.put(shortCode, id, originalUrl);
+                            if (reuseExisting && userId != null && expires == null) {
+                                synchronized (reuseCache) {
+                                    reuseCache.put(userId + ":" + urlHash, new ReusableLink(id, originalUrl, shortCode, now.getTime()));
+                                }
+                            }
                             return url;
                         }
                     }
@@ -99,11 +323,70 @@ public class UrlService {
         }
     }
 
+    // Caché en memoria y, si no está, una consulta por el índice (user_id, url_hash)
+    private Url findReusable(Connection c, long userId, long urlHash, String originalUrl, Usuario user) throws SQLException {
+        String key = userId + ":" + urlHash;
+        String normalized = UrlNormalizer.normalize(originalUrl);
+        ReusableLink link;
+        synchronized (reuseCache) {
+            link = reuseCache.get(key);
+        }
+        // Colisión de hash: se confirma con la forma normalizada
+        if (link != null && !normalized.equals(UrlNormalizer.normalize(link.originalUrl()))) link = null;
+        CACHE.inc("reuse", link != null ? "hit" : "miss");
+        if (link == null) {
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT id, original_url, short_url, created_at FROM urls WHERE user_id = ? AND url_hash = ? AND expires_at IS NULL AND deleted_at IS NULL ORDER BY id")) {
+                ps.setLong(1, userId);
+                ps.setLong(2, urlHash);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        if (!normalized.equals(UrlNormalizer.normalize(rs.getString(2)))) continue;
+                        link = new ReusableLink(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getTimestamp(4).getTime());
+                        break;
+                    }
+                }
+            }
+            if (link == null) return null;
+            synchronized (reuseCache) {
+                reuseCache.put(key, link);
+            }
+        }
+        Url url = new Url(link.originalUrl(), link.shortUrl());
+        url.setId(link.id());
+        url.setUser(user);
+        url.setCreatedAt(new java.util.Date(link.createdAt()));
+        return url;
+    }
+
+    // Quita de la caché de reutilización y del índice de códigos el enlace que se borra o cambia de código
+    private void forgetCached(Connection c, String where, Object value) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT user_id, url_hash, short_url FROM urls WHERE " + where + " = ?")) {
+            ps.setObject(1, value);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    synchronized (reuseCache) {
+                        reuseCache.remove(rs.getLong(1) + ":" + rs.getLong(2));
+                    }
+                    OffHeapCodeIndex index = codeIndex;
+                    if (index != null) index.remove(rs.getString(3));
+                }
+            }
+        }
+    }
+
     public String getOriginalUrl(String shortUrl) {
         // Devuelve original y actualiza métricas básicas (access_count y accessTimes)
+        if (ephemeral != null) {
+            Url temp = ephemeral.get(shortUrl);
+            if (temp != null) {
+                ephemeral.recordAccess(shortUrl);
+                return temp.getOriginalUrl();
+            }
+        }
         try (Connection c = ds.getConnection()) {
             // Chequear expiración
-            String q = "SELECT id, original_url, expires_at FROM urls WHERE short_url = ?";
+            String q = "SELECT id, original_url, expires_at FROM urls WHERE short_url = ? AND deleted_at IS NULL";
             try (PreparedStatement ps = c.prepareStatement(q)) {
                 ps.setString(1, shortUrl);
                 try (ResultSet rs = ps.executeQuery()) {
@@ -116,17 +399,8 @@ public class UrlService {
                             return null;
                         }
                         String original = rs.getString("original_url");
-                        // incrementar access_count
-                        try (PreparedStatement up = c.prepareStatement("UPDATE urls SET access_count = access_count + 1 WHERE id = ?")) {
-                            up.setLong(1, id);
-                            up.executeUpdate();
-                        }
-                        // registrar marca de tiempo simple en access_details como evento sin otros datos
-                        try (PreparedStatement ins = c.prepareStatement("INSERT INTO access_details(url_id, timestamp) VALUES(?,?)")) {
-                            ins.setLong(1, id);
-                            ins.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
-                            ins.executeUpdate();
-                        }
+                        // access_count y marca de tiempo simple (evento sin otros datos) se persisten en diferido
+                        clickWriter.enqueue(id, new AccessDetail(new java.util.Date(), null, null, null, null));
                         return original;
                     }
                 }
@@ -138,9 +412,68 @@ public class UrlService {
     }
 
     public Url getUrl(String shortUrl) {
+        return findUrl(shortUrl, true);
+    }
+
+    // Igual que getUrl pero sin cargar los accesos (para estadísticas desde AnalyticsStore)
+    public Url getUrlInfo(String shortUrl) {
+        return findUrl(shortUrl, false);
+    }
+
+    /**
+     * Lo que necesita /go/{code}: la URL sin accesos. Si llegan muchas peticiones a la vez
+     * para un código (un enlace que se vuelve viral) se hace una sola consulta para todas.
+     * Con APP_OFFHEAP_INDEX los enlaces permanentes se resuelven desde el índice sin consultar
+     * (si viene de un snapshot, solo después de validarlo).
+     * @throws SingleFlight.LoadTimeoutException si la consulta en curso no termina a tiempo
+     */
+    public Url resolveForRedirect(String shortUrl) {
+        AppEvents.RedirectResolved event = new AppEvents.RedirectResolved();
+        event.begin();
+        Url url = null;
+        boolean cacheHit = false;
+        try {
+            OffHeapCodeIndex index = codeIndex;
+            if (index != null) {
+                OffHeapCodeIndex.Entry entry = index.get(shortUrl);
+                // Sin validar, un acierto del snapshot se confirma con la consulta de siempre
+                boolean trusted = entry != null && codeIndexValidated;
+                CACHE.inc("code_index", trusted ? "hit" : entry != null ? "unverified" : "miss");
+                if (trusted) {
+                    cacheHit = true;
+                    url = new Url(entry.originalUrl(), shortUrl);
+                    url.setId(entry.id());
+                    return url;
+                }
+            }
+            url = redirectLoads.load(shortUrl, () -> {
+                long start = System.nanoTime();
+                try {
+                    return findUrl(shortUrl, false);
+                } finally {
+                    DB_QUERIES.recordSince(start, "redirect_lookup");
+                }
+            });
+            return url;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.code = shortUrl;
+                event.cacheHit = cacheHit;
+                event.found = url != null;
+                event.commit();
+            }
+        }
+    }
+
+    private Url findUrl(String shortUrl, boolean withAccessData) {
+        if (ephemeral != null) {
+            Url temp = ephemeral.get(shortUrl);
+            if (temp != null) return temp;
+        }
         try (Connection c = ds.getConnection()) {
-            String q = "SELECT u.id, u.original_url, u.short_url, u.access_count, u.created_at, u.expires_at, u.user_id, uu.username, uu.password, uu.role " +
-                    "FROM urls u LEFT JOIN usuarios uu ON u.user_id = uu.id WHERE u.short_url = ?";
+            String q = "SELECT u.id, u.original_url, u.short_url, u.access_count, u.visitors_hll, u.created_at, u.expires_at, u.user_id, uu.username, uu.password, uu.role " +
+                    "FROM urls u LEFT JOIN usuarios uu ON u.user_id = uu.id WHERE u.short_url = ? AND u.deleted_at IS NULL";
             try (PreparedStatement ps = c.prepareStatement(q)) {
                 ps.setString(1, shortUrl);
                 try (ResultSet rs = ps.executeQuery()) {
@@ -148,6 +481,7 @@ public class UrlService {
                         Url url = new Url(rs.getString("original_url"), rs.getString("short_url"));
                         url.setId(rs.getLong("id"));
                         url.setAccessCount(rs.getInt("access_count"));
+                        url.setUniqueVisitors(UniqueVisitorService.estimate(rs.getBytes("visitors_hll")));
                         Timestamp cat = rs.getTimestamp("created_at");
                         if (cat != null) url.setCreatedAt(new java.util.Date(cat.getTime()));
                         Timestamp eat = rs.getTimestamp("expires_at");
@@ -158,8 +492,12 @@ public class UrlService {
                             u.setId(userId);
                             url.setUser(u);
                         }
-                        // cargar access details
-                        loadAccessData(c, url);
+                        // cargar la primera página de accesos desde la base de analítica
+                        if (withAccessData) {
+                            try (Connection ac = analyticsDs.getConnection()) {
+                                loadAccessData(ac, url);
+                            }
+                        }
                         return url;
                     }
                 }
@@ -171,26 +509,38 @@ public class UrlService {
     }
 
     public Collection<Url> getAllUrls() {
+        return listUrls("WHERE u.deleted_at IS NULL", null);
+    }
+
+    /** URLs del usuario, de la más reciente a la más antigua (usa idx_urls_user_id). */
+    public List<Url> getUrlsOfUser(String username) {
+        return listUrls("WHERE uu.username = ? AND u.deleted_at IS NULL", username);
+    }
+
+    private List<Url> listUrls(String where, String param) {
         List<Url> list = new ArrayList<>();
+        String q = "SELECT u.id, u.original_url, u.short_url, u.access_count, u.visitors_hll, u.created_at, u.expires_at, u.user_id, uu.username, uu.password, uu.role FROM urls u LEFT JOIN usuarios uu ON u.user_id = uu.id " + where + " ORDER BY u.id DESC";
         try (Connection c = ds.getConnection();
-             PreparedStatement ps = c.prepareStatement("SELECT u.id, u.original_url, u.short_url, u.access_count, u.created_at, u.expires_at, u.user_id, uu.username, uu.password, uu.role FROM urls u LEFT JOIN usuarios uu ON u.user_id = uu.id ORDER BY u.id DESC");
-             ResultSet rs = ps.executeQuery()) {
-            while (rs.next()) {
-                Url url = new Url(rs.getString("original_url"), rs.getString("short_url"));
-                url.setId(rs.getLong("id"));
-                url.setAccessCount(rs.getInt("access_count"));
-                Timestamp cat = rs.getTimestamp("created_at");
-                if (cat != null) url.setCreatedAt(new java.util.Date(cat.getTime()));
-                Timestamp eat = rs.getTimestamp("expires_at");
-                if (eat != null) url.setExpiresAt(new java.util.Date(eat.getTime()));
-                Long userId = (Long) rs.getObject("user_id");
-                if (userId != null) {
-                    Usuario u = new Usuario(rs.getString("username"), rs.getString("password"), rs.getString("role"));
-                    u.setId(userId);
-                    url.setUser(u);
+             PreparedStatement ps = c.prepareStatement(q)) {
+            if (param != null) ps.setString(1, param);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Url url = new Url(rs.getString("original_url"), rs.getString("short_url"));
+                    url.setId(rs.getLong("id"));
+                    url.setAccessCount(rs.getInt("access_count"));
+                    url.setUniqueVisitors(UniqueVisitorService.estimate(rs.getBytes("visitors_hll")));
+                    Timestamp cat = rs.getTimestamp("created_at");
+                    if (cat != null) url.setCreatedAt(new java.util.Date(cat.getTime()));
+                    Timestamp eat = rs.getTimestamp("expires_at");
+                    if (eat != null) url.setExpiresAt(new java.util.Date(eat.getTime()));
+                    Long userId = (Long) rs.getObject("user_id");
+                    if (userId != null) {
+                        Usuario u = new Usuario(rs.getString("username"), rs.getString("password"), rs.getString("role"));
+                        u.setId(userId);
+                        url.setUser(u);
+                    }
+                    list.add(url);
                 }
-                loadAccessData(c, url);
-                list.add(url);
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -198,49 +548,117 @@ public class UrlService {
         return list;
     }
 
+    /** Página de accesos (del más reciente al más antiguo) y cursor para pedir la siguiente, o null si no hay más. */
+    public record AccessPage(List<AccessDetail> items, String nextCursor) {
+    }
+
+    // Carga en el modelo solo la primera página de accesos: el historial completo puede tener millones de filas
     private void loadAccessData(Connection c, Url url) throws SQLException {
-        String q = "SELECT timestamp, browser, ip, client_domain, platform FROM access_details WHERE url_id = ? ORDER BY timestamp";
-        try (PreparedStatement ps = c.prepareStatement(q)) {
-            ps.setLong(1, url.getId());
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    Timestamp ts = rs.getTimestamp("timestamp");
-                    String browser = rs.getString("browser");
-                    String ip = rs.getString("ip");
-                    String client = rs.getString("client_domain");
-                    String platform = rs.getString("platform");
-                    AccessDetail d = new AccessDetail(new java.util.Date(ts.getTime()), browser, ip, client, platform);
-                    url.getAccessDetails().add(d);
-                    url.getAccessTimes().add(new java.util.Date(ts.getTime()));
+        AccessPage page = readAccessPage(c, url.getId(), null, DEFAULT_ACCESS_PAGE_SIZE);
+        for (AccessDetail d : page.items()) {
+            url.getAccessDetails().add(d);
+            url.getAccessTimes().add(d.getTimestamp());
+        }
+    }
+
+    /**
+     * Accesos de la URL anteriores al cursor (null = desde el más reciente).
+     * limit se ajusta a [1, MAX_ACCESS_PAGE_SIZE].
+     * @throws IllegalArgumentException si el cursor no es válido
+     */
+    public AccessPage getAccessPage(Url url, String cursor, int limit) {
+        AccessCursor after = cursor == null || cursor.isEmpty() ? null : AccessCursor.decode(cursor);
+        if (url.getId() == null) return new AccessPage(new ArrayList<>(), null); // enlace en memoria
+        try (Connection ac = analyticsDs.getConnection()) {
+            return readAccessPage(ac, url.getId(), after, Math.max(1, Math.min(limit, MAX_ACCESS_PAGE_SIZE)));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Recorre las particiones de la más reciente a la más antigua; se lee una fila extra para saber si hay más
+    private AccessPage readAccessPage(Connection c, long urlId, AccessCursor after, int limit) throws SQLException {
+        List<AccessDetail> items = new ArrayList<>();
+        long lastId = 0;
+        List<ClickPartitions.Partition> list = partitions.list();
+        LocalDate cursorDay = after == null ? null
+                : Instant.ofEpochMilli(after.timestamp()).atZone(ZoneId.systemDefault()).toLocalDate();
+        for (int i = list.size() - 1; i >= 0 && items.size() <= limit; i--) {
+            ClickPartitions.Partition p = list.get(i);
+            if (cursorDay != null && p.start().isAfter(cursorDay)) continue;
+            String q = "SELECT id, timestamp, browser_id, ip, domain_id, platform_id FROM " + p.table() + " WHERE url_id = ?" +
+                    (after != null ? " AND (timestamp < ? OR (timestamp = ? AND id < ?))" : "") +
+                    " ORDER BY timestamp DESC, id DESC LIMIT ?";
+            try (PreparedStatement ps = c.prepareStatement(q)) {
+                int idx = 1;
+                ps.setLong(idx++, urlId);
+                if (after != null) {
+                    Timestamp ts = new Timestamp(after.timestamp());
+                    ps.setTimestamp(idx++, ts);
+                    ps.setTimestamp(idx++, ts);
+                    ps.setLong(idx++, after.id());
+                }
+                ps.setInt(idx, limit + 1 - items.size());
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        if (items.size() == limit) {
+                            // Hay al menos una fila más: el cursor apunta a la última entregada
+                            return new AccessPage(items, new AccessCursor(items.get(limit - 1).getTimestamp().getTime(), lastId).encode());
+                        }
+                        lastId = rs.getLong("id");
+                        // Los valores del diccionario son instancias compartidas entre todos los accesos
+                        items.add(new AccessDetail(new java.util.Date(rs.getTimestamp("timestamp").getTime()),
+                                dimensions.valueOf(rs.getInt("browser_id")),
+                                IpCodec.decode(rs.getBytes("ip")),
+                                dimensions.valueOf(rs.getInt("domain_id")),
+                                dimensions.valueOf(rs.getInt("platform_id"))));
+                    }
                 }
             }
         }
+        return new AccessPage(items, null);
     }
 
+    /** Clics de la URL en forma columnar, para escaneos por rango y agrupaciones. */
+    public ClickColumns getClickColumns(Url url) {
+        return analyticsStore.columnsFor(url.getId());
+    }
+
+    /** Conteo de clics por navegador o plataforma en [from, to), incluidos los días compactados. */
+    public Map<String, Long> groupClicks(Url url, ClickColumns.Column column, long from, long to) {
+        return analyticsStore.groupBy(url.getId(), column, from, to);
+    }
+
+    /** Visitantes únicos estimados por día en [from, to]. */
+    public Map<LocalDate, Long> getUniqueVisitorsByDay(Url url, LocalDate from, LocalDate to) {
+        return visitors.uniqueVisitorsByDay(url.getId(), from, to);
+    }
+
+    // Encola el acceso; access_count y access_details se actualizan por lotes en ClickWriter
     public void recordAccess(Url url, AccessDetail detail) {
-        try (Connection c = ds.getConnection()) {
-            try (PreparedStatement up = c.prepareStatement("UPDATE urls SET access_count = access_count + 1 WHERE id = ?")) {
-                up.setLong(1, url.getId());
-                up.executeUpdate();
-            }
-            String ins = "INSERT INTO access_details(url_id, timestamp, browser, ip, client_domain, platform) VALUES(?,?,?,?,?,?)";
-            try (PreparedStatement ps = c.prepareStatement(ins)) {
-                ps.setLong(1, url.getId());
-                ps.setTimestamp(2, new Timestamp(detail.getTimestamp().getTime()));
-                ps.setString(3, detail.getBrowser());
-                ps.setString(4, detail.getIp());
-                ps.setString(5, detail.getClientDomain());
-                ps.setString(6, detail.getPlatform());
-                ps.executeUpdate();
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        hotLinks.record(url.getShortUrl());
+        if (url.getId() == null) {
+            // Enlace anónimo en memoria: solo se cuenta el clic
+            if (ephemeral != null) ephemeral.recordAccess(url.getShortUrl());
+            return;
         }
+        clickWriter.enqueue(url.getId(), detail);
+    }
+
+    /** Enlaces en memoria de una sesión anónima (vacío si el almacén temporal no está activo). */
+    public List<Url> getAnonymousUrls(String owner) {
+        return ephemeral != null ? ephemeral.listByOwner(owner) : new ArrayList<>();
+    }
+
+    // Persiste de inmediato los accesos pendientes
+    public void flushAccesses() {
+        clickWriter.flush();
     }
 
     public boolean deleteUrl(String shortUrl) {
+        if (ephemeral != null && ephemeral.remove(shortUrl)) return true;
         try (Connection c = ds.getConnection()) {
-            try (PreparedStatement ps = c.prepareStatement("SELECT id FROM urls WHERE short_url = ?")) {
+            try (PreparedStatement ps = c.prepareStatement("SELECT id FROM urls WHERE short_url = ? AND deleted_at IS NULL")) {
                 ps.setString(1, shortUrl);
                 try (ResultSet rs = ps.executeQuery()) {
                     if (rs.next()) {
@@ -256,31 +674,99 @@ public class UrlService {
         }
     }
 
-    private void deleteById(Connection c, long id) throws SQLException {
-        try (PreparedStatement ps1 = c.prepareStatement("DELETE FROM access_details WHERE url_id = ?")) {
-            ps1.setLong(1, id);
-            ps1.executeUpdate();
+    /**
+     * Borra todos los enlaces de un usuario con una sola marca; los accesos se purgan
+     * después en segundo plano. Devuelve cuántos se marcaron.
+     */
+    public int deleteUrlsOfUser(long userId) {
+        return deleteUrlsOfUser(userId, urlIdsOfUser(userId));
+    }
+
+    /** Ids de los enlaces vivos del usuario (al borrar la cuenta, user_id pasa a NULL). */
+    public List<Long> urlIdsOfUser(long userId) {
+        List<Long> ids = new ArrayList<>();
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT id FROM urls WHERE user_id = ? AND deleted_at IS NULL")) {
+            ps.setLong(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) ids.add(rs.getLong(1));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return ids;
+    }
+
+    /**
+     * Marca como borrados los enlaces ids del usuario userId, leídos antes con urlIdsOfUser
+     * (p. ej. antes de eliminar su cuenta). Devuelve cuántos se marcaron.
+     */
+    public int deleteUrlsOfUser(long userId, List<Long> ids) {
+        if (ids.isEmpty()) return 0;
+        try (Connection c = ds.getConnection()) {
+            List<String> codes = new ArrayList<>();
+            try (PreparedStatement ps = c.prepareStatement("SELECT short_url FROM urls WHERE id = ANY(?) AND deleted_at IS NULL")) {
+                ps.setObject(1, ids.toArray(new Long[0]));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) codes.add(rs.getString(1));
+                }
+            }
+            // Se marcan justo los ids leídos: un enlace creado después no quedaría
+            // fuera de las cachés ni del índice de códigos
+            int marked;
+            try (PreparedStatement ps = c.prepareStatement("UPDATE urls SET deleted_at = ? WHERE id = ANY(?) AND deleted_at IS NULL")) {
+                ps.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+                ps.setObject(2, ids.toArray(new Long[0]));
+                marked = ps.executeUpdate();
+            }
+            for (long id : ids) {
+                analyticsStore.evict(id);
+                visitors.evict(id);
+            }
+            synchronized (reuseCache) {
+                reuseCache.keySet().removeIf(key -> key.startsWith(userId + ":"));
+            }
+            OffHeapCodeIndex index = codeIndex;
+            if (index != null) codes.forEach(index::remove);
+            purger.wake();
+            return marked;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
         }
-        try (PreparedStatement ps = c.prepareStatement("DELETE FROM urls WHERE id = ?")) {
-            ps.setLong(1, id);
+    }
+
+    // Marca la URL como borrada: deja de resolverse y de contar clics al instante. Los accesos
+    // (millones en enlaces populares) y la fila se eliminan por lotes en UrlPurgeService.
+    private void deleteById(Connection c, long id) throws SQLException {
+        analyticsStore.evict(id);
+        visitors.evict(id);
+        forgetCached(c, "id", id);
+        try (PreparedStatement ps = c.prepareStatement("UPDATE urls SET deleted_at = ? WHERE id = ? AND deleted_at IS NULL")) {
+            ps.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+            ps.setLong(2, id);
             ps.executeUpdate();
         }
+        purger.wake();
     }
 
     public boolean updateShortUrl(String originalShort, String newShort) {
         try (Connection c = ds.getConnection()) {
-            // verificar colisión
+            // verificar colisión (también con los enlaces en memoria)
+            if (ephemeral != null && ephemeral.contains(newShort)) return false;
             try (PreparedStatement chk = c.prepareStatement("SELECT 1 FROM urls WHERE short_url = ?")) {
                 chk.setString(1, newShort);
                 try (ResultSet rs = chk.executeQuery()) {
                     if (rs.next()) return false; // ya existe
                 }
             }
-            try (PreparedStatement ps = c.prepareStatement("UPDATE urls SET short_url = ? WHERE short_url = ?")) {
+            forgetCached(c, "short_url", originalShort);
+            try (PreparedStatement ps = c.prepareStatement("UPDATE urls SET short_url = ? WHERE short_url = ? AND deleted_at IS NULL")) {
                 ps.setString(1, newShort);
                 ps.setString(2, originalShort);
-                return ps.executeUpdate() > 0;
+                if (ps.executeUpdate() == 0) return false;
             }
+            indexCodes(c, List.of(newShort));
+            return true;
         } catch (SQLException e) {
             return false;
         }
@@ -0,0 +1,172 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.util.AppConfig;
+import edu.pucmm.eict.util.HeavyHitters;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Arranque en caliente tras un despliegue. Con APP_WARM_SNAPSHOT_DIR=directorio se guardan
+ * cada APP_WARM_SNAPSHOT_SECONDS segundos y al apagar:
+ * - hot-links.bin: el top de cada ventana de HotLinkService.
+ * - code-index.bin: el índice de códigos fuera del heap (si APP_OFFHEAP_INDEX está activo);
+ *   UrlService lo mapea al arrancar en vez de recorrer urls y lo valida en segundo plano.
+ * Antes de abrir el puerto, warmUp recorre la ruta de redirección con los códigos más
+ * visitados para que el JIT y las cachés de H2 ya estén calientes con el tráfico real.
+ */
+public class WarmStartService {
+
+    static final String CODE_INDEX_FILE = "code-index.bin";
+    private static final String HOT_LINKS_FILE = "hot-links.bin";
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final Path DIR = snapshotDir();
+
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0 Safari/537.36",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 14_0) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.0 Safari/605.1.15",
+            "Mozilla/5.0 (X11; Linux x86_64; rv:121.0) Gecko/20100101 Firefox/121.0",
+            null
+    };
+
+    private final HotLinkService hotLinks;
+    private final int topLinks;
+    private final Path dir;
+
+    public WarmStartService() {
+        this(HotLinkService.getInstance(), AppConfig.getInt("APP_WARM_SNAPSHOT_LINKS", 256), DIR);
+    }
+
+    WarmStartService(HotLinkService hotLinks, int topLinks, Path dir) {
+        this.hotLinks = hotLinks;
+        this.topLinks = topLinks;
+        this.dir = dir;
+    }
+
+    private static Path snapshotDir() {
+        String dir = AppConfig.get("APP_WARM_SNAPSHOT_DIR", null);
+        return dir != null ? Paths.get(dir) : null;
+    }
+
+    /** Ruta de un archivo del snapshot, o null si APP_WARM_SNAPSHOT_DIR no está configurado. */
+    static Path snapshotFile(String name) {
+        return DIR != null ? DIR.resolve(name) : null;
+    }
+
+    /** Guarda periódicamente y al apagar. No hace nada sin APP_WARM_SNAPSHOT_DIR. */
+    public void start() {
+        if (dir == null) return;
+        long every = AppConfig.getLong("APP_WARM_SNAPSHOT_SECONDS", 300);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "warm-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::save, every, every, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::save, "warm-snapshot-shutdown"));
+    }
+
+    public synchronized void save() {
+        try {
+            Files.createDirectories(dir);
+            Path tmp = dir.resolve(HOT_LINKS_FILE + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                List<String> windows = hotLinks.windowNames();
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(windows.size());
+                for (String window : windows) {
+                    List<HeavyHitters.Hit> hits = hotLinks.top(window, topLinks);
+                    out.writeUTF(window);
+                    out.writeInt(hits.size());
+                    for (HeavyHitters.Hit hit : hits) {
+                        out.writeUTF(hit.key());
+                        out.writeLong(hit.count());
+                    }
+                }
+            }
+            Files.move(tmp, dir.resolve(HOT_LINKS_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            Path indexTmp = dir.resolve(CODE_INDEX_FILE + ".tmp");
+            if (UrlService.saveCodeIndex(indexTmp)) {
+                Files.move(indexTmp, dir.resolve(CODE_INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            System.err.println("[WARM] No se pudo guardar el snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Recarga en HotLinkService el top guardado (las ventanas más cortas que la antigüedad
+     * del snapshot se descartan) y devuelve los códigos para el calentamiento.
+     */
+    public List<String> restore() {
+        return restore(System.currentTimeMillis());
+    }
+
+    List<String> restore(long now) {
+        Set<String> codes = new LinkedHashSet<>();
+        Path file = dir != null ? dir.resolve(HOT_LINKS_FILE) : null;
+        if (file == null || !Files.exists(file)) return new ArrayList<>(codes);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                System.err.println("[WARM] Versión de snapshot desconocida, se ignora");
+                return new ArrayList<>(codes);
+            }
+            long age = now - in.readLong();
+            int windows = in.readInt();
+            for (int w = 0; w < windows; w++) {
+                String window = in.readUTF();
+                int count = in.readInt();
+                List<HeavyHitters.Hit> hits = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) hits.add(new HeavyHitters.Hit(in.readUTF(), in.readLong()));
+                hotLinks.restore(window, hits, age);
+                for (HeavyHitters.Hit hit : hits) codes.add(hit.key());
+            }
+        } catch (IOException e) {
+            System.err.println("[WARM] Snapshot ilegible: " + e.getMessage());
+        }
+        System.out.println("[WARM] " + codes.size() + " enlaces populares recuperados del snapshot");
+        return new ArrayList<>(codes);
+    }
+
+    /**
+     * Ejecuta redirect(código, user-agent) con los códigos dados hasta APP_WARMUP_ROUNDS
+     * llamadas o APP_WARMUP_MS milisegundos. Sin códigos usa unos al azar (recorre el camino
+     * de "no encontrado", que también consulta la base).
+     */
+    public void warmUp(List<String> codes, BiConsumer<String, String> redirect) {
+        int rounds = AppConfig.getInt("APP_WARMUP_ROUNDS", 20000);
+        long deadline = System.currentTimeMillis() + AppConfig.getLong("APP_WARMUP_MS", 3000);
+        if (rounds <= 0) return;
+        List<String> targets = new ArrayList<>(codes);
+        if (targets.isEmpty()) {
+            for (int i = 0; i < 64; i++) targets.add(UrlService.generateShortUrl());
+        }
+        int done = 0;
+        try {
+            while (done < rounds && System.currentTimeMillis() < deadline) {
+                redirect.accept(targets.get(done % targets.size()), USER_AGENTS[done % USER_AGENTS.length]);
+                done++;
+            }
+        } catch (RuntimeException e) {
+            System.err.println("[WARM] Calentamiento interrumpido: " + e.getMessage());
+        }
+        System.out.println("[WARM] " + done + " redirecciones de calentamiento sobre " + targets.size() + " códigos");
+    }
+}
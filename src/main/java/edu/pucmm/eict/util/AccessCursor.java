@@ -0,0 +1,26 @@
+package edu.pucmm.eict.util;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Cursor opaco para paginar accesos de más reciente a más antiguo: marca de tiempo e id
+ * del último acceso entregado, codificados en base64url. El id (secuencia compartida entre
+ * particiones) desempata accesos con la misma marca de tiempo. La exportación lo usa en
+ * sentido contrario, para retomar a partir del último acceso recibido.
+ */
+public record AccessCursor(long timestamp, long id) {
+
+    public String encode() {
+        ByteBuffer buf = ByteBuffer.allocate(16).putLong(timestamp).putLong(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buf.array());
+    }
+
+    /** @throws IllegalArgumentException si el texto no es un cursor válido */
+    public static AccessCursor decode(String cursor) {
+        byte[] raw = Base64.getUrlDecoder().decode(cursor);
+        if (raw.length != 16) throw new IllegalArgumentException("Cursor inválido");
+        ByteBuffer buf = ByteBuffer.wrap(raw);
+        return new AccessCursor(buf.getLong(), buf.getLong());
+    }
+}
@@ -0,0 +1,135 @@
+package edu.pucmm.eict.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Límite de concurrencia que se ajusta según la latencia observada (un carril de AdmissionController).
+ * acquire() admite mientras haya menos peticiones en curso que el límite y, si no, rechaza al
+ * instante (sin cola). Cada release() aporta una muestra; por ventana de windowMillis:
+ * <ul>
+ *   <li>si más del 1% de las muestras supera la latencia objetivo (p99 por encima del objetivo),
+ *   se avisa a onBreach y, si no pudo aliviar la carga en otra parte, el límite se multiplica
+ *   por 0,8 (retroceso AIMD);</li>
+ *   <li>si no, se aplica un gradiente: límite × min(1, 2 × latencia base / latencia media),
+ *   más √límite de margen si el límite se llegó a usar. La latencia base sigue a la mínima
+ *   observada y sube despacio, para adaptarse a cambios reales del servicio.</li>
+ * </ul>
+ */
+public class AdaptiveLimiter {
+
+    private static final double BACKOFF = 0.8;
+    private static final double TOLERANCE = 2.0;
+    private static final double MAX_OVER_TARGET = 0.01;
+    private static final int MIN_SAMPLES = 10;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetMicros;
+    private final long windowNanos;
+
+    private volatile double limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Máximo de peticiones en curso en la ventana: indica si el límite llegó a usarse
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder overTarget = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private double baselineMicros;
+    private volatile BooleanSupplier onBreach = () -> false;
+
+    public AdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit, long targetMicros, long windowMillis) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.targetMicros = targetMicros;
+        this.windowNanos = windowMillis * 1_000_000L;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * Se ejecuta (en el hilo que cierra la ventana) cuando el p99 de una ventana supera el objetivo.
+     * Si devuelve true (liberó capacidad en otra parte) este límite no se reduce en esa ventana.
+     */
+    public void onBreach(BooleanSupplier listener) {
+        this.onBreach = listener;
+    }
+
+    /** true si la petición entra; en ese caso debe llamarse release() al terminar. */
+    public boolean acquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                peakInFlight.accumulateAndGet(current + 1, Math::max);
+                return true;
+            }
+        }
+    }
+
+    public void release(long latencyMicros) {
+        inFlight.decrementAndGet();
+        samples.increment();
+        sumMicros.add(latencyMicros);
+        if (latencyMicros > targetMicros) overTarget.increment();
+        long start = windowStart.get();
+        if (System.nanoTime() - start >= windowNanos && samples.sum() >= MIN_SAMPLES
+                && windowStart.compareAndSet(start, System.nanoTime())) {
+            closeWindow();
+        }
+    }
+
+    /** Reduce el límite sin esperar a la ventana (un carril de más prioridad está saturado); false si ya estaba en el mínimo. */
+    public synchronized boolean backOff() {
+        double next = Math.max(minLimit, limit * BACKOFF);
+        if (next >= limit) return false;
+        limit = next;
+        return true;
+    }
+
+    private void closeWindow() {
+        long n = samples.sumThenReset();
+        long over = overTarget.sumThenReset();
+        long sum = sumMicros.sumThenReset();
+        int peak = peakInFlight.getAndSet(inFlight.get());
+        if (n == 0) return;
+        if (over > n * MAX_OVER_TARGET) {
+            if (!onBreach.getAsBoolean()) backOff();
+            return;
+        }
+        synchronized (this) {
+            double avg = Math.max(1, (double) sum / n);
+            baselineMicros = baselineMicros == 0 || avg < baselineMicros
+                    ? avg
+                    : baselineMicros + (avg - baselineMicros) * 0.05;
+            double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * baselineMicros / avg));
+            double next = limit * gradient;
+            if (peak >= (int) limit) next += Math.sqrt(limit);
+            limit = Math.min(maxLimit, Math.max(minLimit, next));
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,45 @@
+package edu.pucmm.eict.util;
+
+/**
+ * Lectura centralizada de la configuración de la aplicación.
+ * Prioridad: propiedad del sistema (-DKEY=valor) y luego variable de ambiente.
+ */
+public class AppConfig {
+
+    private AppConfig() {
+    }
+
+    public static String get(String key, String defaultValue) {
+        String value = System.getProperty(key, System.getenv(key));
+        if (value == null || value.trim().isEmpty()) return defaultValue;
+        return value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("[CONFIG] Valor inválido para " + key + ": " + value + " (se usa " + defaultValue + ")");
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = get(key, null);
+        if (value == null) return defaultValue;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.err.println("[CONFIG] Valor inválido para " + key + ": " + value + " (se usa " + defaultValue + ")");
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key, null);
+        if (value == null) return defaultValue;
+        return "true".equalsIgnoreCase(value) || "1".equals(value) || "yes".equalsIgnoreCase(value);
+    }
+}
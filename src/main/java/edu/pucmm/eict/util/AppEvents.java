@@ -0,0 +1,130 @@
+package edu.pucmm.eict.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import java.net.URI;
+
+/**
+ * Eventos propios para Java Flight Recorder. Sin una grabación activa (o con el evento
+ * deshabilitado) begin/commit no hacen nada y el JIT elimina el objeto. Redirecciones y JWT
+ * solo se graban por encima de 1 ms (son por petición); los umbrales se ajustan en
+ * src/main/jfr/acortador.jfc, que se usa junto con el perfil "default" del JDK:
+ * <pre>
+ *   -XX:StartFlightRecording=settings=default,settings=acortador.jfc,maxage=6h,filename=acortador.jfr
+ * </pre>
+ * Uso: crear el evento, begin() antes del trabajo, end() al terminar y, si shouldCommit()
+ * (que compara la duración con el umbral), llenar los campos y commit().
+ */
+public final class AppEvents {
+
+    private AppEvents() {
+    }
+
+    @Name("edu.pucmm.eict.RedirectResolved")
+    @Label("Redirección resuelta")
+    @Description("Búsqueda del destino de /go/{code}, desde el índice en memoria o la base")
+    @Category({"Acortador", "Redirecciones"})
+    @StackTrace(false)
+    @Threshold("1 ms")
+    public static class RedirectResolved extends jdk.jfr.Event {
+        @Label("Código")
+        public String code;
+
+        @Label("Desde caché")
+        @Description("Resuelto por el índice de códigos sin consultar la base")
+        public boolean cacheHit;
+
+        @Label("Encontrado")
+        public boolean found;
+    }
+
+    @Name("edu.pucmm.eict.ClicksPersisted")
+    @Label("Clics persistidos")
+    @Description("Un lote de ClickWriter escrito en la base")
+    @Category({"Acortador", "Clics"})
+    @StackTrace(false)
+    public static class ClicksPersisted extends jdk.jfr.Event {
+        @Label("Clics en el lote")
+        public int batchSize;
+
+        @Label("Enlaces distintos")
+        public int urls;
+    }
+
+    @Name("edu.pucmm.eict.QrRendered")
+    @Label("QR generado")
+    @Category({"Acortador", "Imágenes"})
+    @StackTrace(false)
+    public static class QrRendered extends jdk.jfr.Event {
+        @Label("Ancho")
+        public int width;
+
+        @Label("Alto")
+        public int height;
+
+        @Label("Tamaño del PNG")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("edu.pucmm.eict.PreviewFetched")
+    @Label("Vista previa descargada")
+    @Description("Consulta a Microlink (y descarga de la imagen, si corresponde)")
+    @Category({"Acortador", "Vistas previas"})
+    @StackTrace(false)
+    public static class PreviewFetched extends jdk.jfr.Event {
+        @Label("Origen")
+        @Description("page, image o screenshot")
+        public String source;
+
+        @Label("Host del enlace")
+        public String host;
+
+        @Label("Estado HTTP")
+        public int status;
+
+        @Label("Bytes recibidos")
+        @DataAmount
+        public long bytes;
+
+        /** Llena los campos y hace commit si el evento supera el umbral configurado. */
+        public void commit(String source, String url, int status, long bytes) {
+            end();
+            if (!shouldCommit()) return;
+            this.source = source;
+            this.host = host(url);
+            this.status = status;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+
+    @Name("edu.pucmm.eict.JwtVerified")
+    @Label("JWT verificado")
+    @Category({"Acortador", "Seguridad"})
+    @StackTrace(false)
+    @Threshold("1 ms")
+    public static class JwtVerified extends jdk.jfr.Event {
+        @Label("Válido")
+        public boolean valid;
+
+        @Label("Motivo del rechazo")
+        public String failure;
+    }
+
+    /** Host de la URL para los eventos (no se graba la URL completa). */
+    public static String host(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host : "";
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+}
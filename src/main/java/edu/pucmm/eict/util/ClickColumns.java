@@ -0,0 +1,213 @@
+package edu.pucmm.eict.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Almacén columnar de los clics de una URL.
+ * Los clics se agrupan en bloques (que crecen hasta CHUNK_SIZE); cada bloque guarda la
+ * marca de tiempo base y, por clic, el delta en milisegundos respecto al anterior (int)
+ * más un byte para navegador y otro para plataforma: 6 bytes por clic. Los bloques son arreglos en heap
+ * mientras la URL es pequeña y pasan a memoria directa (fuera del heap) al crecer.
+ * Cada bloque conoce su rango [min, max] de tiempo, lo que permite saltarlo en los escaneos.
+ */
+public class ClickColumns {
+
+    public static final int CHUNK_SIZE = 4096;
+    // Los primeros bloques son pequeños para no reservar 24 KB por cada URL con pocos clics
+    private static final int FIRST_CHUNK_SIZE = 64;
+    private static final int BYTES_PER_CLICK = 6;
+
+    public enum Column { BROWSER, PLATFORM }
+
+    @FunctionalInterface
+    public interface ClickVisitor {
+        void visit(long timestamp, int browserCode, int platformCode);
+    }
+
+    private final int offHeapAfterChunks;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+    private long[] chunkFirst = new long[4];   // marca de tiempo del primer clic del bloque
+    private long[] chunkMin = new long[4];
+    private long[] chunkMax = new long[4];
+    private int[] chunkCount = new int[4];
+    private int[] chunkCapacity = new int[4];
+    private int chunkTotal;
+    private long reservedBytes;
+    private long lastTimestamp;
+    private long size;
+
+    public ClickColumns(int offHeapAfterChunks) {
+        this.offHeapAfterChunks = offHeapAfterChunks;
+    }
+
+    public void append(long timestamp, int browserCode, int platformCode) {
+        lock.writeLock().lock();
+        try {
+            int current = chunkTotal - 1;
+            long delta = timestamp - lastTimestamp;
+            if (current < 0 || chunkCount[current] == chunkCapacity[current] || delta > Integer.MAX_VALUE || delta < Integer.MIN_VALUE) {
+                current = newChunk(timestamp);
+                delta = 0;
+            }
+            ByteBuffer buf = chunks[current];
+            int pos = chunkCount[current] * BYTES_PER_CLICK;
+            buf.putInt(pos, (int) delta);
+            buf.put(pos + 4, (byte) browserCode);
+            buf.put(pos + 5, (byte) platformCode);
+            chunkCount[current]++;
+            chunkMin[current] = Math.min(chunkMin[current], timestamp);
+            chunkMax[current] = Math.max(chunkMax[current], timestamp);
+            lastTimestamp = timestamp;
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int newChunk(long firstTimestamp) {
+        if (chunkTotal == chunks.length) {
+            int n = chunks.length * 2;
+            chunks = Arrays.copyOf(chunks, n);
+            chunkFirst = Arrays.copyOf(chunkFirst, n);
+            chunkMin = Arrays.copyOf(chunkMin, n);
+            chunkMax = Arrays.copyOf(chunkMax, n);
+            chunkCount = Arrays.copyOf(chunkCount, n);
+            chunkCapacity = Arrays.copyOf(chunkCapacity, n);
+        }
+        int clicks = (int) Math.min(CHUNK_SIZE, (long) FIRST_CHUNK_SIZE << Math.min(chunkTotal, 16));
+        int capacity = clicks * BYTES_PER_CLICK;
+        chunks[chunkTotal] = chunkTotal >= offHeapAfterChunks
+                ? ByteBuffer.allocateDirect(capacity)
+                : ByteBuffer.allocate(capacity);
+        chunkCapacity[chunkTotal] = clicks;
+        reservedBytes += capacity;
+        chunkFirst[chunkTotal] = firstTimestamp;
+        chunkMin[chunkTotal] = Long.MAX_VALUE;
+        chunkMax[chunkTotal] = Long.MIN_VALUE;
+        chunkCount[chunkTotal] = 0;
+        return chunkTotal++;
+    }
+
+    /** Recorre los clics con marca de tiempo en [from, to), en orden de inserción. */
+    public void scan(long from, long to, ClickVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (int c = 0; c < chunkTotal; c++) {
+                if (chunkMax[c] < from || chunkMin[c] >= to) continue;
+                ByteBuffer buf = chunks[c];
+                long ts = chunkFirst[c];
+                int n = chunkCount[c];
+                for (int i = 0; i < n; i++) {
+                    int pos = i * BYTES_PER_CLICK;
+                    ts += buf.getInt(pos);
+                    if (ts >= from && ts < to) {
+                        visitor.visit(ts, buf.get(pos + 4) & 0xFF, buf.get(pos + 5) & 0xFF);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long count(long from, long to) {
+        long[] total = new long[1];
+        lock.readLock().lock();
+        try {
+            for (int c = 0; c < chunkTotal; c++) {
+                // Bloques completamente dentro del rango se cuentan sin decodificar
+                if (chunkMin[c] >= from && chunkMax[c] < to) {
+                    total[0] += chunkCount[c];
+                } else if (chunkMax[c] >= from && chunkMin[c] < to) {
+                    ByteBuffer buf = chunks[c];
+                    long ts = chunkFirst[c];
+                    for (int i = 0; i < chunkCount[c]; i++) {
+                        ts += buf.getInt(i * BYTES_PER_CLICK);
+                        if (ts >= from && ts < to) total[0]++;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return total[0];
+    }
+
+    /** Conteo por código de la columna indicada (índice = código de 0 a 255). */
+    public long[] groupBy(Column column, long from, long to) {
+        long[] counts = new long[256];
+        scan(from, to, (ts, browser, platform) -> counts[column == Column.BROWSER ? browser : platform]++);
+        return counts;
+    }
+
+    public long[] timestamps(long from, long to) {
+        long[] out = new long[(int) Math.min(Integer.MAX_VALUE - 8, count(from, to))];
+        int[] i = new int[1];
+        scan(from, to, (ts, browser, platform) -> {
+            if (i[0] < out.length) out[i[0]++] = ts;
+        });
+        return i[0] == out.length ? out : Arrays.copyOf(out, i[0]);
+    }
+
+    /** Las últimas max marcas de tiempo en orden de inserción (se leen solo los bloques finales). */
+    public long[] latest(int max) {
+        lock.readLock().lock();
+        try {
+            int n = (int) Math.min(max, size);
+            long[] out = new long[n];
+            int remaining = n;
+            for (int c = chunkTotal - 1; c >= 0 && remaining > 0; c--) {
+                int count = chunkCount[c];
+                int skip = Math.max(0, count - remaining);
+                ByteBuffer buf = chunks[c];
+                long ts = chunkFirst[c];
+                int pos = remaining - (count - skip);
+                for (int i = 0; i < count; i++) {
+                    ts += buf.getInt(i * BYTES_PER_CLICK);
+                    if (i >= skip) out[pos++] = ts;
+                }
+                remaining -= count - skip;
+            }
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Bloques en memoria directa. */
+    int directChunks() {
+        lock.readLock().lock();
+        try {
+            int direct = 0;
+            for (int c = 0; c < chunkTotal; c++) {
+                if (chunks[c].isDirect()) direct++;
+            }
+            return direct;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Memoria reservada por los bloques (heap y directa). */
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            return reservedBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package edu.pucmm.eict.util;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Particiones por tiempo de los accesos (una tabla por mes o por día) en la base de analítica.
+ * Expirar datos antiguos o compactarlos se hace eliminando tablas completas, y borrar los
+ * clics de una URL cuesta una sentencia indexada por partición en lugar de recorrer toda la historia.
+ */
+public class ClickPartitions {
+
+    public static final String PREFIX = "access_details_p";
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+    // Columnas de texto de la tabla access_details original (para migraciones)
+    private static final String LEGACY_COLUMNS = "url_id, timestamp, browser, ip, client_domain, platform";
+    public static final String COLUMNS = "url_id, timestamp, browser_id, platform_id, domain_id, ip";
+
+    private final DataSource ds;
+    private final DimensionDictionary dimensions;
+    private final boolean daily;
+    // Días que se conservan los accesos detallados (el menor de retención y compactación; 0 = siempre)
+    private final int keepDays;
+    private final ZoneId zone = ZoneId.systemDefault();
+    // Lista ordenada por fecha de inicio; se reemplaza completa al crear o eliminar particiones
+    private volatile List<Partition> partitions = List.of();
+    // Crear, eliminar y listar hacen DDL/consultas: lock en vez de synchronized para no fijar
+    // hilos virtuales durante JDBC (ver VirtualThreads)
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public record Partition(String table, LocalDate start, LocalDate end) {
+    }
+
+    public ClickPartitions(DataSource ds, DimensionDictionary dimensions, String granularity) {
+        this(ds, dimensions, granularity, keepDaysFromConfig());
+    }
+
+    public ClickPartitions(DataSource ds, DimensionDictionary dimensions, String granularity, int keepDays) {
+        this.ds = ds;
+        this.dimensions = dimensions;
+        this.daily = "day".equalsIgnoreCase(granularity);
+        this.keepDays = Math.max(0, keepDays);
+    }
+
+    // Mismas políticas que ClickMaintenanceService: lo que una de ellas eliminaría ya no se acepta
+    private static int keepDaysFromConfig() {
+        int retention = AppConfig.getInt("APP_CLICK_RETENTION_DAYS", 0);
+        int compact = AppConfig.getInt("APP_CLICK_COMPACT_AFTER_DAYS", 0);
+        if (retention <= 0) return Math.max(0, compact);
+        return compact <= 0 ? retention : Math.min(retention, compact);
+    }
+
+    public void init() {
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            // Secuencia compartida: los ids son únicos entre particiones (útil para cursores)
+            st.executeUpdate("CREATE SEQUENCE IF NOT EXISTS access_details_seq");
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS access_rollups (\n" +
+                    "  url_id BIGINT NOT NULL,\n" +
+                    "  day DATE NOT NULL,\n" +
+                    "  browser_id INT NOT NULL,\n" +
+                    "  platform_id INT NOT NULL,\n" +
+                    "  domain_id INT NOT NULL,\n" +
+                    "  hits BIGINT NOT NULL\n" +
+                    ")");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_rollups_url_day ON access_rollups(url_id, day)");
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS compacted_partitions (\n" +
+                    "  table_name VARCHAR(64) PRIMARY KEY,\n" +
+                    "  compacted_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP\n" +
+                    ")");
+        } catch (SQLException e) {
+            throw new RuntimeException("Error initializing click partitions", e);
+        }
+        refresh();
+        tableFor(System.currentTimeMillis());
+    }
+
+    /** Particiones existentes, de la más antigua a la más reciente. */
+    public List<Partition> list() {
+        return partitions;
+    }
+
+    /**
+     * Devuelve (creándola si hace falta) la tabla que corresponde al instante dado, o null si esa
+     * partición ya cayó fuera de la retención o la compactación: un clic tardío no debe volver a
+     * crear una partición que el mantenimiento eliminó.
+     */
+    public String tableFor(long epochMillis) {
+        LocalDate date = Instant.ofEpochMilli(epochMillis).atZone(zone).toLocalDate();
+        if (isExpired(date)) return null;
+        String table = daily ? PREFIX + DAY.format(date) : PREFIX + MONTH.format(date);
+        for (Partition p : partitions) {
+            if (p.table().equals(table)) return table;
+        }
+        return create(table);
+    }
+
+    private boolean isExpired(LocalDate date) {
+        if (keepDays <= 0) return false;
+        LocalDate end = daily ? date.plusDays(1) : date.withDayOfMonth(1).plusMonths(1);
+        return !end.isAfter(LocalDate.now(zone).minusDays(keepDays));
+    }
+
+    private String create(String table) {
+        lock.lock();
+        try {
+            return createLocked(table);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String createLocked(String table) {
+        for (Partition p : partitions) {
+            if (p.table().equals(table)) return table;
+        }
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS " + table + " (\n" +
+                    "  id BIGINT DEFAULT NEXT VALUE FOR access_details_seq PRIMARY KEY,\n" +
+                    "  url_id BIGINT NOT NULL,\n" +
+                    "  timestamp TIMESTAMP NOT NULL,\n" +
+                    "  browser_id INT NOT NULL,\n" +
+                    "  platform_id INT NOT NULL,\n" +
+                    "  domain_id INT NOT NULL,\n" +
+                    "  ip VARBINARY(16)\n" +
+                    ")");
+            // (url_id, timestamp): lecturas por enlace ya ordenadas y consultas por rango de tiempo
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_" + table + "_url_ts ON " + table + "(url_id, timestamp)");
+        } catch (SQLException e) {
+            throw new RuntimeException("Error creating partition " + table, e);
+        }
+        refresh();
+        return table;
+    }
+
+    public void drop(Partition partition) {
+        lock.lock();
+        try {
+            try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+                st.executeUpdate("DROP TABLE IF EXISTS " + partition.table());
+            } catch (SQLException e) {
+                throw new RuntimeException("Error dropping partition " + partition.table(), e);
+            }
+            refresh();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refresh() {
+        lock.lock();
+        try {
+            partitions = listTables();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<Partition> listTables() {
+        List<Partition> found = new ArrayList<>();
+        String q = "SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME LIKE ?";
+        try (Connection c = ds.getConnection(); PreparedStatement ps = c.prepareStatement(q)) {
+            ps.setString(1, PREFIX.toUpperCase() + "%");
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Partition p = parse(rs.getString(1).toLowerCase());
+                    if (p != null) found.add(p);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error listing click partitions", e);
+        }
+        found.sort(Comparator.comparing(Partition::start));
+        return List.copyOf(found);
+    }
+
+    private Partition parse(String table) {
+        String suffix = table.substring(PREFIX.length());
+        if (suffix.length() == 6 && suffix.chars().allMatch(Character::isDigit)) {
+            LocalDate start = LocalDate.parse(suffix + "01", DAY);
+            return new Partition(table, start, start.plusMonths(1));
+        }
+        if (suffix.length() == 8 && suffix.chars().allMatch(Character::isDigit)) {
+            LocalDate start = LocalDate.parse(suffix, DAY);
+            return new Partition(table, start, start.plusDays(1));
+        }
+        return null;
+    }
+
+    /**
+     * Copia a las particiones las filas de una consulta que devuelva las columnas de texto
+     * (url_id, timestamp, browser, ip, client_domain, platform), codificándolas con el
+     * diccionario. Se usa para migrar tablas access_details de versiones anteriores.
+     */
+    public long importRows(Connection src, String selectSql) throws SQLException {
+        long copied = 0;
+        Map<String, PreparedStatement> inserts = new HashMap<>();
+        try (Connection dst = ds.getConnection(); Statement sel = src.createStatement()) {
+            dst.setAutoCommit(false);
+            sel.setFetchSize(1000);
+            try (ResultSet rs = sel.executeQuery(selectSql)) {
+                while (rs.next()) {
+                    Timestamp ts = rs.getTimestamp(2);
+                    String table = tableFor(ts.getTime());
+                    if (table == null) continue; // fuera de la retención
+                    PreparedStatement ins = inserts.get(table);
+                    if (ins == null) {
+                        ins = dst.prepareStatement("INSERT INTO " + table + "(" + COLUMNS + ") VALUES(?,?,?,?,?,?)");
+                        inserts.put(table, ins);
+                    }
+                    ins.setLong(1, rs.getLong(1));
+                    ins.setTimestamp(2, ts);
+                    ins.setInt(3, dimensions.idOf(DimensionDictionary.Kind.BROWSER, rs.getString(3)));
+                    ins.setInt(4, dimensions.idOf(DimensionDictionary.Kind.PLATFORM, rs.getString(6)));
+                    ins.setInt(5, dimensions.idOf(DimensionDictionary.Kind.DOMAIN, rs.getString(5)));
+                    ins.setBytes(6, IpCodec.encode(rs.getString(4)));
+                    ins.addBatch();
+                    if (++copied % 1000 == 0) {
+                        for (PreparedStatement ps : inserts.values()) ps.executeBatch();
+                        dst.commit();
+                    }
+                }
+            }
+            for (PreparedStatement ps : inserts.values()) ps.executeBatch();
+            dst.commit();
+        } finally {
+            for (PreparedStatement ps : inserts.values()) ps.close();
+        }
+        return copied;
+    }
+
+    public static String legacyColumns() {
+        return LEGACY_COLUMNS;
+    }
+}
@@ -4,31 +4,56 @@ import org.h2.jdbcx.JdbcDataSource;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Database {
-    private static JdbcDataSource dataSource;
+    private static volatile DataSource dataSource;
+    // Base separada para clics/analítica: tabla de alto volumen de escritura
+    private static volatile DataSource analyticsDataSource;
+    private static volatile ClickPartitions clickPartitions;
+    private static volatile DimensionDictionary dimensions;
+    // La inicialización crea esquemas y migra datos: con hilos virtuales un synchronized
+    // fijaría al portador cualquier petición que llegue a getDataSource() antes de terminar
+    private static final ReentrantLock INIT_LOCK = new ReentrantLock();
 
-    public static synchronized void init() {
+    public static void init() {
         if (dataSource != null) return;
-        String mode = System.getProperty("APP_DB_MODE", System.getenv("APP_DB_MODE"));
-        if (mode == null || mode.isEmpty()) mode = "file"; // dev por defecto en archivo
+        INIT_LOCK.lock();
+        try {
+            if (dataSource == null) initLocked();
+        } finally {
+            INIT_LOCK.unlock();
+        }
+    }
+
+    private static void initLocked() {
+        String mode = AppConfig.get("APP_DB_MODE", "file"); // dev por defecto en archivo
         String jdbcUrl;
+        String analyticsUrl;
         if ("mem".equalsIgnoreCase(mode)) {
             jdbcUrl = "jdbc:h2:mem:acortador;DB_CLOSE_DELAY=-1";
+            analyticsUrl = "jdbc:h2:mem:acortador-analytics;DB_CLOSE_DELAY=-1";
         } else {
             String baseDir = System.getProperty("user.dir");
             String path = baseDir + "/data/acortador";
             jdbcUrl = "jdbc:h2:file:" + path + ";AUTO_SERVER=TRUE";
+            // La analítica tolera perder los últimos milisegundos ante una caída: se agrupan escrituras
+            analyticsUrl = "jdbc:h2:file:" + baseDir + "/data/acortador-analytics;AUTO_SERVER=TRUE"
+                    + ";WRITE_DELAY=" + AppConfig.getInt("APP_ANALYTICS_WRITE_DELAY_MS", 1000);
         }
-        dataSource = new JdbcDataSource();
-        dataSource.setURL(jdbcUrl);
-        dataSource.setUser("sa");
-        dataSource.setPassword("");
+        // Caché de páginas por base (en KB), para que los clics no desplacen a los enlaces
+        jdbcUrl += ";CACHE_SIZE=" + AppConfig.getInt("APP_DB_CACHE_KB", 16384);
+        analyticsUrl += ";CACHE_SIZE=" + AppConfig.getInt("APP_ANALYTICS_CACHE_KB", 32768);
+
+        JdbcDataSource catalog = createDataSource(jdbcUrl);
+        JdbcDataSource analytics = createDataSource(analyticsUrl);
 
         // Crear esquema si no existe
-        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement()) {
+        try (Connection c = catalog.getConnection(); Statement st = c.createStatement()) {
             st.executeUpdate("CREATE TABLE IF NOT EXISTS usuarios (\n" +
                     "  id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,\n" +
                     "  username VARCHAR(100) NOT NULL UNIQUE,\n" +
@@ -47,28 +72,123 @@ public class Database {
                     "  CONSTRAINT fk_url_user FOREIGN KEY (user_id) REFERENCES usuarios(id) ON DELETE SET NULL\n" +
                     ")");
 
-            st.executeUpdate("CREATE TABLE IF NOT EXISTS access_details (\n" +
-                    "  id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,\n" +
-                    "  url_id BIGINT NOT NULL,\n" +
-                    "  timestamp TIMESTAMP NOT NULL,\n" +
-                    "  browser VARCHAR(100),\n" +
-                    "  ip VARCHAR(64),\n" +
-                    "  client_domain VARCHAR(255),\n" +
-                    "  platform VARCHAR(100),\n" +
-                    "  CONSTRAINT fk_access_url FOREIGN KEY (url_id) REFERENCES urls(id) ON DELETE CASCADE\n" +
-                    ")");
+            // Sketch HyperLogLog de visitantes únicos (ver UniqueVisitorService)
+            st.executeUpdate("ALTER TABLE urls ADD COLUMN IF NOT EXISTS visitors_hll VARBINARY(2049)");
+            // Hash de la URL normalizada: detección de destinos repetidos sin indexar original_url
+            st.executeUpdate("ALTER TABLE urls ADD COLUMN IF NOT EXISTS url_hash BIGINT");
+            // Marca de borrado: el enlace deja de servirse al instante y UrlPurgeService elimina
+            // sus accesos por lotes antes de borrar la fila
+            st.executeUpdate("ALTER TABLE urls ADD COLUMN IF NOT EXISTS deleted_at TIMESTAMP NULL");
 
             // índices
             st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_urls_expires_at ON urls(expires_at)");
             st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_urls_user_id ON urls(user_id)");
-            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_access_url_id ON access_details(url_id)");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_urls_user_hash ON urls(user_id, url_hash)");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_urls_deleted_at ON urls(deleted_at)");
         } catch (SQLException e) {
             throw new RuntimeException("Error initializing database schema", e);
         }
+        backfillUrlHashes(catalog);
+
+        // Esquema de analítica: sin FK hacia urls (vive en otro archivo); la relación
+        // url_id -> urls.id se valida en la aplicación al persistir y al borrar.
+        // Los accesos se guardan en particiones por tiempo (ver ClickPartitions).
+        // Navegador, plataforma y dominio se guardan como ids del diccionario de dimensiones.
+        DimensionDictionary dictionary = new DimensionDictionary(analytics);
+        dictionary.init();
+        ClickPartitions partitions = new ClickPartitions(analytics, dictionary, AppConfig.get("APP_CLICK_PARTITION", "month"));
+        partitions.init();
+
+        migrateLegacyAccessDetails(catalog, partitions);
+
+        dimensions = dictionary;
+        clickPartitions = partitions;
+        // Con APP_SQL_STATS cada sentencia se mide por huella (ver QueryStats) y con trazas cada
+        // sentencia es un span; el esquema y las migraciones de arriba no cuentan
+        boolean stats = AppConfig.getBoolean("APP_SQL_STATS", false);
+        if (stats || Tracing.ENABLED) {
+            analyticsDataSource = new InstrumentedDataSource(analytics, "analytics", stats);
+            dataSource = new InstrumentedDataSource(catalog, "catalog", stats);
+        } else {
+            analyticsDataSource = analytics;
+            dataSource = catalog;
+        }
+    }
+
+    // Enlaces creados antes de url_hash: se calcula en Java (la normalización no es SQL) por lotes
+    private static void backfillUrlHashes(DataSource source) {
+        try (Connection c = source.getConnection()) {
+            long total = 0;
+            while (true) {
+                int batch = 0;
+                try (PreparedStatement sel = c.prepareStatement("SELECT id, original_url FROM urls WHERE url_hash IS NULL LIMIT 1000");
+                     PreparedStatement upd = c.prepareStatement("UPDATE urls SET url_hash = ? WHERE id = ?");
+                     ResultSet rs = sel.executeQuery()) {
+                    while (rs.next()) {
+                        upd.setLong(1, UrlNormalizer.hash(rs.getString(2)));
+                        upd.setLong(2, rs.getLong(1));
+                        upd.addBatch();
+                        batch++;
+                    }
+                    if (batch > 0) upd.executeBatch();
+                }
+                if (batch == 0) break;
+                total += batch;
+            }
+            if (total > 0) System.out.println("[DB] url_hash calculado para " + total + " enlaces existentes");
+        } catch (SQLException e) {
+            throw new RuntimeException("Error backfilling url_hash", e);
+        }
+    }
+
+    private static JdbcDataSource createDataSource(String jdbcUrl) {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL(jdbcUrl);
+        ds.setUser("sa");
+        ds.setPassword("");
+        return ds;
+    }
+
+    /**
+     * Versiones anteriores guardaban los accesos en una única tabla access_details junto a
+     * urls. Sus filas se copian a las particiones de analítica y se elimina la tabla antigua.
+     */
+    private static void migrateLegacyAccessDetails(DataSource source, ClickPartitions partitions) {
+        try (Connection src = source.getConnection()) {
+            try (PreparedStatement chk = src.prepareStatement(
+                    "SELECT 1 FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME = 'ACCESS_DETAILS'");
+                 ResultSet rs = chk.executeQuery()) {
+                if (!rs.next()) return;
+            }
+            System.out.println("[DB] Migrando access_details a particiones de analítica...");
+            long copied = partitions.importRows(src,
+                    "SELECT " + ClickPartitions.legacyColumns() + " FROM access_details ORDER BY id");
+            try (Statement drop = src.createStatement()) {
+                drop.executeUpdate("DROP TABLE access_details");
+            }
+            System.out.println("[DB] Migración completada: " + copied + " accesos copiados");
+        } catch (SQLException e) {
+            throw new RuntimeException("Error migrating access_details to click partitions", e);
+        }
     }
 
     public static DataSource getDataSource() {
         if (dataSource == null) init();
         return dataSource;
     }
+
+    public static DataSource getAnalyticsDataSource() {
+        if (analyticsDataSource == null) init();
+        return analyticsDataSource;
+    }
+
+    public static ClickPartitions getClickPartitions() {
+        if (clickPartitions == null) init();
+        return clickPartitions;
+    }
+
+    public static DimensionDictionary getDimensions() {
+        if (dimensions == null) init();
+        return dimensions;
+    }
 }
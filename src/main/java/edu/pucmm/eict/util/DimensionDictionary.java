@@ -0,0 +1,167 @@
+package edu.pucmm.eict.util;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Diccionario de dimensiones de los accesos (navegador, plataforma, dominio).
+ * Cada valor distinto se guarda una sola vez en click_dimensions y las particiones
+ * de accesos solo almacenan su id entero. En memoria se mantiene la tabla completa:
+ * al cargar accesos todos comparten la misma instancia de String por valor.
+ */
+public class DimensionDictionary {
+
+    public enum Kind {
+        BROWSER(1), PLATFORM(2), DOMAIN(3);
+
+        final int code;
+
+        Kind(int code) {
+            this.code = code;
+        }
+    }
+
+    // Valor usado cuando un tipo supera el máximo de entradas (p. ej. cabeceras Host arbitrarias)
+    static final String OVERFLOW = "(otros)";
+    private static final int MAX_VALUE_LENGTH = 255;
+
+    private final DataSource ds;
+    private final int maxEntriesPerKind;
+    private final ConcurrentHashMap<String, Integer>[] idsByKind;
+    // id -> valor; se reemplaza por una copia más grande al crecer
+    private volatile String[] valuesById = new String[64];
+    // Lock y no synchronized: load/create consultan la base y, con hilos virtuales, un monitor
+    // retenido durante JDBC fija el hilo a su portador (ver VirtualThreads)
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public DimensionDictionary(DataSource ds) {
+        this(ds, AppConfig.getInt("APP_DIMENSION_MAX_ENTRIES", 100000));
+    }
+
+    @SuppressWarnings("unchecked")
+    public DimensionDictionary(DataSource ds, int maxEntriesPerKind) {
+        this.ds = ds;
+        this.maxEntriesPerKind = maxEntriesPerKind;
+        this.idsByKind = new ConcurrentHashMap[Kind.values().length + 1];
+        for (Kind k : Kind.values()) {
+            idsByKind[k.code] = new ConcurrentHashMap<>();
+        }
+    }
+
+    public void init() {
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS click_dimensions (\n" +
+                    "  id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,\n" +
+                    "  kind TINYINT NOT NULL,\n" +
+                    "  value VARCHAR(255) NOT NULL,\n" +
+                    "  CONSTRAINT uq_dimension UNIQUE (kind, value)\n" +
+                    ")");
+            try (ResultSet rs = st.executeQuery("SELECT id, kind, value FROM click_dimensions")) {
+                while (rs.next()) {
+                    register(rs.getInt(1), rs.getInt(2), rs.getString(3));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading click dimensions", e);
+        }
+    }
+
+    /** Id del valor (0 para null), creándolo en la base si es nuevo. */
+    public int idOf(Kind kind, String value) {
+        if (value == null) return 0;
+        if (value.length() > MAX_VALUE_LENGTH) value = value.substring(0, MAX_VALUE_LENGTH);
+        Integer id = idsByKind[kind.code].get(value);
+        if (id != null) return id;
+        return create(kind, value);
+    }
+
+    /** Valor canónico (compartido) del id; null para 0. */
+    public String valueOf(int id) {
+        if (id <= 0) return null;
+        String[] values = valuesById;
+        String value = id < values.length ? values[id] : null;
+        // Otro proceso (p. ej. el servidor gRPC) pudo registrar el valor
+        return value != null ? value : load(id);
+    }
+
+    private String load(int id) {
+        lock.lock();
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT kind, value FROM click_dimensions WHERE id = ?")) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                register(id, rs.getInt(1), rs.getString(2));
+                return valuesById[id];
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading click dimension " + id, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int create(Kind kind, String value) {
+        lock.lock();
+        try {
+            return createLocked(kind, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int createLocked(Kind kind, String value) {
+        ConcurrentHashMap<String, Integer> ids = idsByKind[kind.code];
+        Integer existing = ids.get(value);
+        if (existing != null) return existing;
+        if (ids.size() >= maxEntriesPerKind && !OVERFLOW.equals(value)) {
+            return createLocked(kind, OVERFLOW);
+        }
+        try (Connection c = ds.getConnection()) {
+            try (PreparedStatement merge = c.prepareStatement(
+                    "MERGE INTO click_dimensions(kind, value) KEY(kind, value) VALUES(?,?)")) {
+                merge.setInt(1, kind.code);
+                merge.setString(2, value);
+                merge.executeUpdate();
+            }
+            try (PreparedStatement sel = c.prepareStatement(
+                    "SELECT id FROM click_dimensions WHERE kind = ? AND value = ?")) {
+                sel.setInt(1, kind.code);
+                sel.setString(2, value);
+                try (ResultSet rs = sel.executeQuery()) {
+                    rs.next();
+                    int id = rs.getInt(1);
+                    register(id, kind.code, value);
+                    return id;
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error registering click dimension", e);
+        }
+    }
+
+    private void register(int id, int kindCode, String value) {
+        String canonical = value.intern();
+        lock.lock();
+        try {
+            String[] values = valuesById;
+            if (id >= values.length) {
+                values = Arrays.copyOf(values, Math.max(id + 1, values.length * 2));
+            }
+            values[id] = canonical;
+            valuesById = values;
+            if (kindCode > 0 && kindCode < idsByKind.length) {
+                idsByKind[kindCode].put(canonical, id);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
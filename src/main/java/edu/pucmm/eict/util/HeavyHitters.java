@@ -0,0 +1,167 @@
+package edu.pucmm.eict.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Claves más frecuentes en una ventana deslizante (heavy hitters).
+ * La ventana se divide en un anillo de intervalos; cada intervalo tiene un Count-Min
+ * sketch (contadores atómicos) y un conjunto acotado de candidatos con mayor conteo.
+ * Registrar una clave no toma locks: incrementa los contadores y, si la clave supera
+ * al menor candidato, la agrega. Al consultar se suman las estimaciones de los
+ * intervalos vigentes para cada candidato.
+ */
+public class HeavyHitters {
+
+    public record Hit(String key, long count) {
+    }
+
+    private static final int DEPTH = 4;
+
+    private final int slots;
+    private final long slotMillis;
+    private final int width;
+    private final int maxCandidates;
+    private final AtomicReferenceArray<Slot> ring;
+
+    private final class Slot {
+        final long epoch;
+        final AtomicLongArray counters = new AtomicLongArray(DEPTH * width);
+        final ConcurrentHashMap<String, Long> candidates = new ConcurrentHashMap<>();
+        final AtomicBoolean pruning = new AtomicBoolean();
+        volatile long minCandidate;
+
+        Slot(long epoch) {
+            this.epoch = epoch;
+        }
+
+        long add(int hash, long weight) {
+            long min = Long.MAX_VALUE;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, counters.addAndGet(index(row, hash), weight));
+            }
+            return min;
+        }
+
+        long estimate(int hash) {
+            long min = Long.MAX_VALUE;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, counters.get(index(row, hash)));
+            }
+            return min;
+        }
+
+        void offer(String key, long estimate) {
+            if (candidates.size() < maxCandidates || estimate > minCandidate) {
+                candidates.put(key, estimate);
+                if (candidates.size() > maxCandidates * 2) prune();
+            }
+        }
+
+        // Un solo hilo recorta a maxCandidates; los demás siguen sin esperar
+        private void prune() {
+            if (!pruning.compareAndSet(false, true)) return;
+            try {
+                List<Map.Entry<String, Long>> entries = new ArrayList<>(candidates.entrySet());
+                if (entries.size() <= maxCandidates) return;
+                entries.sort(Map.Entry.comparingByValue(Comparator.reverseOrder()));
+                for (int i = maxCandidates; i < entries.size(); i++) {
+                    candidates.remove(entries.get(i).getKey(), entries.get(i).getValue());
+                }
+                minCandidate = entries.get(maxCandidates - 1).getValue();
+            } finally {
+                pruning.set(false);
+            }
+        }
+
+        // Cada fila mezcla el hash con su propia semilla: dos claves que chocan en una fila
+        // casi nunca chocan en las demás (con h1 + fila * h2, chocar en h1 y h2 era chocar en todas)
+        private int index(int row, int hash) {
+            int h = mix(hash + row * 0x9E3779B9);
+            return row * width + ((h & 0x7FFFFFFF) % width);
+        }
+    }
+
+    /**
+     * @param slots          intervalos en la ventana
+     * @param slotMillis     duración de cada intervalo
+     * @param width          contadores por fila del sketch
+     * @param maxCandidates  candidatos conservados por intervalo
+     */
+    public HeavyHitters(int slots, long slotMillis, int width, int maxCandidates) {
+        this.slots = slots;
+        this.slotMillis = slotMillis;
+        this.width = width;
+        this.maxCandidates = maxCandidates;
+        this.ring = new AtomicReferenceArray<>(slots);
+    }
+
+    public void add(String key, long nowMillis) {
+        add(key, nowMillis, 1);
+    }
+
+    /** Registra weight ocurrencias de una vez (p. ej. al restaurar un snapshot). */
+    public void add(String key, long nowMillis, long weight) {
+        long epoch = nowMillis / slotMillis;
+        Slot slot = slotFor(epoch);
+        if (slot == null) return; // marca de tiempo anterior a la ventana
+        slot.offer(key, slot.add(key.hashCode(), weight));
+    }
+
+    /** Duración total de la ventana. */
+    public long spanMillis() {
+        return slots * slotMillis;
+    }
+
+    /** Las k claves con más registros en la ventana que termina en nowMillis. */
+    public List<Hit> top(int k, long nowMillis) {
+        long current = nowMillis / slotMillis;
+        List<Slot> live = new ArrayList<>(slots);
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < slots; i++) {
+            Slot s = ring.get(i);
+            if (s != null && s.epoch > current - slots && s.epoch <= current) {
+                live.add(s);
+                keys.addAll(s.candidates.keySet());
+            }
+        }
+        List<Hit> hits = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            int hash = key.hashCode();
+            long total = 0;
+            for (Slot s : live) total += s.estimate(hash);
+            hits.add(new Hit(key, total));
+        }
+        hits.sort(Comparator.comparingLong(Hit::count).reversed());
+        return hits.size() > k ? new ArrayList<>(hits.subList(0, k)) : hits;
+    }
+
+    // Reemplaza con CAS el intervalo vencido que ocupa la posición del anillo
+    private Slot slotFor(long epoch) {
+        int pos = (int) (epoch % slots);
+        while (true) {
+            Slot s = ring.get(pos);
+            if (s != null && s.epoch == epoch) return s;
+            if (s != null && s.epoch > epoch) return null;
+            Slot fresh = new Slot(epoch);
+            if (ring.compareAndSet(pos, s, fresh)) return fresh;
+        }
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,152 @@
+package edu.pucmm.eict.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Estimador HyperLogLog de elementos distintos (p = 11: 2048 registros, error típico ~2,3 %).
+ * Se serializa en forma dispersa (pares índice/valor) mientras tiene pocos registros
+ * ocupados y en forma densa (un byte por registro) al llenarse; así un enlace con
+ * pocos visitantes ocupa unos bytes en la base en lugar de 2 KB.
+ */
+public class HyperLogLog {
+
+    public static final int P = 11;
+    private static final int M = 1 << P;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / M);
+
+    private static final byte SPARSE = 1;
+    private static final byte DENSE = 2;
+
+    private final byte[] registers = new byte[M];
+
+    public HyperLogLog() {
+    }
+
+    /** Agrega un elemento a partir de su hash de 64 bits. */
+    public boolean addHash(long hash) {
+        int index = (int) (hash >>> (64 - P));
+        // rango = posición del primer 1 en los bits restantes (con centinela para no pasar de 64 - P + 1)
+        long rest = (hash << P) | (1L << (P - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+            return true;
+        }
+        return false;
+    }
+
+    public boolean add(byte[] value) {
+        return addHash(hash64(value));
+    }
+
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < M; i++) {
+            if (other.registers[i] > registers[i]) registers[i] = other.registers[i];
+        }
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) zeros++;
+        }
+        double raw = ALPHA * M * M / sum;
+        // Corrección para cardinalidades pequeñas (conteo lineal)
+        if (raw <= 2.5 * M && zeros > 0) {
+            raw = M * Math.log((double) M / zeros);
+        }
+        return Math.round(raw);
+    }
+
+    public byte[] toBytes() {
+        int used = 0;
+        for (byte r : registers) {
+            if (r != 0) used++;
+        }
+        // Disperso: 2 bytes de índice + 1 de valor por registro ocupado
+        if (used * 3 < M) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(1 + used * 3);
+            out.write(SPARSE);
+            for (int i = 0; i < M; i++) {
+                if (registers[i] == 0) continue;
+                out.write(i >>> 8);
+                out.write(i & 0xFF);
+                out.write(registers[i]);
+            }
+            return out.toByteArray();
+        }
+        byte[] out = new byte[1 + M];
+        out[0] = DENSE;
+        System.arraycopy(registers, 0, out, 1, M);
+        return out;
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        HyperLogLog hll = new HyperLogLog();
+        if (bytes == null || bytes.length == 0) return hll;
+        if (bytes[0] == DENSE && bytes.length == 1 + M) {
+            System.arraycopy(bytes, 1, hll.registers, 0, M);
+        } else if (bytes[0] == SPARSE) {
+            for (int pos = 1; pos + 2 < bytes.length; pos += 3) {
+                int index = ((bytes[pos] & 0xFF) << 8) | (bytes[pos + 1] & 0xFF);
+                if (index < M) hll.registers[index] = bytes[pos + 2];
+            }
+        } else {
+            throw new IllegalArgumentException("Formato de HyperLogLog desconocido");
+        }
+        return hll;
+    }
+
+    public HyperLogLog copy() {
+        HyperLogLog copy = new HyperLogLog();
+        System.arraycopy(registers, 0, copy.registers, 0, M);
+        return copy;
+    }
+
+    public boolean isEmpty() {
+        for (byte r : registers) {
+            if (r != 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof HyperLogLog other && Arrays.equals(registers, other.registers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(registers);
+    }
+
+    /** Hash de 64 bits (mezcla de MurmurHash3) sobre bloques de 8 bytes. */
+    public static long hash64(byte[] value) {
+        long h = 0x9E3779B97F4A7C15L ^ value.length;
+        int i = 0;
+        for (; i + 8 <= value.length; i += 8) {
+            long k = 0;
+            for (int b = 0; b < 8; b++) {
+                k = (k << 8) | (value[i + b] & 0xFFL);
+            }
+            h = fmix64(h ^ fmix64(k));
+        }
+        long tail = 0;
+        for (; i < value.length; i++) {
+            tail = (tail << 8) | (value[i] & 0xFFL);
+        }
+        return fmix64(h ^ fmix64(tail ^ 0xC2B2AE3D27D4EB4FL));
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xFF51AFD7ED558CCDL;
+        k ^= k >>> 33;
+        k *= 0xC4CEB9FE1A85EC53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,248 @@
+package edu.pucmm.eict.util;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * DataSource que envuelve las conexiones de otro para medir cada sentencia en QueryStats:
+ * latencia de ejecución, filas (actualizadas o leídas al recorrer el ResultSet) y forma de los
+ * parámetros. Si hay una traza en curso, cada ejecución es además un span CLIENT.
+ * Se activa con APP_SQL_STATS=true o con trazas (ver Database); el resto de llamadas JDBC se
+ * delegan sin cambios mediante proxies dinámicos.
+ */
+public class InstrumentedDataSource implements DataSource {
+
+    private final DataSource delegate;
+    private final String name;
+    private final boolean stats;
+
+    public InstrumentedDataSource(DataSource delegate, String name) {
+        this(delegate, name, true);
+    }
+
+    /** Con stats=false solo se generan spans (trazas activas sin APP_SQL_STATS). */
+    public InstrumentedDataSource(DataSource delegate, String name, boolean stats) {
+        this.delegate = delegate;
+        this.name = name;
+        this.stats = stats;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(delegate.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(delegate.getConnection(username, password));
+    }
+
+    private Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+
+        ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = InstrumentedDataSource.invoke(connection, method, args);
+            Class<?> type;
+            if (result instanceof CallableStatement) type = CallableStatement.class;
+            else if (result instanceof PreparedStatement) type = PreparedStatement.class;
+            else if (result instanceof Statement) type = Statement.class;
+            else return result;
+            // prepareStatement/prepareCall reciben el SQL; createStatement lo recibe al ejecutar
+            String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : null;
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                    new StatementHandler((Statement) result, sql));
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final String preparedSql;
+        private final List<String> binds = new ArrayList<>();
+        private int batchSize;
+
+        StatementHandler(Statement statement, String preparedSql) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String m = method.getName();
+            if (m.startsWith("execute")) return execute(method, args);
+            if (m.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                bind(index, m.equals("setNull") || args[1] == null ? "null" : m.substring(3));
+            } else if (m.equals("clearParameters")) {
+                binds.clear();
+            } else if (m.equals("addBatch")) {
+                batchSize++;
+            } else if (m.equals("clearBatch")) {
+                batchSize = 0;
+            }
+            return InstrumentedDataSource.invoke(statement, method, args);
+        }
+
+        private void bind(int index, String type) {
+            while (binds.size() < index) binds.add("-");
+            binds.set(index - 1, type);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : preparedSql;
+            if (sql == null) return InstrumentedDataSource.invoke(statement, method, args);
+            // Sin estadísticas ni traza en curso no hay nada que medir: ni siquiera la huella del SQL
+            if (!stats && Tracing.current() == null) return InstrumentedDataSource.invoke(statement, method, args);
+            QueryStats.Entry entry = QueryStats.entry(name, sql);
+            int batch = batchSize;
+            Tracing.Span span = Tracing.startSpan(operation(entry.sql) + " " + name, Tracing.Kind.CLIENT);
+            if (span.isSampled()) {
+                span.attribute("db.system", "h2").attribute("db.name", name).attribute("db.statement", entry.sql);
+                if (batch > 0) span.attribute("db.batch_size", batch);
+            }
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = InstrumentedDataSource.invoke(statement, method, args);
+            } catch (Throwable e) {
+                if (stats) QueryStats.record(entry, (System.nanoTime() - start) / 1000, -1, shape(), batch, true);
+                span.error(e).close();
+                throw e;
+            }
+            long micros = (System.nanoTime() - start) / 1000;
+            if (method.getName().endsWith("Batch")) batchSize = 0;
+            long rows = -1;
+            if (result instanceof Integer n) rows = n;
+            else if (result instanceof Long n) rows = n;
+            else if (result instanceof int[] counts) rows = sum(counts);
+            else if (result instanceof long[] counts) rows = sum(counts);
+            if (rows >= 0) span.attribute("db.rows_affected", rows);
+            span.close();
+            if (stats) QueryStats.record(entry, micros, rows, shape(), batch, false);
+            if (stats && result instanceof ResultSet rs) {
+                return Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                        new ResultSetHandler(rs, entry));
+            }
+            return result;
+        }
+
+        private String shape() {
+            return "(" + String.join(", ", binds) + ")";
+        }
+    }
+
+    // Primera palabra del SQL (SELECT, INSERT, MERGE...) para nombrar el span
+    private static String operation(String sql) {
+        int end = sql.indexOf(' ');
+        return (end > 0 ? sql.substring(0, end) : sql).toUpperCase();
+    }
+
+    // Cuenta las filas recorridas y las suma a la sentencia al cerrar (o al agotarse)
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet resultSet;
+        private final QueryStats.Entry entry;
+        private long rows;
+        private boolean reported;
+
+        ResultSetHandler(ResultSet resultSet, QueryStats.Entry entry) {
+            this.resultSet = resultSet;
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = InstrumentedDataSource.invoke(resultSet, method, args);
+            String m = method.getName();
+            if (m.equals("next")) {
+                if (Boolean.TRUE.equals(result)) rows++;
+                else report();
+            } else if (m.equals("close")) {
+                report();
+            }
+            return result;
+        }
+
+        private void report() {
+            if (reported) return;
+            reported = true;
+            entry.addRows(rows);
+        }
+    }
+
+    private static long sum(int[] counts) {
+        long total = 0;
+        for (int c : counts) if (c > 0) total += c;
+        return total;
+    }
+
+    private static long sum(long[] counts) {
+        long total = 0;
+        for (long c : counts) if (c > 0) total += c;
+        return total;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return delegate.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+}
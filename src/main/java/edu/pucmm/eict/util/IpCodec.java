@@ -0,0 +1,82 @@
+package edu.pucmm.eict.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Conversión de direcciones IP a su forma binaria de 16 bytes (IPv6; las IPv4 se
+ * guardan como ::ffff:a.b.c.d) y de vuelta a texto.
+ */
+public class IpCodec {
+
+    private IpCodec() {
+    }
+
+    /** Devuelve los 16 bytes de la IP, o null si el texto no es una IP literal. */
+    public static byte[] encode(String ip) {
+        if (ip == null || ip.isEmpty()) return null;
+        byte[] raw = ip.indexOf(':') >= 0 ? parseIpv6(ip) : parseIpv4(ip);
+        if (raw == null) return null;
+        if (raw.length == 16) return raw;
+        byte[] mapped = new byte[16];
+        mapped[10] = (byte) 0xFF;
+        mapped[11] = (byte) 0xFF;
+        System.arraycopy(raw, 0, mapped, 12, 4);
+        return mapped;
+    }
+
+    public static String decode(byte[] bytes) {
+        if (bytes == null || bytes.length != 16) return null;
+        boolean v4Mapped = bytes[10] == (byte) 0xFF && bytes[11] == (byte) 0xFF;
+        for (int i = 0; i < 10 && v4Mapped; i++) {
+            if (bytes[i] != 0) v4Mapped = false;
+        }
+        if (v4Mapped) {
+            return (bytes[12] & 0xFF) + "." + (bytes[13] & 0xFF) + "." + (bytes[14] & 0xFF) + "." + (bytes[15] & 0xFF);
+        }
+        try {
+            return InetAddress.getByAddress(bytes).getHostAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    // Cuatro octetos decimales de 0 a 255; se interpreta aquí para no pasar nunca por InetAddress
+    // (que con un texto que no es literal haría una consulta DNS en la ruta de los clics)
+    static byte[] parseIpv4(String ip) {
+        byte[] out = new byte[4];
+        int part = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = 0; i <= ip.length(); i++) {
+            char ch = i < ip.length() ? ip.charAt(i) : '.';
+            if (ch == '.') {
+                if (digits == 0 || part == 4) return null;
+                out[part++] = (byte) value;
+                value = 0;
+                digits = 0;
+            } else if (ch >= '0' && ch <= '9' && digits < 3) {
+                value = value * 10 + (ch - '0');
+                digits++;
+                if (value > 255) return null;
+            } else {
+                return null;
+            }
+        }
+        return part == 4 ? out : null;
+    }
+
+    // Con ':' InetAddress trata el texto como literal IPv6 y nunca resuelve nombres; solo se
+    // descartan antes los caracteres que no pueden aparecer (p. ej. el "%zona")
+    private static byte[] parseIpv6(String ip) {
+        for (int i = 0; i < ip.length(); i++) {
+            char ch = ip.charAt(i);
+            if (ch != ':' && ch != '.' && Character.digit(ch, 16) < 0) return null;
+        }
+        try {
+            return InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+}
@@ -112,11 +112,22 @@ public class JwtUtil {
 
     // Valida el token y retorna los claims; utiliza la sintaxis de la demo con verifyWith()
     public static Claims validateToken(String token) throws JwtException {
-        return Jwts.parserBuilder()
-                .setSigningKey(secretKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        AppEvents.JwtVerified event = new AppEvents.JwtVerified();
+        event.begin();
+        try {
+            Claims claims = Jwts.parserBuilder()
+                    .setSigningKey(secretKey)
+                    .build()
+                    .parseClaimsJws(token)
+                    .getBody();
+            event.valid = true;
+            return claims;
+        } catch (RuntimeException e) {
+            event.failure = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            event.commit();
+        }
     }
 
 
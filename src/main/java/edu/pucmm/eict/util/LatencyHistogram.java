@@ -0,0 +1,116 @@
+package edu.pucmm.eict.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latencias en microsegundos con error relativo menor a 1/64 (al estilo de
+ * HdrHistogram): los valores menores a 128 se cuentan exactos y cada potencia de dos por
+ * encima se divide en 64 sub-rangos. Registrar no toma locks (un incremento atómico) y el
+ * tamaño es fijo (~16 KB) sin importar cuántas muestras haya. Los valores mayores a
+ * MAX_VALUE (unas 19 horas) se cuentan en el último rango.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int LINEAR = SUB_COUNT * 2;
+    private static final int MAX_EXPONENT = 36;
+    public static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+    private static final int BUCKETS = LINEAR + (MAX_EXPONENT - SUB_BITS - 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long micros) {
+        long value = Math.max(0, Math.min(micros, MAX_VALUE));
+        counts.incrementAndGet(index(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // reintentar
+        }
+    }
+
+    /**
+     * Registra la muestra y, si superó el intervalo esperado entre peticiones, también las que
+     * habrían quedado esperando detrás de ella (corrección de coordinated omission).
+     */
+    public void recordCorrected(long micros, long expectedIntervalMicros) {
+        record(micros);
+        if (expectedIntervalMicros <= 0) return;
+        for (long missing = micros - expectedIntervalMicros; missing >= expectedIntervalMicros; missing -= expectedIntervalMicros) {
+            record(missing);
+        }
+    }
+
+    /** Suma las muestras de other a este histograma. */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c > 0) counts.addAndGet(i, c);
+        }
+        total.addAndGet(other.total.get());
+        sum.addAndGet(other.sum.get());
+        long otherMax = other.max.get();
+        long current;
+        while (otherMax > (current = max.get()) && !max.compareAndSet(current, otherMax)) {
+            // reintentar
+        }
+    }
+
+    public long count() {
+        return total.get();
+    }
+
+    public long sum() {
+        return sum.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = total.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /** Valor bajo el cual queda el percentil dado (0-100); límite superior de su rango. */
+    public long percentile(double percentile) {
+        long n = total.get();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    /** Cuántas muestras son menores o iguales a micros (aproximado al rango que lo contiene). */
+    public long countAtOrBelow(long micros) {
+        int last = index(Math.max(0, Math.min(micros, MAX_VALUE)));
+        long seen = 0;
+        for (int i = 0; i <= last; i++) seen += counts.get(i);
+        return seen;
+    }
+
+    private static int index(long value) {
+        if (value < LINEAR) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return LINEAR + (shift - 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+    }
+
+    private static long upperBound(int index) {
+        if (index < LINEAR) return index;
+        int shift = (index - LINEAR) / SUB_COUNT + 1;
+        long sub = (index - LINEAR) % SUB_COUNT + SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+}
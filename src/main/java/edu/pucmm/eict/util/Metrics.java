@@ -0,0 +1,209 @@
+package edu.pucmm.eict.util;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Registro de métricas del proceso, exportado en formato de texto de Prometheus por scrape().
+ * Tres tipos: contadores (LongAdder), gauges (se leen al exportar) y timers (LatencyHistogram,
+ * exportados como histograma de Prometheus en segundos). Registrar una muestra no toma locks;
+ * las series con etiquetas se crean la primera vez que aparecen.
+ * Las familias se declaran como constantes estáticas donde se usan:
+ * <pre>
+ *   private static final Metrics.Timer QUERY = Metrics.timer("db_query_seconds", "...", "query");
+ *   QUERY.record(micros, "redirect_lookup");
+ * </pre>
+ */
+public final class Metrics {
+
+    // Límites (segundos) de los buckets exportados para los timers
+    private static final double[] BUCKETS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private static final Map<String, Family<?>> FAMILIES = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Quién puede leer /metrics (servidor web y gRPC): con APP_METRICS_TOKEN, quien envíe
+     * "Authorization: Bearer &lt;token&gt;"; sin token, solo clientes locales (loopback).
+     * remoteAddr es la dirección del socket, no X-Forwarded-For, que el cliente puede inventar.
+     */
+    public static boolean scrapeAllowed(String token, String authorization, String remoteAddr) {
+        if (token != null) {
+            String given = authorization != null && authorization.startsWith("Bearer ") ? authorization.substring(7).trim() : null;
+            return CsrfUtil.validateToken(token, given);
+        }
+        if (remoteAddr == null) return false;
+        // "[::1]" o "fe80::1%eth0": sin corchetes ni zona
+        String addr = remoteAddr.startsWith("[") && remoteAddr.endsWith("]") ? remoteAddr.substring(1, remoteAddr.length() - 1) : remoteAddr;
+        int zone = addr.indexOf('%');
+        byte[] ip = IpCodec.encode(zone >= 0 ? addr.substring(0, zone) : addr);
+        if (ip == null) return false;
+        boolean v4Mapped = ip[10] == (byte) 0xFF && ip[11] == (byte) 0xFF;
+        if (v4Mapped) return ip[12] == 127;
+        for (int i = 0; i < 15; i++) {
+            if (ip[i] != 0) return false;
+        }
+        return ip[15] == 1;
+    }
+
+    private abstract static class Family<S> {
+        final String name;
+        final String help;
+        final String[] labelNames;
+        final ConcurrentHashMap<List<String>, S> series = new ConcurrentHashMap<>();
+
+        Family(String name, String help, String[] labelNames) {
+            this.name = name;
+            this.help = help;
+            this.labelNames = labelNames;
+        }
+
+        S series(String[] labelValues, Function<List<String>, S> create) {
+            if (labelValues.length != labelNames.length) {
+                throw new IllegalArgumentException(name + " espera etiquetas " + Arrays.toString(labelNames));
+            }
+            List<String> key = Arrays.asList(labelValues);
+            S s = series.get(key);
+            return s != null ? s : series.computeIfAbsent(List.copyOf(key), create);
+        }
+
+        String labels(List<String> values, String extraName, String extraValue) {
+            if (values.isEmpty() && extraName == null) return "";
+            StringBuilder sb = new StringBuilder("{");
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) sb.append(',');
+                sb.append(labelNames[i]).append("=\"").append(escape(values.get(i))).append('"');
+            }
+            if (extraName != null) {
+                if (!values.isEmpty()) sb.append(',');
+                sb.append(extraName).append("=\"").append(extraValue).append('"');
+            }
+            return sb.append('}').toString();
+        }
+
+        abstract void write(StringBuilder out);
+    }
+
+    public static final class Counter extends Family<LongAdder> {
+        Counter(String name, String help, String[] labelNames) {
+            super(name, help, labelNames);
+        }
+
+        public void inc(String... labelValues) {
+            add(1, labelValues);
+        }
+
+        public void add(long amount, String... labelValues) {
+            series(labelValues, k -> new LongAdder()).add(amount);
+        }
+
+        @Override
+        void write(StringBuilder out) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(" counter\n");
+            series.forEach((labels, value) -> out.append(name).append(labels(labels, null, null)).append(' ').append(value.sum()).append('\n'));
+        }
+    }
+
+    public static final class Timer extends Family<LatencyHistogram> {
+        Timer(String name, String help, String[] labelNames) {
+            super(name, help, labelNames);
+        }
+
+        public void record(long micros, String... labelValues) {
+            series(labelValues, k -> new LatencyHistogram()).record(micros);
+        }
+
+        /** Registra el tiempo transcurrido desde startNanos (System.nanoTime()). */
+        public void recordSince(long startNanos, String... labelValues) {
+            record((System.nanoTime() - startNanos) / 1000, labelValues);
+        }
+
+        @Override
+        void write(StringBuilder out) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(" histogram\n");
+            series.forEach((labels, h) -> {
+                long count = h.count();
+                for (double bound : BUCKETS) {
+                    out.append(name).append("_bucket").append(labels(labels, "le", BigDecimal.valueOf(bound).stripTrailingZeros().toPlainString()))
+                            .append(' ').append(h.countAtOrBelow((long) (bound * 1_000_000))).append('\n');
+                }
+                out.append(name).append("_bucket").append(labels(labels, "le", "+Inf")).append(' ').append(count).append('\n');
+                out.append(name).append("_sum").append(labels(labels, null, null)).append(' ').append(h.sum() / 1_000_000.0).append('\n');
+                out.append(name).append("_count").append(labels(labels, null, null)).append(' ').append(count).append('\n');
+            });
+        }
+    }
+
+    private static final class Gauge extends Family<DoubleSupplier> {
+        Gauge(String name, String help, String[] labelNames) {
+            super(name, help, labelNames);
+        }
+
+        @Override
+        void write(StringBuilder out) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(" gauge\n");
+            series.forEach((labels, supplier) -> {
+                double value;
+                try {
+                    value = supplier.getAsDouble();
+                } catch (RuntimeException e) {
+                    return; // la fuente no está disponible (p. ej. servicio sin iniciar)
+                }
+                out.append(name).append(labels(labels, null, null)).append(' ').append(value).append('\n');
+            });
+        }
+    }
+
+    public static Counter counter(String name, String help, String... labelNames) {
+        return register(name, () -> new Counter(name, help, labelNames), Counter.class);
+    }
+
+    public static Timer timer(String name, String help, String... labelNames) {
+        return register(name, () -> new Timer(name, help, labelNames), Timer.class);
+    }
+
+    /** Gauge leído al exportar; con etiquetas, cada llamada agrega una serie. */
+    public static void gauge(String name, String help, DoubleSupplier value, String... labelNamesAndValues) {
+        int n = labelNamesAndValues.length / 2;
+        String[] names = new String[n];
+        String[] values = new String[n];
+        for (int i = 0; i < n; i++) {
+            names[i] = labelNamesAndValues[2 * i];
+            values[i] = labelNamesAndValues[2 * i + 1];
+        }
+        Gauge gauge = register(name, () -> new Gauge(name, help, names), Gauge.class);
+        gauge.series.put(List.of(values), value);
+    }
+
+    private static <F extends Family<?>> F register(String name, Supplier<F> create, Class<F> type) {
+        Family<?> family = FAMILIES.computeIfAbsent(name, n -> create.get());
+        if (!type.isInstance(family)) throw new IllegalArgumentException("Métrica " + name + " ya registrada con otro tipo");
+        return type.cast(family);
+    }
+
+    /** Todas las métricas en formato de texto de Prometheus (versión 0.0.4). */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        List<Family<?>> families = new ArrayList<>(FAMILIES.values());
+        for (Family<?> family : families) family.write(out);
+        return out.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,387 @@
+package edu.pucmm.eict.util;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Índice código corto -> (id, URL original) fuera del heap, para que millones de enlaces no
+ * pesen en el GC. Dos estructuras en memoria directa:
+ * - Tabla hash de direccionamiento abierto (sondeo lineal) con ranuras de 16 bytes:
+ *   clave (el código empaquetado en un long) y posición del registro en el arena.
+ * - Arena de solo anexado, en bloques de 64 MB: cada registro es id (8 bytes), largo (4)
+ *   y la URL en UTF-8.
+ * Las lecturas no toman locks: los registros no cambian una vez escritos y la posición se
+ * publica con semántica release/acquire. Las escrituras se serializan entre sí.
+ * Solo se indexan códigos de hasta 10 caracteres de [A-Za-z0-9_-]; el resto se busca en la base.
+ * Los registros borrados o reemplazados quedan como basura en el arena (garbageBytes) mientras
+ * el índice esté en memoria.
+ * save escribe solo los registros vivos, con una tabla nueva sin ranuras borradas, así la
+ * basura no pasa de un arranque al siguiente. Al cargar, los bloques del arena se mapean en
+ * memoria (solo lectura) y las entradas quedan sin verificar hasta que quien lo usa las
+ * confirma con verify y descarta el resto con removeUnverified.
+ */
+public class OffHeapCodeIndex {
+
+    /** Resultado de una búsqueda. */
+    public record Entry(long id, String originalUrl) {
+    }
+
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-_";
+    private static final int MAX_CODE_LENGTH = 10;
+    private static final long EMPTY = 0;
+    private static final long DELETED = -1;
+    // Bit de la posición que marca las entradas cargadas de un snapshot y aún no confirmadas
+    private static final long UNVERIFIED = 1L << 62;
+    private static final long MAGIC = 0x4F4646484541505FL;
+    private static final int VERSION = 1;
+    private static final int SLOT_BYTES = 16;
+    private static final int CHUNK_BYTES = 64 << 20;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final int[] CHAR_VALUES = new int[128];
+
+    static {
+        Arrays.fill(CHAR_VALUES, -1);
+        for (int i = 0; i < ALPHABET.length(); i++) CHAR_VALUES[ALPHABET.charAt(i)] = i;
+    }
+
+    private record Table(ByteBuffer slots, int capacity) {
+    }
+
+    private volatile Table table;
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private int used;       // ranuras con clave (incluye borradas)
+    private int live;
+    private long garbageBytes;
+
+    public OffHeapCodeIndex(int expected) {
+        this.table = newTable(Math.max(16, Integer.highestOneBit(Math.max(1, expected) * 2 - 1) << 1));
+    }
+
+    private OffHeapCodeIndex(Table table, ByteBuffer[] chunks, int used, int live, long garbageBytes) {
+        this.table = table;
+        this.chunks = chunks;
+        this.used = used;
+        this.live = live;
+        this.garbageBytes = garbageBytes;
+    }
+
+    /** Empaqueta el código en 64 bits (4 de largo + 6 por carácter) o devuelve 0 si no se puede. */
+    public static long pack(String code) {
+        int length = code.length();
+        if (length == 0 || length > MAX_CODE_LENGTH) return EMPTY;
+        long key = length;
+        for (int i = 0; i < length; i++) {
+            char ch = code.charAt(i);
+            int value = ch < 128 ? CHAR_VALUES[ch] : -1;
+            if (value < 0) return EMPTY;
+            key |= (long) value << (4 + 6 * i);
+        }
+        return key;
+    }
+
+    public Entry get(String code) {
+        long key = pack(code);
+        if (key == EMPTY) return null;
+        Table t = table;
+        int mask = t.capacity() - 1;
+        for (int i = (int) mix(key) & mask; ; i = (i + 1) & mask) {
+            long k = (long) LONGS.getAcquire(t.slots(), i * SLOT_BYTES);
+            if (k == EMPTY) return null;
+            if (k == key) {
+                long ref = (long) LONGS.getAcquire(t.slots(), i * SLOT_BYTES + 8);
+                return ref == DELETED ? null : read(ref);
+            }
+        }
+    }
+
+    public synchronized void put(String code, long id, String originalUrl) {
+        long key = pack(code);
+        if (key == EMPTY) return;
+        setRef(key, append(id, originalUrl));
+    }
+
+    public synchronized void remove(String code) {
+        long key = pack(code);
+        if (key == EMPTY) return;
+        int slot = find(table, key);
+        if (slot < 0) return;
+        long ref = (long) LONGS.get(table.slots(), slot * SLOT_BYTES + 8);
+        if (ref == DELETED) return;
+        LONGS.setRelease(table.slots(), slot * SLOT_BYTES + 8, DELETED);
+        garbageBytes += recordBytes(ref);
+        live--;
+    }
+
+    /**
+     * Confirma la entrada de un snapshot contra la base. Si el código apunta a otro enlace se
+     * quita (se resolverá desde la base). Devuelve false si el código no estaba en el índice.
+     */
+    public synchronized boolean verify(String code, long id, String originalUrl) {
+        long key = pack(code);
+        int slot = key == EMPTY ? -1 : find(table, key);
+        if (slot < 0) return key == EMPTY;
+        long ref = (long) LONGS.get(table.slots(), slot * SLOT_BYTES + 8);
+        if (ref == DELETED) return false;
+        if ((ref & UNVERIFIED) == 0) return true;
+        Entry entry = read(ref);
+        if (entry.id() == id && entry.originalUrl().equals(originalUrl)) {
+            LONGS.setRelease(table.slots(), slot * SLOT_BYTES + 8, ref & ~UNVERIFIED);
+        } else {
+            remove(code);
+        }
+        return true;
+    }
+
+    /** Quita las entradas del snapshot que verify no confirmó. Devuelve cuántas. */
+    public synchronized int removeUnverified() {
+        Table t = table;
+        int removed = 0;
+        for (int s = 0; s < t.capacity(); s++) {
+            long ref = (long) LONGS.get(t.slots(), s * SLOT_BYTES + 8);
+            if (ref == DELETED || (ref & UNVERIFIED) == 0 || (long) LONGS.get(t.slots(), s * SLOT_BYTES) == EMPTY) continue;
+            LONGS.setRelease(t.slots(), s * SLOT_BYTES + 8, DELETED);
+            garbageBytes += recordBytes(ref);
+            live--;
+            removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * Escribe en file (en el orden de bytes nativo) solo las entradas vivas: una tabla nueva del
+     * mismo tamaño y sus registros compactados en bloques. Bloquea las escrituras mientras tanto.
+     */
+    public synchronized void save(Path file) throws IOException {
+        Table old = table;
+        Table fresh = newTable(old.capacity());
+        int mask = old.capacity() - 1;
+        // Primera pasada: posición de cada registro en el arena compactado
+        List<Integer> lengths = new ArrayList<>();
+        int offset = 0;
+        for (int s = 0; s < old.capacity(); s++) {
+            long k = (long) LONGS.get(old.slots(), s * SLOT_BYTES);
+            long ref = (long) LONGS.get(old.slots(), s * SLOT_BYTES + 8);
+            if (k == EMPTY || ref == DELETED) continue;
+            int size = recordBytes(ref);
+            if (lengths.isEmpty() || offset + size > CHUNK_BYTES) {
+                if (!lengths.isEmpty()) lengths.set(lengths.size() - 1, offset);
+                lengths.add(0);
+                offset = 0;
+            }
+            int i = (int) mix(k) & mask;
+            while ((long) LONGS.get(fresh.slots(), i * SLOT_BYTES) != EMPTY) i = (i + 1) & mask;
+            LONGS.set(fresh.slots(), i * SLOT_BYTES + 8, ((long) (lengths.size() - 1) << 32) | offset);
+            LONGS.set(fresh.slots(), i * SLOT_BYTES, k);
+            offset += size;
+        }
+        if (!lengths.isEmpty()) lengths.set(lengths.size() - 1, offset);
+
+        ByteBuffer header = ByteBuffer.allocate(36 + 4 * lengths.size()).order(ByteOrder.nativeOrder());
+        header.putLong(MAGIC).putInt(VERSION).putInt(fresh.capacity()).putInt(live).putInt(live)
+                .putLong(0).putInt(lengths.size());
+        for (int length : lengths) header.putInt(length);
+        header.flip();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(ch, header);
+            writeFully(ch, fresh.slots().duplicate().clear());
+            // Segunda pasada, en el mismo orden: los registros (los bloques van seguidos en el
+            // archivo), agrupados en escrituras de 1 MB
+            ByteBuffer out = ByteBuffer.allocateDirect(1 << 20);
+            for (int s = 0; s < old.capacity(); s++) {
+                long k = (long) LONGS.get(old.slots(), s * SLOT_BYTES);
+                long ref = (long) LONGS.get(old.slots(), s * SLOT_BYTES + 8);
+                if (k == EMPTY || ref == DELETED) continue;
+                int size = recordBytes(ref);
+                ByteBuffer record = chunks[(int) ((ref & ~UNVERIFIED) >>> 32)].duplicate();
+                record.limit((int) ref + size).position((int) ref);
+                if (out.remaining() < size) {
+                    writeFully(ch, out.flip());
+                    out.clear();
+                }
+                if (size > out.capacity()) writeFully(ch, record);
+                else out.put(record);
+            }
+            writeFully(ch, out.flip());
+        }
+    }
+
+    /**
+     * Carga un índice guardado con save. La tabla se copia a memoria directa (se modifica);
+     * el arena queda mapeado y el sistema lo va trayendo a memoria a medida que se lee.
+     * @throws IOException si el archivo no existe, está truncado o es de otra versión
+     */
+    public static OffHeapCodeIndex load(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(36).order(ByteOrder.nativeOrder());
+            readFully(ch, header, 0);
+            header.flip();
+            if (header.getLong() != MAGIC || header.getInt() != VERSION) throw new IOException("Formato de snapshot desconocido");
+            int capacity = header.getInt();
+            int used = header.getInt();
+            int live = header.getInt();
+            long garbage = header.getLong();
+            int chunkCount = header.getInt();
+            ByteBuffer lengths = ByteBuffer.allocate(4 * chunkCount).order(ByteOrder.nativeOrder());
+            readFully(ch, lengths, 36);
+            lengths.flip();
+
+            long position = 36 + 4L * chunkCount;
+            Table t = newTable(capacity);
+            readFully(ch, t.slots(), position);
+            t.slots().clear();
+            position += (long) capacity * SLOT_BYTES;
+            ByteBuffer[] chunks = new ByteBuffer[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                int length = lengths.getInt();
+                if (position + length > ch.size()) throw new IOException("Snapshot truncado");
+                // Solo lectura y posición al final: lo que se agregue va a un bloque nuevo
+                chunks[i] = ch.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.nativeOrder()).position(length);
+                position += length;
+            }
+            for (int s = 0; s < capacity; s++) {
+                long ref = (long) LONGS.get(t.slots(), s * SLOT_BYTES + 8);
+                if ((long) LONGS.get(t.slots(), s * SLOT_BYTES) != EMPTY && ref != DELETED) {
+                    LONGS.set(t.slots(), s * SLOT_BYTES + 8, ref | UNVERIFIED);
+                }
+            }
+            return new OffHeapCodeIndex(t, chunks, used, live, garbage);
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) ch.write(buffer);
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = ch.read(buffer, position);
+            if (n < 0) throw new IOException("Snapshot truncado");
+            position += n;
+        }
+    }
+
+    public synchronized int size() {
+        return live;
+    }
+
+    /** Bytes fuera del heap: tabla más arena. */
+    public synchronized long offHeapBytes() {
+        return (long) table.capacity() * SLOT_BYTES + (long) chunks.length * CHUNK_BYTES;
+    }
+
+    public synchronized long garbageBytes() {
+        return garbageBytes;
+    }
+
+    private void setRef(long key, long ref) {
+        if ((used + 1) * 10L > table.capacity() * 7L) resize();
+        Table t = table;
+        int mask = t.capacity() - 1;
+        for (int i = (int) mix(key) & mask; ; i = (i + 1) & mask) {
+            long k = (long) LONGS.get(t.slots(), i * SLOT_BYTES);
+            if (k == key) {
+                long old = (long) LONGS.get(t.slots(), i * SLOT_BYTES + 8);
+                if (old != DELETED) garbageBytes += recordBytes(old);
+                else live++;
+                LONGS.setRelease(t.slots(), i * SLOT_BYTES + 8, ref);
+                return;
+            }
+            if (k == EMPTY) {
+                // Primero el valor y luego la clave: quien vea la clave ya ve su valor
+                LONGS.setRelease(t.slots(), i * SLOT_BYTES + 8, ref);
+                LONGS.setRelease(t.slots(), i * SLOT_BYTES, key);
+                used++;
+                live++;
+                return;
+            }
+        }
+    }
+
+    private static int find(Table t, long key) {
+        int mask = t.capacity() - 1;
+        for (int i = (int) mix(key) & mask; ; i = (i + 1) & mask) {
+            long k = (long) LONGS.get(t.slots(), i * SLOT_BYTES);
+            if (k == EMPTY) return -1;
+            if (k == key) return i;
+        }
+    }
+
+    // Copia solo las entradas vivas a una tabla del doble (o igual, si sobraban borradas) y la publica
+    private void resize() {
+        Table old = table;
+        int capacity = live * 10L > old.capacity() * 5L ? old.capacity() << 1 : old.capacity();
+        if (capacity < 0) throw new IllegalStateException("Índice de códigos lleno");
+        Table fresh = newTable(capacity);
+        int mask = capacity - 1;
+        int copied = 0;
+        for (int s = 0; s < old.capacity(); s++) {
+            long k = (long) LONGS.get(old.slots(), s * SLOT_BYTES);
+            long ref = (long) LONGS.get(old.slots(), s * SLOT_BYTES + 8);
+            if (k == EMPTY || ref == DELETED) continue;
+            int i = (int) mix(k) & mask;
+            while ((long) LONGS.get(fresh.slots(), i * SLOT_BYTES) != EMPTY) i = (i + 1) & mask;
+            LONGS.set(fresh.slots(), i * SLOT_BYTES + 8, ref);
+            LONGS.set(fresh.slots(), i * SLOT_BYTES, k);
+            copied++;
+        }
+        used = copied;
+        table = fresh;
+    }
+
+    private static Table newTable(int capacity) {
+        return new Table(ByteBuffer.allocateDirect(capacity * SLOT_BYTES).order(ByteOrder.nativeOrder()), capacity);
+    }
+
+    // Posición = (bloque << 32) | desplazamiento; los registros no cruzan bloques
+    private long append(long id, String originalUrl) {
+        byte[] bytes = originalUrl.getBytes(StandardCharsets.UTF_8);
+        int size = 12 + bytes.length;
+        if (size > CHUNK_BYTES) throw new IllegalArgumentException("URL demasiado larga para el índice");
+        ByteBuffer[] current = chunks;
+        ByteBuffer chunk = current.length > 0 ? current[current.length - 1] : null;
+        if (chunk == null || chunk.remaining() < size) {
+            chunk = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.nativeOrder());
+            ByteBuffer[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = chunk;
+            chunks = grown;
+            current = grown;
+        }
+        int offset = chunk.position();
+        chunk.putLong(offset, id);
+        chunk.putInt(offset + 8, bytes.length);
+        chunk.put(offset + 12, bytes);
+        chunk.position(offset + size);
+        return ((long) (current.length - 1) << 32) | offset;
+    }
+
+    private Entry read(long ref) {
+        ByteBuffer chunk = chunks[(int) ((ref & ~UNVERIFIED) >>> 32)];
+        int offset = (int) ref;
+        long id = chunk.getLong(offset);
+        byte[] bytes = new byte[chunk.getInt(offset + 8)];
+        chunk.get(offset + 12, bytes);
+        return new Entry(id, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private int recordBytes(long ref) {
+        return 12 + chunks[(int) ((ref & ~UNVERIFIED) >>> 32)].getInt((int) ref + 8);
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        return key;
+    }
+}
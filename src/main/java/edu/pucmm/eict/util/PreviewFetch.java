@@ -0,0 +1,49 @@
+package edu.pucmm.eict.util;
+
+import java.util.function.Function;
+
+/**
+ * Instrumentación común de las descargas de vistas previas (Microlink): la métrica
+ * preview_fetch_seconds por fuente (page, image, screenshot), un span y un evento JFR.
+ * Las imágenes en Base64 (REST y gRPC) se descargan además a través de una carga compartida
+ * por fuente y URL, así varias peticiones simultáneas no repiten la misma descarga.
+ */
+public final class PreviewFetch {
+
+    public static final Metrics.Timer TIMER = Metrics.timer("preview_fetch_seconds",
+            "Duración de las descargas de vistas previas (Microlink)", "source");
+
+    private static final SingleFlight<String, String> imageLoads =
+            new SingleFlight<>("preview-image", 2 * AppConfig.getLong("APP_SINGLEFLIGHT_TIMEOUT_MS", 5000));
+
+    private PreviewFetch() {
+    }
+
+    /**
+     * Imagen en Base64 de la fuente indicada ("image" o "screenshot"), o cadena vacía si no
+     * hay imagen, si falla o si la descarga compartida no termina a tiempo.
+     */
+    public static String image(String source, String originalUrl, Function<String, String> fetch) {
+        try {
+            return imageLoads.load(source + " " + originalUrl, () -> {
+                AppEvents.PreviewFetched event = new AppEvents.PreviewFetched();
+                event.begin();
+                Tracing.Span span = Tracing.startSpan("GET microlink", Tracing.Kind.CLIENT)
+                        .attribute("preview.source", source).attribute("preview.host", AppEvents.host(originalUrl));
+                long start = System.nanoTime();
+                String image = "";
+                try {
+                    image = fetch.apply(originalUrl);
+                    return image;
+                } finally {
+                    TIMER.recordSince(start, source);
+                    span.attribute("preview.found", !image.isEmpty()).close();
+                    // Sin imagen (error o la página no tiene) el estado queda en 0
+                    event.commit(source, originalUrl, image.isEmpty() ? 0 : 200, image.length() * 3L / 4);
+                }
+            });
+        } catch (SingleFlight.LoadTimeoutException e) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package edu.pucmm.eict.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Estadísticas por sentencia SQL, alimentadas por InstrumentedDataSource. Las sentencias se
+ * agrupan por huella: el SQL sin literales, con espacios normalizados y las listas IN (?, ?, ...)
+ * reducidas a IN (?...), para que las variantes de una misma consulta sumen en la misma fila.
+ * Por huella se guardan llamadas, errores, filas y un histograma de latencia de ejecución.
+ * Las sentencias que superan APP_SQL_SLOW_MS se escriben en el log con la forma de sus
+ * parámetros (tipos, no valores). Además cuenta las sentencias de cada petición HTTP para
+ * señalar patrones N+1 (ver beginRequest/endRequest).
+ */
+public final class QueryStats {
+
+    public record Row(String database, String sql, long calls, long errors, long rows, double rowsPerCall,
+                      double totalMillis, double meanMillis, double p50Millis, double p99Millis, double maxMillis) {
+    }
+
+    /** Sentencias ejecutadas durante una petición y la huella más repetida. */
+    public record RequestTally(int statements, String topSql, int topCount) {
+    }
+
+    static final class Entry {
+        final String database;
+        final String sql;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rows = new LongAdder();
+
+        Entry(String database, String sql) {
+            this.database = database;
+            this.sql = sql;
+        }
+
+        void addRows(long n) {
+            if (n > 0) rows.add(n);
+        }
+    }
+
+    private static final Pattern STRINGS = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBERS = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern IN_LISTS = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private static final String OVERFLOW = "(otras sentencias)";
+    private static final int MAX_ENTRIES = AppConfig.getInt("APP_SQL_STATS_MAX", 1000);
+    private static final int MAX_RAW_KEYS = 4 * MAX_ENTRIES;
+    private static final long SLOW_MICROS = AppConfig.getLong("APP_SQL_SLOW_MS", 200) * 1000;
+
+    private static final Metrics.Counter SLOW = Metrics.counter("db_slow_statements_total",
+            "Sentencias SQL por encima de APP_SQL_SLOW_MS", "database");
+
+    // Huella -> estadísticas, y SQL tal cual -> huella para no normalizar en cada ejecución
+    private static final ConcurrentHashMap<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Entry> BY_RAW_SQL = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Map<String, Integer>> REQUEST = new ThreadLocal<>();
+
+    private QueryStats() {
+    }
+
+    static Entry entry(String database, String sql) {
+        String rawKey = database + '\u0000' + sql;
+        Entry entry = BY_RAW_SQL.get(rawKey);
+        if (entry != null) return entry;
+        String fingerprint = fingerprint(sql);
+        String key = database + '\u0000' + fingerprint;
+        entry = ENTRIES.get(key);
+        if (entry == null) {
+            if (ENTRIES.size() >= MAX_ENTRIES) {
+                entry = ENTRIES.computeIfAbsent(database + '\u0000' + OVERFLOW, k -> new Entry(database, OVERFLOW));
+            } else {
+                entry = ENTRIES.computeIfAbsent(key, k -> new Entry(database, fingerprint));
+            }
+        }
+        // SQL armado con literales genera claves sin fin: a partir del tope solo se normaliza
+        if (BY_RAW_SQL.size() < MAX_RAW_KEYS) BY_RAW_SQL.put(rawKey, entry);
+        return entry;
+    }
+
+    /** Registra una ejecución; rows es -1 si todavía no se conocen (consultas: se suman al cerrar el ResultSet). */
+    static void record(Entry entry, long micros, long rows, String bindShape, int batchSize, boolean failed) {
+        entry.latency.record(micros);
+        if (failed) entry.errors.increment();
+        entry.addRows(rows);
+        Map<String, Integer> tally = REQUEST.get();
+        if (tally != null) tally.merge(entry.sql, 1, Integer::sum);
+        if (micros >= SLOW_MICROS) {
+            SLOW.inc(entry.database);
+            System.out.println("[SQL LENTA] " + (micros / 1000) + " ms en " + entry.database
+                    + (rows >= 0 ? ", " + rows + " filas" : "")
+                    + (batchSize > 0 ? ", lote de " + batchSize : "")
+                    + ", parámetros " + bindShape + ": " + entry.sql);
+        }
+    }
+
+    /** Huella de la sentencia: sin literales ni espacios repetidos y con las listas IN colapsadas. */
+    public static String fingerprint(String sql) {
+        String s = STRINGS.matcher(sql).replaceAll("?");
+        s = NUMBERS.matcher(s).replaceAll("?");
+        s = IN_LISTS.matcher(s).replaceAll("(?...)");
+        return SPACES.matcher(s).replaceAll(" ").trim();
+    }
+
+    /** Empieza a contar las sentencias del hilo actual (una petición). */
+    public static void beginRequest() {
+        REQUEST.set(new HashMap<>());
+    }
+
+    /** Deja de contar y devuelve el total del hilo, o null si no se llamó a beginRequest. */
+    public static RequestTally endRequest() {
+        Map<String, Integer> tally = REQUEST.get();
+        if (tally == null) return null;
+        REQUEST.remove();
+        int total = 0;
+        String top = null;
+        int topCount = 0;
+        for (Map.Entry<String, Integer> e : tally.entrySet()) {
+            total += e.getValue();
+            if (e.getValue() > topCount) {
+                top = e.getKey();
+                topCount = e.getValue();
+            }
+        }
+        return new RequestTally(total, top, topCount);
+    }
+
+    /** Sentencias ordenadas por tiempo total, de mayor a menor. */
+    public static List<Row> report(int limit) {
+        List<Row> rows = new ArrayList<>();
+        for (Entry e : ENTRIES.values()) {
+            long calls = e.latency.count();
+            if (calls == 0) continue;
+            long rowCount = e.rows.sum();
+            rows.add(new Row(e.database, e.sql, calls, e.errors.sum(), rowCount, (double) rowCount / calls,
+                    e.latency.sum() / 1000.0, e.latency.mean() / 1000.0,
+                    e.latency.percentile(50) / 1000.0, e.latency.percentile(99) / 1000.0, e.latency.max() / 1000.0));
+        }
+        rows.sort(Comparator.comparingDouble(Row::totalMillis).reversed());
+        return rows.size() > limit ? new ArrayList<>(rows.subList(0, limit)) : rows;
+    }
+
+    public static void reset() {
+        ENTRIES.clear();
+        BY_RAW_SQL.clear();
+    }
+}
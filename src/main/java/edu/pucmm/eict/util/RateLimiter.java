@@ -0,0 +1,170 @@
+package edu.pucmm.eict.util;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Límite de peticiones por cliente con cubos de tokens (capacidad N que se rellena a N por periodo).
+ * Cada cubo es un único long: el instante en que volverá a estar lleno. Consumir un token es
+ * adelantarlo un intervalo (periodo / N) con CAS; si quedaría más de un periodo por delante, el
+ * cubo está vacío. Así no hay locks ni hilo de relleno: el relleno es el paso del tiempo.
+ * <p>
+ * Los cubos viven en SHARDS mapas concurrentes según el hash de la clave (ruta + cliente). Un cubo
+ * lleno desde hace APP_RATE_LIMIT_IDLE_S no aporta nada y se elimina; si un shard supera su parte
+ * de APP_RATE_LIMIT_MAX_KEYS, las claves nuevas comparten un cubo de desbordamiento por ruta
+ * (p. ej. ante miles de IPs distintas).
+ * <p>
+ * Límites por ruta y rol en APP_RATE_LIMIT_{RUTA}_{ROL} como "tokens/segundos" (0 = sin límite),
+ * p. ej. APP_RATE_LIMIT_CREATE_ANONYMOUS=10/60.
+ */
+public class RateLimiter {
+
+    public record Limit(int capacity, long periodSeconds) {
+        long intervalNanos() {
+            return TimeUnit.SECONDS.toNanos(periodSeconds) / capacity;
+        }
+
+        long periodNanos() {
+            return intervalNanos() * capacity;
+        }
+    }
+
+    /** Resultado de una petición; los tiempos en segundos, redondeados hacia arriba, para las cabeceras. */
+    public record Decision(boolean allowed, Limit limit, int remaining, long resetSeconds, long retryAfterSeconds) {
+    }
+
+    // Por defecto: crear enlaces (/acortar, /dashboard/urls/acortar, POST /api/urls, gRPC CreateUrl) y el resto de la API
+    private static final String[][] DEFAULTS = {
+            {"CREATE", "ANONYMOUS", "10/60"}, {"CREATE", "USER", "60/60"}, {"CREATE", "ADMIN", "0"},
+            {"API", "ANONYMOUS", "30/60"}, {"API", "USER", "300/60"}, {"API", "ADMIN", "0"},
+    };
+    private static final int SHARDS = 16;
+    static final String OVERFLOW = "(otros)";
+
+    private static final Metrics.Counter LIMITED = Metrics.counter("rate_limited_total",
+            "Peticiones rechazadas por el límite por cliente", "route", "role");
+    private static RateLimiter instance;
+
+    @SuppressWarnings("unchecked")
+    private final ConcurrentHashMap<String, AtomicLong>[] shards = new ConcurrentHashMap[SHARDS];
+    private final ConcurrentHashMap<String, Limit> limits = new ConcurrentHashMap<>();
+    private final int maxKeysPerShard;
+
+    public RateLimiter(int maxKeys) {
+        this.maxKeysPerShard = Math.max(1, maxKeys / SHARDS);
+        for (int i = 0; i < SHARDS; i++) shards[i] = new ConcurrentHashMap<>();
+    }
+
+    public static synchronized RateLimiter getInstance() {
+        if (instance == null) {
+            instance = new RateLimiter(AppConfig.getInt("APP_RATE_LIMIT_MAX_KEYS", 100000));
+            long idleNanos = TimeUnit.SECONDS.toNanos(AppConfig.getLong("APP_RATE_LIMIT_IDLE_S", 60));
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "rate-limit-evict");
+                t.setDaemon(true);
+                return t;
+            });
+            RateLimiter limiter = instance;
+            scheduler.scheduleWithFixedDelay(() -> limiter.evictIdle(System.nanoTime() - idleNanos), 30, 30, TimeUnit.SECONDS);
+            Metrics.gauge("rate_limit_keys", "Clientes con cubo de tokens en memoria", instance::size);
+        }
+        return instance;
+    }
+
+    /** Límite configurado para la ruta y el rol (anonymous, user o admin); null si no hay límite. */
+    public Limit limitFor(String route, String role) {
+        String key = route.toUpperCase(Locale.ROOT) + "_" + role.toUpperCase(Locale.ROOT);
+        Limit limit = limits.computeIfAbsent(key, k -> parse(AppConfig.get("APP_RATE_LIMIT_" + k, defaultFor(k))));
+        return limit.capacity() > 0 ? limit : null;
+    }
+
+    private static String defaultFor(String key) {
+        for (String[] d : DEFAULTS) {
+            if (key.equals(d[0] + "_" + d[1])) return d[2];
+        }
+        return "0";
+    }
+
+    static Limit parse(String value) {
+        try {
+            int slash = value.indexOf('/');
+            if (slash < 0) return new Limit(0, 1);
+            int capacity = Integer.parseInt(value.substring(0, slash).trim());
+            long seconds = Long.parseLong(value.substring(slash + 1).trim());
+            return new Limit(Math.max(0, capacity), Math.max(1, seconds));
+        } catch (NumberFormatException e) {
+            System.err.println("[RATE] Límite inválido '" + value + "', se ignora");
+            return new Limit(0, 1);
+        }
+    }
+
+    /** Consume un token del cliente en la ruta; role solo se usa para las métricas. */
+    public Decision tryAcquire(String route, String role, String client, Limit limit) {
+        Decision decision = tryAcquire(route + "|" + client, limit, System.nanoTime());
+        if (!decision.allowed()) LIMITED.inc(route, role);
+        return decision;
+    }
+
+    public Decision tryAcquire(String key, Limit limit, long now) {
+        AtomicLong bucket = bucket(key, now);
+        long interval = limit.intervalNanos();
+        long period = limit.periodNanos();
+        while (true) {
+            long full = bucket.get();
+            long next = Math.max(full, now) + interval;
+            if (next - now > period) {
+                // Vacío: el siguiente token llega cuando "next" quepa en un periodo
+                return new Decision(false, limit, 0, seconds(full - now), seconds(next - now - period));
+            }
+            if (bucket.compareAndSet(full, next)) {
+                int remaining = (int) ((period - (next - now)) / interval);
+                return new Decision(true, limit, remaining, seconds(next - now), 0);
+            }
+        }
+    }
+
+    private AtomicLong bucket(String key, long now) {
+        ConcurrentHashMap<String, AtomicLong> shard = shards[shardOf(key)];
+        AtomicLong bucket = shard.get(key);
+        if (bucket != null) return bucket;
+        if (shard.size() >= maxKeysPerShard) {
+            evictIdle(shard, now);
+            if (shard.size() >= maxKeysPerShard) {
+                String overflow = key.substring(0, key.indexOf('|') + 1) + OVERFLOW;
+                return shards[shardOf(overflow)].computeIfAbsent(overflow, k -> new AtomicLong(now));
+            }
+        }
+        return shard.computeIfAbsent(key, k -> new AtomicLong(now));
+    }
+
+    /**
+     * Elimina los cubos llenos desde antes de fullBefore (System.nanoTime()). Si un cliente
+     * vuelve justo mientras se elimina su cubo, recibe uno nuevo y lleno: como mucho un token extra.
+     */
+    public void evictIdle(long fullBefore) {
+        for (ConcurrentHashMap<String, AtomicLong> shard : shards) evictIdle(shard, fullBefore);
+    }
+
+    private static void evictIdle(ConcurrentHashMap<String, AtomicLong> shard, long fullBefore) {
+        shard.entrySet().removeIf(e -> e.getValue().get() - fullBefore <= 0);
+    }
+
+    public int size() {
+        int total = 0;
+        for (ConcurrentHashMap<String, AtomicLong> shard : shards) total += shard.size();
+        return total;
+    }
+
+    private static int shardOf(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (SHARDS - 1);
+    }
+
+    private static long seconds(long nanos) {
+        return nanos <= 0 ? 0 : (nanos + 999_999_999L) / 1_000_000_000L;
+    }
+}
@@ -0,0 +1,109 @@
+package edu.pucmm.eict.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Agrupa cargas concurrentes de la misma clave: el primer hilo ejecuta la carga y los que
+ * llegan mientras tanto esperan su resultado (o su excepción) en lugar de repetirla.
+ * No guarda resultados: en cuanto la carga termina, la siguiente petición vuelve a cargar.
+ * Los que esperan lo hacen como máximo timeoutMillis; el hilo que carga no tiene límite.
+ */
+public class SingleFlight<K, V> {
+
+    /** El resultado de la carga compartida no llegó a tiempo. */
+    public static class LoadTimeoutException extends RuntimeException {
+        public LoadTimeoutException(String name, Object key) {
+            super("Tiempo de espera agotado en " + name + " para " + key);
+        }
+    }
+
+    public record Stats(String name, long loads, long collapsed, long timeouts, long failures, int inFlight) {
+    }
+
+    private static final List<SingleFlight<?, ?>> REGISTRY = new CopyOnWriteArrayList<>();
+    private static final Metrics.Counter LOADS = Metrics.counter("singleflight_loads_total",
+            "Cargas ejecutadas", "flight");
+    private static final Metrics.Counter COLLAPSED = Metrics.counter("singleflight_collapsed_total",
+            "Peticiones que esperaron una carga en curso en vez de repetirla", "flight");
+    private static final Metrics.Counter TIMEOUTS = Metrics.counter("singleflight_timeouts_total",
+            "Esperas que agotaron el tiempo antes de que terminara la carga", "flight");
+    private static final Metrics.Counter FAILURES = Metrics.counter("singleflight_failures_total",
+            "Cargas que terminaron con excepción", "flight");
+
+    private final String name;
+    private final long timeoutMillis;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public SingleFlight(String name, long timeoutMillis) {
+        this.name = name;
+        this.timeoutMillis = timeoutMillis;
+        REGISTRY.add(this);
+        Metrics.gauge("singleflight_in_flight", "Cargas en curso", inFlight::size, "flight", name);
+    }
+
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            collapsed.increment();
+            COLLAPSED.inc(name);
+            return await(key, running);
+        }
+        loads.increment();
+        LOADS.inc(name);
+        try {
+            V value = loader.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            failures.increment();
+            FAILURES.inc(name);
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private V await(K key, CompletableFuture<V> running) {
+        try {
+            return running.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            TIMEOUTS.inc(name);
+            throw new LoadTimeoutException(name, key);
+        } catch (ExecutionException e) {
+            // La misma excepción que recibió el hilo que cargó
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(name, loads.sum(), collapsed.sum(), timeouts.sum(), failures.sum(), inFlight.size());
+    }
+
+    public static List<Stats> allStats() {
+        List<Stats> all = new ArrayList<>();
+        for (SingleFlight<?, ?> flight : REGISTRY) all.add(flight.stats());
+        return all;
+    }
+}
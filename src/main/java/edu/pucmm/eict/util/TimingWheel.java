@@ -0,0 +1,91 @@
+package edu.pucmm.eict.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Rueda de tiempo jerárquica para vencimientos: cada nivel tiene 64 ranuras y cada ranura
+ * del nivel L abarca 64^L ticks. Programar y vencer una clave es O(1); las claves de niveles
+ * altos bajan de nivel (cascada) cuando la rueda inferior da la vuelta.
+ * No admite cancelar: quien la usa debe comprobar al vencer si la clave sigue vigente.
+ * Con tick de 1 s y 3 niveles cubre unos 3 días; plazos mayores se reprograman al bajar.
+ */
+public class TimingWheel<K> {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+
+    private record Timer<K>(K key, long deadline) {
+    }
+
+    private final long tickMillis;
+    private final int levels;
+    private final List<List<Timer<K>>> slots;
+    private long currentTick;
+    private int size;
+
+    public TimingWheel(long tickMillis, int levels, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.levels = levels;
+        this.slots = new ArrayList<>(levels * SLOTS);
+        for (int i = 0; i < levels * SLOTS; i++) slots.add(new ArrayList<>());
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    public synchronized void schedule(K key, long deadlineMillis) {
+        // Redondeo hacia arriba: nunca vence antes de su plazo
+        place(new Timer<>(key, (deadlineMillis + tickMillis - 1) / tickMillis), currentTick + 1);
+        size++;
+    }
+
+    /** Avanza hasta nowMillis y entrega las claves cuyo plazo se cumplió. */
+    public synchronized void advance(long nowMillis, Consumer<K> onExpire) {
+        long target = nowMillis / tickMillis;
+        List<Timer<K>> cascading = new ArrayList<>();
+        while (currentTick < target) {
+            long tick = currentTick + 1;
+            // De arriba hacia abajo: lo que baja del nivel 2 puede caer en la ranura del 1 que toca ahora
+            for (int level = levels - 1; level >= 1; level--) {
+                if ((tick & ((1L << (BITS * level)) - 1)) != 0) continue;
+                List<Timer<K>> slot = slot(level, tick >>> (BITS * level));
+                cascading.addAll(slot);
+                slot.clear();
+                for (Timer<K> t : cascading) place(t, tick);
+                cascading.clear();
+            }
+            List<Timer<K>> due = slot(0, tick);
+            currentTick = tick;
+            if (due.isEmpty()) continue;
+            List<Timer<K>> fired = new ArrayList<>(due);
+            due.clear();
+            size -= fired.size();
+            for (Timer<K> t : fired) onExpire.accept(t.key());
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // next = próximo tick por procesar; lo ya vencido va a la ranura de ese tick
+    private void place(Timer<K> t, long next) {
+        long delta = t.deadline() - next;
+        if (delta <= 0) {
+            slot(0, next).add(t);
+            return;
+        }
+        for (int level = 0; level < levels; level++) {
+            if (delta < (1L << (BITS * (level + 1))) || level == levels - 1) {
+                long deadline = level == levels - 1 ? Math.min(t.deadline(), next + (1L << (BITS * levels)) - 1) : t.deadline();
+                slot(level, deadline >>> (BITS * level)).add(t);
+                return;
+            }
+        }
+    }
+
+    private List<Timer<K>> slot(int level, long index) {
+        return slots.get(level * SLOTS + (int) (index & MASK));
+    }
+}
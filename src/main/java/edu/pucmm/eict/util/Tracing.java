@@ -0,0 +1,358 @@
+package edu.pucmm.eict.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Trazas distribuidas mínimas, sin colector: cada petición muestreada genera spans (HTTP,
+ * gRPC, SQL, descargas de vistas previas) que se escriben en segundo plano en un archivo
+ * JSON por líneas compatible con OTLP/JSON (el formato del file exporter de OpenTelemetry;
+ * se puede importar en Jaeger/Tempo con el receiver otlpjsonfile).
+ * <p>
+ * El contexto viaja en la cabecera W3C traceparent (HTTP y metadata gRPC) y, dentro del
+ * proceso, en un ThreadLocal. Las peticiones sin traceparent se muestrean con probabilidad
+ * APP_TRACE_SAMPLE (0 = trazas apagadas); las que llegan con traceparent respetan su flag.
+ * Solo las peticiones de entrada crean trazas nuevas: SQL y llamadas salientes únicamente
+ * agregan spans a una traza en curso.
+ * <p>
+ * Configuración: APP_TRACE_FILE (logs/traces.jsonl), APP_TRACE_MAX_MB por archivo (64),
+ * APP_TRACE_FILES archivos rotados a conservar (5), APP_TRACE_QUEUE spans en espera (8192;
+ * si se llena se descartan y se cuentan en traces_dropped_spans).
+ */
+public final class Tracing {
+
+    public static final String TRACEPARENT = "traceparent";
+
+    public enum Kind {
+        INTERNAL(1), SERVER(2), CLIENT(3);
+
+        final int otlp;
+
+        Kind(int otlp) {
+            this.otlp = otlp;
+        }
+    }
+
+    private static final double SAMPLE = Double.parseDouble(AppConfig.get("APP_TRACE_SAMPLE", "0"));
+    public static final boolean ENABLED = SAMPLE > 0;
+
+    private static final Path FILE = Paths.get(AppConfig.get("APP_TRACE_FILE", "logs/traces.jsonl"));
+    private static final long MAX_BYTES = AppConfig.getLong("APP_TRACE_MAX_MB", 64) * 1024 * 1024;
+    private static final int MAX_FILES = AppConfig.getInt("APP_TRACE_FILES", 5);
+    private static final int BATCH = 512;
+
+    // Reloj de pared con resolución de nanoTime para los tiempos OTLP (epoch en nanosegundos)
+    private static final long EPOCH_OFFSET = System.currentTimeMillis() * 1_000_000 - System.nanoTime();
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static final ArrayBlockingQueue<Span> QUEUE = new ArrayBlockingQueue<>(AppConfig.getInt("APP_TRACE_QUEUE", 8192));
+    private static final LongAdder DROPPED = new LongAdder();
+    private static volatile String serviceName = "acortador";
+    private static Thread exporter;
+
+    static {
+        Metrics.gauge("traces_dropped_spans", "Spans descartados por cola de exportación llena", DROPPED::sum);
+    }
+
+    private Tracing() {
+    }
+
+    /** Un span en curso; close() (una sola vez) lo termina, restaura el span anterior y lo encola para escribir. */
+    public static final class Span implements AutoCloseable {
+        // Petición no muestreada (o trazas apagadas): no hace nada ni toca el ThreadLocal
+        static final Span NOOP = new Span(null, null, null, null, Kind.INTERNAL);
+
+        final String traceId;
+        final String spanId;
+        final String parentSpanId;
+        final Kind kind;
+        String name;
+        final long startNanos;
+        long endNanos;
+        List<Object[]> attributes;
+        String error;
+        Span previous;
+        private boolean closed;
+
+        Span(String traceId, String spanId, String parentSpanId, String name, Kind kind) {
+            this.traceId = traceId;
+            this.spanId = spanId;
+            this.parentSpanId = parentSpanId;
+            this.name = name;
+            this.kind = kind;
+            this.startNanos = traceId != null ? nowNanos() : 0;
+        }
+
+        public boolean isSampled() {
+            return traceId != null;
+        }
+
+        public Span name(String name) {
+            if (isSampled()) this.name = name;
+            return this;
+        }
+
+        public Span attribute(String key, Object value) {
+            if (!isSampled() || value == null) return this;
+            if (attributes == null) attributes = new ArrayList<>(4);
+            attributes.add(new Object[]{key, value});
+            return this;
+        }
+
+        public Span error(Throwable e) {
+            if (isSampled()) error = e.getClass().getSimpleName() + (e.getMessage() != null ? ": " + e.getMessage() : "");
+            return this;
+        }
+
+        public Span error(String message) {
+            if (isSampled()) error = message;
+            return this;
+        }
+
+        /** Valor de traceparent para propagar este span como padre. */
+        public String traceparent() {
+            return isSampled() ? "00-" + traceId + "-" + spanId + "-01" : null;
+        }
+
+        /** Hace de este el span actual del hilo (para código que corre en otro hilo que el que lo abrió). */
+        public Scope activate() {
+            if (!isSampled()) return () -> { };
+            Span before = CURRENT.get();
+            CURRENT.set(this);
+            return () -> restore(before);
+        }
+
+        @Override
+        public void close() {
+            if (!isSampled() || closed) return;
+            closed = true;
+            endNanos = nowNanos();
+            if (CURRENT.get() == this) restore(previous);
+            if (!QUEUE.offer(this)) DROPPED.increment();
+        }
+    }
+
+    /** Restaura el span anterior al salir de activate(). */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static void restore(Span span) {
+        if (span == null) CURRENT.remove();
+        else CURRENT.set(span);
+    }
+
+    static long nowNanos() {
+        return System.nanoTime() + EPOCH_OFFSET;
+    }
+
+    /** Span actual del hilo, o null. */
+    public static Span current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Span de una petición de entrada, sin activarlo en el hilo (gRPC atiende cada llamada en
+     * varios hilos: ver Span.activate). Con traceparent válido continúa esa traza; si no,
+     * decide el muestreo. Devuelve un span que no hace nada si no se muestrea.
+     */
+    public static Span serverSpan(String name, String traceparent) {
+        if (!ENABLED) return Span.NOOP;
+        String[] parent = parseTraceparent(traceparent);
+        if (parent != null) {
+            return parent[2].equals("01") ? new Span(parent[0], randomHex(8), parent[1], name, Kind.SERVER) : Span.NOOP;
+        }
+        if (ThreadLocalRandom.current().nextDouble() >= SAMPLE) return Span.NOOP;
+        return new Span(randomHex(16), randomHex(8), null, name, Kind.SERVER);
+    }
+
+    /** Como serverSpan, pero queda como span actual del hilo hasta close(). */
+    public static Span startServerSpan(String name, String traceparent) {
+        Span span = serverSpan(name, traceparent);
+        return span.isSampled() ? push(span) : span;
+    }
+
+    /** Abre un span hijo del actual; si no hay traza muestreada en curso devuelve uno que no hace nada. */
+    public static Span startSpan(String name, Kind kind) {
+        Span span = childSpan(name, kind);
+        return span.isSampled() ? push(span) : span;
+    }
+
+    /** Como startSpan, sin activarlo: para llamadas asíncronas que terminan en otro hilo. */
+    public static Span childSpan(String name, Kind kind) {
+        Span parent = CURRENT.get();
+        if (parent == null) return Span.NOOP;
+        return new Span(parent.traceId, randomHex(8), parent.spanId, name, kind);
+    }
+
+    private static Span push(Span span) {
+        span.previous = CURRENT.get();
+        CURRENT.set(span);
+        return span;
+    }
+
+    // version-traceid-spanid-flags; null si falta o no es válido
+    static String[] parseTraceparent(String header) {
+        if (header == null || header.length() != 55) return null;
+        String[] parts = header.split("-");
+        if (parts.length != 4 || !parts[0].equals("00") || parts[1].length() != 32 || parts[2].length() != 16) return null;
+        if (!isHex(parts[1]) || !isHex(parts[2]) || parts[1].equals("0".repeat(32)) || parts[2].equals("0".repeat(16))) return null;
+        if (parts[3].length() != 2 || !isHex(parts[3])) return null;
+        String flags = (Integer.parseInt(parts[3], 16) & 1) == 1 ? "01" : "00";
+        return new String[]{parts[1], parts[2], flags};
+    }
+
+    private static boolean isHex(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) return false;
+        }
+        return true;
+    }
+
+    private static String randomHex(int bytes) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder sb = new StringBuilder(bytes * 2);
+        for (int i = 0; i < bytes; i += 8) {
+            long v = random.nextLong();
+            if (v == 0) v = 1;
+            String hex = Long.toHexString(v);
+            sb.append("0".repeat(16 - hex.length())).append(hex);
+        }
+        return sb.substring(0, bytes * 2);
+    }
+
+    /** Arranca el hilo que escribe los spans. No hace nada si APP_TRACE_SAMPLE es 0. */
+    public static synchronized void start(String service) {
+        if (!ENABLED || exporter != null) return;
+        serviceName = service;
+        exporter = new Thread(Tracing::exportLoop, "trace-export");
+        exporter.setDaemon(true);
+        exporter.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Tracing::flush, "trace-export-shutdown"));
+        System.out.println("[TRACE] Muestreo " + SAMPLE + ", spans en " + FILE.toAbsolutePath());
+    }
+
+    private static void exportLoop() {
+        List<Span> batch = new ArrayList<>(BATCH);
+        while (true) {
+            try {
+                Span first = QUEUE.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                QUEUE.drainTo(batch, BATCH - 1);
+                write(batch, FILE, MAX_BYTES, MAX_FILES);
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[TRACE] No se pudieron escribir spans: " + e.getMessage());
+            }
+            batch.clear();
+        }
+    }
+
+    private static synchronized void flush() {
+        List<Span> batch = new ArrayList<>();
+        QUEUE.drainTo(batch);
+        if (batch.isEmpty()) return;
+        try {
+            write(batch, FILE, MAX_BYTES, MAX_FILES);
+        } catch (IOException e) {
+            System.err.println("[TRACE] No se pudieron escribir spans: " + e.getMessage());
+        }
+    }
+
+    // Un lote por línea: {"resourceSpans":[{"resource":...,"scopeSpans":[{"scope":...,"spans":[...]}]}]}
+    static synchronized void write(List<Span> batch, Path file, long maxBytes, int maxFiles) throws IOException {
+        StringBuilder out = new StringBuilder(256 * batch.size());
+        out.append("{\"resourceSpans\":[{\"resource\":{\"attributes\":[");
+        attribute(out, "service.name", serviceName);
+        out.append("]},\"scopeSpans\":[{\"scope\":{\"name\":\"edu.pucmm.eict\"},\"spans\":[");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) out.append(',');
+            span(out, batch.get(i));
+        }
+        out.append("]}]}]}\n");
+        rotateIfNeeded(file, maxBytes, maxFiles);
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(out.toString());
+        }
+    }
+
+    private static void rotateIfNeeded(Path file, long maxBytes, int maxFiles) throws IOException {
+        if (!Files.exists(file) || Files.size(file) < maxBytes) return;
+        Path oldest = Paths.get(file + "." + maxFiles);
+        Files.deleteIfExists(oldest);
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path from = Paths.get(file + "." + i);
+            if (Files.exists(from)) Files.move(from, Paths.get(file + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(file, Paths.get(file + ".1"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static void span(StringBuilder out, Span span) {
+        out.append("{\"traceId\":\"").append(span.traceId)
+                .append("\",\"spanId\":\"").append(span.spanId).append('"');
+        if (span.parentSpanId != null) out.append(",\"parentSpanId\":\"").append(span.parentSpanId).append('"');
+        out.append(",\"name\":").append(quote(span.name))
+                .append(",\"kind\":").append(span.kind.otlp)
+                .append(",\"startTimeUnixNano\":\"").append(span.startNanos)
+                .append("\",\"endTimeUnixNano\":\"").append(span.endNanos).append('"');
+        if (span.attributes != null) {
+            out.append(",\"attributes\":[");
+            for (int i = 0; i < span.attributes.size(); i++) {
+                if (i > 0) out.append(',');
+                Object[] a = span.attributes.get(i);
+                attribute(out, (String) a[0], a[1]);
+            }
+            out.append(']');
+        }
+        if (span.error != null) out.append(",\"status\":{\"code\":2,\"message\":").append(quote(span.error)).append('}');
+        out.append('}');
+    }
+
+    private static void attribute(StringBuilder out, String key, Object value) {
+        out.append("{\"key\":").append(quote(key)).append(",\"value\":{");
+        if (value instanceof Boolean b) out.append("\"boolValue\":").append(b);
+        else if (value instanceof Integer || value instanceof Long) out.append("\"intValue\":\"").append(value).append('"');
+        else if (value instanceof Number n) out.append("\"doubleValue\":").append(n.doubleValue());
+        else out.append("\"stringValue\":").append(quote(value.toString()));
+        out.append("}}");
+    }
+
+    private static String quote(String s) {
+        if (s == null) return "\"\"";
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,46 @@
+package edu.pucmm.eict.util;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Forma canónica de una URL de destino para detectar duplicados: esquema y host en
+ * minúsculas, sin puerto por defecto, ruta vacía como "/" y sin fragmento. La consulta se
+ * conserva tal cual (el orden de los parámetros puede ser significativo para el destino).
+ * El hash de 64 bits de esa forma es lo que se guarda en urls.url_hash.
+ */
+public final class UrlNormalizer {
+
+    private UrlNormalizer() {
+    }
+
+    public static String normalize(String url) {
+        String trimmed = url.trim();
+        try {
+            URI uri = new URI(trimmed);
+            if (uri.getScheme() == null || uri.getRawAuthority() == null) return trimmed;
+            String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+            String host = uri.getHost() != null ? uri.getHost().toLowerCase(Locale.ROOT) : uri.getRawAuthority().toLowerCase(Locale.ROOT);
+            int port = uri.getPort();
+            boolean defaultPort = port == -1 || (port == 80 && scheme.equals("http")) || (port == 443 && scheme.equals("https"));
+            StringBuilder sb = new StringBuilder(trimmed.length());
+            sb.append(scheme).append("://");
+            if (uri.getRawUserInfo() != null) sb.append(uri.getRawUserInfo()).append('@');
+            sb.append(host);
+            if (!defaultPort) sb.append(':').append(port);
+            String path = uri.getRawPath();
+            sb.append(path == null || path.isEmpty() ? "/" : path);
+            if (uri.getRawQuery() != null) sb.append('?').append(uri.getRawQuery());
+            return sb.toString();
+        } catch (URISyntaxException e) {
+            // No es una URI válida: se compara el texto tal cual
+            return trimmed;
+        }
+    }
+
+    public static long hash(String url) {
+        return HyperLogLog.hash64(normalize(url).getBytes(StandardCharsets.UTF_8));
+    }
+}
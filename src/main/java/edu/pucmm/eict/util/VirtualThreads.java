@@ -0,0 +1,87 @@
+package edu.pucmm.eict.util;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Modo de hilos virtuales (APP_VIRTUAL_THREADS=true, requiere Java 21): Javalin atiende cada
+ * petición en un hilo virtual y el servidor gRPC ejecuta sus llamadas en otro, de modo que las
+ * esperas de JDBC o de microlink no ocupan un hilo de plataforma del pool de Jetty.
+ * <p>
+ * Un hilo virtual que se bloquea dentro de un bloque synchronized queda "fijado" a su hilo
+ * portador y lo retiene mientras espera. Con el modo activo se escucha el evento JFR
+ * jdk.VirtualThreadPinned por encima de APP_VT_PINNED_MS: se registra con el primer marco
+ * del acortador en la pila y se cuenta en virtual_thread_pinned_total{site}. Para ver la pila
+ * completa, arrancar además con -Djdk.tracePinnedThreads=short.
+ */
+public final class VirtualThreads {
+
+    public static final boolean ENABLED = AppConfig.getBoolean("APP_VIRTUAL_THREADS", false);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String APP_PACKAGE = "edu.pucmm.eict.";
+    private static final Metrics.Counter PINNED = Metrics.counter("virtual_thread_pinned_total",
+            "Veces que un hilo virtual quedó fijado a su portador por encima del umbral", "site");
+
+    private static RecordingStream pinnedMonitor;
+
+    private VirtualThreads() {
+    }
+
+    /** Un hilo virtual nuevo por tarea, con nombre name-N (visible en volcados y en JFR). */
+    public static ExecutorService newExecutor(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+
+    /** Arranca el monitor de fijaciones; no hace nada si el modo está desactivado o ya corre. */
+    public static synchronized void startPinnedMonitor() {
+        if (!ENABLED || pinnedMonitor != null) return;
+        long thresholdMs = AppConfig.getLong("APP_VT_PINNED_MS", 20);
+        RecordingStream stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+        stream.onEvent(PINNED_EVENT, VirtualThreads::onPinned);
+        stream.setMaxAge(Duration.ofMinutes(1));
+        stream.startAsync();
+        pinnedMonitor = stream;
+        System.out.println("[VT] Hilos virtuales activos; fijaciones de más de " + thresholdMs + " ms se registran");
+    }
+
+    private static void onPinned(RecordedEvent event) {
+        String site = site(event.getStackTrace());
+        PINNED.inc(site);
+        System.err.println("[VT] Hilo virtual fijado " + event.getDuration().toMillis() + " ms en " + site
+                + " (" + (event.getThread() != null ? event.getThread().getJavaName() : "?") + ")");
+    }
+
+    static String site(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) return "desconocido";
+        List<StackTraceElement> frames = new ArrayList<>();
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            if (!frame.isJavaFrame()) continue;
+            frames.add(new StackTraceElement(frame.getMethod().getType().getName(), frame.getMethod().getName(),
+                    null, frame.getLineNumber()));
+        }
+        return site(frames);
+    }
+
+    // Primer marco del acortador: el bloque synchronized (o nativo) que causó la fijación
+    static String site(List<StackTraceElement> frames) {
+        String first = null;
+        for (StackTraceElement frame : frames) {
+            String type = frame.getClassName();
+            String location = type.substring(type.lastIndexOf('.') + 1) + "." + frame.getMethodName()
+                    + ":" + frame.getLineNumber();
+            if (type.startsWith(APP_PACKAGE)) return location;
+            if (first == null) first = location;
+        }
+        return first != null ? first : "desconocido";
+    }
+}
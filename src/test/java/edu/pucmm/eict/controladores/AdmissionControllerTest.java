@@ -0,0 +1,114 @@
+package edu.pucmm.eict.controladores;
+
+import edu.pucmm.eict.controladores.AdmissionController.Lane;
+import edu.pucmm.eict.util.AdaptiveLimiter;
+import io.javalin.http.HandlerType;
+import io.javalin.http.HttpResponseException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+
+    private static final String[] PROPERTIES = {"APP_ADMISSION", "APP_ADMISSION_WINDOW_MS",
+            "APP_ADMISSION_API_LIMIT", "APP_ADMISSION_API_MIN", "APP_ADMISSION_DASHBOARD_LIMIT", "APP_ADMISSION_DASHBOARD_MIN"};
+
+    @AfterEach
+    void clearProperties() {
+        for (String key : PROPERTIES) System.clearProperty(key);
+    }
+
+    @Test
+    void lane_of_path() {
+        assertEquals(Lane.REDIRECT, AdmissionController.laneOf("/go/abc123"));
+        assertEquals(Lane.API, AdmissionController.laneOf("/api/urls"));
+        assertEquals(Lane.PREVIEW, AdmissionController.laneOf("/preview"));
+        assertEquals(Lane.DASHBOARD, AdmissionController.laneOf("/dashboard/urls"));
+        assertEquals(Lane.DASHBOARD, AdmissionController.laneOf("/"));
+        assertEquals(Lane.DASHBOARD, AdmissionController.laneOf("/previews"));
+        assertNull(AdmissionController.laneOf("/metrics"));
+    }
+
+    @Test
+    void full_lane_rejects_with_429_in_api_and_503_elsewhere() throws Exception {
+        System.setProperty("APP_ADMISSION", "true");
+        System.setProperty("APP_ADMISSION_API_LIMIT", "1");
+        System.setProperty("APP_ADMISSION_API_MIN", "1");
+        System.setProperty("APP_ADMISSION_DASHBOARD_LIMIT", "1");
+        System.setProperty("APP_ADMISSION_DASHBOARD_MIN", "1");
+        AdmissionController admission = new AdmissionController();
+
+        FakeContext first = new FakeContext(HandlerType.GET, "/api/urls", "10.0.0.1");
+        admission.admit.handle(first.context);
+        assertRejected(admission, "/api/urls", 429);
+
+        // Otro carril no se ve afectado; /metrics nunca se limita
+        FakeContext dashboard = new FakeContext(HandlerType.GET, "/dashboard", "10.0.0.1");
+        admission.admit.handle(dashboard.context);
+        assertRejected(admission, "/dashboard/urls", 503);
+        FakeContext metrics = new FakeContext(HandlerType.GET, "/metrics", "10.0.0.1");
+        admission.admit.handle(metrics.context);
+        admission.release.handle(metrics.context);
+
+        // Al terminar la petición el permiso vuelve al carril (una sola vez)
+        admission.release.handle(first.context);
+        admission.release.handle(first.context);
+        assertEquals(0, admission.limiter(Lane.API).getInFlight());
+        FakeContext again = new FakeContext(HandlerType.POST, "/api/urls", "10.0.0.2");
+        admission.admit.handle(again.context);
+        assertEquals(1, admission.limiter(Lane.API).getInFlight());
+    }
+
+    @Test
+    void disabled_admits_everything() throws Exception {
+        System.setProperty("APP_ADMISSION_API_LIMIT", "1");
+        System.setProperty("APP_ADMISSION_API_MIN", "1");
+        AdmissionController admission = new AdmissionController();
+        for (int i = 0; i < 3; i++) {
+            admission.admit.handle(new FakeContext(HandlerType.GET, "/api/urls", "10.0.0.1").context);
+        }
+        assertEquals(0, admission.limiter(Lane.API).getInFlight());
+    }
+
+    @Test
+    void breach_backs_off_lower_lanes_before_its_own_limit() {
+        System.setProperty("APP_ADMISSION_WINDOW_MS", "0");
+        AdmissionController admission = new AdmissionController();
+        AdaptiveLimiter redirect = admission.limiter(Lane.REDIRECT);
+        int initial = redirect.getLimit();
+
+        breach(redirect);
+        assertEquals(initial, redirect.getLimit());
+        assertEquals(40, admission.limiter(Lane.API).getLimit());
+        assertEquals(16, admission.limiter(Lane.DASHBOARD).getLimit());
+        assertEquals(8, admission.limiter(Lane.PREVIEW).getLimit());
+
+        int breaches = 1;
+        while (redirect.getLimit() == initial && breaches < 100) {
+            breach(redirect);
+            breaches++;
+        }
+        assertTrue(redirect.getLimit() < initial);
+        for (Lane lower : new Lane[]{Lane.API, Lane.DASHBOARD, Lane.PREVIEW}) {
+            assertEquals(lower.min, admission.limiter(lower).getLimit());
+        }
+    }
+
+    private static void assertRejected(AdmissionController admission, String path, int status) throws Exception {
+        FakeContext rejected = new FakeContext(HandlerType.GET, path, "10.0.0.1");
+        HttpResponseException e = assertThrows(HttpResponseException.class, () -> admission.admit.handle(rejected.context));
+        assertEquals(status, e.getStatus());
+        assertEquals("1", rejected.responseHeaders.get("Retry-After"));
+        // Un rechazo no deja permiso que devolver
+        admission.release.handle(rejected.context);
+    }
+
+    // Una ventana (10 muestras con ventana de 0 ms) con todas las muestras por encima del objetivo
+    private static void breach(AdaptiveLimiter limiter) {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.acquire());
+            limiter.release(1_000_000);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package edu.pucmm.eict.controladores;
+
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Context mínimo para probar los filtros sin levantar el servidor: método, ruta, IP, atributos
+ * de la petición y de la sesión, y las cabeceras que escribe la respuesta.
+ */
+final class FakeContext implements InvocationHandler {
+
+    final Map<String, Object> attributes = new HashMap<>();
+    final Map<String, Object> session = new HashMap<>();
+    final Map<String, String> responseHeaders = new HashMap<>();
+    private final HandlerType method;
+    private final String path;
+    private final String ip;
+    final Context context;
+
+    FakeContext(HandlerType method, String path, String ip) {
+        this.method = method;
+        this.path = path;
+        this.ip = ip;
+        this.context = (Context) Proxy.newProxyInstance(Context.class.getClassLoader(), new Class<?>[]{Context.class}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+        int n = args == null ? 0 : args.length;
+        switch (m.getName()) {
+            case "path":
+                return path;
+            case "method":
+                return method;
+            case "ip":
+                return ip;
+            case "attribute":
+                if (n == 1) return attributes.get((String) args[0]);
+                attributes.put((String) args[0], args[1]);
+                return null;
+            case "sessionAttribute":
+                if (n == 1) return session.get((String) args[0]);
+                session.put((String) args[0], args[1]);
+                return null;
+            case "header":
+                if (n == 2) {
+                    responseHeaders.put((String) args[0], (String) args[1]);
+                    return proxy;
+                }
+                return null;
+            case "toString":
+                return method + " " + path;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            default:
+                if (m.isDefault()) return InvocationHandler.invokeDefault(proxy, m, args);
+                throw new UnsupportedOperationException(m.getName());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package edu.pucmm.eict.controladores;
+
+import edu.pucmm.eict.modelos.Usuario;
+import io.javalin.http.HandlerType;
+import io.javalin.http.HttpResponseException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitControllerTest {
+
+    private final RateLimitController controller = new RateLimitController();
+
+    @Test
+    void route_of_request() {
+        assertEquals("create", route(HandlerType.POST, "/acortar"));
+        assertEquals("create", route(HandlerType.POST, "/dashboard/urls/acortar"));
+        assertEquals("create", route(HandlerType.POST, "/api/urls"));
+        assertEquals("api", route(HandlerType.GET, "/api/urls"));
+        assertEquals("api", route(HandlerType.GET, "/api/export"));
+        assertNull(route(HandlerType.GET, "/dashboard/urls/acortar"));
+        assertNull(route(HandlerType.GET, "/go/abc123"));
+    }
+
+    @Test
+    void api_client_is_jwt_subject_then_ip() throws Exception {
+        // Con sujeto: el cubo es del usuario aunque cambie la IP (API, user: 300/60)
+        assertEquals("299", limit(api("jwt-ana", "192.0.2.10")).get("RateLimit-Remaining"));
+        assertEquals("298", limit(api("jwt-ana", "192.0.2.11")).get("RateLimit-Remaining"));
+        // Sin sujeto cuenta la IP, aunque haya sesión web (API, anonymous: 30/60)
+        FakeContext anonymous = api(null, "192.0.2.10");
+        anonymous.session.put("user", new Usuario("jwt-ana", "pwd", "user"));
+        assertEquals("29", limit(anonymous).get("RateLimit-Remaining"));
+        assertEquals("28", limit(api(null, "192.0.2.10")).get("RateLimit-Remaining"));
+        assertEquals("29", limit(api(null, "192.0.2.12")).get("RateLimit-Remaining"));
+    }
+
+    @Test
+    void web_client_is_session_user_then_ip() throws Exception {
+        // Con sesión: el cubo es del usuario en todas las rutas de creación (create, user: 60/60)
+        assertEquals("59", limit(web("/acortar", "web-luis", "user", "192.0.2.20")).get("RateLimit-Remaining"));
+        assertEquals("58", limit(web("/dashboard/urls/acortar", "web-luis", "user", "192.0.2.21")).get("RateLimit-Remaining"));
+        // Sin sesión cuenta la IP (create, anonymous: 10/60)
+        assertEquals("9", limit(web("/acortar", null, null, "192.0.2.20")).get("RateLimit-Remaining"));
+        // Los administradores no tienen límite por defecto
+        assertTrue(limit(web("/acortar", "web-admin", "admin", "192.0.2.20")).isEmpty());
+    }
+
+    @Test
+    void exhausted_bucket_answers_429_with_headers() throws Exception {
+        for (int i = 9; i >= 0; i--) {
+            Map<String, String> headers = limit(web("/acortar", null, null, "192.0.2.30"));
+            assertEquals("10", headers.get("RateLimit-Limit"));
+            assertEquals("10;w=60", headers.get("RateLimit-Policy"));
+            assertEquals(Integer.toString(i), headers.get("RateLimit-Remaining"));
+            assertTrue(Long.parseLong(headers.get("RateLimit-Reset")) > 0);
+            assertNull(headers.get("Retry-After"));
+        }
+        FakeContext rejected = web("/acortar", null, null, "192.0.2.30");
+        HttpResponseException e = assertThrows(HttpResponseException.class, () -> controller.limit.handle(rejected.context));
+        assertEquals(429, e.getStatus());
+        assertEquals("0", rejected.responseHeaders.get("RateLimit-Remaining"));
+        long retryAfter = Long.parseLong(rejected.responseHeaders.get("Retry-After"));
+        assertTrue(retryAfter >= 1 && retryAfter <= 6, "Retry-After " + retryAfter);
+
+        // Otra IP no se ve afectada
+        assertEquals("9", limit(web("/acortar", null, null, "192.0.2.31")).get("RateLimit-Remaining"));
+    }
+
+    private static String route(HandlerType method, String path) {
+        return RateLimitController.routeOf(new FakeContext(method, path, "192.0.2.1").context);
+    }
+
+    private static FakeContext api(String subject, String ip) {
+        FakeContext ctx = new FakeContext(HandlerType.GET, "/api/urls", ip);
+        if (subject != null) {
+            ctx.attributes.put("currentUser", subject);
+            ctx.attributes.put("currentRole", "user");
+        }
+        return ctx;
+    }
+
+    private static FakeContext web(String path, String username, String role, String ip) {
+        FakeContext ctx = new FakeContext(HandlerType.POST, path, ip);
+        if (username != null) ctx.session.put("user", new Usuario(username, "pwd", role));
+        return ctx;
+    }
+
+    private Map<String, String> limit(FakeContext ctx) throws Exception {
+        controller.limit.handle(ctx.context);
+        return ctx.responseHeaders;
+    }
+}
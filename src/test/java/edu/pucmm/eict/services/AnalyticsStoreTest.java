@@ -0,0 +1,123 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.modelos.AccessDetail;
+import edu.pucmm.eict.util.ClickColumns;
+import edu.pucmm.eict.util.ClickPartitions;
+import edu.pucmm.eict.util.DimensionDictionary;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnalyticsStoreTest {
+
+    private static final long URL_ID = 7;
+
+    private JdbcDataSource ds;
+    private DimensionDictionary dimensions;
+    private ClickPartitions partitions;
+
+    private void setup(String name) {
+        ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        dimensions = new DimensionDictionary(ds);
+        dimensions.init();
+        partitions = new ClickPartitions(ds, dimensions, "month", 0);
+        partitions.init();
+    }
+
+    private void insertClicks(int n) {
+        long now = System.currentTimeMillis();
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement("INSERT INTO " + partitions.tableFor(now)
+                     + "(" + ClickPartitions.COLUMNS + ") VALUES(?,?,?,?,?,?)")) {
+            for (int i = 0; i < n; i++) {
+                ps.setLong(1, URL_ID);
+                ps.setTimestamp(2, new Timestamp(now + i));
+                ps.setInt(3, dimensions.idOf(DimensionDictionary.Kind.BROWSER, "Chrome"));
+                ps.setInt(4, dimensions.idOf(DimensionDictionary.Kind.PLATFORM, "Linux"));
+                ps.setInt(5, dimensions.idOf(DimensionDictionary.Kind.DOMAIN, "example.com"));
+                ps.setBytes(6, null);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // DataSource que ejecuta hook antes de entregar la conexión número n
+    private DataSource hooked(AtomicInteger connections, int n, Runnable hook) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getConnection") && connections.incrementAndGet() == n) hook.run();
+                    try {
+                        return method.invoke(ds, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private AnalyticsStore store(DataSource source) {
+        return new AnalyticsStore(source, partitions, dimensions, new ClickWriter(ds, ds, partitions, dimensions));
+    }
+
+    private static AccessDetail detail() {
+        return new AccessDetail(new Date(), "Chrome", "203.0.113.5", "example.com", "Linux");
+    }
+
+    @Test
+    void click_confirmed_during_load_is_counted_once() {
+        setup("analytics-store-watermark");
+        insertClicks(5);
+        AtomicReference<AnalyticsStore> store = new AtomicReference<>();
+        AtomicInteger connections = new AtomicInteger();
+        // Conexiones de la carga: 1) marca de agua, 2) clics hasta ella, 3) resúmenes, 4) clics posteriores.
+        // Antes de la 2 ClickWriter confirma un clic: sin entrada instalada, la notificación se ignora
+        store.set(store(hooked(connections, 2, () -> {
+            insertClicks(1);
+            store.get().onPersisted(URL_ID, detail());
+        })));
+
+        assertEquals(6, store.get().columnsFor(URL_ID).size());
+        assertEquals(4, connections.get());
+
+        // Ya instalada, los clics nuevos llegan solo por notificación
+        store.get().onPersisted(URL_ID, detail());
+        assertEquals(7, store.get().columnsFor(URL_ID).size());
+        assertEquals(Map.of("Chrome", 7L), store.get().groupBy(URL_ID, ClickColumns.Column.BROWSER, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(4, connections.get());
+    }
+
+    @Test
+    void load_interrupted_by_maintenance_is_repeated() {
+        setup("analytics-store-invalidate");
+        insertClicks(3);
+        AtomicReference<AnalyticsStore> store = new AtomicReference<>();
+        AtomicInteger connections = new AtomicInteger();
+        store.set(store(hooked(connections, 3, () -> store.get().invalidateAll())));
+
+        assertEquals(3, store.get().columnsFor(URL_ID).size());
+        // La primera carga no se instala y se repite completa
+        assertEquals(8, connections.get());
+        assertEquals(3, store.get().columnsFor(URL_ID).size());
+        assertEquals(8, connections.get());
+
+        store.get().evict(URL_ID);
+        assertEquals(3, store.get().columnsFor(URL_ID).size());
+        assertEquals(12, connections.get());
+    }
+}
@@ -0,0 +1,43 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.util.Database;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkImportServiceTest {
+
+    @BeforeAll
+    static void setup() {
+        System.setProperty("APP_DB_MODE", "mem");
+        Database.init();
+    }
+
+    @Test
+    void bulk_import_inserts_valid_rows_and_resumes_from_offset() throws Exception {
+        String csv = "url,alias\r\n" +
+                "https://example.com/a,import-a\r\n" +
+                "\"https://example.com/b?x=1,2\",\r\n" +
+                "ftp://example.com/c,\r\n" +
+                "https://example.com/d,import-a\r\n";
+        BulkImportService.Report report = new BulkImportService().importFrom(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), BulkImportService.Format.CSV, 0, null, null);
+        assertEquals(4, report.getOffset());
+        assertEquals(2, report.getImported());
+        assertEquals(2, report.getFailed()); // esquema no http y alias repetido
+        UrlService urlService = new UrlService();
+        assertEquals("https://example.com/a", urlService.getUrlInfo("import-a").getOriginalUrl());
+
+        String ndjson = "{\"url\":\"https://example.com/e\",\"alias\":\"import-e\"}\n" +
+                "{\"url\":\"https://example.com/f\",\"alias\":\"import-f\"}\n";
+        report = new BulkImportService().importFrom(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), BulkImportService.Format.NDJSON, 1, null, null);
+        assertEquals(1, report.getImported());
+        assertNull(urlService.getUrlInfo("import-e"));
+        assertNotNull(urlService.getUrlInfo("import-f"));
+    }
+}
@@ -0,0 +1,140 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.util.ClickColumns;
+import edu.pucmm.eict.util.ClickPartitions;
+import edu.pucmm.eict.util.DimensionDictionary;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClickMaintenanceServiceTest {
+
+    private static long count(Connection c, String sql) throws SQLException {
+        try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static void insertClicks(Connection c, String table, LocalDate day, int n) throws SQLException {
+        insertClicks(c, table, day, n, 1, 2, 3);
+    }
+
+    private static void insertClicks(Connection c, String table, LocalDate day, int n,
+                                     int browserId, int platformId, int domainId) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("INSERT INTO " + table + "(" + ClickPartitions.COLUMNS + ") VALUES(?,?,?,?,?,?)")) {
+            for (int i = 0; i < n; i++) {
+                ps.setLong(1, 1);
+                ps.setTimestamp(2, Timestamp.valueOf(day.atTime(12, i)));
+                ps.setInt(3, browserId);
+                ps.setInt(4, platformId);
+                ps.setInt(5, domainId);
+                ps.setBytes(6, null);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static long noonOf(LocalDate day) {
+        return Timestamp.valueOf(day.atTime(12, 0)).getTime();
+    }
+
+    private static long startOf(LocalDate day) {
+        return Timestamp.valueOf(day.atStartOfDay()).getTime();
+    }
+
+    private static AnalyticsStore store(JdbcDataSource ds, ClickPartitions partitions, DimensionDictionary dimensions) {
+        return new AnalyticsStore(ds, partitions, dimensions, new ClickWriter(ds, ds, partitions, dimensions));
+    }
+
+    @Test
+    void compaction_rolls_up_old_partitions_and_retention_drops_them() throws Exception {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:click-maintenance;DB_CLOSE_DELAY=-1");
+        DimensionDictionary dimensions = new DimensionDictionary(ds);
+        dimensions.init();
+        ClickPartitions partitions = new ClickPartitions(ds, dimensions, "month", 0);
+        partitions.init();
+        LocalDate today = LocalDate.now();
+        LocalDate oldDay = today.minusDays(120);
+        LocalDate olderDay = today.minusDays(400);
+
+        try (Connection c = ds.getConnection()) {
+            c.createStatement().executeUpdate("CREATE TABLE IF NOT EXISTS visitor_sketches (url_id BIGINT NOT NULL, " +
+                    "day DATE NOT NULL, sketch VARBINARY(2049) NOT NULL, PRIMARY KEY (url_id, day))");
+            insertClicks(c, partitions.tableFor(noonOf(oldDay)), oldDay, 3);
+            insertClicks(c, partitions.tableFor(noonOf(today)), today, 2);
+        }
+        String current = partitions.tableFor(noonOf(today));
+
+        AnalyticsStore store = store(ds, partitions, dimensions);
+
+        // Compactación a 60 días: solo la partición antigua pasa a access_rollups
+        assertEquals(1, new ClickMaintenanceService(ds, partitions, store, 0, 60).compact(today));
+        assertEquals(1, partitions.list().size());
+        assertEquals(current, partitions.list().get(0).table());
+        try (Connection c = ds.getConnection()) {
+            assertEquals(3, count(c, "SELECT SUM(hits) FROM access_rollups WHERE url_id = 1"));
+            assertEquals(0, count(c, "SELECT COUNT(*) FROM compacted_partitions"));
+        }
+
+        // Retención a 30 días: elimina particiones y resúmenes más antiguos, conserva la actual
+        try (Connection c = ds.getConnection()) {
+            insertClicks(c, partitions.tableFor(noonOf(olderDay)), olderDay, 1);
+        }
+        assertEquals(1, new ClickMaintenanceService(ds, partitions, store, 30, 0).applyRetention(today));
+        assertEquals(1, partitions.list().size());
+        try (Connection c = ds.getConnection()) {
+            assertEquals(0, count(c, "SELECT COUNT(*) FROM access_rollups"));
+            assertEquals(2, count(c, "SELECT COUNT(*) FROM " + current));
+        }
+    }
+
+    @Test
+    void loaded_stats_include_rollups_and_reload_after_maintenance() throws Exception {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:click-maintenance-store;DB_CLOSE_DELAY=-1");
+        DimensionDictionary dimensions = new DimensionDictionary(ds);
+        dimensions.init();
+        ClickPartitions partitions = new ClickPartitions(ds, dimensions, "month", 0);
+        partitions.init();
+        int firefox = dimensions.idOf(DimensionDictionary.Kind.BROWSER, "Firefox");
+        int windows = dimensions.idOf(DimensionDictionary.Kind.PLATFORM, "Windows");
+        int domain = dimensions.idOf(DimensionDictionary.Kind.DOMAIN, "example.com");
+        LocalDate today = LocalDate.now();
+        LocalDate oldDay = today.minusDays(120);
+        LocalDate olderDay = today.minusDays(400);
+        try (Connection c = ds.getConnection()) {
+            c.createStatement().executeUpdate("CREATE TABLE IF NOT EXISTS visitor_sketches (url_id BIGINT NOT NULL, " +
+                    "day DATE NOT NULL, sketch VARBINARY(2049) NOT NULL, PRIMARY KEY (url_id, day))");
+            insertClicks(c, partitions.tableFor(noonOf(olderDay)), olderDay, 1, firefox, windows, domain);
+            insertClicks(c, partitions.tableFor(noonOf(oldDay)), oldDay, 3, firefox, windows, domain);
+            insertClicks(c, partitions.tableFor(noonOf(today)), today, 2, firefox, windows, domain);
+        }
+        AnalyticsStore store = store(ds, partitions, dimensions);
+        assertEquals(Map.of("Firefox", 6L), store.groupBy(1, ClickColumns.Column.BROWSER, Long.MIN_VALUE, Long.MAX_VALUE));
+
+        // Tras compactar, los días resumidos siguen contando (con resolución diaria)
+        assertEquals(2, new ClickMaintenanceService(ds, partitions, store, 0, 60).compact(today));
+        assertEquals(Map.of("Firefox", 6L), store.groupBy(1, ClickColumns.Column.BROWSER, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(Map.of("Windows", 3L), store.groupBy(1, ClickColumns.Column.PLATFORM, startOf(oldDay), startOf(oldDay.plusDays(1))));
+        assertEquals(Map.of("Windows", 3L), store.groupBy(1, ClickColumns.Column.PLATFORM, noonOf(oldDay), noonOf(oldDay) + 1));
+        assertEquals(Map.of("Firefox", 2L), store.groupBy(1, ClickColumns.Column.BROWSER, startOf(today), Long.MAX_VALUE));
+        assertEquals(2, store.columnsFor(1).size());
+
+        // La retención borra resúmenes: lo cargado antes no debe seguir contándolos
+        assertEquals(0, new ClickMaintenanceService(ds, partitions, store, 30, 0).applyRetention(today));
+        assertEquals(Map.of("Firefox", 2L), store.groupBy(1, ClickColumns.Column.BROWSER, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,48 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.modelos.Url;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EphemeralLinkStoreTest {
+
+    @Test
+    void ephemeral_links_resolve_in_memory_and_expire() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        EphemeralLinkStore store = new EphemeralLinkStore(now::get, null);
+        Url temp = store.create("https://example.com/temp", "anon-test", 1000, code -> false);
+        assertNull(temp.getId());
+        assertEquals("https://example.com/temp", store.get(temp.getShortUrl()).getOriginalUrl());
+        assertTrue(store.recordAccess(temp.getShortUrl()));
+        assertEquals(1, store.listByOwner("anon-test").get(0).getAccessCount());
+
+        now.addAndGet(999);
+        store.advance();
+        assertTrue(store.contains(temp.getShortUrl()));
+
+        // Vencido: deja de resolverse aunque la rueda aún no lo haya eliminado
+        now.addAndGet(1);
+        assertNull(store.get(temp.getShortUrl()));
+        assertTrue(store.listByOwner("anon-test").isEmpty());
+        assertEquals(1, store.size());
+
+        store.advance();
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void codes_taken_elsewhere_are_not_reused() {
+        EphemeralLinkStore store = new EphemeralLinkStore(System::currentTimeMillis, null);
+        AtomicInteger checks = new AtomicInteger();
+        // Los tres primeros códigos ya existen en la base
+        Url temp = store.create("https://example.com/taken", "anon-taken", 60_000, code -> checks.incrementAndGet() <= 3);
+        assertEquals(4, checks.get());
+        assertEquals(1, store.size());
+        assertTrue(store.contains(temp.getShortUrl()));
+        assertEquals(1, store.listByOwner("anon-taken").size());
+    }
+}
@@ -0,0 +1,48 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.modelos.AccessDetail;
+import edu.pucmm.eict.modelos.Url;
+import edu.pucmm.eict.util.AccessCursor;
+import edu.pucmm.eict.util.Database;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExportServiceTest {
+
+    @BeforeAll
+    static void setup() {
+        System.setProperty("APP_DB_MODE", "mem");
+        Database.init();
+    }
+
+    @Test
+    void export_streams_rows_in_order_and_resumes_from_cursor() throws Exception {
+        UrlService urlService = new UrlService();
+        Url u = urlService.saveUrl("https://example.com/export", null);
+        long base = System.currentTimeMillis() - 10_000;
+        for (int i = 0; i < 3; i++) {
+            urlService.recordAccess(u, new AccessDetail(new Date(base + i * 1000L), "Chrome", "10.0.1." + i, "localhost", "Linux"));
+        }
+        urlService.flushAccesses();
+
+        ExportService export = new ExportService();
+        Map<Long, String> urls = Map.of(u.getId(), u.getShortUrl());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(3, export.export(urls, 0, System.currentTimeMillis() + 1, null, ExportService.Format.CSV, out));
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(4, lines.length); // encabezado + 3 filas
+        assertTrue(lines[1].contains("10.0.1.0")); // del más antiguo al más reciente
+
+        String cursor = lines[1].substring(lines[1].lastIndexOf(',') + 1);
+        out.reset();
+        assertEquals(2, export.export(urls, 0, System.currentTimeMillis() + 1, AccessCursor.decode(cursor), ExportService.Format.NDJSON, out));
+        assertTrue(out.toString(StandardCharsets.UTF_8).startsWith("{\"shortUrl\":\"" + u.getShortUrl() + "\""));
+    }
+}
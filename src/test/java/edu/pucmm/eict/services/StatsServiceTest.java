@@ -0,0 +1,140 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.util.ClickPartitions;
+import edu.pucmm.eict.util.DimensionDictionary;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatsServiceTest {
+
+    private record Point(long t, long n, Map<String, Long> by) {
+    }
+
+    private static JdbcDataSource ds;
+    private static ClickPartitions partitions;
+    private static DimensionDictionary dimensions;
+    private static StatsService stats;
+
+    @BeforeAll
+    static void setup() {
+        ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:stats-series;DB_CLOSE_DELAY=-1");
+        dimensions = new DimensionDictionary(ds);
+        dimensions.init();
+        partitions = new ClickPartitions(ds, dimensions, "month", 0);
+        partitions.init();
+        stats = new StatsService(ds, partitions, dimensions);
+    }
+
+    private static long at(LocalDateTime time) {
+        return Timestamp.valueOf(time).getTime();
+    }
+
+    private static void click(long urlId, LocalDateTime time, String browser) throws SQLException {
+        String table = partitions.tableFor(at(time));
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement("INSERT INTO " + table + "(" + ClickPartitions.COLUMNS + ") VALUES(?,?,?,?,?,?)")) {
+            ps.setLong(1, urlId);
+            ps.setTimestamp(2, Timestamp.valueOf(time));
+            ps.setInt(3, dimensions.idOf(DimensionDictionary.Kind.BROWSER, browser));
+            ps.setInt(4, 0);
+            ps.setInt(5, 0);
+            ps.setBytes(6, null);
+            ps.executeUpdate();
+        }
+    }
+
+    private static List<Point> series(long urlId, LocalDateTime from, LocalDateTime to, StatsService.Bucket bucket,
+                                      StatsService.Dimension groupBy) throws Exception {
+        List<Point> points = new ArrayList<>();
+        stats.series(urlId, at(from), at(to), bucket, groupBy, (t, n, by) -> points.add(new Point(t, n, by)));
+        return points;
+    }
+
+    @Test
+    void clicks_fall_in_the_bucket_that_contains_them() throws Exception {
+        LocalDateTime ten = LocalDateTime.of(2024, 3, 15, 10, 0);
+        click(1, ten.minusNanos(1_000_000), "Chrome");   // 09:59:59.999
+        click(1, ten, "Chrome");
+        click(1, ten.plusSeconds(59), "Firefox");
+        click(1, ten.plusMinutes(59).plusSeconds(59), "Chrome");
+
+        List<Point> hours = series(1, ten.minusHours(1), ten.plusHours(1), StatsService.Bucket.HOUR, null);
+        assertEquals(2, hours.size());
+        assertEquals(at(ten.minusHours(1)), hours.get(0).t());
+        assertEquals(1, hours.get(0).n());
+        assertEquals(at(ten), hours.get(1).t());
+        assertEquals(3, hours.get(1).n());
+        assertNull(hours.get(1).by());
+
+        List<Point> minutes = series(1, ten.minusHours(1), ten.plusHours(1), StatsService.Bucket.MINUTE, StatsService.Dimension.BROWSER);
+        assertEquals(3, minutes.size());
+        assertEquals(at(ten.minusMinutes(1)), minutes.get(0).t());
+        assertEquals(at(ten), minutes.get(1).t());
+        assertEquals(Map.of("Chrome", 1L, "Firefox", 1L), minutes.get(1).by());
+        assertEquals(at(ten.plusMinutes(59)), minutes.get(2).t());
+
+        // from incluido, to excluido
+        List<Point> range = series(1, ten, ten.plusMinutes(59).plusSeconds(59), StatsService.Bucket.HOUR, null);
+        assertEquals(1, range.size());
+        assertEquals(2, range.get(0).n());
+    }
+
+    @Test
+    void empty_buckets_are_omitted() throws Exception {
+        LocalDateTime nine = LocalDateTime.of(2024, 5, 20, 9, 0);
+        click(2, nine.plusMinutes(5), "Chrome");
+        click(2, nine.plusHours(3).plusMinutes(5), "Chrome");
+
+        List<Point> hours = series(2, nine.minusHours(2), nine.plusHours(6), StatsService.Bucket.HOUR, null);
+        assertEquals(2, hours.size());
+        assertEquals(at(nine), hours.get(0).t());
+        assertEquals(at(nine.plusHours(3)), hours.get(1).t());
+
+        assertTrue(series(2, nine.plusHours(1), nine.plusHours(3), StatsService.Bucket.HOUR, null).isEmpty());
+        assertTrue(series(999, nine, nine.plusDays(1), StatsService.Bucket.DAY, null).isEmpty());
+    }
+
+    @Test
+    void days_span_partitions_and_rollups_in_order() throws Exception {
+        LocalDateTime midnight = LocalDateTime.of(2024, 4, 1, 0, 0);
+        click(3, midnight.minusMinutes(1), "Chrome");   // partición de marzo
+        click(3, midnight, "Chrome");                    // partición de abril
+        click(3, midnight.plusHours(23), "Safari");
+        // Un día ya compactado: solo tiene resolución diaria
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement("INSERT INTO access_rollups(url_id, day, browser_id, platform_id, domain_id, hits) VALUES(?,?,?,0,0,?)")) {
+            ps.setLong(1, 3);
+            ps.setDate(2, java.sql.Date.valueOf(LocalDate.of(2024, 2, 10)));
+            ps.setInt(3, dimensions.idOf(DimensionDictionary.Kind.BROWSER, "Chrome"));
+            ps.setLong(4, 5);
+            ps.executeUpdate();
+        }
+
+        List<Point> days = series(3, LocalDateTime.of(2024, 2, 1, 0, 0), midnight.plusDays(1), StatsService.Bucket.DAY, StatsService.Dimension.BROWSER);
+        assertEquals(3, days.size());
+        assertEquals(at(LocalDateTime.of(2024, 2, 10, 0, 0)), days.get(0).t());
+        assertEquals(5, days.get(0).n());
+        assertEquals(at(midnight.minusDays(1)), days.get(1).t());
+        assertEquals(1, days.get(1).n());
+        assertEquals(at(midnight), days.get(2).t());
+        assertEquals(Map.of("Chrome", 1L, "Safari", 1L), days.get(2).by());
+
+        List<Point> hours = series(3, LocalDateTime.of(2024, 2, 10, 6, 0), LocalDateTime.of(2024, 2, 11, 0, 0), StatsService.Bucket.HOUR, null);
+        assertEquals(1, hours.size());
+        assertEquals(at(LocalDateTime.of(2024, 2, 10, 0, 0)), hours.get(0).t());
+    }
+}
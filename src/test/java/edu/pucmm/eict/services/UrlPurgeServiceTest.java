@@ -0,0 +1,80 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.modelos.AccessDetail;
+import edu.pucmm.eict.modelos.Url;
+import edu.pucmm.eict.modelos.Usuario;
+import edu.pucmm.eict.util.Database;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UrlPurgeServiceTest {
+
+    @BeforeAll
+    static void setup() {
+        System.setProperty("APP_DB_MODE", "mem");
+        Database.init();
+    }
+
+    @Test
+    void delete_tombstones_link_and_purges_clicks_in_background() {
+        UrlService urlService = new UrlService();
+        Url u = urlService.saveUrl("https://example.com/purge", null);
+        for (int i = 0; i < 3; i++) {
+            urlService.recordAccess(u, new AccessDetail(new Date(), "Chrome", "10.0.2." + i, "localhost", "Linux"));
+        }
+        urlService.flushAccesses();
+
+        assertTrue(urlService.deleteUrl(u.getShortUrl()));
+        assertNull(urlService.getUrlInfo(u.getShortUrl()));
+        assertNull(urlService.getOriginalUrl(u.getShortUrl()));
+
+        UrlPurgeService.getInstance().drain();
+        assertTrue(urlService.getAccessPage(u, null, 10).items().isEmpty());
+    }
+
+    @Test
+    void deleting_a_users_links_tombstones_only_theirs() {
+        UserService userService = new UserService();
+        userService.register("purge-owner", "pwd");
+        userService.register("purge-other", "pwd");
+        Usuario owner = userService.getUserByUsername("purge-owner");
+        UrlService urlService = new UrlService();
+        Url first = urlService.saveUrl("https://example.com/purge/1", owner);
+        Url second = urlService.saveUrl("https://example.com/purge/2", owner);
+        Url other = urlService.saveUrl("https://example.com/purge/other", userService.getUserByUsername("purge-other"));
+        urlService.recordAccess(first, new AccessDetail(new Date(), "Chrome", "10.0.3.1", "localhost", "Linux"));
+        urlService.flushAccesses();
+
+        assertEquals(2, urlService.deleteUrlsOfUser(owner.getId()));
+        assertEquals(0, urlService.deleteUrlsOfUser(owner.getId()));
+        assertNull(urlService.getOriginalUrl(first.getShortUrl()));
+        assertNull(urlService.getOriginalUrl(second.getShortUrl()));
+        assertNotNull(urlService.getUrlInfo(other.getShortUrl()));
+
+        UrlPurgeService.getInstance().drain();
+        assertTrue(urlService.getAccessPage(first, null, 10).items().isEmpty());
+        assertNotNull(urlService.getUrlInfo(other.getShortUrl()));
+    }
+
+    @Test
+    void links_read_before_deleting_the_account_are_tombstoned_after() {
+        UserService userService = new UserService();
+        userService.register("purge-gone", "pwd");
+        Usuario owner = userService.getUserByUsername("purge-gone");
+        UrlService urlService = new UrlService();
+        Url link = urlService.saveUrl("https://example.com/purge/gone", owner);
+
+        List<Long> ids = urlService.urlIdsOfUser(owner.getId());
+        assertEquals(List.of(link.getId()), ids);
+        assertTrue(userService.deleteUser("purge-gone"));
+        // El enlace ya no tiene dueño, pero los ids leídos antes siguen sirviendo
+        assertTrue(urlService.urlIdsOfUser(owner.getId()).isEmpty());
+        assertEquals(1, urlService.deleteUrlsOfUser(owner.getId(), ids));
+        assertNull(urlService.getOriginalUrl(link.getShortUrl()));
+    }
+}
@@ -1,11 +1,15 @@
 package edu.pucmm.eict.services;
 
+import edu.pucmm.eict.modelos.AccessDetail;
 import edu.pucmm.eict.modelos.Url;
 import edu.pucmm.eict.modelos.Usuario;
 import edu.pucmm.eict.util.Database;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.util.Date;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class UrlServiceTest {
@@ -28,5 +32,108 @@ public class UrlServiceTest {
         assertNotNull(loaded);
         assertEquals("https://example.com", loaded.getOriginalUrl());
     }
-}
 
+    @Test
+    void record_access_is_stored_in_analytics_db() {
+        UrlService urlService = new UrlService();
+        Url u = urlService.saveUrl("https://example.com/clicks", null);
+        urlService.recordAccess(u, new AccessDetail(new Date(), "Chrome", "127.0.0.1", "localhost", "Linux"));
+        urlService.flushAccesses();
+        Url loaded = urlService.getUrl(u.getShortUrl());
+        assertEquals(1, loaded.getAccessCount());
+        assertEquals(1, loaded.getAccessDetails().size());
+        assertEquals("Chrome", loaded.getAccessDetails().get(0).getBrowser());
+    }
+
+    @Test
+    void unique_visitors_count_distinct_ips() {
+        UrlService urlService = new UrlService();
+        Url u = urlService.saveUrl("https://example.com/unique", null);
+        for (String ip : new String[]{"10.0.0.1", "10.0.0.2", "10.0.0.1"}) {
+            urlService.recordAccess(u, new AccessDetail(new Date(), "Chrome", ip, "localhost", "Linux"));
+        }
+        urlService.flushAccesses();
+        Url loaded = urlService.getUrl(u.getShortUrl());
+        assertEquals(3, loaded.getAccessCount());
+        assertEquals(2, loaded.getUniqueVisitors());
+    }
+
+    @Test
+    void access_details_are_paged_with_cursor() {
+        UrlService urlService = new UrlService();
+        Url u = urlService.saveUrl("https://example.com/paged", null);
+        long base = System.currentTimeMillis() - 10_000;
+        for (int i = 0; i < 5; i++) {
+            urlService.recordAccess(u, new AccessDetail(new Date(base + i * 1000L), "Chrome", "10.0.0." + i, "localhost", "Linux"));
+        }
+        urlService.flushAccesses();
+
+        UrlService.AccessPage first = urlService.getAccessPage(u, null, 2);
+        assertEquals(2, first.items().size());
+        assertEquals("10.0.0.4", first.items().get(0).getIp()); // del más reciente al más antiguo
+        UrlService.AccessPage second = urlService.getAccessPage(u, first.nextCursor(), 2);
+        assertEquals("10.0.0.2", second.items().get(0).getIp());
+        UrlService.AccessPage last = urlService.getAccessPage(u, second.nextCursor(), 2);
+        assertEquals(1, last.items().size());
+        assertNull(last.nextCursor());
+    }
+
+    @Test
+    void reuse_mode_returns_existing_link_for_same_destination() {
+        UserService userService = new UserService();
+        userService.register("reuseuser", "pwd");
+        Usuario user = userService.getUserByUsername("reuseuser");
+        UrlService urlService = new UrlService();
+
+        Url first = urlService.saveUrl("https://Example.com:443/reuse#top", user, true);
+        Url again = urlService.saveUrl("https://example.com/reuse", user, true);
+        assertEquals(first.getShortUrl(), again.getShortUrl());
+        assertNotEquals(first.getShortUrl(), urlService.saveUrl("https://example.com/reuse", user, false).getShortUrl());
+
+        assertTrue(urlService.deleteUrl(first.getShortUrl()));
+        assertNotEquals(first.getShortUrl(), urlService.saveUrl("https://example.com/reuse", user, true).getShortUrl());
+    }
+
+    @Test
+    void urls_of_user_are_listed_without_others_or_deleted() {
+        UserService userService = new UserService();
+        userService.register("owner-list", "pwd");
+        userService.register("other-list", "pwd");
+        Usuario owner = userService.getUserByUsername("owner-list");
+        UrlService urlService = new UrlService();
+        Url first = urlService.saveUrl("https://example.com/mine/1", owner);
+        Url second = urlService.saveUrl("https://example.com/mine/2", owner);
+        Url deleted = urlService.saveUrl("https://example.com/mine/3", owner);
+        urlService.saveUrl("https://example.com/theirs", userService.getUserByUsername("other-list"));
+        assertTrue(urlService.deleteUrl(deleted.getShortUrl()));
+
+        List<Url> urls = urlService.getUrlsOfUser("owner-list");
+        assertEquals(List.of(second.getShortUrl(), first.getShortUrl()), urls.stream().map(Url::getShortUrl).toList());
+        assertEquals("owner-list", urls.get(0).getUser().getUsername());
+        assertTrue(urlService.getUrlsOfUser("nobody").isEmpty());
+    }
+
+    @Test
+    void offheap_index_follows_save_rename_and_delete() {
+        System.setProperty("APP_OFFHEAP_INDEX", "true");
+        try {
+            UrlService urlService = new UrlService();
+            Url u = urlService.saveUrl("https://example.com/offheap", null);
+            Url resolved = urlService.resolveForRedirect(u.getShortUrl());
+            assertEquals(u.getId(), resolved.getId());
+            assertEquals("https://example.com/offheap", resolved.getOriginalUrl());
+
+            String renamed = "oh" + u.getShortUrl();
+            assertTrue(urlService.updateShortUrl(u.getShortUrl(), renamed));
+            assertNull(urlService.resolveForRedirect(u.getShortUrl()));
+            assertEquals(u.getId(), urlService.resolveForRedirect(renamed).getId());
+
+            assertTrue(urlService.deleteUrl(renamed));
+            assertNull(urlService.resolveForRedirect(renamed));
+        } finally {
+            // El índice es estático: el resto de las pruebas debe seguir resolviendo desde la base
+            System.clearProperty("APP_OFFHEAP_INDEX");
+            UrlService.resetCodeIndex();
+        }
+    }
+}
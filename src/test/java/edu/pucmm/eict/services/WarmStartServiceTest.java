@@ -0,0 +1,60 @@
+package edu.pucmm.eict.services;
+
+import edu.pucmm.eict.util.HeavyHitters;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WarmStartServiceTest {
+
+    private static final long MINUTE = 60_000L;
+
+    private static HotLinkService recorded() {
+        HotLinkService hotLinks = new HotLinkService();
+        for (int i = 0; i < 3; i++) hotLinks.record("hot001");
+        hotLinks.record("warm01");
+        return hotLinks;
+    }
+
+    @Test
+    void hot_links_snapshot_restores_only_windows_longer_than_its_age(@TempDir Path dir) {
+        HotLinkService live = recorded();
+        new WarmStartService(live, 10, dir).save();
+        List<HeavyHitters.Hit> expected = List.of(new HeavyHitters.Hit("hot001", 3), new HeavyHitters.Hit("warm01", 1));
+
+        // Dos minutos después: la ventana de 1 minuto ya no aplica
+        HotLinkService restarted = new HotLinkService();
+        List<String> codes = new WarmStartService(restarted, 10, dir).restore(System.currentTimeMillis() + 2 * MINUTE);
+        assertEquals(List.of("hot001", "warm01"), codes);
+        assertTrue(restarted.top("1m", 10).isEmpty());
+        assertEquals(expected, restarted.top("1h", 10));
+        assertEquals(expected, restarted.top("24h", 10));
+
+        // Dos horas después solo queda la de 24 horas
+        HotLinkService later = new HotLinkService();
+        new WarmStartService(later, 10, dir).restore(System.currentTimeMillis() + 120 * MINUTE);
+        assertTrue(later.top("1m", 10).isEmpty());
+        assertTrue(later.top("1h", 10).isEmpty());
+        assertEquals(expected, later.top("24h", 10));
+    }
+
+    @Test
+    void snapshot_keeps_only_the_configured_top(@TempDir Path dir) {
+        new WarmStartService(recorded(), 1, dir).save();
+        HotLinkService restarted = new HotLinkService();
+        assertEquals(List.of("hot001"), new WarmStartService(restarted, 1, dir).restore());
+        assertEquals(List.of(new HeavyHitters.Hit("hot001", 3)), restarted.top("1m", 10));
+    }
+
+    @Test
+    void missing_snapshot_restores_nothing(@TempDir Path dir) {
+        HotLinkService hotLinks = new HotLinkService();
+        assertTrue(new WarmStartService(hotLinks, 10, dir).restore().isEmpty());
+        assertTrue(new WarmStartService(hotLinks, 10, null).restore().isEmpty());
+        assertTrue(hotLinks.top("24h", 10).isEmpty());
+    }
+}
@@ -0,0 +1,55 @@
+package edu.pucmm.eict.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveLimiterTest {
+
+    @Test
+    void adaptive_limiter_sheds_at_limit_and_backs_off_over_target() {
+        // Ventana de 0 ms: se cierra cada 10 muestras; objetivo 1 ms
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 10, 2, 100, 1000, 0);
+        AdaptiveLimiter lower = new AdaptiveLimiter("lower", 10, 2, 100, 1000, 0);
+        limiter.onBreach(lower::backOff);
+        for (int i = 0; i < 10; i++) assertTrue(limiter.acquire());
+        assertFalse(limiter.acquire());
+        assertEquals(1, limiter.getRejected());
+
+        // Latencia bajo el objetivo con el límite saturado: crece
+        for (int i = 0; i < 10; i++) limiter.release(200);
+        assertEquals(0, limiter.getInFlight());
+        assertTrue(limiter.getLimit() > 10);
+        assertEquals(10, lower.getLimit());
+
+        // Todas por encima del objetivo: retrocede primero el carril de menor prioridad
+        int before = limiter.getLimit();
+        breach(limiter);
+        assertEquals(before, limiter.getLimit());
+        assertEquals(8, lower.getLimit());
+
+        // Con el de menor prioridad en su mínimo retrocede él
+        while (lower.backOff()) {
+        }
+        assertEquals(2, lower.getLimit());
+        breach(limiter);
+        assertTrue(limiter.getLimit() < before);
+        assertEquals(2, lower.getLimit());
+    }
+
+    @Test
+    void back_off_stops_at_minimum() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 10, 8, 100, 1000, 0);
+        assertTrue(limiter.backOff());
+        assertEquals(8, limiter.getLimit());
+        assertFalse(limiter.backOff());
+        assertEquals(8, limiter.getLimit());
+    }
+
+    private static void breach(AdaptiveLimiter limiter) {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.acquire());
+            limiter.release(5000);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package edu.pucmm.eict.util;
+
+import edu.pucmm.eict.modelos.Url;
+import edu.pucmm.eict.services.UrlService;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AppEventsTest {
+
+    @BeforeAll
+    static void setup() {
+        System.setProperty("APP_DB_MODE", "mem");
+        Database.init();
+    }
+
+    @Test
+    void redirect_resolution_emits_flight_recorder_event(@TempDir Path dir) throws Exception {
+        UrlService urlService = new UrlService();
+        Url u = urlService.saveUrl("https://example.com/jfr", null);
+        Path file = dir.resolve("redirect.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("edu.pucmm.eict.RedirectResolved").withThreshold(Duration.ZERO);
+            recording.start();
+            urlService.resolveForRedirect(u.getShortUrl());
+            urlService.resolveForRedirect("no-existe-jfr");
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        assertEquals(2, events.size());
+        assertEquals(u.getShortUrl(), events.get(0).getString("code"));
+        assertTrue(events.get(0).getBoolean("found"));
+        assertFalse(events.get(1).getBoolean("found"));
+    }
+}
@@ -0,0 +1,69 @@
+package edu.pucmm.eict.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClickColumnsTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Test
+    void deltas_roundtrip_out_of_order_and_across_large_gaps() {
+        ClickColumns columns = new ClickColumns(4);
+        // Un clic anterior al previo (delta negativo) y un salto de más de Integer.MAX_VALUE ms
+        long[] ts = {T0, T0 + 5, T0 - 1000, T0 + 30 * DAY, T0 + 30 * DAY + 1};
+        int[] browsers = {1, 2, 1, 255, 3};
+        int[] platforms = {4, 4, 5, 0, 200};
+        for (int i = 0; i < ts.length; i++) columns.append(ts[i], browsers[i], platforms[i]);
+
+        List<long[]> seen = new ArrayList<>();
+        columns.scan(Long.MIN_VALUE, Long.MAX_VALUE, (t, b, p) -> seen.add(new long[]{t, b, p}));
+        assertEquals(ts.length, seen.size());
+        for (int i = 0; i < ts.length; i++) {
+            assertEquals(ts[i], seen.get(i)[0]);
+            assertEquals(browsers[i], seen.get(i)[1]);
+            assertEquals(platforms[i], seen.get(i)[2]);
+        }
+
+        assertEquals(5, columns.size());
+        assertEquals(3, columns.count(T0 - 1000, T0 + 6));
+        assertEquals(2, columns.count(T0, T0 + DAY));
+        assertEquals(2, columns.count(T0 + DAY, Long.MAX_VALUE));
+        assertEquals(0, columns.count(T0 + 6, T0 + 30 * DAY));
+
+        long[] byBrowser = columns.groupBy(ClickColumns.Column.BROWSER, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(2, byBrowser[1]);
+        assertEquals(1, byBrowser[255]);
+        long[] byPlatform = columns.groupBy(ClickColumns.Column.PLATFORM, T0, T0 + DAY);
+        assertEquals(2, byPlatform[4]);
+        assertEquals(0, byPlatform[5]);
+
+        assertArrayEquals(new long[]{T0 - 1000, T0 + 30 * DAY, T0 + 30 * DAY + 1}, columns.latest(3));
+        assertArrayEquals(new long[]{T0, T0 + 5}, columns.timestamps(T0, T0 + DAY));
+    }
+
+    @Test
+    void chunks_move_off_heap_after_the_configured_count() {
+        ClickColumns columns = new ClickColumns(2);
+        // Bloques de 64 y 128 clics en heap; el tercero (256) ya es memoria directa
+        for (int i = 0; i < 192; i++) columns.append(T0 + i, 1, 1);
+        assertEquals(0, columns.directChunks());
+        assertEquals((64 + 128) * 6L, columns.memoryBytes());
+
+        columns.append(T0 + 192, 2, 1);
+        assertEquals(1, columns.directChunks());
+        assertEquals((64 + 128 + 256) * 6L, columns.memoryBytes());
+        assertEquals(193, columns.count(Long.MIN_VALUE, Long.MAX_VALUE));
+        assertArrayEquals(new long[]{T0 + 191, T0 + 192}, columns.latest(2));
+        assertEquals(1, columns.groupBy(ClickColumns.Column.BROWSER, T0 + 190, Long.MAX_VALUE)[2]);
+
+        ClickColumns direct = new ClickColumns(0);
+        direct.append(T0, 1, 1);
+        assertEquals(1, direct.directChunks());
+    }
+}
@@ -0,0 +1,61 @@
+package edu.pucmm.eict.util;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClickPartitionsTest {
+
+    private static DataSource newDb(String name) {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        return ds;
+    }
+
+    private static ClickPartitions partitions(String db, String granularity, int keepDays) {
+        DataSource ds = newDb(db);
+        DimensionDictionary dimensions = new DimensionDictionary(ds);
+        dimensions.init();
+        ClickPartitions partitions = new ClickPartitions(ds, dimensions, granularity, keepDays);
+        partitions.init();
+        return partitions;
+    }
+
+    static long noonOf(LocalDate day) {
+        return day.atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @Test
+    void clicks_route_to_monthly_or_daily_partition() {
+        ClickPartitions monthly = partitions("partitions-month", "month", 0);
+        assertEquals("access_details_p202403", monthly.tableFor(noonOf(LocalDate.of(2024, 3, 1))));
+        assertEquals("access_details_p202403", monthly.tableFor(noonOf(LocalDate.of(2024, 3, 31))));
+        assertEquals("access_details_p202404", monthly.tableFor(noonOf(LocalDate.of(2024, 4, 1))));
+        ClickPartitions.Partition march = monthly.list().get(0);
+        assertEquals("access_details_p202403", march.table());
+        assertEquals(LocalDate.of(2024, 3, 1), march.start());
+        assertEquals(LocalDate.of(2024, 4, 1), march.end());
+
+        ClickPartitions daily = partitions("partitions-day", "day", 0);
+        assertEquals("access_details_p20240315", daily.tableFor(noonOf(LocalDate.of(2024, 3, 15))));
+        ClickPartitions.Partition day = daily.list().get(0);
+        assertEquals(LocalDate.of(2024, 3, 16), day.end());
+    }
+
+    @Test
+    void late_click_does_not_recreate_partition_outside_retention() {
+        ClickPartitions partitions = partitions("partitions-retention", "day", 30);
+        LocalDate today = LocalDate.now();
+        int before = partitions.list().size();
+        assertNull(partitions.tableFor(noonOf(today.minusDays(90))));
+        assertNull(partitions.tableFor(noonOf(today.minusDays(30))));
+        assertEquals(before, partitions.list().size());
+        assertNotNull(partitions.tableFor(noonOf(today.minusDays(29))));
+        assertNotNull(partitions.tableFor(System.currentTimeMillis()));
+    }
+}
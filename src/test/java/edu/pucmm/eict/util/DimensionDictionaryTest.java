@@ -0,0 +1,65 @@
+package edu.pucmm.eict.util;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DimensionDictionaryTest {
+
+    private static DataSource newDb(String name) {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        return ds;
+    }
+
+    @Test
+    void values_get_stable_ids_per_kind() {
+        DimensionDictionary dict = new DimensionDictionary(newDb("dimensions-ids"), 100);
+        dict.init();
+        int chrome = dict.idOf(DimensionDictionary.Kind.BROWSER, "Chrome");
+        assertTrue(chrome > 0);
+        assertEquals(chrome, dict.idOf(DimensionDictionary.Kind.BROWSER, "Chrome"));
+        assertNotEquals(chrome, dict.idOf(DimensionDictionary.Kind.PLATFORM, "Chrome"));
+        assertSame(dict.valueOf(chrome), dict.valueOf(dict.idOf(DimensionDictionary.Kind.BROWSER, new String("Chrome"))));
+        assertEquals(0, dict.idOf(DimensionDictionary.Kind.BROWSER, null));
+        assertNull(dict.valueOf(0));
+        assertEquals(255, dict.valueOf(dict.idOf(DimensionDictionary.Kind.DOMAIN, "x".repeat(300))).length());
+    }
+
+    @Test
+    void values_beyond_the_maximum_share_the_overflow_bucket() {
+        DimensionDictionary dict = new DimensionDictionary(newDb("dimensions-overflow"), 2);
+        dict.init();
+        int a = dict.idOf(DimensionDictionary.Kind.DOMAIN, "a.com");
+        int b = dict.idOf(DimensionDictionary.Kind.DOMAIN, "b.com");
+        int c = dict.idOf(DimensionDictionary.Kind.DOMAIN, "c.com");
+        assertNotEquals(a, b);
+        assertNotEquals(b, c);
+        assertEquals(DimensionDictionary.OVERFLOW, dict.valueOf(c));
+        assertEquals(c, dict.idOf(DimensionDictionary.Kind.DOMAIN, "d.com"));
+        // El máximo es por tipo
+        assertNotEquals(c, dict.idOf(DimensionDictionary.Kind.BROWSER, "Firefox"));
+    }
+
+    @Test
+    void reload_keeps_ids_and_sees_values_from_other_instances() {
+        DataSource ds = newDb("dimensions-reload");
+        DimensionDictionary first = new DimensionDictionary(ds, 100);
+        first.init();
+        int linux = first.idOf(DimensionDictionary.Kind.PLATFORM, "Linux");
+
+        DimensionDictionary second = new DimensionDictionary(ds, 100);
+        second.init();
+        assertEquals(linux, second.idOf(DimensionDictionary.Kind.PLATFORM, "Linux"));
+        assertEquals("Linux", second.valueOf(linux));
+
+        // Registrado por otro proceso después de la carga: valueOf lo busca en la base
+        int android = second.idOf(DimensionDictionary.Kind.PLATFORM, "Android");
+        assertEquals("Android", first.valueOf(android));
+        assertEquals(android, first.idOf(DimensionDictionary.Kind.PLATFORM, "Android"));
+        assertNull(first.valueOf(android + 1000));
+    }
+}
@@ -0,0 +1,85 @@
+package edu.pucmm.eict.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeavyHittersTest {
+
+    private static long countOf(List<HeavyHitters.Hit> hits, String key) {
+        for (HeavyHitters.Hit hit : hits) {
+            if (hit.key().equals(key)) return hit.count();
+        }
+        return 0;
+    }
+
+    @Test
+    void counts_add_up_across_slots_and_expire_with_the_window() {
+        // Ventana de 4 intervalos de 1s
+        HeavyHitters hh = new HeavyHitters(4, 1000, 256, 16);
+        hh.add("a", 0, 5);
+        hh.add("a", 1500);
+        hh.add("b", 2500, 3);
+
+        List<HeavyHitters.Hit> hits = hh.top(10, 3999);
+        assertEquals(2, hits.size());
+        assertEquals("a", hits.get(0).key());
+        assertEquals(6, hits.get(0).count());
+        assertEquals(3, countOf(hits, "b"));
+
+        // El intervalo 0 sale de la ventana: solo queda el clic de a en el intervalo 1
+        hits = hh.top(10, 4000);
+        assertEquals(1, countOf(hits, "a"));
+        assertEquals(3, countOf(hits, "b"));
+
+        assertEquals(0, countOf(hh.top(10, 5000), "a"));
+        assertTrue(hh.top(10, 6000).isEmpty());
+        assertEquals(4000, hh.spanMillis());
+    }
+
+    @Test
+    void timestamps_older_than_the_ring_are_ignored() {
+        HeavyHitters hh = new HeavyHitters(4, 1000, 256, 16);
+        hh.add("nuevo", 5000);
+        // El intervalo 1 ocupa la misma posición del anillo que el 5, ya vigente
+        hh.add("viejo", 1000, 100);
+        List<HeavyHitters.Hit> hits = hh.top(10, 5000);
+        assertEquals(1, hits.size());
+        assertEquals("nuevo", hits.get(0).key());
+        assertEquals(1, hits.get(0).count());
+    }
+
+    @Test
+    void top_k_finds_heavy_keys_among_many_light_ones() {
+        HeavyHitters hh = new HeavyHitters(1, 60_000, 2048, 64);
+        int heavy = 10;
+        long total = 0;
+        // Las claves pesadas se intercalan con 5000 claves que aparecen una sola vez
+        for (int round = 0; round < 1000; round++) {
+            for (int i = 0; i < heavy; i++) {
+                if (round < 1000 - i * 80) {
+                    hh.add("top" + i, 1000);
+                    total++;
+                }
+            }
+            for (int j = 0; j < 5; j++) {
+                hh.add("light" + (round * 5 + j), 1000);
+                total++;
+            }
+        }
+
+        List<HeavyHitters.Hit> hits = hh.top(heavy, 1000);
+        assertEquals(heavy, hits.size());
+        // Count-Min nunca subestima y el error está acotado por e/width * total
+        long maxError = (long) Math.ceil(Math.E / 2048 * total);
+        for (int i = 0; i < heavy; i++) {
+            long exact = 1000 - i * 80L;
+            assertEquals("top" + i, hits.get(i).key());
+            assertTrue(hits.get(i).count() >= exact);
+            assertTrue(hits.get(i).count() <= exact + maxError, hits.get(i) + " > " + exact + " + " + maxError);
+        }
+        assertEquals(3, hh.top(3, 1000).size());
+    }
+}
@@ -0,0 +1,48 @@
+package edu.pucmm.eict.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HyperLogLogTest {
+
+    private static byte[] ip(int i) {
+        return ("10." + (i >>> 16 & 0xFF) + "." + (i >>> 8 & 0xFF) + "." + (i & 0xFF)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void estimate_is_within_error_and_ignores_repeats() {
+        HyperLogLog hll = new HyperLogLog();
+        assertTrue(hll.isEmpty());
+        for (int i = 0; i < 20_000; i++) hll.add(ip(i));
+        for (int i = 0; i < 20_000; i++) hll.add(ip(i)); // repetidos no cuentan
+        // Error típico ~2,3 %: 4 desviaciones de margen
+        assertEquals(20_000, hll.estimate(), 20_000 * 0.092);
+
+        HyperLogLog small = new HyperLogLog();
+        for (int i = 0; i < 50; i++) small.add(ip(i));
+        assertEquals(50, small.estimate(), 2); // conteo lineal en cardinalidades bajas
+    }
+
+    @Test
+    void merge_and_sparse_dense_serialization_roundtrip() {
+        HyperLogLog a = new HyperLogLog();
+        HyperLogLog b = new HyperLogLog();
+        for (int i = 0; i < 100; i++) a.add(ip(i));
+        for (int i = 50; i < 150; i++) b.add(ip(i));
+        a.merge(b);
+        assertEquals(150, a.estimate(), 5);
+
+        byte[] sparse = a.toBytes();
+        assertTrue(sparse.length < 1 + (1 << HyperLogLog.P));
+        assertEquals(a, HyperLogLog.fromBytes(sparse));
+
+        for (int i = 0; i < 50_000; i++) a.add(ip(i));
+        byte[] dense = a.toBytes();
+        assertEquals(1 + (1 << HyperLogLog.P), dense.length);
+        assertEquals(a, HyperLogLog.fromBytes(dense));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[]{9}));
+    }
+}
@@ -0,0 +1,43 @@
+package edu.pucmm.eict.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IpCodecTest {
+
+    @Test
+    void ipv4_is_stored_as_mapped_ipv6_and_decoded_back() {
+        byte[] bytes = IpCodec.encode("192.168.0.255");
+        assertEquals(16, bytes.length);
+        assertEquals((byte) 0xFF, bytes[10]);
+        assertEquals((byte) 0xFF, bytes[11]);
+        assertEquals((byte) 192, bytes[12]);
+        assertEquals((byte) 255, bytes[15]);
+        assertEquals("192.168.0.255", IpCodec.decode(bytes));
+        assertEquals("0.0.0.0", IpCodec.decode(IpCodec.encode("0.0.0.0")));
+    }
+
+    @Test
+    void ipv6_round_trip() {
+        assertEquals("2001:db8:0:0:0:0:0:1", IpCodec.decode(IpCodec.encode("2001:db8::1")));
+        assertEquals("10.0.0.1", IpCodec.decode(IpCodec.encode("::ffff:10.0.0.1")));
+    }
+
+    @Test
+    void non_literals_are_rejected_without_lookup() {
+        assertNull(IpCodec.encode(null));
+        assertNull(IpCodec.encode(""));
+        assertNull(IpCodec.encode("999.1.1.1"));
+        assertNull(IpCodec.encode("1.2.3.4.5"));
+        assertNull(IpCodec.encode("1.2.3"));
+        assertNull(IpCodec.encode("1..2.3"));
+        assertNull(IpCodec.encode("1.2.3.4."));
+        assertNull(IpCodec.encode("0001.2.3.4"));
+        assertNull(IpCodec.encode("localhost"));
+        assertNull(IpCodec.encode("example.com"));
+        assertNull(IpCodec.encode("fe80::1%eth0"));
+        assertNull(IpCodec.encode("2001:db8::zz"));
+        assertNull(IpCodec.decode(new byte[4]));
+    }
+}
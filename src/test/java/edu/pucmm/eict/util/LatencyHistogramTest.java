@@ -0,0 +1,24 @@
+package edu.pucmm.eict.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    void latency_histogram_percentiles_and_coordinated_omission_correction() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 10_000; v++) h.record(v);
+        assertEquals(10_000, h.count());
+        assertEquals(5_000, h.percentile(50), 5_000 / 64.0);
+        assertEquals(9_900, h.percentile(99), 9_900 / 64.0);
+        assertEquals(10_000, h.percentile(100));
+
+        // Una respuesta de 10 ms con peticiones esperadas cada 1 ms oculta otras 9 que esperaron
+        LatencyHistogram corrected = new LatencyHistogram();
+        corrected.recordCorrected(10_000, 1_000);
+        assertEquals(10, corrected.count());
+        assertEquals(1_000, corrected.percentile(1), 1_000 / 64.0);
+    }
+}
@@ -0,0 +1,48 @@
+package edu.pucmm.eict.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+    @Test
+    void metrics_scrape_exports_counters_and_histograms() {
+        Metrics.Counter counter = Metrics.counter("test_events_total", "Eventos de prueba", "kind");
+        counter.inc("a");
+        counter.add(2, "a");
+        Metrics.Timer timer = Metrics.timer("test_duration_seconds", "Duración de prueba", "op");
+        timer.record(3_000, "read");
+        timer.record(300_000, "read");
+
+        String text = Metrics.scrape();
+        assertTrue(text.contains("# TYPE test_events_total counter"));
+        assertTrue(text.contains("test_events_total{kind=\"a\"} 3"));
+        assertTrue(text.contains("# TYPE test_duration_seconds histogram"));
+        assertTrue(text.contains("test_duration_seconds_bucket{op=\"read\",le=\"0.005\"} 1"));
+        assertTrue(text.contains("test_duration_seconds_bucket{op=\"read\",le=\"+Inf\"} 2"));
+        assertTrue(text.contains("test_duration_seconds_count{op=\"read\"} 2"));
+        assertThrows(IllegalArgumentException.class, () -> Metrics.timer("test_events_total", "otro tipo"));
+    }
+
+    @Test
+    void scrape_without_token_is_local_only() {
+        assertTrue(Metrics.scrapeAllowed(null, null, "127.0.0.1"));
+        assertTrue(Metrics.scrapeAllowed(null, null, "127.10.0.3"));
+        assertTrue(Metrics.scrapeAllowed(null, null, "0:0:0:0:0:0:0:1"));
+        assertTrue(Metrics.scrapeAllowed(null, null, "[::1]"));
+        assertTrue(Metrics.scrapeAllowed(null, null, "::ffff:127.0.0.1"));
+        assertFalse(Metrics.scrapeAllowed(null, null, "10.0.0.5"));
+        assertFalse(Metrics.scrapeAllowed(null, null, "2001:db8::1"));
+        assertFalse(Metrics.scrapeAllowed(null, null, "localhost"));
+        assertFalse(Metrics.scrapeAllowed(null, null, null));
+    }
+
+    @Test
+    void scrape_with_token_requires_bearer_from_any_address() {
+        assertTrue(Metrics.scrapeAllowed("s3cr3t", "Bearer s3cr3t", "10.0.0.5"));
+        assertFalse(Metrics.scrapeAllowed("s3cr3t", "Bearer otro", "10.0.0.5"));
+        assertFalse(Metrics.scrapeAllowed("s3cr3t", "s3cr3t", "10.0.0.5"));
+        assertFalse(Metrics.scrapeAllowed("s3cr3t", null, "127.0.0.1"));
+    }
+}
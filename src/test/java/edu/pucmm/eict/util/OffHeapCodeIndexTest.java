@@ -0,0 +1,54 @@
+package edu.pucmm.eict.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapCodeIndexTest {
+
+    @Test
+    void code_index_snapshot_reloads_and_drops_unconfirmed_entries(@TempDir Path dir) throws Exception {
+        OffHeapCodeIndex index = new OffHeapCodeIndex(16);
+        index.put("keep01", 1, "https://example.com/keep");
+        index.put("gone01", 2, "https://example.com/gone");
+        Path file = dir.resolve("code-index.bin");
+        index.save(file);
+
+        OffHeapCodeIndex loaded = OffHeapCodeIndex.load(file);
+        assertEquals("https://example.com/gone", loaded.get("gone01").originalUrl());
+        assertTrue(loaded.verify("keep01", 1, "https://example.com/keep"));
+        assertFalse(loaded.verify("new001", 3, "https://example.com/new"));
+        assertEquals(1, loaded.removeUnverified());
+        assertNull(loaded.get("gone01"));
+        assertEquals(1, loaded.get("keep01").id());
+    }
+
+    @Test
+    void snapshot_keeps_only_live_records(@TempDir Path dir) throws Exception {
+        OffHeapCodeIndex index = new OffHeapCodeIndex(16);
+        for (int i = 0; i < 10; i++) index.put("code0" + i, i, "https://example.com/" + i);
+        index.put("code01", 11, "https://example.com/replaced");
+        for (int i = 2; i < 10; i++) index.remove("code0" + i);
+        assertTrue(index.garbageBytes() > 0);
+        Path file = dir.resolve("code-index.bin");
+        index.save(file);
+
+        OffHeapCodeIndex loaded = OffHeapCodeIndex.load(file);
+        assertEquals(2, loaded.size());
+        assertEquals(0, loaded.garbageBytes());
+        assertEquals("https://example.com/0", loaded.get("code00").originalUrl());
+        assertEquals(11, loaded.get("code01").id());
+        assertNull(loaded.get("code05"));
+        // Cabecera (36 + 4 por bloque), tabla de 32 ranuras y los dos registros vivos
+        long records = 12 + "https://example.com/0".length() + 12 + "https://example.com/replaced".length();
+        assertEquals(36 + 4 + 32 * 16 + records, Files.size(file));
+        // Lo agregado después de cargar va a un bloque nuevo
+        loaded.put("code02", 12, "https://example.com/new");
+        assertEquals(12, loaded.get("code02").id());
+        assertEquals("https://example.com/replaced", loaded.get("code01").originalUrl());
+    }
+}
@@ -0,0 +1,45 @@
+package edu.pucmm.eict.util;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryStatsTest {
+
+    @BeforeAll
+    static void setup() {
+        System.setProperty("APP_DB_MODE", "mem");
+        Database.init();
+    }
+
+    @Test
+    void instrumented_datasource_groups_statements_by_fingerprint() throws Exception {
+        assertEquals("SELECT * FROM urls WHERE id = ? AND short_url IN (?...) AND x = ?",
+                QueryStats.fingerprint("SELECT *  FROM urls\n WHERE id = 42 AND short_url IN (?, ?, ?) AND x = 'a''b'"));
+
+        DataSource ds = new InstrumentedDataSource(Database.getDataSource(), "test");
+        for (int i = 0; i < 3; i++) {
+            try (Connection c = ds.getConnection();
+                 PreparedStatement ps = c.prepareStatement("SELECT id FROM urls WHERE id > ? AND 'fp-test' = 'fp-test'")) {
+                ps.setLong(1, -1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        // recorrer
+                    }
+                }
+            }
+        }
+        QueryStats.Row row = QueryStats.report(Integer.MAX_VALUE).stream()
+                .filter(r -> r.database().equals("test"))
+                .findFirst().orElseThrow();
+        assertEquals("SELECT id FROM urls WHERE id > ? AND ? = ?", row.sql());
+        assertEquals(3, row.calls());
+        assertEquals(0, row.errors());
+    }
+}
@@ -0,0 +1,39 @@
+package edu.pucmm.eict.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+
+    @Test
+    void rate_limiter_refills_tokens_over_time_and_evicts_full_buckets() {
+        RateLimiter limiter = new RateLimiter(1000);
+        RateLimiter.Limit limit = new RateLimiter.Limit(3, 60);
+        long now = 1_000_000_000_000L;
+        for (int i = 2; i >= 0; i--) {
+            RateLimiter.Decision d = limiter.tryAcquire("create|ip:10.0.0.1", limit, now);
+            assertTrue(d.allowed());
+            assertEquals(i, d.remaining());
+        }
+        RateLimiter.Decision denied = limiter.tryAcquire("create|ip:10.0.0.1", limit, now);
+        assertFalse(denied.allowed());
+        assertEquals(20, denied.retryAfterSeconds());
+        assertEquals(60, denied.resetSeconds());
+        // Otro cliente tiene su propio cubo
+        assertTrue(limiter.tryAcquire("create|ip:10.0.0.2", limit, now).allowed());
+
+        // Un token cada 20 s
+        long later = now + Duration.ofSeconds(20).toNanos();
+        assertTrue(limiter.tryAcquire("create|ip:10.0.0.1", limit, later).allowed());
+        assertFalse(limiter.tryAcquire("create|ip:10.0.0.1", limit, later).allowed());
+
+        assertEquals(2, limiter.size());
+        limiter.evictIdle(now + Duration.ofSeconds(59).toNanos());
+        assertEquals(1, limiter.size());
+        limiter.evictIdle(now + Duration.ofSeconds(80).toNanos());
+        assertEquals(0, limiter.size());
+    }
+}
@@ -0,0 +1,124 @@
+package edu.pucmm.eict.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    // Carga que avisa al empezar y no termina hasta que se abre release
+    private static <V> Supplier<V> blocking(CountDownLatch started, CountDownLatch release, AtomicInteger calls, Supplier<V> result) {
+        return () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return result.get();
+        };
+    }
+
+    private static void awaitCollapsed(SingleFlight<?, ?> flight, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flight.stats().collapsed() < expected) {
+            assertTrue(System.nanoTime() < deadline, "los hilos no llegaron a esperar la carga");
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void concurrent_callers_share_one_load() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>("test-collapse", 5000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Supplier<String> loader = blocking(started, release, calls, () -> "valor");
+
+        Future<String> first = pool.submit(() -> flight.load("k", loader));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        List<Future<String>> waiters = new ArrayList<>();
+        for (int i = 0; i < 5; i++) waiters.add(pool.submit(() -> flight.load("k", loader)));
+        awaitCollapsed(flight, 5);
+        assertEquals(1, flight.stats().inFlight());
+
+        release.countDown();
+        assertEquals("valor", first.get(5, TimeUnit.SECONDS));
+        for (Future<String> w : waiters) assertEquals("valor", w.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        SingleFlight.Stats stats = flight.stats();
+        assertEquals(1, stats.loads());
+        assertEquals(5, stats.collapsed());
+        assertEquals(0, stats.inFlight());
+        assertTrue(Metrics.scrape().contains("singleflight_collapsed_total{flight=\"test-collapse\"} 5"));
+    }
+
+    @Test
+    void waiter_times_out_while_the_loader_keeps_going() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>("test-timeout", 50);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        Future<String> loading = pool.submit(() -> flight.load("k", blocking(started, release, calls, () -> "tarde")));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertThrows(SingleFlight.LoadTimeoutException.class, () -> flight.load("k", () -> "otra"));
+        assertEquals(1, flight.stats().timeouts());
+
+        release.countDown();
+        assertEquals("tarde", loading.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void loader_exception_reaches_every_waiter_and_releases_the_key() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>("test-failure", 5000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        IllegalStateException failure = new IllegalStateException("base caída");
+        Supplier<String> loader = blocking(started, release, calls, () -> {
+            throw failure;
+        });
+
+        Future<String> first = pool.submit(() -> flight.load("k", loader));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        List<Future<String>> waiters = new ArrayList<>();
+        for (int i = 0; i < 3; i++) waiters.add(pool.submit(() -> flight.load("k", loader)));
+        awaitCollapsed(flight, 3);
+
+        release.countDown();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertSame(failure, e.getCause());
+        for (Future<String> w : waiters) {
+            assertSame(failure, assertThrows(ExecutionException.class, () -> w.get(5, TimeUnit.SECONDS)).getCause());
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, flight.stats().failures());
+
+        // La clave quedó libre: la siguiente petición vuelve a cargar
+        assertEquals(0, flight.stats().inFlight());
+        assertEquals("de nuevo", flight.load("k", () -> "de nuevo"));
+        assertEquals(2, flight.stats().loads());
+    }
+}
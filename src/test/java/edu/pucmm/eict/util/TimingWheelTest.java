@@ -0,0 +1,120 @@
+package edu.pucmm.eict.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingWheelTest {
+
+    private static final long TICK = 1000;
+
+    // Avanza de tick en tick y devuelve el instante en que venció cada clave
+    private static Map<String, Long> runUntil(TimingWheel<String> wheel, long fromMillis, long toMillis) {
+        Map<String, Long> fired = new HashMap<>();
+        for (long now = fromMillis; now <= toMillis; now += TICK) {
+            long at = now;
+            wheel.advance(now, key -> assertNull(fired.put(key, at), "vencida dos veces: " + key));
+        }
+        return fired;
+    }
+
+    private static void assertFiredAt(long expectedMillis, Map<String, Long> fired, String key) {
+        assertEquals(Long.valueOf(expectedMillis), fired.get(key), key);
+    }
+
+    @Test
+    void level_zero_fires_on_the_tick_of_the_deadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 3, 0);
+        wheel.schedule("a", 5_000);
+        wheel.schedule("b", 1_500); // se redondea hacia arriba: nunca antes del plazo
+        assertEquals(2, wheel.size());
+
+        List<String> fired = new ArrayList<>();
+        wheel.advance(1_999, fired::add);
+        assertTrue(fired.isEmpty());
+        wheel.advance(2_000, fired::add);
+        assertEquals(List.of("b"), fired);
+        wheel.advance(4_999, fired::add);
+        assertEquals(1, fired.size());
+        wheel.advance(5_000, fired::add);
+        assertEquals(List.of("b", "a"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void past_deadlines_fire_on_the_next_tick() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 3, 10_000);
+        wheel.schedule("late", 3_000);
+        List<String> fired = new ArrayList<>();
+        wheel.advance(10_999, fired::add);
+        assertTrue(fired.isEmpty());
+        wheel.advance(11_000, fired::add);
+        assertEquals(List.of("late"), fired);
+    }
+
+    @Test
+    void level_one_cascades_to_level_zero() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 3, 0);
+        // A 64 ticks o más van al nivel 1 y bajan al 0 cuando este da la vuelta (ticks 64 y 128)
+        wheel.schedule("t64", 64 * TICK);
+        wheel.schedule("t100", 100 * TICK);
+        wheel.schedule("t127", 127 * TICK);
+        wheel.schedule("t128", 128 * TICK);
+        Map<String, Long> fired = runUntil(wheel, TICK, 200 * TICK);
+        assertFiredAt(64 * TICK, fired, "t64");
+        assertFiredAt(100 * TICK, fired, "t100");
+        assertFiredAt(127 * TICK, fired, "t127");
+        assertFiredAt(128 * TICK, fired, "t128");
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void level_two_cascades_through_level_one() {
+        // Arranca a mitad de una vuelta para que las ranuras no estén alineadas con 0; a 4096
+        // ticks o más van al nivel 2, bajan al 1 en los múltiplos de 4096 y al 0 en los de 64
+        long start = 1_000 * TICK;
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 3, start);
+        wheel.schedule("t5097", 5_097 * TICK);
+        wheel.schedule("t8192", 8_192 * TICK);
+        wheel.schedule("t9001", 9_001 * TICK);
+        Map<String, Long> fired = runUntil(wheel, start, 10_000 * TICK);
+        assertFiredAt(5_097 * TICK, fired, "t5097");
+        assertFiredAt(8_192 * TICK, fired, "t8192");
+        assertFiredAt(9_001 * TICK, fired, "t9001");
+    }
+
+    @Test
+    void deadlines_beyond_the_wheel_are_rescheduled_until_due() {
+        // 3 niveles cubren 64^3 = 262144 ticks
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 3, 0);
+        wheel.schedule("far", 300_000 * TICK);
+        List<String> fired = new ArrayList<>();
+        wheel.advance(299_999 * TICK, fired::add);
+        assertTrue(fired.isEmpty());
+        assertEquals(1, wheel.size());
+        wheel.advance(300_000 * TICK, fired::add);
+        assertEquals(List.of("far"), fired);
+    }
+
+    @Test
+    void random_deadlines_fire_exactly_once_on_their_tick() {
+        Random random = new Random(42);
+        long start = 12_345 * TICK + 678;
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 3, start);
+        Map<String, Long> expected = new HashMap<>();
+        for (int i = 0; i < 2_000; i++) {
+            long deadline = start + random.nextInt(20_000) * TICK + random.nextInt((int) TICK);
+            expected.put("k" + i, (deadline + TICK - 1) / TICK * TICK);
+            wheel.schedule("k" + i, deadline);
+        }
+        Map<String, Long> fired = runUntil(wheel, start - start % TICK, start + 20_001 * TICK);
+        assertEquals(expected, fired);
+        assertEquals(0, wheel.size());
+    }
+}
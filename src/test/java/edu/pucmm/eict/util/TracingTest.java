@@ -0,0 +1,104 @@
+package edu.pucmm.eict.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TracingTest {
+
+    private static final String TRACE = "4bf92f3577b34da6a3ce929d0e0e4736";
+    private static final String PARENT = "00f067aa0ba902b7";
+
+    @Test
+    void traceparent_sampled_and_unsampled() {
+        assertArrayEquals(new String[]{TRACE, PARENT, "01"}, Tracing.parseTraceparent("00-" + TRACE + "-" + PARENT + "-01"));
+        assertArrayEquals(new String[]{TRACE, PARENT, "00"}, Tracing.parseTraceparent("00-" + TRACE + "-" + PARENT + "-00"));
+        // Solo cuenta el bit de muestreo; el resto de flags se ignora
+        assertArrayEquals(new String[]{TRACE, PARENT, "01"}, Tracing.parseTraceparent("00-" + TRACE + "-" + PARENT + "-03"));
+        assertArrayEquals(new String[]{TRACE, PARENT, "00"}, Tracing.parseTraceparent("00-" + TRACE + "-" + PARENT + "-02"));
+    }
+
+    @Test
+    void malformed_traceparent_is_ignored() {
+        assertNull(Tracing.parseTraceparent(null));
+        assertNull(Tracing.parseTraceparent(""));
+        assertNull(Tracing.parseTraceparent("00-" + TRACE + "-" + PARENT + "-1"));
+        assertNull(Tracing.parseTraceparent("01-" + TRACE + "-" + PARENT + "-01"));
+        assertNull(Tracing.parseTraceparent("00-" + TRACE.toUpperCase() + "-" + PARENT + "-01"));
+        assertNull(Tracing.parseTraceparent("00-" + "0".repeat(32) + "-" + PARENT + "-01"));
+        assertNull(Tracing.parseTraceparent("00-" + TRACE + "-" + "0".repeat(16) + "-01"));
+        assertNull(Tracing.parseTraceparent("00-" + TRACE + "-" + PARENT + "-zz"));
+        assertNull(Tracing.parseTraceparent("00-" + TRACE + "-" + PARENT + "-+1"));
+        assertNull(Tracing.parseTraceparent("00-" + TRACE + "0" + PARENT + "--01"));
+    }
+
+    @Test
+    void span_is_written_as_otlp_json() {
+        Tracing.Span span = new Tracing.Span(TRACE, "b7ad6b7169203331", PARENT, "GET \"/go\"\n", Tracing.Kind.SERVER);
+        span.endNanos = span.startNanos + 1500;
+        span.attribute("http.status_code", 500).attribute("db.rows", 3L).attribute("cache.hit", true)
+                .attribute("ratio", 0.5).attribute("url.path", "/go/abc").attribute("ignored", null)
+                .error(new IllegalStateException("falló"));
+        StringBuilder out = new StringBuilder();
+        Tracing.span(out, span);
+        assertEquals("{\"traceId\":\"" + TRACE + "\",\"spanId\":\"b7ad6b7169203331\",\"parentSpanId\":\"" + PARENT + "\""
+                + ",\"name\":\"GET \\\"/go\\\"\\n\",\"kind\":2"
+                + ",\"startTimeUnixNano\":\"" + span.startNanos + "\",\"endTimeUnixNano\":\"" + (span.startNanos + 1500) + "\""
+                + ",\"attributes\":["
+                + "{\"key\":\"http.status_code\",\"value\":{\"intValue\":\"500\"}},"
+                + "{\"key\":\"db.rows\",\"value\":{\"intValue\":\"3\"}},"
+                + "{\"key\":\"cache.hit\",\"value\":{\"boolValue\":true}},"
+                + "{\"key\":\"ratio\",\"value\":{\"doubleValue\":0.5}},"
+                + "{\"key\":\"url.path\",\"value\":{\"stringValue\":\"/go/abc\"}}]"
+                + ",\"status\":{\"code\":2,\"message\":\"IllegalStateException: falló\"}}", out.toString());
+
+        Tracing.Span root = new Tracing.Span(TRACE, PARENT, null, "root", Tracing.Kind.INTERNAL);
+        out.setLength(0);
+        Tracing.span(out, root);
+        assertFalse(out.toString().contains("parentSpanId"));
+        assertFalse(out.toString().contains("attributes"));
+        assertFalse(out.toString().contains("status"));
+        assertTrue(out.toString().contains("\"kind\":1"));
+    }
+
+    @Test
+    void batches_are_one_line_each_and_files_rotate(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("trazas/traces.jsonl");
+        for (int i = 1; i <= 4; i++) {
+            Tracing.write(List.of(span("lote" + i), span("lote" + i)), file, 1, 2);
+        }
+        // Con maxBytes=1 cada lote rota el anterior; se conservan 2 rotados
+        assertLote(file, 4);
+        assertLote(Paths.get(file + ".1"), 3);
+        assertLote(Paths.get(file + ".2"), 2);
+        assertFalse(Files.exists(Paths.get(file + ".3")));
+
+        Path big = dir.resolve("grande.jsonl");
+        Tracing.write(List.of(span("a")), big, 1024 * 1024, 2);
+        Tracing.write(List.of(span("b")), big, 1024 * 1024, 2);
+        assertEquals(2, Files.readAllLines(big).size());
+        assertFalse(Files.exists(Paths.get(big + ".1")));
+    }
+
+    private static Tracing.Span span(String name) {
+        Tracing.Span span = new Tracing.Span(TRACE, PARENT, null, name, Tracing.Kind.INTERNAL);
+        span.endNanos = span.startNanos + 1;
+        return span;
+    }
+
+    private static void assertLote(Path file, int lote) throws Exception {
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(1, lines.size());
+        String line = lines.get(0);
+        assertTrue(line.startsWith("{\"resourceSpans\":[{\"resource\":{\"attributes\":[{\"key\":\"service.name\""), line);
+        assertTrue(line.contains("\"scope\":{\"name\":\"edu.pucmm.eict\"},\"spans\":[{"), line);
+        assertTrue(line.endsWith("}]}]}]}"), line);
+        assertEquals(2, line.split("\"name\":\"lote" + lote + "\"", -1).length - 1);
+    }
+}
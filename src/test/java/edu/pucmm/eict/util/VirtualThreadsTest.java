@@ -0,0 +1,34 @@
+package edu.pucmm.eict.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualThreadsTest {
+
+    @Test
+    void site_is_first_application_frame() {
+        List<StackTraceElement> frames = List.of(
+                frame("java.lang.Object", "wait", -1),
+                frame("java.util.concurrent.locks.LockSupport", "park", 221),
+                frame("edu.pucmm.eict.util.ClickWriter", "enqueue", 88),
+                frame("edu.pucmm.eict.services.UrlService", "recordClick", 410));
+        assertEquals("ClickWriter.enqueue:88", VirtualThreads.site(frames));
+    }
+
+    @Test
+    void site_falls_back_to_top_frame_outside_the_application() {
+        List<StackTraceElement> frames = List.of(
+                frame("sun.nio.ch.NioSocketImpl", "read", 304),
+                frame("java.net.Socket$SocketInputStream", "read", 1099));
+        assertEquals("NioSocketImpl.read:304", VirtualThreads.site(frames));
+        assertEquals("desconocido", VirtualThreads.site(List.of()));
+        assertEquals("desconocido", VirtualThreads.site((jdk.jfr.consumer.RecordedStackTrace) null));
+    }
+
+    private static StackTraceElement frame(String type, String method, int line) {
+        return new StackTraceElement(type, method, null, line);
+    }
+}